@@ -29,6 +29,8 @@ public final class PerfCakeConst {
 
    public static final String MESSAGE_NUMBER_HEADER = "PerfCake_Performance_Message_Number";
    public static final String MESSAGE_NUMBER_PROPERTY = "MessageNumber";
+   public static final String MESSAGE_SEQUENCE_HEADER = "PerfCake_Performance_Message_Sequence";
+   public static final String MESSAGE_TIMESTAMP_HEADER = "PerfCake_Performance_Message_Timestamp";
 
    public static final String SCENARIO_PROPERTY = "perfcake.scenario";
    public static final String DEFAULT_ENCODING_PROPERTY = "perfcake.encoding";
@@ -37,6 +39,7 @@ public final class PerfCakeConst {
    public static final String MESSAGES_DIR_PROPERTY = "perfcake.messages.dir";
    public static final String PLUGINS_DIR_PROPERTY = "perfcake.plugins.dir";
    public static final String PROPERTIES_FILE_PROPERTY = "perfcake.properties.file";
+   public static final String SEED_PROPERTY = "perfcake.seed";
 
    public static final String SCENARIO_OPT = "scenario";
    public static final String SCENARIOS_DIR_OPT = "scenarios-dir";
@@ -54,6 +54,11 @@ public class RunInfo {
     */
    private long endTime = -1;
 
+   /**
+    * Number of the starts and resets of the measurement run.
+    */
+   private volatile int generation = 0;
+
    /**
     * Number of threads that is currently used to generate the load.
     */
@@ -89,6 +94,7 @@ public class RunInfo {
       endTime = -1;
 
       iterations.set(0);
+      generation++;
    }
 
    /**
@@ -104,6 +110,7 @@ public class RunInfo {
       endTime = -1;
 
       iterations.set(0);
+      generation++;
    }
 
    /**
@@ -203,6 +210,16 @@ public class RunInfo {
       return startTime;
    }
 
+   /**
+    * Gets the number of the starts and resets of the measurement run. It changes whenever the measurement starts anew, e.g. after the warm-up,
+    * even when the start time stays the same.
+    *
+    * @return The number of the starts and resets.
+    */
+   public int getGeneration() {
+      return generation;
+   }
+
    /**
     * Gets Unix time of the measurement end.
     *
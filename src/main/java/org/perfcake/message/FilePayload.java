@@ -0,0 +1,186 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message;
+
+import org.perfcake.util.Utils;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A binary message payload backed by a file. The file is mapped to the memory once and the mapping is shared read-only by all the messages
+ * and senders, so that even large payloads are never copied to the heap nor encoded for each message.
+ *
+ * <p>The senders that know this payload write its bytes directly, either using {@link #transferTo(WritableByteChannel)} or a {@link #buffer()} slice.
+ * The other senders get the file content decoded by {@link #toString()}. The file must not be larger than 2GB and it must not change during the test.</p>
+ */
+public final class FilePayload implements Serializable {
+   private static final long serialVersionUID = -4061289512471153802L;
+
+   /**
+    * The path to the file.
+    */
+   private final String path;
+
+   /**
+    * The size of the file.
+    */
+   private final long size;
+
+   /**
+    * The channel used to transfer the file content.
+    */
+   private transient FileChannel channel;
+
+   /**
+    * The file content mapped to the memory.
+    */
+   private transient MappedByteBuffer mapped;
+
+   /**
+    * The decoded file content kept as long as there is enough memory.
+    */
+   private transient volatile SoftReference<String> text;
+
+   /**
+    * Maps the given file to the memory.
+    *
+    * @param path
+    *       The path to the file.
+    * @throws IOException
+    *       When it was not possible to map the file.
+    */
+   public FilePayload(final Path path) throws IOException {
+      this.path = path.toAbsolutePath().toString();
+      map();
+      this.size = channel.size();
+   }
+
+   private void map() throws IOException {
+      channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+      try {
+         if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException(String.format("The file %s is too large to be used as a message payload (%d bytes).", path, channel.size()));
+         }
+         mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } catch (IOException e) {
+         channel.close();
+         throw e;
+      }
+   }
+
+   /**
+    * Gets the path to the file.
+    *
+    * @return The path to the file.
+    */
+   public String getPath() {
+      return path;
+   }
+
+   /**
+    * Gets the payload size.
+    *
+    * @return The payload size in bytes.
+    */
+   public long size() {
+      return size;
+   }
+
+   /**
+    * Gets a read-only view of the mapped file content. Each call returns a new view with its own position, the content is not copied.
+    *
+    * @return The mapped file content.
+    */
+   public ByteBuffer buffer() {
+      return mapped.asReadOnlyBuffer();
+   }
+
+   /**
+    * Transfers the whole payload to the given channel. The operating system can send the file content to the target directly
+    * without copying it to the user space.
+    *
+    * @param target
+    *       The target channel.
+    * @return The number of bytes transferred.
+    * @throws IOException
+    *       When it was not possible to transfer the payload.
+    */
+   public long transferTo(final WritableByteChannel target) throws IOException {
+      long position = 0;
+      while (position < size) {
+         position += channel.transferTo(position, size - position, target);
+      }
+
+      return size;
+   }
+
+   /**
+    * Writes the whole payload to the given stream in chunks of the size of the given buffer.
+    *
+    * @param out
+    *       The target stream.
+    * @param chunk
+    *       The buffer used to pass the chunks to the stream.
+    * @throws IOException
+    *       When it was not possible to write the payload.
+    */
+   public void writeTo(final OutputStream out, final byte[] chunk) throws IOException {
+      final ByteBuffer content = buffer();
+      while (content.hasRemaining()) {
+         final int length = Math.min(chunk.length, content.remaining());
+         content.get(chunk, 0, length);
+         out.write(chunk, 0, length);
+      }
+   }
+
+   /**
+    * Gets the file content decoded using the default encoding. The decoded content is cached as long as there is enough memory.
+    *
+    * @return The decoded file content.
+    */
+   @Override
+   public String toString() {
+      final SoftReference<String> cached = text;
+      String content = cached == null ? null : cached.get();
+      if (content == null) {
+         content = Charset.forName(Utils.getDefaultEncoding()).decode(buffer()).toString();
+         text = new SoftReference<>(content);
+      }
+
+      return content;
+   }
+
+   private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+      in.defaultReadObject();
+      map();
+   }
+}
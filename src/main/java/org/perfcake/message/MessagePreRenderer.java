@@ -0,0 +1,176 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Renders the messages with placeholders in advance, so that the sender threads only pick the messages that are ready.
+ * For each message template with placeholders, the given number of messages is rendered before the run. When running continuously,
+ * a background producer thread keeps rendering the messages following the last requested ones. A message that is not ready
+ * (i.e. the producer fell behind, or the messages are rendered with other properties than the message number) is rendered
+ * by the sender thread as usual.
+ * <p/>
+ * The memory used by the rendered messages is capped to {@link #MAX_MEMORY_FRACTION} of the maximal heap size,
+ * the number of pre-rendered messages is lowered accordingly.
+ */
+public class MessagePreRenderer {
+
+   private static final Logger log = Logger.getLogger(MessagePreRenderer.class);
+
+   /**
+    * The maximal fraction of the heap used by the rendered messages.
+    */
+   public static final double MAX_MEMORY_FRACTION = 0.25;
+
+   /**
+    * The number of messages rendered for a template before switching to the next one.
+    */
+   private static final int BATCH_SIZE = 64;
+
+   /**
+    * How long the producer sleeps when all the messages are ready.
+    */
+   private static final long IDLE_PARK_NANOS = 100_000;
+
+   private final List<PreRenderedMessages> rings = new ArrayList<>();
+
+   private final boolean continuous;
+
+   private volatile boolean running = false;
+
+   private Thread producer;
+
+   /**
+    * Creates the pre-renderer for the message templates.
+    *
+    * @param messageStore
+    *       The message templates, only the ones with placeholders and without template functions are pre-rendered.
+    * @param count
+    *       The number of messages rendered in advance for each template.
+    * @param continuous
+    *       When true, the messages are rendered continuously by a background thread during the run.
+    */
+   public MessagePreRenderer(final List<MessageTemplate> messageStore, final int count, final boolean continuous) {
+      this.continuous = continuous;
+
+      long templatesLength = 0;
+      final List<MessageTemplate> dynamic = new ArrayList<>();
+      for (MessageTemplate template : messageStore) {
+         if (template.isPreRenderable()) {
+            dynamic.add(template);
+            templatesLength += template.getMessage().getPayload().toString().length();
+         }
+      }
+
+      int capacity = count;
+      final long maxChars = (long) (Runtime.getRuntime().maxMemory() * MAX_MEMORY_FRACTION / 2); // two bytes per character
+      if (templatesLength > 0 && templatesLength * capacity > maxChars) {
+         capacity = (int) Math.max(1, maxChars / templatesLength);
+         log.warn(String.format("Cannot pre-render %d messages per template within the memory limit, only %d messages will be pre-rendered.", count, capacity));
+      }
+
+      for (MessageTemplate template : dynamic) {
+         final PreRenderedMessages ring = new PreRenderedMessages(template, capacity);
+         template.setPreRendered(ring);
+         rings.add(ring);
+      }
+   }
+
+   /**
+    * Renders the first messages and starts the producer thread when running continuously.
+    */
+   public void start() {
+      if (rings.isEmpty()) {
+         return;
+      }
+
+      for (PreRenderedMessages ring : rings) {
+         ring.reset();
+         ring.fill();
+      }
+
+      if (log.isDebugEnabled()) {
+         log.debug(String.format("Pre-rendered %d messages for %d message templates.", rings.get(0).getCapacity(), rings.size()));
+      }
+
+      if (continuous) {
+         running = true;
+         producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+               produce();
+            }
+         }, "PerfCake-message-pre-renderer");
+         producer.setDaemon(true);
+         producer.start();
+      }
+   }
+
+   private void produce() {
+      while (running) {
+         int produced = 0;
+         for (PreRenderedMessages ring : rings) {
+            produced += ring.produce(BATCH_SIZE);
+         }
+
+         if (produced == 0) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+         }
+      }
+   }
+
+   /**
+    * Stops the producer thread.
+    *
+    * @throws InterruptedException
+    *       When interrupted while waiting for the producer to finish.
+    */
+   public void stop() throws InterruptedException {
+      running = false;
+      if (producer != null) {
+         producer.join();
+         producer = null;
+      }
+
+      final long misses = getMisses();
+      if (misses > 0) {
+         log.info(String.format("%d messages were not pre-rendered in time and had to be rendered by the sender threads.", misses));
+      }
+   }
+
+   /**
+    * Gets the number of requested messages that were not ready and had to be rendered by the sender threads.
+    *
+    * @return The number of messages rendered by the sender threads.
+    */
+   public long getMisses() {
+      long misses = 0;
+      for (PreRenderedMessages ring : rings) {
+         misses += ring.getMisses();
+      }
+
+      return misses;
+   }
+}
@@ -0,0 +1,268 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.util.FastRandom;
+
+import java.util.List;
+
+/**
+ * Selects a single message from the message store for each iteration, so that the messages are sent in a mix given by their weights
+ * instead of sending the whole message store in each iteration.
+ * <p/>
+ * The {@link Strategy#WEIGHTED} selection picks the messages randomly using the alias method (a constant time for each selection regardless
+ * of the number of messages), the {@link Strategy#ROUND_ROBIN} selection ignores the weights and takes the messages one after another,
+ * and the {@link Strategy#SEQUENCE} selection takes the messages in a fixed cycle where each message appears as many times as is its weight
+ * (the weights are reduced to the smallest integers in the same ratio, and the messages are spread evenly within the cycle).
+ */
+public class MessageSelector {
+
+   /**
+    * The way the messages are selected from the message store.
+    */
+   public enum Strategy {
+      /**
+       * The whole message store is sent in each iteration.
+       */
+      ALL,
+
+      /**
+       * A single message is selected randomly in each iteration with the probability given by its weight.
+       */
+      WEIGHTED,
+
+      /**
+       * A single message is selected in each iteration, one after another, the weights are ignored.
+       */
+      ROUND_ROBIN,
+
+      /**
+       * A single message is selected in each iteration from a fixed cycle given by the weights.
+       */
+      SEQUENCE
+   }
+
+   /**
+    * The precision of the non-integer weights in the {@link Strategy#SEQUENCE} cycle.
+    */
+   private static final int WEIGHT_SCALE = 1000;
+
+   private final Strategy strategy;
+
+   private final MessageTemplate[] templates;
+
+   /**
+    * The probability of taking the message instead of its alias in the alias table.
+    */
+   private double[] probabilities;
+
+   /**
+    * The aliases of the messages in the alias table.
+    */
+   private int[] aliases;
+
+   /**
+    * The indexes of the messages in the {@link Strategy#SEQUENCE} cycle.
+    */
+   private int[] cycle;
+
+   /**
+    * Creates the selector for the given message store.
+    *
+    * @param messageStore
+    *       The messages to select from.
+    * @param strategy
+    *       The selection strategy.
+    * @throws PerfCakeException
+    *       When the message store is empty or the weights are invalid.
+    */
+   public MessageSelector(final List<MessageTemplate> messageStore, final Strategy strategy) throws PerfCakeException {
+      if (messageStore == null || messageStore.isEmpty()) {
+         throw new PerfCakeException("There are no messages to select from.");
+      }
+
+      this.strategy = strategy;
+      this.templates = messageStore.toArray(new MessageTemplate[messageStore.size()]);
+
+      final double[] weights = new double[templates.length];
+      double sum = 0;
+      for (int i = 0; i < templates.length; i++) {
+         weights[i] = templates[i].getWeight();
+         if (weights[i] < 0 || Double.isNaN(weights[i]) || Double.isInfinite(weights[i])) {
+            throw new PerfCakeException(String.format("Invalid weight %f of message %s.", weights[i], templates[i].getName()));
+         }
+         sum = sum + weights[i];
+      }
+
+      if (sum == 0 && (strategy == Strategy.WEIGHTED || strategy == Strategy.SEQUENCE)) {
+         throw new PerfCakeException("At least one message must have a positive weight.");
+      }
+
+      if (strategy == Strategy.WEIGHTED) {
+         buildAliasTable(weights, sum);
+      } else if (strategy == Strategy.SEQUENCE) {
+         buildCycle(weights);
+      }
+   }
+
+   /**
+    * Builds the alias table (Vose's alias method).
+    */
+   private void buildAliasTable(final double[] weights, final double sum) {
+      final int n = weights.length;
+      final double[] scaled = new double[n];
+      final int[] small = new int[n];
+      final int[] large = new int[n];
+      int smallCount = 0, largeCount = 0;
+
+      probabilities = new double[n];
+      aliases = new int[n];
+
+      for (int i = 0; i < n; i++) {
+         scaled[i] = weights[i] * n / sum;
+         if (scaled[i] < 1) {
+            small[smallCount++] = i;
+         } else {
+            large[largeCount++] = i;
+         }
+      }
+
+      while (smallCount > 0 && largeCount > 0) {
+         final int s = small[--smallCount];
+         final int l = large[--largeCount];
+         probabilities[s] = scaled[s];
+         aliases[s] = l;
+         scaled[l] = scaled[l] + scaled[s] - 1;
+         if (scaled[l] < 1) {
+            small[smallCount++] = l;
+         } else {
+            large[largeCount++] = l;
+         }
+      }
+
+      // the rest is equal to 1 up to rounding errors
+      while (largeCount > 0) {
+         final int l = large[--largeCount];
+         probabilities[l] = 1;
+         aliases[l] = l;
+      }
+      while (smallCount > 0) {
+         final int s = small[--smallCount];
+         probabilities[s] = 1;
+         aliases[s] = s;
+      }
+   }
+
+   /**
+    * Builds the cycle of the messages using the smooth weighted round-robin, so that the occurrences of each message are spread evenly.
+    * A positive weight that would round to zero occurrences is rejected rather than silently never sending the message.
+    */
+   private void buildCycle(final double[] weights) throws PerfCakeException {
+      final int n = weights.length;
+      boolean integral = true;
+      for (final double weight : weights) {
+         integral = integral && weight == Math.rint(weight);
+      }
+
+      final long[] counts = new long[n];
+      long divisor = 0;
+      for (int i = 0; i < n; i++) {
+         counts[i] = Math.round(integral ? weights[i] : weights[i] * WEIGHT_SCALE);
+         if (counts[i] == 0 && weights[i] > 0) {
+            throw new PerfCakeException(String.format("The weight %f of message %s is too small to be kept in a sequence, the precision is %f.", weights[i], templates[i].getName(), 1.0 / WEIGHT_SCALE));
+         }
+         divisor = gcd(divisor, counts[i]);
+      }
+
+      long total = 0;
+      for (int i = 0; i < n; i++) {
+         counts[i] = counts[i] / divisor;
+         total = total + counts[i];
+      }
+
+      if (total > Integer.MAX_VALUE) {
+         throw new PerfCakeException("The weights of the messages are too large to create a sequence of them.");
+      }
+
+      cycle = new int[(int) total];
+      final long[] current = new long[n];
+      for (int k = 0; k < cycle.length; k++) {
+         int best = 0;
+         for (int i = 0; i < n; i++) {
+            current[i] = current[i] + counts[i];
+            if (current[i] > current[best]) {
+               best = i;
+            }
+         }
+         current[best] = current[best] - total;
+         cycle[k] = best;
+      }
+   }
+
+   private static long gcd(long a, long b) {
+      while (b != 0) {
+         final long t = a % b;
+         a = b;
+         b = t;
+      }
+      return a;
+   }
+
+   /**
+    * Selects the message to be sent in the given iteration.
+    *
+    * @param iteration
+    *       The current iteration.
+    * @return The selected message.
+    */
+   public MessageTemplate select(final long iteration) {
+      switch (strategy) {
+         case WEIGHTED:
+            final FastRandom random = FastRandom.current();
+            final int i = random.nextInt(templates.length);
+            return templates[random.nextDouble() < probabilities[i] ? i : aliases[i]];
+         case SEQUENCE:
+            return templates[cycle[(int) (iteration % cycle.length)]];
+         case ROUND_ROBIN:
+         case ALL:
+         default:
+            return templates[(int) (iteration % templates.length)];
+      }
+   }
+
+   /**
+    * Gets the selection strategy.
+    *
+    * @return The selection strategy.
+    */
+   public Strategy getStrategy() {
+      return strategy;
+   }
+
+   /**
+    * Gets the length of the cycle in which the messages repeat in the {@link Strategy#SEQUENCE} selection.
+    *
+    * @return The length of the cycle, or the number of messages for the other strategies.
+    */
+   int getCycleLength() {
+      return cycle != null ? cycle.length : templates.length;
+   }
+}
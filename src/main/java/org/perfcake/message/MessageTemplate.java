@@ -19,12 +19,16 @@
  */
 package org.perfcake.message;
 
-import org.perfcake.util.Utils;
+import org.perfcake.PerfCakeException;
+import org.perfcake.util.CompiledTemplate;
 import org.perfcake.util.properties.DefaultPropertyGetter;
 
 import org.apache.log4j.Logger;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.regex.Matcher;
@@ -46,13 +50,31 @@ public class MessageTemplate implements Serializable {
    private final Message message;
    private final long multiplicity;
    private final List<String> validatorIds;
+   private String name;
+   private double weight = 1;
+   private List<String> tags = Collections.emptyList();
+   private long tagMask = 0;
    private transient Pattern pattern;
+   private transient CompiledTemplate template;
+   private transient volatile PreRenderedMessages preRendered;
 
    public Matcher getMatcher(String text) {
       return pattern != null ? pattern.matcher(text) : null;
    }
 
-   public MessageTemplate(final Message message, final long multiplicity, final List<String> validatorIds) {
+   /**
+    * Creates the template of a message and parses the placeholders in its payload.
+    *
+    * @param message
+    *       The message.
+    * @param multiplicity
+    *       How many times the message is sent in each iteration.
+    * @param validatorIds
+    *       The identifiers of the validators of the responses.
+    * @throws PerfCakeException
+    *       When the payload contains an invalid template function call.
+    */
+   public MessageTemplate(final Message message, final long multiplicity, final List<String> validatorIds) throws PerfCakeException {
       this.message = message;
       preparePattern();
       this.multiplicity = multiplicity;
@@ -64,23 +86,72 @@ public class MessageTemplate implements Serializable {
    }
 
    public Message getFilteredMessage(final Properties props) {
-      if (pattern != null) {
-         final Message m = MessageFactory.getMessage();
-         String text = this.getMessage().getPayload().toString();
-         text = Utils.filterProperties(text, getMatcher(text), new DefaultPropertyGetter(props));
-
-         m.setPayload(text);
-         m.setHeaders(message.getHeaders());
-         m.setProperties(message.getProperties());
+      if (template != null) {
+         final PreRenderedMessages ready = preRendered;
+         if (ready != null) {
+            final Message m = ready.get(props);
+            if (m != null) {
+               return m;
+            }
+         }
 
-         return m;
+         return render(props);
       } else {
          return message;
       }
    }
 
-   private void preparePattern() {
+   /**
+    * Renders the message with the placeholders replaced by the given properties.
+    *
+    * @param props
+    *       The properties to replace the placeholders.
+    * @return The rendered message.
+    */
+   Message render(final Properties props) {
+      final Message m = MessageFactory.getMessage();
+      m.setPayload(template.render(new DefaultPropertyGetter(props)));
+      m.setHeaders(message.getHeaders());
+      m.setProperties(message.getProperties());
+
+      return m;
+   }
+
+   /**
+    * Finds out whether the message payload contains placeholders and must be rendered for each message.
+    *
+    * @return True if the message payload contains placeholders.
+    */
+   public boolean isDynamic() {
+      return template != null;
+   }
+
+   /**
+    * Finds out whether the message can be rendered in advance, i.e. it is dynamic and it depends on the message properties only.
+    *
+    * @return True if the message can be rendered in advance.
+    */
+   boolean isPreRenderable() {
+      return template != null && !template.hasFunctions();
+   }
+
+   /**
+    * Sets the messages rendered in advance, null to always render the messages when needed.
+    *
+    * @param preRendered
+    *       The messages rendered in advance.
+    */
+   void setPreRendered(final PreRenderedMessages preRendered) {
+      this.preRendered = preRendered;
+   }
+
+   PreRenderedMessages getPreRendered() {
+      return preRendered;
+   }
+
+   private void preparePattern() throws PerfCakeException {
       this.pattern = null;
+      this.template = null;
 
       // find out if there are any attributes in the text message to be replaced
       if (message.getPayload() instanceof String) {
@@ -92,11 +163,33 @@ public class MessageTemplate implements Serializable {
                log.debug("Created matching pattern for the message payload with properties.");
             }
             this.pattern = pattern;
+            try {
+               this.template = new CompiledTemplate(filteredString, pattern); // parsed once to be rendered quickly for each message
+            } catch (IllegalArgumentException e) {
+               throw new PerfCakeException(String.format("Cannot parse the message template '%s': %s", abbreviate(filteredString), e.getMessage()), e);
+            }
          }
       }
 
    }
 
+   /**
+    * Shortens the payload to identify the template in the error messages.
+    */
+   private static String abbreviate(final String payload) {
+      return payload.length() <= 100 ? payload : payload.substring(0, 97) + "...";
+   }
+
+   private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+      in.defaultReadObject();
+      log = Logger.getLogger(MessageTemplate.class);
+      try {
+         preparePattern();
+      } catch (PerfCakeException e) {
+         throw new IOException(e.getMessage(), e);
+      }
+   }
+
    public Long getMultiplicity() {
       return multiplicity;
    }
@@ -104,4 +197,91 @@ public class MessageTemplate implements Serializable {
    public List<String> getValidatorIds() {
       return validatorIds;
    }
+
+   /**
+    * Gets the name of the message used to identify its results when the messages are selected by a {@link MessageSelector}.
+    *
+    * @return The name of the message, null if not set.
+    */
+   public String getName() {
+      return name;
+   }
+
+   /**
+    * Sets the name of the message used to identify its results when the messages are selected by a {@link MessageSelector}.
+    *
+    * @param name
+    *       The name of the message.
+    * @return Instance of this for fluent API.
+    */
+   public MessageTemplate setName(final String name) {
+      this.name = name;
+      return this;
+   }
+
+   /**
+    * Gets the weight of the message in the message mix. The default value is 1.
+    *
+    * @return The weight of the message.
+    */
+   public double getWeight() {
+      return weight;
+   }
+
+   /**
+    * Sets the weight of the message in the message mix, i.e. how often it is selected by a {@link MessageSelector} relatively to the other messages.
+    *
+    * @param weight
+    *       The weight of the message, must not be negative.
+    * @return Instance of this for fluent API.
+    */
+   public MessageTemplate setWeight(final double weight) {
+      this.weight = weight;
+      return this;
+   }
+
+   /**
+    * Gets the user tags of the message. The measurements of the message are marked with these tags and with the name of the message
+    * when the messages are selected by a {@link MessageSelector}.
+    *
+    * @return The user tags of the message.
+    */
+   public List<String> getTags() {
+      return tags;
+   }
+
+   /**
+    * Sets the user tags of the message.
+    *
+    * @param tags
+    *       The user tags of the message.
+    * @return Instance of this for fluent API.
+    */
+   public MessageTemplate setTags(final List<String> tags) {
+      this.tags = tags;
+      return this;
+   }
+
+   /**
+    * Gets the bit mask of the measurement tags the measurements of this message are marked with.
+    *
+    * @return The bit mask of the measurement tags.
+    * @see org.perfcake.reporting.MeasurementTags
+    */
+   public long getTagMask() {
+      return tagMask;
+   }
+
+   /**
+    * Sets the bit mask of the measurement tags the measurements of this message are marked with.
+    *
+    * @param tagMask
+    *       The bit mask of the measurement tags.
+    * @return Instance of this for fluent API.
+    * @see org.perfcake.reporting.MeasurementTags
+    */
+   public MessageTemplate setTagMask(final long tagMask) {
+      this.tagMask = tagMask;
+      return this;
+   }
 }
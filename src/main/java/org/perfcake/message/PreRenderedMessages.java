@@ -0,0 +1,183 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message;
+
+import org.perfcake.PerfCakeConst;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded ring of messages rendered from a single {@link MessageTemplate} in advance. The messages are identified by their message number,
+ * the only property the messages are rendered with, so that they are exactly the same as the messages rendered when needed.
+ * The ring holds the messages for the message numbers following the last requested one. The message that is not ready is not
+ * returned and it must be rendered by the caller.
+ */
+final class PreRenderedMessages {
+
+   /**
+    * A message rendered for the given message number.
+    */
+   private static final class Rendered {
+      private final long number;
+      private final Message message;
+
+      private Rendered(final long number, final Message message) {
+         this.number = number;
+         this.message = message;
+      }
+   }
+
+   private final MessageTemplate template;
+   private final int capacity;
+   private final AtomicReferenceArray<Rendered> slots;
+
+   /**
+    * The message rendered without any properties, i.e. with message numbering disabled.
+    */
+   private volatile Message unnumbered;
+
+   /**
+    * The highest message number requested so far.
+    */
+   private final AtomicLong lastRequested = new AtomicLong(-1);
+
+   /**
+    * The next message number to be rendered by the producer.
+    */
+   private long next = 0;
+
+   /**
+    * The number of requested messages that were not ready.
+    */
+   private final AtomicLong misses = new AtomicLong(0);
+
+   PreRenderedMessages(final MessageTemplate template, final int capacity) {
+      this.template = template;
+      this.capacity = capacity;
+      this.slots = new AtomicReferenceArray<>(capacity);
+   }
+
+   /**
+    * Gets the message rendered with the given properties if it is ready.
+    *
+    * @param props
+    *       The properties the message should be rendered with.
+    * @return The rendered message, or null if it is not ready.
+    */
+   Message get(final Properties props) {
+      if (props.isEmpty()) {
+         Message m = unnumbered;
+         if (m == null) {
+            m = unnumbered = template.render(props);
+         }
+         return m;
+      }
+
+      final String numberProperty = props.getProperty(PerfCakeConst.MESSAGE_NUMBER_PROPERTY);
+      if (numberProperty == null || props.size() > 1) {
+         return null; // rendered with other properties, cannot be prepared
+      }
+
+      final long number = Long.parseLong(numberProperty);
+      long last = lastRequested.get();
+      while (number > last && !lastRequested.compareAndSet(last, number)) {
+         last = lastRequested.get();
+      }
+
+      final Rendered rendered = slots.get(slot(number));
+      if (rendered != null && rendered.number == number) {
+         return rendered.message;
+      }
+
+      misses.incrementAndGet();
+      return null;
+   }
+
+   private int slot(final long number) {
+      return (int) (number % capacity);
+   }
+
+   /**
+    * Renders the message for the given message number and stores it in the ring.
+    *
+    * @param number
+    *       The message number.
+    */
+   private void render(final long number) {
+      final Properties props = new Properties();
+      props.setProperty(PerfCakeConst.MESSAGE_NUMBER_PROPERTY, String.valueOf(number));
+      slots.set(slot(number), new Rendered(number, template.render(props)));
+   }
+
+   /**
+    * Fills the whole ring with the messages following the last requested one. Must be called by a single thread.
+    */
+   void fill() {
+      while (produce(Integer.MAX_VALUE) > 0) {
+         // fill completely
+      }
+   }
+
+   /**
+    * Renders up to the given number of messages following the last requested one that are not ready yet. Must be called by a single thread.
+    *
+    * @param max
+    *       The maximal number of messages to render.
+    * @return The number of rendered messages.
+    */
+   int produce(final int max) {
+      final long last = lastRequested.get();
+      if (next <= last) { // fell behind, skip the messages that were already requested
+         next = last + 1;
+      }
+
+      int produced = 0;
+      while (produced < max && next <= last + capacity) {
+         render(next++);
+         produced++;
+      }
+
+      return produced;
+   }
+
+   /**
+    * Rewinds the ring to the beginning of a new run.
+    */
+   void reset() {
+      lastRequested.set(-1);
+      next = 0;
+      misses.set(0);
+   }
+
+   int getCapacity() {
+      return capacity;
+   }
+
+   /**
+    * Gets the number of requested messages that were not ready and had to be rendered when needed.
+    *
+    * @return The number of requested messages that were not ready.
+    */
+   long getMisses() {
+      return misses.get();
+   }
+}
@@ -0,0 +1,586 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.feeder;
+
+import org.perfcake.PerfCakeException;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Feeds the rows of a CSV file to the message properties, one row per iteration. The values are stored under the column names
+ * taken either from the first row of the file, or from the {@link #setColumns(String) columns} property.
+ *
+ * <p>The file is mapped to the memory and never loaded to the heap. The rows are indexed lazily as they are requested,
+ * only the {@link Strategy#RANDOM} and {@link Strategy#PARTITIONED} strategies need the whole file to be indexed during the initialization
+ * to know the number of rows. The index is sparse, it keeps the offset of every {@value #INDEX_INTERVAL}th row only and the rows in between
+ * are found by scanning forward from the nearest indexed offset. The values are decoded directly from the mapped file without copying the rows.</p>
+ *
+ * <p>The fields can be quoted by double quotes, a double quote in a quoted field is escaped by another double quote. A double quote
+ * starts a quoted field only at the very beginning of the field, otherwise it is a part of the value. The file must use an ASCII compatible encoding.</p>
+ */
+public class CsvDataFeeder implements DataFeeder {
+
+   /**
+    * The way the rows are assigned to the iterations.
+    */
+   public enum Strategy {
+      /**
+       * The iteration gets the row with the same number, there is no more data after the last row.
+       */
+      SEQUENTIAL,
+
+      /**
+       * The iteration gets the row with the same number, the rows are repeated from the beginning after the last row.
+       */
+      CIRCULAR,
+
+      /**
+       * The iteration gets a random row.
+       */
+      RANDOM,
+
+      /**
+       * Each sender thread cycles through its own part of the file, the parts are disjoint.
+       */
+      PARTITIONED
+   }
+
+   /**
+    * The logger.
+    */
+   private static final Logger log = Logger.getLogger(CsvDataFeeder.class);
+
+   /**
+    * The number of rows indexed in advance at once.
+    */
+   private static final int INDEX_BATCH = 4096;
+
+   /**
+    * The binary logarithm of the number of rows between two indexed offsets.
+    */
+   private static final int INDEX_INTERVAL_BITS = 5;
+
+   /**
+    * The number of rows between two indexed offsets.
+    */
+   static final int INDEX_INTERVAL = 1 << INDEX_INTERVAL_BITS;
+
+   /**
+    * The path to the CSV file.
+    */
+   private String file;
+
+   /**
+    * Whether the first row of the file contains the column names.
+    */
+   private boolean header = true;
+
+   /**
+    * Comma separated column names overriding the header.
+    */
+   private String columns = null;
+
+   /**
+    * The field delimiter.
+    */
+   private String delimiter = ",";
+
+   /**
+    * The encoding of the file.
+    */
+   private String encoding = "UTF-8";
+
+   /**
+    * The way the rows are assigned to the iterations.
+    */
+   private Strategy strategy = Strategy.SEQUENTIAL;
+
+   /**
+    * The size of the mapped chunks as a power of two.
+    */
+   int chunkBits = MappedFile.DEFAULT_CHUNK_BITS;
+
+   private MappedFile data;
+   private Charset charset;
+   private byte delimiterByte;
+   private String[] columnNames;
+
+   /**
+    * The number of the first row with data.
+    */
+   private int firstRow;
+
+   /**
+    * The start offsets of every {@link #INDEX_INTERVAL}th indexed row.
+    */
+   private volatile long[] offsets;
+
+   /**
+    * The offset where the indexing continues.
+    */
+   private volatile long indexed;
+
+   /**
+    * The number of indexed rows.
+    */
+   private volatile long rows;
+
+   /**
+    * Whether the whole file has been indexed.
+    */
+   private volatile boolean complete;
+
+   /**
+    * The parts of the file for {@link Strategy#PARTITIONED}.
+    */
+   private long[][] partitions;
+
+   private final AtomicInteger nextPartition = new AtomicInteger(0);
+
+   private final ThreadLocal<long[]> partitionCursor = new ThreadLocal<long[]>() {
+      @Override
+      protected long[] initialValue() {
+         final long[] partition = partitions[nextPartition.getAndIncrement() % partitions.length];
+         return new long[] { partition[0], partition[1], 0 }; // first row, number of rows, position
+      }
+   };
+
+   private final AtomicBoolean exhausted = new AtomicBoolean(false);
+
+   @Override
+   public void init(final int threads) throws Exception {
+      if (file == null) {
+         throw new PerfCakeException("The CSV file for the data feeder is not set.");
+      }
+
+      final String delim = "\\t".equals(delimiter) ? "\t" : delimiter;
+      if (delim.length() != 1 || delim.charAt(0) > 127) {
+         throw new PerfCakeException(String.format("The delimiter must be a single ASCII character, '%s' given.", delimiter));
+      }
+      delimiterByte = (byte) delim.charAt(0);
+      charset = Charset.forName(encoding);
+
+      offsets = new long[1024];
+      indexed = 0;
+      rows = 0;
+      complete = false;
+      exhausted.set(false);
+      data = new MappedFile(file, chunkBits);
+
+      firstRow = header ? 1 : 0;
+      if (columns != null && !columns.trim().isEmpty()) {
+         columnNames = columns.trim().split("\\s*,\\s*");
+      } else if (header && hasFileRow(0)) {
+         columnNames = split(0, Integer.MAX_VALUE).toArray(new String[0]);
+      } else {
+         close();
+         throw new PerfCakeException("The column names of the CSV file " + file + " are neither in its header, nor set by the columns property.");
+      }
+
+      if (strategy == Strategy.RANDOM || strategy == Strategy.PARTITIONED) {
+         final long time = System.currentTimeMillis();
+         indexTo(Long.MAX_VALUE);
+         if (log.isInfoEnabled()) {
+            log.info(String.format("Indexed %d rows of %s in %d ms.", getRowCount(), file, System.currentTimeMillis() - time));
+         }
+      }
+
+      if (!exists(0)) {
+         close();
+         throw new PerfCakeException("There are no data in the CSV file " + file + ".");
+      }
+
+      if (strategy == Strategy.PARTITIONED) {
+         final long count = getRowCount();
+         final int parts = (int) Math.min(Math.max(threads, 1), count);
+         partitions = new long[parts][];
+         for (int i = 0; i < parts; i++) {
+            final long from = count * i / parts;
+            partitions[i] = new long[] { from, count * (i + 1) / parts - from };
+         }
+         nextPartition.set(0);
+      }
+
+      if (log.isDebugEnabled()) {
+         log.debug("Feeding the columns " + Arrays.toString(columnNames) + " from " + file + " (" + strategy + ").");
+      }
+   }
+
+   @Override
+   public void feed(final Properties props, final long iteration) {
+      long row;
+      switch (strategy) {
+         case SEQUENTIAL:
+            if (!exists(iteration)) {
+               if (exhausted.compareAndSet(false, true) && log.isEnabledFor(Level.WARN)) {
+                  log.warn("All the rows of " + file + " have been used, the following messages are rendered without the data.");
+               }
+               return;
+            }
+            row = iteration;
+            break;
+         case CIRCULAR:
+            row = exists(iteration) ? iteration : iteration % getRowCount();
+            break;
+         case RANDOM:
+            row = ThreadLocalRandom.current().nextLong(getRowCount());
+            break;
+         default: // PARTITIONED
+            final long[] cursor = partitionCursor.get();
+            row = cursor[0] + cursor[2];
+            cursor[2] = (cursor[2] + 1) % cursor[1];
+      }
+
+      final List<String> values = split(row + firstRow, columnNames.length);
+      for (int i = 0; i < values.size(); i++) {
+         props.setProperty(columnNames[i], values.get(i));
+      }
+   }
+
+   @Override
+   public void close() throws PerfCakeException {
+      if (data != null) {
+         try {
+            data.close();
+         } catch (IOException e) {
+            throw new PerfCakeException("Cannot close the CSV file " + file + ": ", e);
+         } finally {
+            data = null;
+         }
+      }
+   }
+
+   /**
+    * Gets the number of the data rows found so far. It is the total number of the data rows once the file is completely indexed.
+    *
+    * @return The number of the data rows.
+    */
+   long getRowCount() {
+      return Math.max(0, rows - firstRow);
+   }
+
+   /**
+    * Finds out whether there is the given data row, indexes the file when needed.
+    *
+    * @param row
+    *       The data row number.
+    * @return True if the row exists.
+    */
+   private boolean exists(final long row) {
+      return hasFileRow(row + firstRow);
+   }
+
+   /**
+    * Finds out whether there is the given row in the file including the header, indexes the file when needed.
+    *
+    * @param fileRow
+    *       The row number in the file.
+    * @return True if the row exists.
+    */
+   private boolean hasFileRow(final long fileRow) {
+      if (fileRow < rows) {
+         return true;
+      }
+      if (complete) {
+         return false;
+      }
+
+      indexTo(fileRow + INDEX_BATCH);
+      return fileRow < rows;
+   }
+
+   /**
+    * Indexes the rows of the file up to the given row number or the end of the file.
+    *
+    * @param row
+    *       The number of the last row to be indexed.
+    */
+   private synchronized void indexTo(final long row) {
+      long[] index = offsets;
+      long count = rows;
+      long position = indexed;
+      final long size = data.size();
+
+      while (count <= row && position < size) {
+         if ((count & (INDEX_INTERVAL - 1)) == 0) {
+            final int slot = (int) (count >>> INDEX_INTERVAL_BITS);
+            if (slot == index.length) {
+               index = offsets = Arrays.copyOf(index, index.length * 2);
+            }
+            index[slot] = position;
+         }
+
+         position = skipRow(position, size);
+         count++;
+      }
+
+      indexed = position;
+      rows = count;
+      if (position >= size) {
+         complete = true;
+      }
+   }
+
+   /**
+    * Finds the end of the row starting at the given offset. The line breaks in the quoted fields do not end the row.
+    *
+    * @param position
+    *       The offset of the row.
+    * @param size
+    *       The size of the file.
+    * @return The offset after the line break ending the row, or the size of the file for the last row.
+    */
+   private long skipRow(long position, final long size) {
+      boolean fieldStart = true;
+      boolean quoted = false;
+      while (position < size) {
+         final byte b = data.get(position++);
+         if (quoted) {
+            if (b == '"') {
+               if (position < size && data.get(position) == '"') {
+                  position++; // escaped quote
+               } else {
+                  quoted = false;
+               }
+            }
+         } else if (b == '\n') {
+            return position;
+         } else if (b == '"' && fieldStart) {
+            quoted = true;
+         }
+         fieldStart = !quoted && b == delimiterByte;
+      }
+
+      return position;
+   }
+
+   /**
+    * Finds the offset of the given indexed row by scanning forward from the nearest indexed offset.
+    *
+    * @param row
+    *       The row number in the file.
+    * @return The offset of the row.
+    */
+   private long rowStart(final long row) {
+      final long size = data.size();
+      long position = offsets[(int) (row >>> INDEX_INTERVAL_BITS)];
+      for (long skip = row & (INDEX_INTERVAL - 1); skip > 0; skip--) {
+         position = skipRow(position, size);
+      }
+
+      return position;
+   }
+
+   /**
+    * Splits the given row of the file to the field values.
+    *
+    * @param row
+    *       The row number in the file.
+    * @param limit
+    *       The maximal number of fields.
+    * @return The field values.
+    */
+   private List<String> split(final long row, final int limit) {
+      long position = rowStart(row);
+      long end = skipRow(position, data.size());
+      while (end > position && (data.get(end - 1) == '\n' || data.get(end - 1) == '\r')) {
+         end--;
+      }
+
+      final List<String> values = new ArrayList<>(Math.min(limit, 16));
+      if (position == end) {
+         return values;
+      }
+
+      while (values.size() < limit) {
+         if (position < end && data.get(position) == '"') {
+            final long from = ++position;
+            boolean escaped = false;
+            while (position < end) {
+               if (data.get(position) == '"') {
+                  if (position + 1 < end && data.get(position + 1) == '"') {
+                     escaped = true;
+                     position += 2;
+                     continue;
+                  }
+                  break;
+               }
+               position++;
+            }
+
+            final String value = data.decode(from, position, charset);
+            values.add(escaped ? value.replace("\"\"", "\"") : value);
+            while (position < end && data.get(position) != delimiterByte) {
+               position++;
+            }
+         } else {
+            final long from = position;
+            while (position < end && data.get(position) != delimiterByte) {
+               position++;
+            }
+            values.add(data.decode(from, position, charset));
+         }
+
+         if (position >= end) {
+            break;
+         }
+         position++; // skip the delimiter
+      }
+
+      return values;
+   }
+
+   /**
+    * Gets the path to the CSV file.
+    *
+    * @return The path to the CSV file.
+    */
+   public String getFile() {
+      return file;
+   }
+
+   /**
+    * Sets the path to the CSV file.
+    *
+    * @param file
+    *       The path to the CSV file.
+    * @return Instance of this for fluent API.
+    */
+   public CsvDataFeeder setFile(final String file) {
+      this.file = file;
+      return this;
+   }
+
+   /**
+    * Finds out whether the first row of the file contains the column names.
+    *
+    * @return True if the first row contains the column names.
+    */
+   public boolean isHeader() {
+      return header;
+   }
+
+   /**
+    * Sets whether the first row of the file contains the column names. The header row is skipped even when the column names are set by the columns property.
+    *
+    * @param header
+    *       True if the first row contains the column names.
+    * @return Instance of this for fluent API.
+    */
+   public CsvDataFeeder setHeader(final boolean header) {
+      this.header = header;
+      return this;
+   }
+
+   /**
+    * Gets the comma separated column names.
+    *
+    * @return The comma separated column names.
+    */
+   public String getColumns() {
+      return columns;
+   }
+
+   /**
+    * Sets the comma separated column names. The values are stored in the message properties under these names.
+    *
+    * @param columns
+    *       The comma separated column names.
+    * @return Instance of this for fluent API.
+    */
+   public CsvDataFeeder setColumns(final String columns) {
+      this.columns = columns;
+      return this;
+   }
+
+   /**
+    * Gets the field delimiter.
+    *
+    * @return The field delimiter.
+    */
+   public String getDelimiter() {
+      return delimiter;
+   }
+
+   /**
+    * Sets the field delimiter. It must be a single ASCII character, <code>\t</code> stands for a tabulator.
+    *
+    * @param delimiter
+    *       The field delimiter.
+    * @return Instance of this for fluent API.
+    */
+   public CsvDataFeeder setDelimiter(final String delimiter) {
+      this.delimiter = delimiter;
+      return this;
+   }
+
+   /**
+    * Gets the encoding of the file.
+    *
+    * @return The encoding of the file.
+    */
+   public String getEncoding() {
+      return encoding;
+   }
+
+   /**
+    * Sets the encoding of the file.
+    *
+    * @param encoding
+    *       The encoding of the file.
+    * @return Instance of this for fluent API.
+    */
+   public CsvDataFeeder setEncoding(final String encoding) {
+      this.encoding = encoding;
+      return this;
+   }
+
+   /**
+    * Gets the way the rows are assigned to the iterations.
+    *
+    * @return The strategy.
+    */
+   public Strategy getStrategy() {
+      return strategy;
+   }
+
+   /**
+    * Sets the way the rows are assigned to the iterations.
+    *
+    * @param strategy
+    *       The strategy.
+    * @return Instance of this for fluent API.
+    */
+   public CsvDataFeeder setStrategy(final Strategy strategy) {
+      this.strategy = strategy;
+      return this;
+   }
+}
@@ -0,0 +1,54 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.feeder;
+
+import org.perfcake.PerfCakeException;
+
+import java.util.Properties;
+
+/**
+ * Feeds the data that vary with each iteration of the scenario into the properties the message templates are rendered with.
+ * The feeder is shared by all the sender threads and must be thread safe.
+ */
+public interface DataFeeder {
+
+   /**
+    * Initializes the feeder. It should be executed after all properties are set.
+    *
+    * @param threads
+    *       The number of sender threads that will request the data.
+    */
+   public void init(final int threads) throws Exception;
+
+   /**
+    * Puts the data for the given iteration into the message properties.
+    *
+    * @param props
+    *       The properties the messages of this iteration are rendered with.
+    * @param iteration
+    *       The iteration number.
+    */
+   public void feed(final Properties props, final long iteration);
+
+   /**
+    * Closes the feeder and releases its resources.
+    */
+   public void close() throws PerfCakeException;
+}
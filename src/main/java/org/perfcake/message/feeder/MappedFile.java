@@ -0,0 +1,127 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.feeder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A read-only file mapped to the memory in chunks so that files larger than 2GB can be accessed without loading them to the heap.
+ * The access methods are thread safe as they never change the state of the mapped buffers.
+ */
+final class MappedFile implements AutoCloseable {
+
+   /**
+    * The default size of a mapped chunk is 1GB.
+    */
+   static final int DEFAULT_CHUNK_BITS = 30;
+
+   private final RandomAccessFile file;
+   private final long size;
+   private final int chunkBits;
+   private final long chunkMask;
+   private final MappedByteBuffer[] chunks;
+
+   /**
+    * Buffer used to decode the byte ranges to strings.
+    */
+   private static final ThreadLocal<byte[]> scratch = new ThreadLocal<byte[]>() {
+      @Override
+      protected byte[] initialValue() {
+         return new byte[256];
+      }
+   };
+
+   MappedFile(final String path, final int chunkBits) throws IOException {
+      this.file = new RandomAccessFile(path, "r");
+      this.chunkBits = chunkBits;
+      this.chunkMask = (1L << chunkBits) - 1;
+
+      try {
+         final FileChannel channel = file.getChannel();
+         size = channel.size();
+         chunks = new MappedByteBuffer[(int) ((size + chunkMask) >>> chunkBits)];
+         for (int i = 0; i < chunks.length; i++) {
+            final long position = (long) i << chunkBits;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, 1L << chunkBits));
+         }
+      } catch (IOException e) {
+         file.close();
+         throw e;
+      }
+   }
+
+   /**
+    * Gets the size of the file.
+    *
+    * @return The size of the file in bytes.
+    */
+   long size() {
+      return size;
+   }
+
+   /**
+    * Gets the byte at the given position.
+    *
+    * @param position
+    *       The position in the file.
+    * @return The byte at the given position.
+    */
+   byte get(final long position) {
+      return chunks[(int) (position >>> chunkBits)].get((int) (position & chunkMask));
+   }
+
+   /**
+    * Decodes the given range of the file to a string.
+    *
+    * @param from
+    *       The first position, inclusive.
+    * @param to
+    *       The last position, exclusive.
+    * @param charset
+    *       The character set of the file.
+    * @return The decoded string.
+    */
+   String decode(final long from, final long to, final Charset charset) {
+      final int length = (int) (to - from);
+      byte[] bytes = scratch.get();
+      if (bytes.length < length) {
+         bytes = new byte[Math.max(length, bytes.length * 2)];
+         scratch.set(bytes);
+      }
+
+      for (int i = 0; i < length; i++) {
+         bytes[i] = get(from + i);
+      }
+
+      return new String(bytes, 0, length, charset);
+   }
+
+   /**
+    * Closes the file. The mapped chunks are released once they are garbage collected.
+    */
+   @Override
+   public void close() throws IOException {
+      file.close();
+   }
+}
@@ -21,12 +21,17 @@ package org.perfcake.message.generator;
 
 import org.perfcake.PerfCakeException;
 import org.perfcake.RunInfo;
+import org.perfcake.message.MessageSelector;
 import org.perfcake.message.MessageTemplate;
+import org.perfcake.message.feeder.DataFeeder;
+import org.perfcake.message.receiver.Receiver;
 import org.perfcake.message.sender.MessageSender;
 import org.perfcake.message.sender.MessageSenderManager;
 import org.perfcake.reporting.ReportManager;
 import org.perfcake.validation.ValidationManager;
 
+import org.apache.log4j.Logger;
+
 import java.util.List;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -39,6 +44,11 @@ import java.util.concurrent.ThreadPoolExecutor;
  */
 public abstract class AbstractMessageGenerator {
 
+   /**
+    * The generator's logger.
+    */
+   private static final Logger log = Logger.getLogger(AbstractMessageGenerator.class);
+
    /**
     * Message sender manager.
     */
@@ -54,11 +64,26 @@ public abstract class AbstractMessageGenerator {
     */
    protected ValidationManager validationManager;
 
+   /**
+    * Receiver of the sent messages, null when the end-to-end latency is not measured.
+    */
+   protected Receiver receiver;
+
+   /**
+    * Feeder of the data the messages are rendered with, null when the messages do not use any data.
+    */
+   protected DataFeeder dataFeeder;
+
    /**
     * Message store where the messages for senders to be send are taken from.
     */
    protected List<MessageTemplate> messageStore;
 
+   /**
+    * Selector of a single message from the message store for each iteration, null when the whole message store is sent in each iteration.
+    */
+   protected MessageSelector messageSelector;
+
    /**
     * Number of concurrent threads the generator will use to send the messages.
     */
@@ -101,7 +126,10 @@ public abstract class AbstractMessageGenerator {
       task.setReportManager(reportManager);
       task.setSenderManager(messageSenderManager);
       task.setValidationManager(validationManager);
+      task.setDataFeeder(dataFeeder);
+      task.setMessageSelector(messageSelector);
       task.setMessageNumberingEnabled(isMessageNumberingEnabled());
+      task.setReceiverEnabled(receiver != null);
 
       return task;
    }
@@ -143,6 +171,38 @@ public abstract class AbstractMessageGenerator {
       this.reportManager = reportManager;
    }
 
+   /**
+    * Sets the receiver of the sent messages. The receiver gets the current run info and the generator waits for it to receive
+    * the messages still being delivered before the measurement stops.
+    *
+    * @param receiver
+    *       The receiver to set.
+    */
+   public void setReceiver(final Receiver receiver) {
+      this.receiver = receiver;
+      receiver.setRunInfo(runInfo);
+   }
+
+   /**
+    * Sets the feeder of the data the messages are rendered with.
+    *
+    * @param dataFeeder
+    *       The data feeder to set.
+    */
+   public void setDataFeeder(final DataFeeder dataFeeder) {
+      this.dataFeeder = dataFeeder;
+   }
+
+   /**
+    * Sets the selector of a single message from the message store for each iteration.
+    *
+    * @param messageSelector
+    *       The message selector to set, null to send the whole message store in each iteration.
+    */
+   public void setMessageSelector(final MessageSelector messageSelector) {
+      this.messageSelector = messageSelector;
+   }
+
    /**
     * It closes and finalize the generator. During the closing the {@link #messageSenderManager} is closed as well.
     *
@@ -164,6 +224,14 @@ public abstract class AbstractMessageGenerator {
     */
    protected void setStopTime() {
       if (runInfo.isStarted()) {
+         if (receiver != null) {
+            try {
+               receiver.drain();
+            } catch (InterruptedException e) {
+               log.warn("Interrupted while waiting for the messages being delivered.");
+               Thread.currentThread().interrupt();
+            }
+         }
          reportManager.stop();
       }
    }
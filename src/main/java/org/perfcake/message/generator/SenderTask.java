@@ -21,12 +21,15 @@ package org.perfcake.message.generator;
 
 import org.perfcake.PerfCakeConst;
 import org.perfcake.message.Message;
+import org.perfcake.message.MessageSelector;
 import org.perfcake.message.MessageTemplate;
 import org.perfcake.message.ReceivedMessage;
+import org.perfcake.message.feeder.DataFeeder;
 import org.perfcake.message.sender.MessageSender;
 import org.perfcake.message.sender.MessageSenderManager;
 import org.perfcake.reporting.MeasurementUnit;
 import org.perfcake.reporting.ReportManager;
+import org.perfcake.util.FastRandom;
 import org.perfcake.validation.ValidationManager;
 
 import org.apache.log4j.Level;
@@ -67,6 +70,11 @@ class SenderTask implements Runnable {
     */
    private boolean messageNumberingEnabled;
 
+   /**
+    * Whether the sent messages are received by a receiver. Only then the messages carry their send time and sequence number.
+    */
+   private boolean receiverEnabled;
+
    /**
     * Reference to a report manager.
     */
@@ -82,12 +90,34 @@ class SenderTask implements Runnable {
     */
    private Semaphore semaphore;
 
+   /**
+    * Feeder of the data the messages are rendered with.
+    */
+   private DataFeeder dataFeeder;
+
+   /**
+    * Selector of a single message to be sent, null to send the whole message store.
+    */
+   private MessageSelector messageSelector;
+
+   /**
+    * The sequence number of the next message sent in this iteration, an iteration can send multiple messages.
+    */
+   private int messageSequence = 0;
+
    // limit the possibilities to construct this class
    protected SenderTask(Semaphore semaphore) {
       this.semaphore = semaphore;
    }
 
    private Serializable sendMessage(final MessageSender sender, final Message message, final HashMap<String, String> messageHeaders, final MeasurementUnit mu) {
+      if (receiverEnabled) {
+         if (messageNumberingEnabled) {
+            messageHeaders.put(PerfCakeConst.MESSAGE_SEQUENCE_HEADER, String.valueOf(messageSequence++));
+         }
+         messageHeaders.put(PerfCakeConst.MESSAGE_TIMESTAMP_HEADER, String.valueOf(System.currentTimeMillis()));
+      }
+
       try {
          sender.preSend(message, messageHeaders);
       } catch (Exception e) {
@@ -119,6 +149,18 @@ class SenderTask implements Runnable {
       return result;
    }
 
+   private void sendTemplate(final MessageSender sender, final MessageTemplate messageToSend, final Properties messageAttributes, final HashMap<String, String> messageHeaders, final MeasurementUnit mu) {
+      final Message currentMessage = messageToSend.getFilteredMessage(messageAttributes);
+      final long multiplicity = messageToSend.getMultiplicity();
+
+      for (int i = 0; i < multiplicity; i++) {
+         final ReceivedMessage receivedMessage = new ReceivedMessage(sendMessage(sender, currentMessage, messageHeaders, mu), messageToSend, currentMessage);
+         if (validationManager.isEnabled()) {
+            validationManager.addToResultMessages(receivedMessage);
+         }
+      }
+   }
+
    @Override
    public void run() {
       assert messageStore != null && reportManager != null && validationManager != null && senderManager != null : "SenderTask was not properly initialized.";
@@ -131,6 +173,8 @@ class SenderTask implements Runnable {
          MeasurementUnit mu = reportManager.newMeasurementUnit();
 
          if (mu != null) {
+            FastRandom.setKey(mu.getIteration());
+
             // only set numbering to headers if it is enabled, later there is no change to
             // filter out the headers before sending
             if (messageNumberingEnabled) {
@@ -138,23 +182,20 @@ class SenderTask implements Runnable {
                messageAttributes.setProperty(PerfCakeConst.MESSAGE_NUMBER_PROPERTY, String.valueOf(mu.getIteration()));
             }
 
+            if (dataFeeder != null) {
+               dataFeeder.feed(messageAttributes, mu.getIteration());
+            }
+
             sender = senderManager.acquireSender();
 
             Iterator<MessageTemplate> iterator = messageStore.iterator();
-            if (iterator.hasNext()) {
+            if (messageSelector != null && iterator.hasNext()) {
+               final MessageTemplate messageToSend = messageSelector.select(mu.getIteration());
+               mu.addTags(messageToSend.getTagMask());
+               sendTemplate(sender, messageToSend, messageAttributes, messageHeaders, mu);
+            } else if (iterator.hasNext()) {
                while (iterator.hasNext()) {
-
-                  MessageTemplate messageToSend = iterator.next();
-                  Message currentMessage = messageToSend.getFilteredMessage(messageAttributes);
-                  long multiplicity = messageToSend.getMultiplicity();
-
-                  for (int i = 0; i < multiplicity; i++) {
-                     receivedMessage = new ReceivedMessage(sendMessage(sender, currentMessage, messageHeaders, mu), messageToSend, currentMessage);
-                     if (validationManager.isEnabled()) {
-                        validationManager.addToResultMessages(receivedMessage);
-                     }
-                  }
-
+                  sendTemplate(sender, iterator.next(), messageAttributes, messageHeaders, mu);
                }
             } else {
                receivedMessage = new ReceivedMessage(sendMessage(sender, null, messageHeaders, mu), null, null);
@@ -193,6 +234,10 @@ class SenderTask implements Runnable {
       this.messageNumberingEnabled = messageNumberingEnabled;
    }
 
+   protected void setReceiverEnabled(final boolean receiverEnabled) {
+      this.receiverEnabled = receiverEnabled;
+   }
+
    protected void setReportManager(final ReportManager reportManager) {
       this.reportManager = reportManager;
    }
@@ -200,4 +245,12 @@ class SenderTask implements Runnable {
    protected void setValidationManager(final ValidationManager validationManager) {
       this.validationManager = validationManager;
    }
+
+   protected void setDataFeeder(final DataFeeder dataFeeder) {
+      this.dataFeeder = dataFeeder;
+   }
+
+   protected void setMessageSelector(final MessageSelector messageSelector) {
+      this.messageSelector = messageSelector;
+   }
 }
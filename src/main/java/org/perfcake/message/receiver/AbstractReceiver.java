@@ -0,0 +1,280 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.receiver;
+
+import org.perfcake.RunInfo;
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.reporting.ReportManager;
+import org.perfcake.reporting.ReportingException;
+
+import org.apache.log4j.Logger;
+
+import java.util.BitSet;
+
+/**
+ * Basic receiver that should be used to write any real receiver. The transport specific implementation only needs to call {@link #received(long, long, long)}
+ * for each message it receives. The end-to-end latency of the message is then reported together with the message ordering and loss statistics.
+ * <p/>
+ * The messages are identified by the message number (see the messageNumberingEnabled property of the generator), which is the number of the iteration
+ * that sent them. An iteration sends more than one message when there are multiple message templates or a message multiplicity greater than one,
+ * so the messages of the same iteration are told apart by their sequence number within the iteration
+ * (see {@link org.perfcake.PerfCakeConst#MESSAGE_SEQUENCE_HEADER}). The sequence number and the send time
+ * (see {@link org.perfcake.PerfCakeConst#MESSAGE_TIMESTAMP_HEADER}) are only added to the messages when the scenario has a receiver, so that
+ * the messages of the scenarios without a receiver do not change. The ordering and loss statistics are computed from the first message
+ * of each iteration only, the other messages are reported with their latency and counted as received.
+ * Without the message number, only the latency and the number of received messages are reported.
+ */
+public abstract class AbstractReceiver implements Receiver {
+
+   /**
+    * The receiver's logger.
+    */
+   private static final Logger log = Logger.getLogger(AbstractReceiver.class);
+
+   /**
+    * Result name for the number of received messages.
+    */
+   public static final String RECEIVED = "Received";
+
+   /**
+    * Result name for the number of messages missing in the sequence of the received message numbers.
+    */
+   public static final String MISSING = "Missing";
+
+   /**
+    * Result name for the number of messages received after a message with a higher message number.
+    */
+   public static final String OUT_OF_ORDER = "OutOfOrder";
+
+   /**
+    * Result name for the number of messages received more than once.
+    */
+   public static final String DUPLICATES = "Duplicates";
+
+   /**
+    * Report manager to report the received messages to.
+    */
+   protected ReportManager reportManager;
+
+   /**
+    * Run info of the current measurement.
+    */
+   protected RunInfo runInfo;
+
+   /**
+    * How long to wait for a next message before the measurement stops in milliseconds.
+    */
+   private long drainTimeout = 1000;
+
+   /**
+    * Generation of the run the statistics belong to. The statistics are reset when the run is reset after a warm-up.
+    */
+   private int runGeneration = -1;
+
+   /**
+    * The message numbers of the first messages of the iterations received so far.
+    */
+   private final BitSet receivedNumbers = new BitSet();
+
+   /**
+    * The highest message number received so far.
+    */
+   private long highestNumber = -1;
+
+   /**
+    * Number of the received messages.
+    */
+   private long received = 0;
+
+   /**
+    * Number of the messages received after a message with a higher message number.
+    */
+   private long outOfOrder = 0;
+
+   /**
+    * Number of the messages received more than once.
+    */
+   private long duplicates = 0;
+
+   /**
+    * Processes a received message that is the only message of its iteration and reports its end-to-end latency.
+    *
+    * @param messageNumber
+    *       The message number, or -1 when the message does not carry it.
+    * @param sendTime
+    *       When the message was sent (timestamp value from {@link System#currentTimeMillis()}).
+    */
+   protected void received(final long messageNumber, final long sendTime) {
+      received(messageNumber, -1, sendTime);
+   }
+
+   /**
+    * Processes a received message and reports its end-to-end latency.
+    *
+    * @param messageNumber
+    *       The message number, or -1 when the message does not carry it.
+    * @param sequence
+    *       The sequence number of the message within its iteration, or -1 when the message does not carry it.
+    *       Only the first message of an iteration (sequence number 0 or unknown) is used for the ordering and loss statistics.
+    * @param sendTime
+    *       When the message was sent (timestamp value from {@link System#currentTimeMillis()}).
+    */
+   protected void received(final long messageNumber, final long sequence, final long sendTime) {
+      final long now = System.currentTimeMillis();
+      final MeasurementUnit mu;
+
+      synchronized (this) {
+         if (runInfo == null || !runInfo.isStarted()) {
+            return; // not measuring
+         }
+
+         if (runInfo.getGeneration() != runGeneration) {
+            resetStatistics();
+         }
+
+         received++;
+
+         if (messageNumber >= 0 && messageNumber <= Integer.MAX_VALUE && sequence <= 0) {
+            if (receivedNumbers.get((int) messageNumber)) {
+               duplicates++;
+            } else {
+               receivedNumbers.set((int) messageNumber);
+               if (messageNumber < highestNumber) {
+                  outOfOrder++;
+               } else {
+                  highestNumber = messageNumber;
+               }
+            }
+         }
+
+         mu = reportManager.newMeasurementUnit(messageNumber >= 0 ? messageNumber : received - 1);
+         if (mu == null) {
+            return;
+         }
+
+         mu.appendResult(RECEIVED, received);
+         if (highestNumber >= 0) {
+            mu.appendResult(MISSING, getMissing());
+            mu.appendResult(OUT_OF_ORDER, outOfOrder);
+            mu.appendResult(DUPLICATES, duplicates);
+         }
+      }
+
+      mu.addMeasure(sendTime, Math.max(0, now - sendTime));
+
+      try {
+         reportManager.reportReceived(mu);
+      } catch (ReportingException e) {
+         log.warn("Unable to report a received message: ", e);
+      }
+   }
+
+   private void resetStatistics() {
+      runGeneration = runInfo.getGeneration();
+      receivedNumbers.clear();
+      highestNumber = -1;
+      received = 0;
+      outOfOrder = 0;
+      duplicates = 0;
+   }
+
+   /**
+    * Gets the number of messages missing in the sequence of the received message numbers.
+    *
+    * @return The number of missing messages.
+    */
+   public synchronized long getMissing() {
+      return highestNumber + 1 - receivedNumbers.cardinality();
+   }
+
+   /**
+    * Gets the number of the received messages.
+    *
+    * @return The number of the received messages.
+    */
+   public synchronized long getReceived() {
+      return received;
+   }
+
+   /**
+    * Gets the number of sent messages that were not received. With the message numbers, it is the number of the iterations whose first message
+    * was not received.
+    *
+    * @return The number of lost messages.
+    */
+   public synchronized long getLost() {
+      final long unique = highestNumber >= 0 ? receivedNumbers.cardinality() : received - duplicates;
+      return Math.max(0, runInfo.getIteration() + 1 - unique);
+   }
+
+   @Override
+   public void drain() throws InterruptedException {
+      if (log.isDebugEnabled()) {
+         log.debug("Waiting for the messages being delivered...");
+      }
+
+      long lastProgress = System.currentTimeMillis();
+      long lastCount = getReceived();
+
+      while (getLost() > 0 && System.currentTimeMillis() - lastProgress < drainTimeout) {
+         Thread.sleep(10);
+
+         if (getReceived() != lastCount) {
+            lastCount = getReceived();
+            lastProgress = System.currentTimeMillis();
+         }
+      }
+
+      final long lost = getLost();
+      if (lost > 0) {
+         log.warn(String.format("%d message(s) not received within %d ms after the last message.", lost, drainTimeout));
+      }
+   }
+
+   @Override
+   public void setReportManager(final ReportManager reportManager) {
+      this.reportManager = reportManager;
+   }
+
+   @Override
+   public void setRunInfo(final RunInfo runInfo) {
+      this.runInfo = runInfo;
+   }
+
+   /**
+    * Gets the time to wait for a next message before the measurement stops.
+    *
+    * @return The drain timeout in milliseconds.
+    */
+   public long getDrainTimeout() {
+      return drainTimeout;
+   }
+
+   /**
+    * Sets the time to wait for a next message before the measurement stops.
+    *
+    * @param drainTimeout
+    *       The drain timeout in milliseconds.
+    */
+   public AbstractReceiver setDrainTimeout(final long drainTimeout) {
+      this.drainTimeout = drainTimeout;
+      return this;
+   }
+}
@@ -0,0 +1,353 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.receiver;
+
+import org.perfcake.PerfCakeConst;
+import org.perfcake.PerfCakeException;
+
+import org.apache.log4j.Logger;
+
+import java.util.Properties;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+/**
+ * Receives the messages sent by {@link org.perfcake.message.sender.JmsSender} from a JMS destination and reports their end-to-end latency.
+ * <p/>
+ * The send time is read from the {@link org.perfcake.PerfCakeConst#MESSAGE_TIMESTAMP_HEADER} property that is set by {@link org.perfcake.message.sender.JmsSender}
+ * right before the message is sent when the scenario has a receiver, or from a message property holding the time in milliseconds when timestampProperty is specified.
+ * When a message does not carry the property (e.g. it was sent by a different producer), the JMSTimestamp header set by the JMS provider is used.
+ * The message number and its sequence number within the iteration are read from the {@link org.perfcake.PerfCakeConst#MESSAGE_NUMBER_HEADER}
+ * and {@link org.perfcake.PerfCakeConst#MESSAGE_SEQUENCE_HEADER} properties.
+ * <p/>
+ * When receiving from a queue, make sure the receiver is the only consumer of the queue. A durable or shared subscription is not needed
+ * for a topic as the receiver subscribes before the first message is sent.
+ */
+public class JmsReceiver extends AbstractReceiver implements MessageListener {
+
+   /**
+    * The receiver's logger.
+    */
+   private static final Logger log = Logger.getLogger(JmsReceiver.class);
+
+   /**
+    * JMS destination to receive the messages from.
+    */
+   private String target = "";
+
+   /**
+    * JMS connection factory.
+    */
+   private String connectionFactory = "ConnectionFactory";
+
+   /**
+    * JNDI context factory.
+    */
+   private String jndiContextFactory = null;
+
+   /**
+    * JNDI URL.
+    */
+   private String jndiUrl = null;
+
+   /**
+    * JNDI username.
+    */
+   private String jndiSecurityPrincipal = null;
+
+   /**
+    * JNDI password.
+    */
+   private String jndiSecurityCredentials = null;
+
+   /**
+    * JMS username.
+    */
+   private String username = null;
+
+   /**
+    * JMS password.
+    */
+   private String password = null;
+
+   /**
+    * Name of the message property carrying the send time, the JMSTimestamp header is used when the message does not have it.
+    */
+   private String timestampProperty = PerfCakeConst.MESSAGE_TIMESTAMP_HEADER;
+
+   /**
+    * JMS connection.
+    */
+   private Connection connection;
+
+   @Override
+   public void init() throws Exception {
+      if (log.isDebugEnabled()) {
+         log.debug("Initializing...");
+      }
+      try {
+         final Properties ctxProps = new Properties();
+         if (jndiUrl != null) {
+            ctxProps.setProperty(Context.PROVIDER_URL, jndiUrl);
+         }
+         if (jndiContextFactory != null) {
+            ctxProps.setProperty(Context.INITIAL_CONTEXT_FACTORY, jndiContextFactory);
+         }
+         if (jndiSecurityPrincipal != null) {
+            ctxProps.setProperty(Context.SECURITY_PRINCIPAL, jndiSecurityPrincipal);
+         }
+         if (jndiSecurityCredentials != null) {
+            ctxProps.setProperty(Context.SECURITY_CREDENTIALS, jndiSecurityCredentials);
+         }
+
+         final InitialContext ctx = ctxProps.isEmpty() ? new InitialContext() : new InitialContext(ctxProps);
+         try {
+            final ConnectionFactory cf = (ConnectionFactory) ctx.lookup(connectionFactory);
+            if (username != null && password != null) {
+               connection = cf.createConnection(username, password);
+            } else {
+               connection = cf.createConnection();
+            }
+
+            final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session.createConsumer((Destination) ctx.lookup(target)).setMessageListener(this);
+            connection.start();
+         } finally {
+            ctx.close();
+         }
+      } catch (JMSException | NamingException | RuntimeException e) {
+         throw new PerfCakeException(e);
+      }
+   }
+
+   @Override
+   public void onMessage(final Message message) {
+      try {
+         final long sendTime = timestampProperty != null && message.propertyExists(timestampProperty) ? message.getLongProperty(timestampProperty) : message.getJMSTimestamp();
+         final String number = message.getStringProperty(PerfCakeConst.MESSAGE_NUMBER_HEADER);
+         final String sequence = message.getStringProperty(PerfCakeConst.MESSAGE_SEQUENCE_HEADER);
+
+         received(number == null ? -1 : Long.parseLong(number), sequence == null ? -1 : Long.parseLong(sequence), sendTime);
+      } catch (JMSException | NumberFormatException e) {
+         log.warn("Unable to process a received message: ", e);
+      }
+   }
+
+   @Override
+   public void close() throws PerfCakeException {
+      if (connection != null) {
+         try {
+            connection.close();
+         } catch (JMSException e) {
+            throw new PerfCakeException(e);
+         } finally {
+            connection = null;
+         }
+      }
+   }
+
+   /**
+    * Gets the JMS destination to receive the messages from.
+    *
+    * @return The JNDI name of the destination.
+    */
+   public String getTarget() {
+      return target;
+   }
+
+   /**
+    * Sets the JMS destination to receive the messages from.
+    *
+    * @param target
+    *       The JNDI name of the destination.
+    */
+   public JmsReceiver setTarget(final String target) {
+      this.target = target;
+      return this;
+   }
+
+   /**
+    * Gets the JMS connection factory.
+    *
+    * @return The JNDI name of the connection factory.
+    */
+   public String getConnectionFactory() {
+      return connectionFactory;
+   }
+
+   /**
+    * Sets the JMS connection factory.
+    *
+    * @param connectionFactory
+    *       The JNDI name of the connection factory.
+    */
+   public JmsReceiver setConnectionFactory(final String connectionFactory) {
+      this.connectionFactory = connectionFactory;
+      return this;
+   }
+
+   /**
+    * Gets the JNDI context factory.
+    *
+    * @return The JNDI context factory.
+    */
+   public String getJndiContextFactory() {
+      return jndiContextFactory;
+   }
+
+   /**
+    * Sets the JNDI context factory.
+    *
+    * @param jndiContextFactory
+    *       The JNDI context factory.
+    */
+   public JmsReceiver setJndiContextFactory(final String jndiContextFactory) {
+      this.jndiContextFactory = jndiContextFactory;
+      return this;
+   }
+
+   /**
+    * Gets the JNDI URL.
+    *
+    * @return The JNDI URL.
+    */
+   public String getJndiUrl() {
+      return jndiUrl;
+   }
+
+   /**
+    * Sets the JNDI URL.
+    *
+    * @param jndiUrl
+    *       The JNDI URL.
+    */
+   public JmsReceiver setJndiUrl(final String jndiUrl) {
+      this.jndiUrl = jndiUrl;
+      return this;
+   }
+
+   /**
+    * Gets the JNDI username.
+    *
+    * @return The JNDI username.
+    */
+   public String getJndiSecurityPrincipal() {
+      return jndiSecurityPrincipal;
+   }
+
+   /**
+    * Sets the JNDI username.
+    *
+    * @param jndiSecurityPrincipal
+    *       The JNDI username.
+    */
+   public JmsReceiver setJndiSecurityPrincipal(final String jndiSecurityPrincipal) {
+      this.jndiSecurityPrincipal = jndiSecurityPrincipal;
+      return this;
+   }
+
+   /**
+    * Gets the JNDI password.
+    *
+    * @return The JNDI password.
+    */
+   public String getJndiSecurityCredentials() {
+      return jndiSecurityCredentials;
+   }
+
+   /**
+    * Sets the JNDI password.
+    *
+    * @param jndiSecurityCredentials
+    *       The JNDI password.
+    */
+   public JmsReceiver setJndiSecurityCredentials(final String jndiSecurityCredentials) {
+      this.jndiSecurityCredentials = jndiSecurityCredentials;
+      return this;
+   }
+
+   /**
+    * Gets the JMS username.
+    *
+    * @return The JMS username.
+    */
+   public String getUsername() {
+      return username;
+   }
+
+   /**
+    * Sets the JMS username.
+    *
+    * @param username
+    *       The JMS username.
+    */
+   public JmsReceiver setUsername(final String username) {
+      this.username = username;
+      return this;
+   }
+
+   /**
+    * Gets the JMS password.
+    *
+    * @return The JMS password.
+    */
+   public String getPassword() {
+      return password;
+   }
+
+   /**
+    * Sets the JMS password.
+    *
+    * @param password
+    *       The JMS password.
+    */
+   public JmsReceiver setPassword(final String password) {
+      this.password = password;
+      return this;
+   }
+
+   /**
+    * Gets the name of the message property carrying the send time.
+    *
+    * @return The name of the property, or null to always use the JMSTimestamp header.
+    */
+   public String getTimestampProperty() {
+      return timestampProperty;
+   }
+
+   /**
+    * Sets the name of the message property carrying the send time in milliseconds. The JMSTimestamp header is used when the message does not have it.
+    *
+    * @param timestampProperty
+    *       The name of the property.
+    */
+   public JmsReceiver setTimestampProperty(final String timestampProperty) {
+      this.timestampProperty = timestampProperty;
+      return this;
+   }
+}
@@ -0,0 +1,66 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.receiver;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.RunInfo;
+import org.perfcake.reporting.ReportManager;
+
+/**
+ * Interface for a message receiver. A receiver consumes the messages sent by the senders from the target endpoint during the same run
+ * and reports their end-to-end latency (the time from sending a message to its delivery) to the reporters registered by
+ * {@link org.perfcake.reporting.ReportManager#registerReceiverReporter(org.perfcake.reporting.reporters.Reporter)}.
+ */
+public interface Receiver {
+
+   /**
+    * Initializes the receiver and starts receiving the messages. It should be executed after all properties are set.
+    */
+   public void init() throws Exception;
+
+   /**
+    * Waits for the messages that were sent but not received yet. It is called right before the measurement stops.
+    *
+    * @throws InterruptedException
+    *       When the waiting was interrupted.
+    */
+   public void drain() throws InterruptedException;
+
+   /**
+    * Stops receiving the messages and closes the receiver.
+    */
+   public void close() throws PerfCakeException;
+
+   /**
+    * Sets the report manager to report the received messages to.
+    *
+    * @param reportManager
+    *       The report manager.
+    */
+   public void setReportManager(final ReportManager reportManager);
+
+   /**
+    * Sets the run info of the current measurement.
+    *
+    * @param runInfo
+    *       The run info.
+    */
+   public void setRunInfo(final RunInfo runInfo);
+}
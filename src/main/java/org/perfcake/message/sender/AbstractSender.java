@@ -44,6 +44,12 @@ abstract public class AbstractSender implements MessageSender {
     */
    protected String target = "";
 
+   /**
+    * The measurement unit of the last message sent. The senders append their results that are not part of the measured time
+    * to it in {@link #postSend(Message)}.
+    */
+   private MeasurementUnit measurementUnit;
+
    /*
     * (non-Javadoc)
     *
@@ -67,6 +73,7 @@ abstract public class AbstractSender implements MessageSender {
     */
    @Override
    public final Serializable send(final Message message, final Map<String, String> properties, final MeasurementUnit mu) throws Exception {
+      measurementUnit = mu;
       return doSend(message, properties, mu);
    }
 
@@ -119,6 +126,16 @@ abstract public class AbstractSender implements MessageSender {
       }
    }
 
+   /**
+    * Gets the measurement unit of the last message sent. It is intended to be called from {@link #postSend(Message)}, outside of the measured time,
+    * and it is available to all the senders in the class hierarchy.
+    *
+    * @return The measurement unit of the last message sent, or null when there is none.
+    */
+   protected MeasurementUnit getMeasurementUnit() {
+      return measurementUnit;
+   }
+
    /*
     * (non-Javadoc)
     *
@@ -20,28 +20,82 @@
 package org.perfcake.message.sender;
 
 import org.perfcake.PerfCakeException;
+import org.perfcake.message.FilePayload;
 import org.perfcake.message.Message;
 import org.perfcake.reporting.MeasurementUnit;
 import org.perfcake.util.Utils;
 
 import org.apache.log4j.Logger;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
  * The common ancestor for all senders that are able to send messages through a socket.
+ * By default, a new connection is opened for each message. When {@link #keepConnection} is enabled, the connection is kept open
+ * and reused for all the messages sent by the sender instance, and it is reopened only after a failure.
+ * The response is read according to the configured {@link Framing}. The same framing is applied to the request as well.
+ * A {@link FilePayload} is never copied to the heap as a whole, it is transferred directly to the socket channel if there is one,
+ * or written in chunks otherwise.
  *
  * @author Martin Večeřa <marvenec@gmail.com>
  */
 abstract public class AbstractSocketSender extends AbstractSender {
 
+   /**
+    * Determines how the messages are delimited in the stream.
+    */
+   public static enum Framing {
+      /**
+       * The request is sent as is and the response is whatever is available in the socket right after the request has been written.
+       * This is not reliable under load as the response can be incomplete or even empty.
+       */
+      AVAILABLE,
+
+      /**
+       * The request is followed by a new line and the response is read up to the next new line.
+       */
+      LINE,
+
+      /**
+       * The request is followed by the {@link AbstractSocketSender#delimiter} and the response is read up to the next delimiter.
+       */
+      DELIMITER,
+
+      /**
+       * The request is preceded by its length in bytes as a 4-byte big-endian integer and the response is expected in the same format.
+       */
+      LENGTH_PREFIX,
+
+      /**
+       * The request is sent as is and the response has exactly {@link AbstractSocketSender#responseLength} bytes.
+       */
+      FIXED_LENGTH
+   }
+
+   /**
+    * The initial size of the response buffer.
+    */
+   private static final int INITIAL_BUFFER_SIZE = 8192;
+
+   /**
+    * The size of the chunks a file payload is written in when the socket has no channel.
+    */
+   private static final int CHUNK_SIZE = 64 * 1024;
+
+   /**
+    * An empty request frame part.
+    */
+   private static final byte[] EMPTY = new byte[0];
+
    /**
     * The host of the socket.
     */
@@ -58,14 +112,79 @@ abstract public class AbstractSocketSender extends AbstractSender {
    protected Socket socket;
 
    /**
-    * A writer for message to be written into the socket.
+    * Determines whether the connection is kept open between messages.
+    */
+   private boolean keepConnection = false;
+
+   /**
+    * The framing of the requests and responses.
+    */
+   private Framing framing = Framing.AVAILABLE;
+
+   /**
+    * The delimiter used by {@link Framing#DELIMITER}.
+    */
+   private String delimiter = "\n";
+
+   /**
+    * The response length used by {@link Framing#FIXED_LENGTH}.
+    */
+   private int responseLength = 0;
+
+   /**
+    * Socket read timeout in milliseconds, zero means infinite timeout.
+    */
+   private int timeout = 0;
+
+   /**
+    * The stream the messages are written to.
+    */
+   private OutputStream out;
+
+   /**
+    * The stream the responses are read from.
+    */
+   private InputStream in;
+
+   /**
+    * The charset used to encode requests and decode responses.
+    */
+   private Charset charset;
+
+   /**
+    * The encoded delimiter of the requests and responses.
+    */
+   private byte[] delimiterBytes;
+
+   /**
+    * The encoded request including its framing. It is just the frame prefix for a file payload.
+    */
+   private byte[] request;
+
+   /**
+    * The file payload written after the {@link #request}, null for the other payloads.
+    */
+   private FilePayload filePayload;
+
+   /**
+    * The frame suffix written after the file payload.
+    */
+   private byte[] requestSuffix;
+
+   /**
+    * The buffer for writing the file payload in chunks.
+    */
+   private byte[] chunk;
+
+   /**
+    * The payload that is currently encoded in the request.
     */
-   private PrintWriter out;
+   private Serializable encodedPayload = null;
 
    /**
-    * A reader for response to be received from the socket.
+    * Buffer for the responses.
     */
-   private BufferedReader in;
+   private byte[] responseBuffer = new byte[INITIAL_BUFFER_SIZE];
 
    /**
     * The sender's logger.
@@ -82,6 +201,20 @@ abstract public class AbstractSocketSender extends AbstractSender {
       String[] parts = target.split(":", 2);
       host = parts[0];
       port = Integer.valueOf(parts[1]);
+
+      charset = Charset.forName(Utils.getDefaultEncoding());
+      if (framing == Framing.LINE) {
+         delimiterBytes = "\n".getBytes(charset);
+      } else if (framing == Framing.DELIMITER) {
+         if (delimiter == null || delimiter.isEmpty()) {
+            throw new PerfCakeException("The delimiter must not be empty.");
+         }
+         delimiterBytes = delimiter.getBytes(charset);
+      }
+
+      if (keepConnection) {
+         connect();
+      }
    }
 
    /*
@@ -91,7 +224,7 @@ abstract public class AbstractSocketSender extends AbstractSender {
     */
    @Override
    public void close() {
-      // closed per message
+      closeSocket();
    }
 
    /**
@@ -102,29 +235,50 @@ abstract public class AbstractSocketSender extends AbstractSender {
    abstract protected void openSocket() throws Exception;
 
    /**
-    * Opens the writer to an outbound socket's stream and the reader to read from inbound socket's stream.
+    * Opens the socket along with the outbound and inbound streams.
     *
     * @throws Exception
     */
-   private void openStreams() throws Exception {
-      out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), Utils.getDefaultEncoding()), true);
-      in = new BufferedReader(new InputStreamReader(socket.getInputStream(), Utils.getDefaultEncoding()));
+   private void connect() throws Exception {
+      try {
+         openSocket();
+         socket.setSoTimeout(timeout);
+         socket.setTcpNoDelay(true);
+         out = socket.getOutputStream();
+         in = new BufferedInputStream(socket.getInputStream());
+      } catch (Exception e) {
+         closeSocket(); // do not leave a half-open connection behind
+         throw e;
+      }
    }
 
    /**
     * Closes the socket along with the outbound and inbound streams.
     */
    private void closeSocket() {
-      out.close();
-      try {
-         in.close();
-      } catch (IOException e) {
-         log.warn("Cannot close input stream.", e);
+      if (out != null) {
+         try {
+            out.close();
+         } catch (IOException e) {
+            log.warn("Cannot close output stream.", e);
+         }
+         out = null;
       }
-      try {
-         socket.close();
-      } catch (IOException e) {
-         log.warn("Cannot close socket.", e);
+      if (in != null) {
+         try {
+            in.close();
+         } catch (IOException e) {
+            log.warn("Cannot close input stream.", e);
+         }
+         in = null;
+      }
+      if (socket != null) {
+         try {
+            socket.close();
+         } catch (IOException e) {
+            log.warn("Cannot close socket.", e);
+         }
+         socket = null;
       }
    }
 
@@ -136,8 +290,86 @@ abstract public class AbstractSocketSender extends AbstractSender {
    @Override
    public void preSend(final Message message, final Map<String, String> properties) throws Exception {
       super.preSend(message, properties);
-      openSocket();
-      openStreams();
+      if (socket == null) {
+         connect();
+      }
+
+      final Serializable payload = message == null ? null : message.getPayload();
+      if (request == null || payload != encodedPayload) {
+         if (payload instanceof FilePayload) {
+            filePayload = (FilePayload) payload;
+            request = framePrefix((int) filePayload.size());
+            requestSuffix = frameSuffix();
+         } else {
+            filePayload = null;
+            request = encodeRequest(payload == null ? "" : payload.toString());
+         }
+         encodedPayload = payload;
+      }
+   }
+
+   /**
+    * Encodes the request including its framing.
+    *
+    * @param payload
+    *       The request payload.
+    * @return The bytes to be written to the socket.
+    */
+   private byte[] encodeRequest(final String payload) {
+      final byte[] bytes = payload.getBytes(charset);
+      final byte[] prefix = framePrefix(bytes.length);
+      final byte[] suffix = frameSuffix();
+      if (prefix.length == 0 && suffix.length == 0) {
+         return bytes;
+      }
+
+      final byte[] frame = new byte[prefix.length + bytes.length + suffix.length];
+      System.arraycopy(prefix, 0, frame, 0, prefix.length);
+      System.arraycopy(bytes, 0, frame, prefix.length, bytes.length);
+      System.arraycopy(suffix, 0, frame, prefix.length + bytes.length, suffix.length);
+      return frame;
+   }
+
+   /**
+    * Gets the part of the frame preceding the request payload.
+    *
+    * @param length
+    *       The payload length in bytes.
+    * @return The frame prefix.
+    */
+   private byte[] framePrefix(final int length) {
+      if (framing == Framing.LENGTH_PREFIX) {
+         return new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length };
+      }
+
+      return EMPTY;
+   }
+
+   /**
+    * Gets the part of the frame following the request payload.
+    *
+    * @return The frame suffix.
+    */
+   private byte[] frameSuffix() {
+      return framing == Framing.LINE || framing == Framing.DELIMITER ? delimiterBytes : EMPTY;
+   }
+
+   /**
+    * Writes the file payload directly to the socket channel if there is one, or in chunks to the output stream otherwise.
+    *
+    * @throws IOException
+    *       When it was not possible to write the payload.
+    */
+   private void writeFilePayload() throws IOException {
+      final SocketChannel channel = socket == null ? null : socket.getChannel();
+      if (channel != null) {
+         filePayload.transferTo(channel);
+      } else {
+         if (chunk == null) {
+            chunk = new byte[CHUNK_SIZE];
+         }
+         filePayload.writeTo(out, chunk);
+      }
    }
 
    /*
@@ -147,18 +379,129 @@ abstract public class AbstractSocketSender extends AbstractSender {
     */
    @Override
    public Serializable doSend(final Message message, final Map<String, String> properties, final MeasurementUnit mu) throws Exception {
-      out.print(message.getPayload().toString());
+      if (socket == null) {
+         throw new PerfCakeException(String.format("Not connected to a socket at %s:%d.", host, port));
+      }
+
+      try {
+         out.write(request);
+         if (filePayload != null) {
+            writeFilePayload();
+            out.write(requestSuffix);
+         }
+         out.flush();
 
-      if (out.checkError()) { // flush and check for error
-         throw new PerfCakeException(String.format("Error writing to a socket at %s:%d.", host, port));
+         return readResponse();
+      } catch (IOException e) {
+         closeSocket(); // make sure a new connection is opened for the next message
+         throw new PerfCakeException(String.format("Error communicating with a socket at %s:%d.", host, port), e);
       }
+   }
 
-      StringBuilder sb = new StringBuilder();
-      while (in.ready()) {
-         sb.append(in.readLine());
+   /**
+    * Reads the response according to the framing.
+    *
+    * @return The decoded response.
+    * @throws IOException
+    *       When it was not possible to read the response.
+    */
+   private String readResponse() throws IOException {
+      int length = 0;
+
+      switch (framing) {
+         case AVAILABLE:
+            int available;
+            while ((available = in.available()) > 0) {
+               ensureCapacity(length + available);
+               length += in.read(responseBuffer, length, available);
+            }
+            break;
+         case LINE:
+         case DELIMITER:
+            length = readDelimited();
+            if (framing == Framing.LINE && length > 0 && responseBuffer[length - 1] == '\r') {
+               length--;
+            }
+            break;
+         case LENGTH_PREFIX:
+            readFully(4);
+            length = ((responseBuffer[0] & 0xff) << 24) | ((responseBuffer[1] & 0xff) << 16) | ((responseBuffer[2] & 0xff) << 8) | (responseBuffer[3] & 0xff);
+            if (length < 0) {
+               throw new IOException(String.format("Invalid response length %d.", length));
+            }
+            readFully(length);
+            break;
+         case FIXED_LENGTH:
+            length = responseLength;
+            readFully(length);
+            break;
       }
 
-      return sb.toString();
+      return new String(responseBuffer, 0, length, charset);
+   }
+
+   /**
+    * Reads the response up to the delimiter.
+    *
+    * @return The response length without the delimiter.
+    * @throws IOException
+    *       When it was not possible to read the response.
+    */
+   private int readDelimited() throws IOException {
+      final byte last = delimiterBytes[delimiterBytes.length - 1];
+      int length = 0;
+
+      while (true) {
+         final int b = in.read();
+         if (b == -1) {
+            throw new IOException("Connection closed before the response delimiter was received.");
+         }
+
+         ensureCapacity(length + 1);
+         responseBuffer[length++] = (byte) b;
+
+         if (b == (last & 0xff) && length >= delimiterBytes.length && endsWithDelimiter(length)) {
+            return length - delimiterBytes.length;
+         }
+      }
+   }
+
+   private boolean endsWithDelimiter(final int length) {
+      final int offset = length - delimiterBytes.length;
+      for (int i = 0; i < delimiterBytes.length; i++) {
+         if (responseBuffer[offset + i] != delimiterBytes[i]) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Reads exactly the given number of bytes to the beginning of the response buffer.
+    *
+    * @param length
+    *       The number of bytes to read.
+    * @throws IOException
+    *       When it was not possible to read the response.
+    */
+   private void readFully(final int length) throws IOException {
+      ensureCapacity(length);
+
+      int read = 0;
+      while (read < length) {
+         final int n = in.read(responseBuffer, read, length - read);
+         if (n == -1) {
+            throw new IOException(String.format("Connection closed after %d bytes of %d bytes expected.", read, length));
+         }
+         read += n;
+      }
+   }
+
+   private void ensureCapacity(final int capacity) {
+      if (responseBuffer.length < capacity) {
+         responseBuffer = Arrays.copyOf(responseBuffer, Math.max(capacity, responseBuffer.length * 2));
+      }
    }
 
    /*
@@ -169,7 +512,108 @@ abstract public class AbstractSocketSender extends AbstractSender {
    @Override
    public void postSend(final Message message) throws Exception {
       super.postSend(message);
-      closeSocket();
+      if (!keepConnection && socket != null) {
+         closeSocket();
+      }
+   }
+
+   /**
+    * Used to read the value of keepConnection.
+    *
+    * @return The keepConnection.
+    */
+   public boolean isKeepConnection() {
+      return keepConnection;
    }
 
+   /**
+    * Sets the value of keepConnection.
+    *
+    * @param keepConnection
+    *       The keepConnection to set.
+    */
+   public AbstractSocketSender setKeepConnection(final boolean keepConnection) {
+      this.keepConnection = keepConnection;
+      return this;
+   }
+
+   /**
+    * Used to read the value of framing.
+    *
+    * @return The framing.
+    */
+   public Framing getFraming() {
+      return framing;
+   }
+
+   /**
+    * Sets the value of framing.
+    *
+    * @param framing
+    *       The framing to set.
+    */
+   public AbstractSocketSender setFraming(final Framing framing) {
+      this.framing = framing;
+      return this;
+   }
+
+   /**
+    * Used to read the value of delimiter.
+    *
+    * @return The delimiter.
+    */
+   public String getDelimiter() {
+      return delimiter;
+   }
+
+   /**
+    * Sets the value of delimiter.
+    *
+    * @param delimiter
+    *       The delimiter to set.
+    */
+   public AbstractSocketSender setDelimiter(final String delimiter) {
+      this.delimiter = delimiter;
+      return this;
+   }
+
+   /**
+    * Used to read the value of responseLength.
+    *
+    * @return The responseLength.
+    */
+   public int getResponseLength() {
+      return responseLength;
+   }
+
+   /**
+    * Sets the value of responseLength.
+    *
+    * @param responseLength
+    *       The responseLength to set.
+    */
+   public AbstractSocketSender setResponseLength(final int responseLength) {
+      this.responseLength = responseLength;
+      return this;
+   }
+
+   /**
+    * Used to read the value of timeout.
+    *
+    * @return The timeout.
+    */
+   public int getTimeout() {
+      return timeout;
+   }
+
+   /**
+    * Sets the value of timeout.
+    *
+    * @param timeout
+    *       The timeout to set in milliseconds.
+    */
+   public AbstractSocketSender setTimeout(final int timeout) {
+      this.timeout = timeout;
+      return this;
+   }
 }
@@ -19,32 +19,156 @@
  */
 package org.perfcake.message.sender;
 
+import org.perfcake.message.FilePayload;
 import org.perfcake.message.Message;
-import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.util.Utils;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.Map;
 
 /**
- * TODO: Provide implementation. This should write to NIO channels.
+ * The common ancestor for all senders that write messages into NIO channels.
+ * The message payload is encoded into a reusable direct buffer before it is sent. The encoding is skipped completely
+ * when the same payload instance is sent repeatedly (i.e. a message without any dynamic parts).
+ * A {@link FilePayload} is not encoded at all, the message buffer is a view of the mapped file.
  *
  * @author Martin Večeřa <marvenec@gmail.com>
  */
-public class ChannelSender extends AbstractSender {
+abstract public class ChannelSender extends AbstractSender {
 
+   /**
+    * The initial capacity of the message buffer.
+    */
+   private static final int INITIAL_BUFFER_SIZE = 4096;
+
+   /**
+    * Reusable direct buffer the payloads are encoded into.
+    */
+   private ByteBuffer encodingBuffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+
+   /**
+    * Buffer with the encoded message payload ready to be written to a channel.
+    */
+   protected ByteBuffer messageBuffer = encodingBuffer;
+
+   /**
+    * The payload that is currently encoded in the message buffer.
+    */
+   private Serializable encodedPayload = null;
+
+   /**
+    * Encoder of the message payload.
+    */
+   private CharsetEncoder encoder;
+
+   /**
+    * Decoder of the responses.
+    */
+   private CharsetDecoder decoder;
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSender#init()
+    */
    @Override
    public void init() throws Exception {
-      // TODO Auto-generated method stub
+      final Charset charset = Charset.forName(Utils.getDefaultEncoding());
+      encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+      decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
    }
 
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSender#preSend(org.perfcake.message.Message, java.util.Map)
+    */
    @Override
-   public void close() {
-      // TODO Auto-generated method stub
+   public void preSend(final Message message, final Map<String, String> properties) throws Exception {
+      super.preSend(message, properties);
+
+      final Serializable payload = message == null ? null : message.getPayload();
+      if (payload == null) {
+         messageBuffer = encodingBuffer;
+         messageBuffer.clear().limit(0);
+         encodedPayload = null;
+      } else if (payload instanceof FilePayload) {
+         if (payload != encodedPayload) {
+            messageBuffer = ((FilePayload) payload).buffer();
+            encodedPayload = payload;
+         } else {
+            messageBuffer.rewind();
+         }
+      } else if (payload != encodedPayload) {
+         encodePayload(payload);
+         encodedPayload = payload;
+      } else {
+         messageBuffer.rewind();
+      }
    }
 
-   @Override
-   public Serializable doSend(final Message message, final Map<String, String> properties, final MeasurementUnit mu) throws Exception {
-      // TODO Auto-generated method stub
-      return null;
+   /**
+    * Encodes the payload into the message buffer. The buffer grows when the payload does not fit in.
+    *
+    * @param payload
+    *       The payload to be encoded.
+    * @throws CharacterCodingException
+    *       When it was not possible to encode the payload.
+    */
+   private void encodePayload(final Serializable payload) throws CharacterCodingException {
+      final CharBuffer chars = CharBuffer.wrap(payload.toString());
+      encoder.reset();
+      encodingBuffer.clear();
+
+      CoderResult result = encoder.encode(chars, encodingBuffer, true);
+      while (result.isOverflow()) {
+         encodingBuffer = grow(encodingBuffer);
+         result = encoder.encode(chars, encodingBuffer, true);
+      }
+      if (result.isError()) {
+         result.throwException();
+      }
+      while (encoder.flush(encodingBuffer).isOverflow()) {
+         encodingBuffer = grow(encodingBuffer);
+      }
+
+      encodingBuffer.flip();
+      messageBuffer = encodingBuffer;
+   }
+
+   /**
+    * Creates a new direct buffer with double capacity and copies the content of the original buffer to it.
+    *
+    * @param buffer
+    *       The original buffer in the writing mode.
+    * @return The new buffer in the writing mode.
+    */
+   private static ByteBuffer grow(final ByteBuffer buffer) {
+      final ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+      buffer.flip();
+      bigger.put(buffer);
+
+      return bigger;
+   }
+
+   /**
+    * Decodes the content of a buffer as a string using the default encoding.
+    *
+    * @param buffer
+    *       The buffer in the reading mode.
+    * @return The decoded string.
+    * @throws CharacterCodingException
+    *       When it was not possible to decode the buffer.
+    */
+   protected String decode(final ByteBuffer buffer) throws CharacterCodingException {
+      return decoder.decode(buffer).toString();
    }
 }
@@ -19,9 +19,358 @@
  */
 package org.perfcake.message.sender;
 
+import org.perfcake.PerfCakeException;
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Map;
+
 /**
+ * The sender that is able to send messages as UDP datagrams using a {@link java.nio.channels.DatagramChannel}.
+ * The channel is opened once per sender instance and it is connected to the target by default, which allows the fast path
+ * of a connected datagram channel to be used. Optionally, the sender waits for a response datagram for at most {@link #responseTimeout} milliseconds.
+ * The numbers of sent, received and lost packets and the corresponding rates are reported as the results of each measurement unit.
+ * The counters are shared among all the sender instances with the same target.
+ *
  * @author Lucie Fabriková <lucie.fabrikova@gmail.com>
  */
-public class ChannelSenderDatagram {
+public class ChannelSenderDatagram extends ChannelSender {
+
+   /**
+    * The result name for the number of sent packets.
+    */
+   public static final String PACKETS_SENT = "PacketsSent";
+
+   /**
+    * The result name for the number of received packets.
+    */
+   public static final String PACKETS_RECEIVED = "PacketsReceived";
+
+   /**
+    * The result name for the number of lost packets.
+    */
+   public static final String PACKETS_LOST = "PacketsLost";
+
+   /**
+    * The result name for the rate of sent packets.
+    */
+   public static final String SENT_RATE = "SentRate";
+
+   /**
+    * The result name for the rate of received packets.
+    */
+   public static final String RECEIVED_RATE = "ReceivedRate";
+
+   /**
+    * The result name for the rate of lost packets.
+    */
+   public static final String LOST_RATE = "LostRate";
+
+   /**
+    * The maximal size of an UDP datagram payload.
+    */
+   private static final int MAX_DATAGRAM_SIZE = 65507;
+
+   /**
+    * The sender's logger.
+    */
+   private static final Logger log = Logger.getLogger(ChannelSenderDatagram.class);
+
+   /**
+    * Determines whether the channel should be connected to the target.
+    */
+   private boolean connect = true;
+
+   /**
+    * Determines whether the sender waits for a response datagram.
+    */
+   private boolean awaitResponse = false;
+
+   /**
+    * The maximal time in milliseconds to wait for a response.
+    */
+   private long responseTimeout = 1000;
+
+   /**
+    * The maximal size of a response in bytes.
+    */
+   private int maxResponseSize = MAX_DATAGRAM_SIZE;
+
+   /**
+    * The address of the target.
+    */
+   private InetSocketAddress address;
+
+   /**
+    * The datagram channel.
+    */
+   private DatagramChannel channel;
+
+   /**
+    * The selector used to wait for responses.
+    */
+   private Selector selector;
+
+   /**
+    * Buffer for the received responses.
+    */
+   private ByteBuffer responseBuffer;
+
+   /**
+    * Counters of the packets sent, received and lost, shared by the senders with the same target.
+    */
+   private SharedCounter sent, received, lost;
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.ChannelSender#init()
+    */
+   @Override
+   public void init() throws Exception {
+      super.init();
+
+      final String[] parts = target.split(":", 2);
+      if (parts.length != 2) {
+         throw new PerfCakeException(String.format("Invalid target %s, it must be in the form of host:port.", target));
+      }
+      address = new InetSocketAddress(parts[0], Integer.valueOf(parts[1]));
+
+      channel = DatagramChannel.open();
+      if (connect) {
+         channel.connect(address);
+      }
+
+      if (awaitResponse) {
+         responseBuffer = ByteBuffer.allocateDirect(maxResponseSize);
+         channel.configureBlocking(false);
+         selector = Selector.open();
+         channel.register(selector, SelectionKey.OP_READ);
+      }
+
+      sent = SharedCounter.acquire(PACKETS_SENT, target);
+      received = SharedCounter.acquire(PACKETS_RECEIVED, target);
+      lost = SharedCounter.acquire(PACKETS_LOST, target);
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSender#close()
+    */
+   @Override
+   public void close() {
+      if (log.isDebugEnabled()) {
+         log.debug(String.format("Closing datagram channel to %s (sent %d, received %d, lost %d packets in total).", target, sent.get(), received.get(), lost.get()));
+      }
+
+      sent.release();
+      received.release();
+      lost.release();
+
+      try {
+         if (selector != null) {
+            selector.close();
+         }
+      } catch (IOException e) {
+         log.warn("Cannot close selector.", e);
+      }
+      try {
+         channel.close();
+      } catch (IOException e) {
+         log.warn("Cannot close datagram channel.", e);
+      }
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSender#doSend(org.perfcake.message.Message, java.util.Map)
+    */
+   @Override
+   public Serializable doSend(final Message message, final Map<String, String> properties, final MeasurementUnit mu) throws Exception {
+      sent.start();
+      received.start();
+      lost.start();
+
+      final int written = connect ? channel.write(messageBuffer) : channel.send(messageBuffer, address);
+      if (written == 0 && messageBuffer.hasRemaining()) { // the datagram was dropped by the non-blocking channel
+         lost.add(1);
+         return null;
+      }
+      sent.add(1);
+
+      if (awaitResponse) {
+         return receiveResponse();
+      }
+
+      return null;
+   }
+
+   /**
+    * Waits for a response datagram at most for {@link #responseTimeout} milliseconds.
+    *
+    * @return The response or null when no response was received in time.
+    * @throws IOException
+    *       When it was not possible to read the response.
+    */
+   private Serializable receiveResponse() throws IOException {
+      responseBuffer.clear();
+
+      final long deadline = System.nanoTime() + responseTimeout * 1_000_000L;
+      long remaining = responseTimeout;
+      while (remaining > 0) {
+         if (selector.select(remaining) > 0) {
+            selector.selectedKeys().clear();
+            if (readDatagram()) {
+               received.add(1);
+               responseBuffer.flip();
+
+               return decode(responseBuffer);
+            }
+         }
+         remaining = (deadline - System.nanoTime()) / 1_000_000L;
+      }
+
+      lost.add(1);
+      return null;
+   }
+
+   /**
+    * Reads a single datagram into the response buffer without blocking.
+    *
+    * @return True if and only if a datagram was read.
+    * @throws IOException
+    *       When it was not possible to read from the channel.
+    */
+   private boolean readDatagram() throws IOException {
+      if (connect) {
+         return channel.read(responseBuffer) > 0;
+      } else {
+         return channel.receive(responseBuffer) != null;
+      }
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.ChannelSender#preSend(org.perfcake.message.Message, java.util.Map)
+    */
+   @Override
+   public void preSend(final Message message, final Map<String, String> properties) throws Exception {
+      super.preSend(message, properties);
+
+      if (awaitResponse) { // drop the responses that arrived after their timeout, so that they are not mismatched with the next request
+         responseBuffer.clear();
+         while (readDatagram()) {
+            responseBuffer.clear();
+         }
+      }
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSender#postSend(org.perfcake.message.Message)
+    */
+   @Override
+   public void postSend(final Message message) throws Exception {
+      super.postSend(message);
+
+      final MeasurementUnit mu = getMeasurementUnit();
+      if (mu != null) {
+         sent.report(mu, PACKETS_SENT, SENT_RATE, "packets/s");
+         received.report(mu, PACKETS_RECEIVED, RECEIVED_RATE, "packets/s");
+         lost.report(mu, PACKETS_LOST, LOST_RATE, "packets/s");
+      }
+   }
+
+   /**
+    * Used to read the value of connect.
+    *
+    * @return The connect.
+    */
+   public boolean isConnect() {
+      return connect;
+   }
+
+   /**
+    * Sets the value of connect. When true, the channel is connected to the target which allows faster sending and receiving.
+    *
+    * @param connect
+    *       The connect to set.
+    */
+   public ChannelSenderDatagram setConnect(final boolean connect) {
+      this.connect = connect;
+      return this;
+   }
+
+   /**
+    * Used to read the value of awaitResponse.
+    *
+    * @return The awaitResponse.
+    */
+   public boolean isAwaitResponse() {
+      return awaitResponse;
+   }
+
+   /**
+    * Sets the value of awaitResponse.
+    *
+    * @param awaitResponse
+    *       The awaitResponse to set.
+    */
+   public ChannelSenderDatagram setAwaitResponse(final boolean awaitResponse) {
+      this.awaitResponse = awaitResponse;
+      return this;
+   }
+
+   /**
+    * Used to read the value of responseTimeout.
+    *
+    * @return The responseTimeout.
+    */
+   public long getResponseTimeout() {
+      return responseTimeout;
+   }
+
+   /**
+    * Sets the value of responseTimeout.
+    *
+    * @param responseTimeout
+    *       The responseTimeout to set.
+    */
+   public ChannelSenderDatagram setResponseTimeout(final long responseTimeout) {
+      this.responseTimeout = responseTimeout;
+      return this;
+   }
+
+   /**
+    * Used to read the value of maxResponseSize.
+    *
+    * @return The maxResponseSize.
+    */
+   public int getMaxResponseSize() {
+      return maxResponseSize;
+   }
 
+   /**
+    * Sets the value of maxResponseSize.
+    *
+    * @param maxResponseSize
+    *       The maxResponseSize to set.
+    */
+   public ChannelSenderDatagram setMaxResponseSize(final int maxResponseSize) {
+      this.maxResponseSize = maxResponseSize;
+      return this;
+   }
 }
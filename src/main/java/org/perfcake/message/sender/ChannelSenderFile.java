@@ -19,9 +19,496 @@
  */
 package org.perfcake.message.sender;
 
+import org.perfcake.PerfCakeException;
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
+ * The sender that is able to benchmark file storage using a {@link java.nio.channels.FileChannel}. The target is a path to the file.
+ * It supports the following modes:
+ * <ul>
+ * <li>{@link Mode#APPEND} - the message is appended to the end of the file,</li>
+ * <li>{@link Mode#RANDOM_WRITE} - the message is written to a random position in the file,</li>
+ * <li>{@link Mode#RANDOM_READ} - the number of bytes equal to the message size is read from a random position in the file,</li>
+ * <li>{@link Mode#MAPPED} - the message is written to the file mapped in memory, the writing continues from the beginning when the end of the mapped region is reached,</li>
+ * <li>{@link Mode#TRANSFER} - the content of the {@link #source} file is appended to the file using {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.</li>
+ * </ul>
+ * The random modes treat the file of the size of {@link #fileSize} as an array of records of the message size.
+ * A shorter file is filled with random data to this size during the initialization, the time it takes is logged.
+ * The changes are synchronized to the storage device according to the {@link #syncPolicy}.
+ * The total number of bytes transferred and the byte rate are reported as the results of each measurement unit.
+ *
  * @author Lucie Fabriková <lucie.fabrikova@gmail.com>
  */
-public class ChannelSenderFile {
+public class ChannelSenderFile extends ChannelSender {
+
+   /**
+    * The file access mode.
+    */
+   public static enum Mode {
+      APPEND, RANDOM_WRITE, RANDOM_READ, MAPPED, TRANSFER
+   }
+
+   /**
+    * Determines when the changes are forced to the storage device.
+    */
+   public static enum SyncPolicy {
+      /**
+       * The changes are never forced, it is left up to the operating system.
+       */
+      NONE,
+
+      /**
+       * The changes are forced after every {@link ChannelSenderFile#syncBatchSize} writes.
+       */
+      BATCH,
+
+      /**
+       * The changes are forced after each write.
+       */
+      WRITE
+   }
+
+   /**
+    * The result name for the number of bytes transferred.
+    */
+   public static final String BYTES = "Bytes";
+
+   /**
+    * The result name for the byte rate.
+    */
+   public static final String BYTE_RATE = "ByteRate";
+
+   /**
+    * The size of the block of data written at once when preallocating the file.
+    */
+   private static final int PREALLOCATION_BLOCK_SIZE = 1024 * 1024;
+
+   /**
+    * The sender's logger.
+    */
+   private static final Logger log = Logger.getLogger(ChannelSenderFile.class);
+
+   /**
+    * The file access mode.
+    */
+   private Mode mode = Mode.APPEND;
+
+   /**
+    * The synchronization policy.
+    */
+   private SyncPolicy syncPolicy = SyncPolicy.NONE;
+
+   /**
+    * The number of writes after which the changes are forced for the {@link SyncPolicy#BATCH} policy.
+    */
+   private int syncBatchSize = 100;
+
+   /**
+    * The size of the file region used by the random and mapped modes.
+    */
+   private long fileSize = 64 * 1024 * 1024;
+
+   /**
+    * The source file for the {@link Mode#TRANSFER} mode.
+    */
+   private String source = null;
+
+   /**
+    * The channel of the target file.
+    */
+   private FileChannel channel;
+
+   /**
+    * The channel of the source file.
+    */
+   private FileChannel sourceChannel;
+
+   /**
+    * The mapped region of the target file.
+    */
+   private MappedByteBuffer mappedBuffer;
+
+   /**
+    * Buffer for the data read in the {@link Mode#RANDOM_READ} mode.
+    */
+   private ByteBuffer readBuffer;
+
+   /**
+    * The number of writes since the last synchronization.
+    */
+   private int unsyncedWrites = 0;
+
+   /**
+    * The byte counter shared by the senders with the same target.
+    */
+   private SharedCounter counter;
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.ChannelSender#init()
+    */
+   @Override
+   public void init() throws Exception {
+      super.init();
+
+      final Path path = Paths.get(target);
+      switch (mode) {
+         case APPEND:
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            break;
+         case RANDOM_WRITE:
+         case RANDOM_READ:
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() < fileSize) { // make sure there is enough data to be read
+               preallocate();
+            }
+            readBuffer = ByteBuffer.allocateDirect(messageBuffer.capacity());
+            break;
+         case MAPPED:
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            break;
+         case TRANSFER:
+            if (source == null) {
+               throw new PerfCakeException("The source file must be specified for the transfer mode.");
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            sourceChannel = FileChannel.open(Paths.get(source), StandardOpenOption.READ);
+            break;
+      }
+
+      counter = SharedCounter.acquire(BYTES, target);
+   }
+
+   /**
+    * Fills the target file with random data up to {@link #fileSize}. The data is really written so that the file is not sparse
+    * and the random reads hit the storage device instead of being served with zeroes by the file system.
+    *
+    * @throws IOException
+    *       When it was not possible to write to the file.
+    */
+   private void preallocate() throws IOException {
+      final long start = System.nanoTime();
+      final long initialSize = channel.size();
+
+      final byte[] block = new byte[(int) Math.min(PREALLOCATION_BLOCK_SIZE, fileSize - initialSize)];
+      ThreadLocalRandom.current().nextBytes(block);
+      final ByteBuffer blockBuffer = ByteBuffer.wrap(block);
+
+      long position = initialSize;
+      while (position < fileSize) {
+         blockBuffer.clear().limit((int) Math.min(block.length, fileSize - position));
+         while (blockBuffer.hasRemaining()) {
+            position += channel.write(blockBuffer, position);
+         }
+      }
+      channel.force(false);
+
+      log.info(String.format("Preallocated %d bytes of %s in %d ms.", fileSize - initialSize, target, (System.nanoTime() - start) / 1_000_000));
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSender#close()
+    */
+   @Override
+   public void close() throws PerfCakeException {
+      if (log.isDebugEnabled()) {
+         log.debug(String.format("Closing file channel to %s (%d bytes transferred in total).", target, counter.get()));
+      }
+
+      counter.release();
+
+      try {
+         if (syncPolicy != SyncPolicy.NONE && unsyncedWrites > 0) {
+            sync();
+         }
+         if (sourceChannel != null) {
+            sourceChannel.close();
+         }
+         channel.close();
+      } catch (IOException e) {
+         throw new PerfCakeException(String.format("Cannot close file channel to %s.", target), e);
+      }
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.ChannelSender#preSend(org.perfcake.message.Message, java.util.Map)
+    */
+   @Override
+   public void preSend(final Message message, final Map<String, String> properties) throws Exception {
+      super.preSend(message, properties);
+
+      if (mode != Mode.TRANSFER && messageBuffer.remaining() > fileSize) {
+         throw new PerfCakeException(String.format("The message of %d bytes does not fit in the file size of %d bytes.", messageBuffer.remaining(), fileSize));
+      }
+      if (mode == Mode.RANDOM_READ && readBuffer.capacity() < messageBuffer.remaining()) {
+         readBuffer = ByteBuffer.allocateDirect(messageBuffer.remaining());
+      }
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSender#doSend(org.perfcake.message.Message, java.util.Map)
+    */
+   @Override
+   public Serializable doSend(final Message message, final Map<String, String> properties, final MeasurementUnit mu) throws Exception {
+      counter.start();
+
+      final long transferred;
+      switch (mode) {
+         case APPEND:
+            transferred = append();
+            break;
+         case RANDOM_WRITE:
+            transferred = writeRandom();
+            break;
+         case RANDOM_READ:
+            transferred = readRandom();
+            break;
+         case MAPPED:
+            transferred = writeMapped();
+            break;
+         case TRANSFER:
+            transferred = transfer();
+            break;
+         default:
+            transferred = 0;
+      }
+
+      if (mode != Mode.RANDOM_READ) {
+         switch (syncPolicy) {
+            case WRITE:
+               sync();
+               break;
+            case BATCH:
+               if (++unsyncedWrites >= syncBatchSize) {
+                  sync();
+               }
+               break;
+            default:
+               break;
+         }
+      }
+
+      counter.add(transferred);
+
+      return null;
+   }
+
+   private long append() throws IOException {
+      final int length = messageBuffer.remaining();
+      while (messageBuffer.hasRemaining()) {
+         channel.write(messageBuffer);
+      }
+
+      return length;
+   }
+
+   /**
+    * Gets a random position of a record of the given length in the file.
+    *
+    * @param length
+    *       The record length.
+    * @return The position of the record.
+    */
+   private long randomPosition(final int length) {
+      if (length == 0) {
+         return 0;
+      }
+
+      return ThreadLocalRandom.current().nextLong(fileSize / length) * length;
+   }
+
+   private long writeRandom() throws IOException {
+      final int length = messageBuffer.remaining();
+      final long position = randomPosition(length);
+      while (messageBuffer.hasRemaining()) {
+         channel.write(messageBuffer, position + messageBuffer.position());
+      }
+
+      return length;
+   }
+
+   private long readRandom() throws IOException {
+      final int length = messageBuffer.remaining();
+      final long position = randomPosition(length);
+      readBuffer.clear().limit(length);
+      while (readBuffer.hasRemaining()) {
+         if (channel.read(readBuffer, position + readBuffer.position()) < 0) {
+            break;
+         }
+      }
+
+      return readBuffer.position();
+   }
+
+   private long writeMapped() {
+      final int length = messageBuffer.remaining();
+      if (mappedBuffer.remaining() < length) {
+         mappedBuffer.rewind();
+      }
+      mappedBuffer.put(messageBuffer);
+
+      return length;
+   }
+
+   private long transfer() throws IOException {
+      final long size = sourceChannel.size();
+      long position = 0;
+      while (position < size) {
+         position += sourceChannel.transferTo(position, size - position, channel);
+      }
+
+      return size;
+   }
+
+   /**
+    * Forces the changes to the storage device.
+    *
+    * @throws IOException
+    *       When it was not possible to force the changes.
+    */
+   private void sync() throws IOException {
+      if (mappedBuffer != null) {
+         mappedBuffer.force();
+      } else {
+         channel.force(false);
+      }
+      unsyncedWrites = 0;
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSender#postSend(org.perfcake.message.Message)
+    */
+   @Override
+   public void postSend(final Message message) throws Exception {
+      super.postSend(message);
+
+      final MeasurementUnit mu = getMeasurementUnit();
+      if (mu != null) {
+         counter.report(mu, BYTES, BYTE_RATE, "B/s");
+      }
+   }
+
+   /**
+    * Used to read the value of mode.
+    *
+    * @return The mode.
+    */
+   public Mode getMode() {
+      return mode;
+   }
+
+   /**
+    * Sets the value of mode.
+    *
+    * @param mode
+    *       The mode to set.
+    */
+   public ChannelSenderFile setMode(final Mode mode) {
+      this.mode = mode;
+      return this;
+   }
+
+   /**
+    * Used to read the value of syncPolicy.
+    *
+    * @return The syncPolicy.
+    */
+   public SyncPolicy getSyncPolicy() {
+      return syncPolicy;
+   }
+
+   /**
+    * Sets the value of syncPolicy.
+    *
+    * @param syncPolicy
+    *       The syncPolicy to set.
+    */
+   public ChannelSenderFile setSyncPolicy(final SyncPolicy syncPolicy) {
+      this.syncPolicy = syncPolicy;
+      return this;
+   }
+
+   /**
+    * Used to read the value of syncBatchSize.
+    *
+    * @return The syncBatchSize.
+    */
+   public int getSyncBatchSize() {
+      return syncBatchSize;
+   }
+
+   /**
+    * Sets the value of syncBatchSize.
+    *
+    * @param syncBatchSize
+    *       The syncBatchSize to set.
+    */
+   public ChannelSenderFile setSyncBatchSize(final int syncBatchSize) {
+      this.syncBatchSize = syncBatchSize;
+      return this;
+   }
+
+   /**
+    * Used to read the value of fileSize.
+    *
+    * @return The fileSize.
+    */
+   public long getFileSize() {
+      return fileSize;
+   }
+
+   /**
+    * Sets the value of fileSize.
+    *
+    * @param fileSize
+    *       The fileSize to set.
+    */
+   public ChannelSenderFile setFileSize(final long fileSize) {
+      this.fileSize = fileSize;
+      return this;
+   }
+
+   /**
+    * Used to read the value of source.
+    *
+    * @return The source.
+    */
+   public String getSource() {
+      return source;
+   }
 
+   /**
+    * Sets the value of source.
+    *
+    * @param source
+    *       The source to set.
+    */
+   public ChannelSenderFile setSource(final String source) {
+      this.source = source;
+      return this;
+   }
 }
@@ -19,30 +19,63 @@
  */
 package org.perfcake.message.sender;
 
+import org.perfcake.PerfCakeException;
 import org.perfcake.message.Message;
 import org.perfcake.reporting.MeasurementUnit;
 import org.perfcake.util.Utils;
 
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The sender that can invoke external command (specified by {@link #target} property)
  * in a separate process to send the message payload (if message is specified) passed to the standard input of
  * the process or as the command argument.
+ * <p/>
+ * In the persistent mode, each sender starts a single long-running worker process in the initialization and exchanges the requests and responses
+ * with it over its standard input and output. The messages are separated according to the framing property, either by a new line, by a custom delimiter,
+ * or by a 4-byte big-endian length prefix. A message containing the new line or the delimiter is refused because the worker would split it
+ * and all the following responses would be shifted, so the multi-line messages need the delimiter or the length prefix framing. The worker is restarted when it terminates or fails to respond. With the responseTimeout property set,
+ * a worker that does not respond in time is considered hung, it is killed and restarted. The environment of the worker
+ * is computed once, so that the message headers and properties are not passed to it.
  *
  * @author Martin Večeřa <marvenec@gmail.com>
  * @author Pavel Macík <pavel.macik@gmail.com>
  */
 public class CommandSender extends AbstractSender {
 
+   /**
+    * The sender's logger.
+    */
+   private static final Logger log = Logger.getLogger(CommandSender.class);
+
+   /**
+    * Result name for the number of restarts of the worker process.
+    */
+   public static final String WORKER_RESTARTS = "WorkerRestarts";
+
    /**
     * Reference to a process where the command is executed.
     */
@@ -83,18 +116,311 @@ public class CommandSender extends AbstractSender {
     */
    private String[] environmentVariables;
 
+   /**
+    * The environment variables of this process, computed once.
+    */
+   private String[] systemEnvironment;
+
+   /**
+    * Whether to keep a long-running worker process.
+    */
+   private boolean persistent = false;
+
+   /**
+    * How the messages exchanged with the worker process are separated.
+    */
+   private Framing framing = Framing.LINE;
+
+   /**
+    * The delimiter of the messages with the delimiter framing.
+    */
+   private String delimiter = "\\0";
+
+   /**
+    * The delimiter of the messages with the line or the delimiter framing.
+    */
+   private String frameDelimiter;
+
+   /**
+    * Whether the current message was refused because it contains the delimiter.
+    */
+   private boolean refused = false;
+
+   /**
+    * The delimiter of the messages encoded to bytes.
+    */
+   private byte[] delimiterBytes;
+
+   /**
+    * The long-running worker process.
+    */
+   private Process worker;
+
+   /**
+    * The standard input of the worker process.
+    */
+   private DataOutputStream workerInput;
+
+   /**
+    * The standard output of the worker process.
+    */
+   private DataInputStream workerOutput;
+
+   /**
+    * The number of restarts of the worker process.
+    */
+   private long workerRestarts = 0;
+
+   /**
+    * How long to wait for the response of the worker process in milliseconds, 0 means no limit.
+    */
+   private long responseTimeout = 0;
+
+   /**
+    * Kills the hung worker processes of all the senders.
+    */
+   private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable runnable) {
+         final Thread thread = new Thread(runnable, "PerfCake-CommandSender-Watchdog");
+         thread.setDaemon(true); // do not block the JVM termination
+         return thread;
+      }
+   });
+
    public static enum MessageFrom {
       STDIN, ARGUMENTS;
    }
 
+   /**
+    * Separation of the messages exchanged with the worker process.
+    */
+   public static enum Framing {
+      /**
+       * Each message is terminated by a new line.
+       */
+      LINE,
+
+      /**
+       * Each message is terminated by the delimiter.
+       */
+      DELIMITER,
+
+      /**
+       * Each message is preceded by its length in bytes as a 4-byte big-endian integer.
+       */
+      LENGTH_PREFIX;
+   }
+
    @Override
    public void init() throws Exception {
-      // nop
+      final Map<String, String> env = System.getenv();
+      systemEnvironment = new String[env.size()];
+      int i = 0;
+      for (Entry<String, String> entry : env.entrySet()) {
+         systemEnvironment[i++] = entry.getKey() + "=" + entry.getValue();
+      }
+
+      if (persistent) {
+         if (messageFrom == MessageFrom.ARGUMENTS) {
+            throw new PerfCakeException("The persistent worker process can only receive the messages from the standard input.");
+         }
+
+         frameDelimiter = framing == Framing.LINE ? "\n" : unescape(delimiter);
+         delimiterBytes = frameDelimiter.getBytes(Utils.getDefaultEncoding());
+         if (delimiterBytes.length == 0) {
+            throw new PerfCakeException("The message delimiter cannot be empty.");
+         }
+
+         startWorker();
+      }
    }
 
    @Override
    public void close() {
-      // nop
+      if (worker != null) {
+         stopWorker();
+      }
+   }
+
+   /**
+    * Starts the worker process.
+    *
+    * @throws IOException
+    *       When the process cannot be started.
+    */
+   private void startWorker() throws IOException {
+      final List<String> commandLine = new ArrayList<>();
+      final StringTokenizer tokenizer = new StringTokenizer((commandPrefix + " " + target).trim());
+      while (tokenizer.hasMoreTokens()) {
+         commandLine.add(tokenizer.nextToken());
+      }
+
+      if (log.isDebugEnabled()) {
+         log.debug("Starting worker process " + commandLine);
+      }
+
+      worker = new ProcessBuilder(commandLine).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+      workerInput = new DataOutputStream(new BufferedOutputStream(worker.getOutputStream()));
+      workerOutput = new DataInputStream(new BufferedInputStream(worker.getInputStream()));
+   }
+
+   /**
+    * Stops the worker process. The standard input is closed first to let the worker finish gracefully.
+    */
+   private void stopWorker() {
+      if (workerInput != null) {
+         try {
+            workerInput.close();
+         } catch (IOException e) {
+            // the worker is terminated anyway
+         }
+         workerInput = null;
+      }
+      if (worker != null) {
+         worker.destroy();
+         worker = null;
+      }
+   }
+
+   /**
+    * Restarts the worker process.
+    *
+    * @throws IOException
+    *       When the process cannot be started.
+    */
+   private void restartWorker() throws IOException {
+      log.warn("Restarting the worker process " + (commandPrefix + " " + target).trim());
+      stopWorker();
+      workerRestarts++;
+      startWorker();
+   }
+
+   /**
+    * Checks whether the worker process is still running.
+    *
+    * @return True if the worker process is running.
+    */
+   private boolean isWorkerAlive() {
+      if (worker == null) {
+         return false;
+      }
+
+      try {
+         worker.exitValue();
+         return false;
+      } catch (IllegalThreadStateException e) {
+         return true;
+      }
+   }
+
+   /**
+    * Sends the message payload to the worker process and reads its response.
+    *
+    * @return The response of the worker process.
+    * @throws IOException
+    *       When the communication with the worker failed.
+    */
+   private String exchange() throws IOException {
+      final byte[] request = messagePayload == null ? new byte[0] : messagePayload.getBytes(Utils.getDefaultEncoding());
+
+      if (framing == Framing.LENGTH_PREFIX) {
+         workerInput.writeInt(request.length);
+         workerInput.write(request);
+         workerInput.flush();
+
+         final byte[] response = new byte[workerOutput.readInt()];
+         workerOutput.readFully(response);
+
+         return new String(response, Utils.getDefaultEncoding());
+      }
+
+      workerInput.write(request);
+      workerInput.write(delimiterBytes);
+      workerInput.flush();
+
+      final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      final byte last = delimiterBytes[delimiterBytes.length - 1];
+      byte[] response;
+      while (true) {
+         final int b = workerOutput.read();
+         if (b == -1) {
+            throw new EOFException("The worker process terminated before sending the whole response.");
+         }
+         buffer.write(b);
+
+         // compare the whole delimiter only when its last byte arrives
+         if ((byte) b == last && buffer.size() >= delimiterBytes.length) {
+            response = buffer.toByteArray();
+            if (endsWith(response, delimiterBytes)) {
+               break;
+            }
+         }
+      }
+
+      String result = new String(response, 0, response.length - delimiterBytes.length, Utils.getDefaultEncoding());
+      if (framing == Framing.LINE && result.endsWith("\r")) {
+         result = result.substring(0, result.length() - 1);
+      }
+
+      return result;
+   }
+
+   /**
+    * Checks whether the data end with the given suffix.
+    *
+    * @param data
+    *       The data to be checked.
+    * @param suffix
+    *       The expected suffix.
+    * @return True if the data end with the suffix.
+    */
+   private static boolean endsWith(final byte[] data, final byte[] suffix) {
+      final int offset = data.length - suffix.length;
+      for (int i = 0; i < suffix.length; i++) {
+         if (data[offset + i] != suffix[i]) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Replaces the escape sequences \n, \r, \t, \0 and \\ by the respective characters.
+    *
+    * @param value
+    *       The string to be unescaped.
+    * @return The unescaped string.
+    */
+   private static String unescape(final String value) {
+      final StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < value.length(); i++) {
+         final char c = value.charAt(i);
+         if (c == '\\' && i + 1 < value.length()) {
+            i++;
+            switch (value.charAt(i)) {
+               case 'n':
+                  sb.append('\n');
+                  break;
+               case 'r':
+                  sb.append('\r');
+                  break;
+               case 't':
+                  sb.append('\t');
+                  break;
+               case '0':
+                  sb.append('\0');
+                  break;
+               default:
+                  sb.append(value.charAt(i));
+            }
+         } else {
+            sb.append(c);
+         }
+      }
+
+      return sb.toString();
    }
 
    @Override
@@ -111,21 +437,38 @@ public class CommandSender extends AbstractSender {
          messagePayload = null;
       }
 
+      if (persistent) {
+         refused = framing != Framing.LENGTH_PREFIX && messagePayload != null && messagePayload.contains(frameDelimiter);
+         if (refused) {
+            throw new PerfCakeException(String.format("The message payload contains the message delimiter of the %s framing, use the %s framing for such messages.", framing, Framing.LENGTH_PREFIX));
+         }
+
+         // restart a crashed worker before the measurement starts
+         if (!isWorkerAlive()) {
+            restartWorker();
+         }
+         return;
+      }
+
       if (messagePayload != null && messageFrom == MessageFrom.ARGUMENTS) {
          command = (commandPrefix + " " + target + " " + messagePayload).trim();
       } else {
          command = (commandPrefix + " " + target).trim();
       }
 
-      final Set<Entry<String, String>> propertiesEntrySet = properties.entrySet();
-      final Set<Entry<String, String>> envEntrySet = System.getenv().entrySet();
-      environmentVariables = new String[propertiesEntrySet.size() + envEntrySet.size() + (message != null ? message.getHeaders().size() + message.getProperties().size() : 0)];
-      int i = 0;
-      for (Entry<String, String> entry : propertiesEntrySet) {
-         environmentVariables[i++] = entry.getKey() + "=" + entry.getValue();
+      final int propertiesCount = properties == null ? 0 : properties.size();
+      final int messageCount = message != null ? message.getHeaders().size() + message.getProperties().size() : 0;
+      if (propertiesCount + messageCount == 0) {
+         environmentVariables = systemEnvironment;
+         return;
       }
-      for (Entry<String, String> entry : envEntrySet) {
-         environmentVariables[i++] = entry.getKey() + "=" + entry.getValue();
+
+      environmentVariables = Arrays.copyOf(systemEnvironment, systemEnvironment.length + propertiesCount + messageCount);
+      int i = systemEnvironment.length;
+      if (properties != null) {
+         for (Entry<String, String> entry : properties.entrySet()) {
+            environmentVariables[i++] = entry.getKey() + "=" + entry.getValue();
+         }
       }
       if (message != null) {
          for (Entry<Object, Object> entry : message.getHeaders().entrySet()) {
@@ -139,6 +482,31 @@ public class CommandSender extends AbstractSender {
 
    @Override
    public Serializable doSend(final Message message, final Map<String, String> properties, final MeasurementUnit mu) throws Exception {
+      if (persistent) {
+         if (worker == null) {
+            throw new PerfCakeException("The worker process is not running.");
+         }
+         if (refused) {
+            throw new PerfCakeException("The message containing the message delimiter was not sent to the worker process.");
+         }
+
+         final WorkerKiller killer = responseTimeout > 0 ? new WorkerKiller(worker) : null;
+         final ScheduledFuture<?> timeout = killer == null ? null : watchdog.schedule(killer, responseTimeout, TimeUnit.MILLISECONDS);
+         try {
+            return exchange();
+         } catch (IOException e) {
+            restartWorker();
+            if (killer != null && killer.killed) {
+               throw new PerfCakeException("The worker process did not respond within the specified timeout (" + responseTimeout + " ms).", e);
+            }
+            throw new PerfCakeException("The worker process failed to process the message: ", e);
+         } finally {
+            if (timeout != null) {
+               timeout.cancel(false);
+            }
+         }
+      }
+
       process = Runtime.getRuntime().exec(command, environmentVariables);
       if (messagePayload != null && messageFrom == MessageFrom.STDIN) {
          writer = new PrintWriter(new OutputStreamWriter(new BufferedOutputStream(process.getOutputStream()), Utils.getDefaultEncoding()), true);
@@ -165,6 +533,14 @@ public class CommandSender extends AbstractSender {
    @Override
    public void postSend(final Message message) throws Exception {
       super.postSend(message);
+      if (persistent) {
+         final MeasurementUnit mu = getMeasurementUnit();
+         if (mu != null) {
+            mu.appendResult(WORKER_RESTARTS, workerRestarts);
+         }
+         return;
+      }
+
       reader.close();
       process.getInputStream().close();
    }
@@ -209,6 +585,86 @@ public class CommandSender extends AbstractSender {
       return this;
    }
 
+   /**
+    * Used to read the value of persistent.
+    *
+    * @return Whether the sender keeps a long-running worker process.
+    */
+   public boolean isPersistent() {
+      return persistent;
+   }
+
+   /**
+    * Sets the value of persistent.
+    *
+    * @param persistent
+    *       When true, the sender keeps a long-running worker process and exchanges the messages with it.
+    */
+   public CommandSender setPersistent(final boolean persistent) {
+      this.persistent = persistent;
+      return this;
+   }
+
+   /**
+    * Used to read the value of framing.
+    *
+    * @return The framing of the messages exchanged with the worker process.
+    */
+   public Framing getFraming() {
+      return framing;
+   }
+
+   /**
+    * Sets the value of framing.
+    *
+    * @param framing
+    *       The framing of the messages exchanged with the worker process.
+    */
+   public CommandSender setFraming(final Framing framing) {
+      this.framing = framing;
+      return this;
+   }
+
+   /**
+    * Used to read the value of delimiter.
+    *
+    * @return The delimiter of the messages with the delimiter framing.
+    */
+   public String getDelimiter() {
+      return delimiter;
+   }
+
+   /**
+    * Sets the value of delimiter. The escape sequences \n, \r, \t, \0 and \\ can be used. The default value is \0.
+    *
+    * @param delimiter
+    *       The delimiter of the messages with the delimiter framing.
+    */
+   public CommandSender setDelimiter(final String delimiter) {
+      this.delimiter = delimiter;
+      return this;
+   }
+
+   /**
+    * Used to read the value of responseTimeout.
+    *
+    * @return The time to wait for the response of the worker process in milliseconds, 0 means no limit.
+    */
+   public long getResponseTimeout() {
+      return responseTimeout;
+   }
+
+   /**
+    * Sets the value of responseTimeout. A worker process that does not respond in time is killed and restarted.
+    *
+    * @param responseTimeout
+    *       The time to wait for the response of the worker process in milliseconds, 0 means no limit.
+    */
+   public CommandSender setResponseTimeout(final long responseTimeout) {
+      this.responseTimeout = responseTimeout;
+      return this;
+   }
+
    /**
     * @return the environmentVariables
     */
@@ -224,4 +680,27 @@ public class CommandSender extends AbstractSender {
       this.environmentVariables = Arrays.copyOf(environmentVariables, environmentVariables.length); // ignore any later external modifications
       return this;
    }
+
+   /**
+    * Kills a worker process that did not respond in time.
+    */
+   private static class WorkerKiller implements Runnable {
+
+      private final Process process;
+
+      /**
+       * Whether the process was killed.
+       */
+      private volatile boolean killed = false;
+
+      private WorkerKiller(final Process process) {
+         this.process = process;
+      }
+
+      @Override
+      public void run() {
+         killed = true;
+         process.destroy();
+      }
+   }
 }
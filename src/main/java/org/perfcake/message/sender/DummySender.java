@@ -19,19 +19,32 @@
  */
 package org.perfcake.message.sender;
 
+import org.perfcake.PerfCakeException;
 import org.perfcake.message.Message;
 import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.util.Blackhole;
+import org.perfcake.util.FastRandom;
 
 import org.apache.log4j.Logger;
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * This sender is intended to work as a dummy sender and to be used for
  * scenario testing and developing purposes. It does not actually send any message.
  * It can simulate a synchronous waiting for a reply by setting the {@link #delay} property in milliseconds (with default values 0).
- * property.
+ * <p/>
+ * To simulate a realistic service, the delay can be drawn from a {@link Distribution}, where the {@link #delay} is the mean
+ * (the median for the log-normal distribution). The waiting uses {@link java.util.concurrent.locks.LockSupport#parkNanos(long)}
+ * so that delays shorter than a millisecond can be configured using the {@link #timeUnit} property. Additionally, the sender can
+ * busy-spin the CPU for {@link #spin}, allocate {@link #allocation} bytes and fail with the probability of {@link #failureRate}
+ * for each message. Setting the {@link #seed} makes the simulated delays and failures reproducible. The random values of each message
+ * are derived from the seed and the iteration number, so that they do not depend on which sender or thread processes the message
+ * and the senders do not repeat the same sequence.
  *
  * @author Pavel Macík <pavel.macik@gmail.com>
  * @author Martin Večeřa <marvenec@gmail.com>
@@ -47,6 +60,86 @@ public class DummySender extends AbstractSender {
     */
    private long delay = 0;
 
+   /**
+    * Distributions of the simulated delay.
+    */
+   public static enum Distribution {
+      /**
+       * Always the same delay.
+       */
+      CONSTANT,
+
+      /**
+       * Exponentially distributed delay with the given mean.
+       */
+      EXPONENTIAL,
+
+      /**
+       * Log-normally distributed delay with the given median and the standard deviation {@link DummySender#sigma} of the logarithm.
+       */
+      LOG_NORMAL,
+
+      /**
+       * The given delay, except for the {@link DummySender#tailProbability} fraction of messages that are delayed by {@link DummySender#tailDelay}.
+       */
+      BIMODAL
+   }
+
+   /**
+    * The distribution of the simulated delay.
+    */
+   private Distribution distribution = Distribution.CONSTANT;
+
+   /**
+    * The time unit of the delay, tail delay and spin.
+    */
+   private TimeUnit timeUnit = TimeUnit.MILLISECONDS;
+
+   /**
+    * The standard deviation of the logarithm of the log-normally distributed delay.
+    */
+   private double sigma = 0.5;
+
+   /**
+    * The delay of the tail of the bimodal distribution.
+    */
+   private long tailDelay = 0;
+
+   /**
+    * The probability of the tail delay in the bimodal distribution.
+    */
+   private double tailProbability = 0.01;
+
+   /**
+    * The duration of the busy-spinning CPU work per message.
+    */
+   private long spin = 0;
+
+   /**
+    * The number of bytes allocated per message.
+    */
+   private int allocation = 0;
+
+   /**
+    * The probability of a simulated failure.
+    */
+   private double failureRate = 0;
+
+   /**
+    * The seed of the random number generator, 0 means a random seed. The generator is seeded by the seed and the iteration number for each message.
+    */
+   private long seed = 0;
+
+   /**
+    * The random number generator of this sender.
+    */
+   private Random random;
+
+   /**
+    * Keeps the allocated memory from being optimized out.
+    */
+   private final Blackhole blackhole = new Blackhole();
+
    /*
     * (non-Javadoc)
     *
@@ -57,7 +150,7 @@ public class DummySender extends AbstractSender {
       if (log.isDebugEnabled()) {
          log.debug("Initializing... " + target);
       }
-      // nop
+      random = seed == 0 ? new Random() : new Random(seed);
    }
 
    /*
@@ -83,13 +176,56 @@ public class DummySender extends AbstractSender {
       if (log.isDebugEnabled()) {
          log.debug("Sending to " + target + "...");
       }
-      if (delay > 0) {
-         Thread.sleep(delay);
+      if (seed != 0 && mu != null) {
+         random.setSeed(FastRandom.deriveSeed(seed, mu.getIteration()));
       }
-      // nop
+      if (spin > 0) {
+         final long spinEnd = System.nanoTime() + timeUnit.toNanos(spin);
+         while (System.nanoTime() < spinEnd) {
+            // busy spin
+         }
+      }
+
+      if (allocation > 0) {
+         blackhole.consume(new byte[allocation]);
+      }
+
+      final long delayNanos = nextDelayNanos();
+      if (delayNanos > 0) {
+         final long delayEnd = System.nanoTime() + delayNanos;
+         long remaining = delayNanos;
+         while (remaining > 0) { // parkNanos can return sooner
+            LockSupport.parkNanos(remaining);
+            remaining = delayEnd - System.nanoTime();
+         }
+      }
+
+      if (failureRate > 0 && random.nextDouble() < failureRate) {
+         throw new PerfCakeException("Simulated failure.");
+      }
+
       return (message == null) ? message : message.getPayload();
    }
 
+   /**
+    * Draws the next delay from the configured distribution.
+    *
+    * @return The next delay in nanoseconds.
+    */
+   long nextDelayNanos() {
+      final long delayNanos = timeUnit.toNanos(delay);
+      switch (distribution) {
+         case EXPONENTIAL:
+            return (long) (-Math.log(1 - random.nextDouble()) * delayNanos);
+         case LOG_NORMAL:
+            return (long) (delayNanos * Math.exp(sigma * random.nextGaussian()));
+         case BIMODAL:
+            return random.nextDouble() < tailProbability ? timeUnit.toNanos(tailDelay) : delayNanos;
+         default:
+            return delayNanos;
+      }
+   }
+
    /**
     * Used to read the value of delay.
     *
@@ -110,4 +246,183 @@ public class DummySender extends AbstractSender {
       return this;
    }
 
+   /**
+    * Used to read the value of distribution.
+    *
+    * @return The distribution of the simulated delay.
+    */
+   public Distribution getDistribution() {
+      return distribution;
+   }
+
+   /**
+    * Sets the value of distribution.
+    *
+    * @param distribution
+    *       The distribution of the simulated delay.
+    */
+   public DummySender setDistribution(final Distribution distribution) {
+      this.distribution = distribution;
+      return this;
+   }
+
+   /**
+    * Used to read the value of timeUnit.
+    *
+    * @return The time unit of the delay, tail delay and spin.
+    */
+   public TimeUnit getTimeUnit() {
+      return timeUnit;
+   }
+
+   /**
+    * Sets the value of timeUnit.
+    *
+    * @param timeUnit
+    *       The time unit of the delay, tail delay and spin.
+    */
+   public DummySender setTimeUnit(final TimeUnit timeUnit) {
+      this.timeUnit = timeUnit;
+      return this;
+   }
+
+   /**
+    * Used to read the value of sigma.
+    *
+    * @return The standard deviation of the logarithm of the log-normally distributed delay.
+    */
+   public double getSigma() {
+      return sigma;
+   }
+
+   /**
+    * Sets the value of sigma.
+    *
+    * @param sigma
+    *       The standard deviation of the logarithm of the log-normally distributed delay.
+    */
+   public DummySender setSigma(final double sigma) {
+      this.sigma = sigma;
+      return this;
+   }
+
+   /**
+    * Used to read the value of tailDelay.
+    *
+    * @return The delay of the tail of the bimodal distribution.
+    */
+   public long getTailDelay() {
+      return tailDelay;
+   }
+
+   /**
+    * Sets the value of tailDelay.
+    *
+    * @param tailDelay
+    *       The delay of the tail of the bimodal distribution.
+    */
+   public DummySender setTailDelay(final long tailDelay) {
+      this.tailDelay = tailDelay;
+      return this;
+   }
+
+   /**
+    * Used to read the value of tailProbability.
+    *
+    * @return The probability of the tail delay in the bimodal distribution.
+    */
+   public double getTailProbability() {
+      return tailProbability;
+   }
+
+   /**
+    * Sets the value of tailProbability.
+    *
+    * @param tailProbability
+    *       The probability of the tail delay in the bimodal distribution.
+    */
+   public DummySender setTailProbability(final double tailProbability) {
+      this.tailProbability = tailProbability;
+      return this;
+   }
+
+   /**
+    * Used to read the value of spin.
+    *
+    * @return The duration of the busy-spinning CPU work per message.
+    */
+   public long getSpin() {
+      return spin;
+   }
+
+   /**
+    * Sets the value of spin.
+    *
+    * @param spin
+    *       The duration of the busy-spinning CPU work per message.
+    */
+   public DummySender setSpin(final long spin) {
+      this.spin = spin;
+      return this;
+   }
+
+   /**
+    * Used to read the value of allocation.
+    *
+    * @return The number of bytes allocated per message.
+    */
+   public int getAllocation() {
+      return allocation;
+   }
+
+   /**
+    * Sets the value of allocation.
+    *
+    * @param allocation
+    *       The number of bytes allocated per message.
+    */
+   public DummySender setAllocation(final int allocation) {
+      this.allocation = allocation;
+      return this;
+   }
+
+   /**
+    * Used to read the value of failureRate.
+    *
+    * @return The probability of a simulated failure.
+    */
+   public double getFailureRate() {
+      return failureRate;
+   }
+
+   /**
+    * Sets the value of failureRate.
+    *
+    * @param failureRate
+    *       The probability of a simulated failure, between 0 and 1.
+    */
+   public DummySender setFailureRate(final double failureRate) {
+      this.failureRate = failureRate;
+      return this;
+   }
+
+   /**
+    * Used to read the value of seed.
+    *
+    * @return The seed of the random number generator.
+    */
+   public long getSeed() {
+      return seed;
+   }
+
+   /**
+    * Sets the value of seed.
+    *
+    * @param seed
+    *       The seed of the random number generator, 0 means a random seed.
+    */
+   public DummySender setSeed(final long seed) {
+      this.seed = seed;
+      return this;
+   }
 }
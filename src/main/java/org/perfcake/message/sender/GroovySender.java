@@ -19,23 +19,73 @@
  */
 package org.perfcake.message.sender;
 
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+
+import org.apache.log4j.Logger;
+
 import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import groovy.lang.Binding;
+import groovy.lang.GString;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+import org.codehaus.groovy.runtime.InvokerHelper;
 
 /**
  * The sender that is able to execute an external Groovy script and pass the message
  * payload via the standard input or as a command argument. It extends the {@link CommandSender} and
  * executes the groovy script via groovy command with <code>groovy {@link #target}</code> passed as an argument.
+ * <p/>
+ * In the in-process mode, the script is compiled once in the running JVM and each sender runs its own instance of it.
+ * The script can access the message being sent as <code>message</code>, its payload as <code>payload</code> and the
+ * additional message properties as <code>properties</code>. The value returned by the script is the response.
  *
  * @author Martin Večeřa <marvenec@gmail.com>
  * @author Pavel Macík <pavel.macik@gmail.com>
  */
 public class GroovySender extends CommandSender {
 
+   /**
+    * The sender's logger.
+    */
+   private static final Logger log = Logger.getLogger(GroovySender.class);
+
+   /**
+    * The class loader compiling the scripts for the in-process mode.
+    */
+   private static final GroovyClassLoader classLoader = new GroovyClassLoader(GroovySender.class.getClassLoader());
+
+   /**
+    * The scripts compiled for the in-process mode, shared by all the senders.
+    */
+   private static final ConcurrentMap<String, Class<?>> scriptClasses = new ConcurrentHashMap<>();
+
    /**
     * The groovy executable prefix.
     */
    private String groovyExecutable = null;
 
+   /**
+    * Whether to run the script in the running JVM.
+    */
+   private boolean inProcess = false;
+
+   /**
+    * The instance of the script in the in-process mode.
+    */
+   private Script script;
+
+   /**
+    * The variables passed to the script in the in-process mode.
+    */
+   private Binding binding;
+
    /*
     * (non-Javadoc)
     *
@@ -43,7 +93,86 @@ public class GroovySender extends CommandSender {
     */
    @Override
    public void init() throws Exception {
+      if (inProcess) {
+         binding = new Binding();
+         script = InvokerHelper.createScript(getScriptClass(target), binding);
+         return;
+      }
+
       setCommandPrefix(getGroovyExecutable());
+      super.init();
+   }
+
+   /**
+    * Gets the compiled script class. The script is compiled only once, the first time it is requested.
+    *
+    * @param scriptFile
+    *       The path to the script.
+    * @return The compiled script class.
+    * @throws IOException
+    *       When the script cannot be read.
+    */
+   private static Class<?> getScriptClass(final String scriptFile) throws IOException {
+      final File file = new File(scriptFile).getCanonicalFile();
+      final String key = file.getPath();
+
+      Class<?> scriptClass = scriptClasses.get(key);
+      if (scriptClass == null) {
+         synchronized (scriptClasses) {
+            scriptClass = scriptClasses.get(key);
+            if (scriptClass == null) {
+               if (log.isDebugEnabled()) {
+                  log.debug("Compiling Groovy script " + key);
+               }
+               scriptClass = classLoader.parseClass(file);
+               scriptClasses.put(key, scriptClass);
+            }
+         }
+      }
+
+      return scriptClass;
+   }
+
+   @Override
+   public void close() {
+      if (inProcess) {
+         script = null;
+         binding = null;
+      } else {
+         super.close();
+      }
+   }
+
+   @Override
+   public void preSend(final Message message, final Map<String, String> properties) throws Exception {
+      if (inProcess) {
+         binding.setVariable("message", message);
+         binding.setVariable("payload", message == null ? null : message.getPayload());
+         binding.setVariable("properties", properties);
+      } else {
+         super.preSend(message, properties);
+      }
+   }
+
+   @Override
+   public Serializable doSend(final Message message, final Map<String, String> properties, final MeasurementUnit mu) throws Exception {
+      if (inProcess) {
+         final Object result = script.run();
+         if (result == null) {
+            return null;
+         }
+
+         return result instanceof Serializable && !(result instanceof GString) ? (Serializable) result : result.toString();
+      }
+
+      return super.doSend(message, properties, mu);
+   }
+
+   @Override
+   public void postSend(final Message message) throws Exception {
+      if (!inProcess) {
+         super.postSend(message);
+      }
    }
 
    /**
@@ -69,4 +198,24 @@ public class GroovySender extends CommandSender {
       return this;
    }
 
+   /**
+    * Used to read the value of inProcess property.
+    *
+    * @return Whether the script is run in the running JVM.
+    */
+   public boolean isInProcess() {
+      return inProcess;
+   }
+
+   /**
+    * Sets the value of inProcess property.
+    *
+    * @param inProcess
+    *       When true, the script is compiled once and run in the running JVM instead of starting the groovy command for each message.
+    */
+   public GroovySender setInProcess(final boolean inProcess) {
+      this.inProcess = inProcess;
+      return this;
+   }
+
 }
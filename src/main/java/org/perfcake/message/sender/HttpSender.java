@@ -20,6 +20,7 @@
 package org.perfcake.message.sender;
 
 import org.perfcake.PerfCakeException;
+import org.perfcake.message.FilePayload;
 import org.perfcake.message.Message;
 import org.perfcake.reporting.MeasurementUnit;
 import org.perfcake.util.Utils;
@@ -28,6 +29,7 @@ import org.apache.log4j.Logger;
 
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
 import java.net.HttpURLConnection;
@@ -40,6 +42,7 @@ import java.util.Map.Entry;
 
 /**
  * The sender that is able to send the messages via HTTP protocol.
+ * A {@link FilePayload} is streamed from the mapped file in chunks, it is never copied to the heap as a whole nor encoded.
  *
  * @author Martin Večeřa <marvenec@gmail.com>
  * @author Pavel Macík <pavel.macik@gmail.com>
@@ -98,6 +101,16 @@ public class HttpSender extends AbstractSender {
     */
    private int payloadLenght;
 
+   /**
+    * The request payload backed by a file, null for the other payloads.
+    */
+   private FilePayload filePayload;
+
+   /**
+    * The buffer for streaming the file payload.
+    */
+   private byte[] chunk;
+
    @Override
    public void init() throws Exception {
       url = new URL(target);
@@ -178,8 +191,12 @@ public class HttpSender extends AbstractSender {
       super.preSend(message, properties);
 
       payloadLenght = 0;
+      filePayload = null;
       if (message == null) {
          payload = null;
+      } else if (message.getPayload() instanceof FilePayload) {
+         payload = null;
+         filePayload = (FilePayload) message.getPayload();
       } else if (message.getPayload() != null) {
          payload = message.getPayload().toString();
          payloadLenght = payload.length();
@@ -195,6 +212,9 @@ public class HttpSender extends AbstractSender {
       if (payloadLenght > 0) {
          requestConnection.setRequestProperty("Content-Length", Integer.toString(payloadLenght));
       }
+      if (filePayload != null && (method == Method.POST || method == Method.PUT)) {
+         requestConnection.setFixedLengthStreamingMode(filePayload.size());
+      }
 
       if (log.isDebugEnabled()) {
          log.debug("Setting HTTP headers");
@@ -249,6 +269,13 @@ public class HttpSender extends AbstractSender {
          out.flush();
          out.close();
          requestConnection.getOutputStream().close();
+      } else if (filePayload != null && (method == Method.POST || method == Method.PUT)) {
+         if (chunk == null) {
+            chunk = new byte[64 * 1024];
+         }
+         try (OutputStream out = requestConnection.getOutputStream()) {
+            filePayload.writeTo(out, chunk);
+         }
       }
 
       respCode = requestConnection.getResponseCode();
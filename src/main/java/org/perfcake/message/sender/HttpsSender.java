@@ -19,20 +19,24 @@
  */
 package org.perfcake.message.sender;
 
-import org.perfcake.PerfCakeException;
 import org.perfcake.message.Message;
-import org.perfcake.util.Utils;
+import org.perfcake.reporting.MeasurementUnit;
 
-import java.io.InputStream;
-import java.security.KeyStore;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.Socket;
 import java.util.Map;
 import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.KeyManagerFactory;
-import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManagerFactory;
 
 /**
+ * The sender that is able to send the messages via HTTPS protocol. The SSL context is built only once and shared by all the senders
+ * with the same key and trust stores (see {@link SharedSslContext}), so that the connections that cannot be kept alive
+ * (see the <code>http.keepAlive</code> system property) can resume existing TLS sessions. The number of handshakes, the number of resumed handshakes
+ * and the time needed to establish a new connection including the handshake are reported with the results.
+ *
  * @author Martin Večeřa <marvenec@gmail.com>
  * @author Pavel Macík <pavel.macik@gmail.com>
  * @author Filip Eliáš <elfilip01@gmail.com>
@@ -43,14 +47,43 @@ public class HttpsSender extends HttpSender {
    private String keyStorePassword;
    private String trustStore;
    private String trustStorePassword;
-   private SSLSocketFactory sslFactory;
+
+   /**
+    * Size of the client TLS session cache, 0 means unlimited, a negative value keeps the JVM default.
+    */
+   private int sessionCacheSize = -1;
+
+   /**
+    * The SSL context shared among the senders.
+    */
+   private SharedSslContext sslContext;
+
+   /**
+    * Socket factory of the shared context that remembers the sockets created by this sender.
+    */
+   private TrackingSocketFactory sslFactory;
+
+   /**
+    * Duration of the connection establishment in milliseconds that has not been reported yet, negative when no new connection was opened.
+    */
+   private double handshakeTime = -1;
 
    public static final String KEYSTORES_DIR_PROPERTY = "perfcake.keystores.dir";
 
    @Override
    public void init() throws Exception {
       super.init();
-      sslFactory = initKeyStores();
+      sslContext = SharedSslContext.acquire(keyStore, keyStorePassword, trustStore, trustStorePassword, sessionCacheSize);
+      sslFactory = new TrackingSocketFactory(sslContext.getSocketFactory());
+   }
+
+   @Override
+   public void close() {
+      super.close();
+      if (sslContext != null) {
+         sslContext.release();
+         sslContext = null;
+      }
    }
 
    @Override
@@ -59,45 +92,29 @@ public class HttpsSender extends HttpSender {
       ((HttpsURLConnection) requestConnection).setSSLSocketFactory(sslFactory);
    }
 
-   private KeyStore initKeyStore(final String keyStoreLocation, final String keyStorePassword) throws Exception {
-      KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
-      try (InputStream is = Utils.locationToUrl(keyStoreLocation, KEYSTORES_DIR_PROPERTY, Utils.determineDefaultLocation("keystores"), "").openStream()) {
-         keyStore.load(is, keyStorePassword.toCharArray());
+   @Override
+   public Serializable doSend(final Message message, final Map<String, String> properties, final MeasurementUnit mu) throws Exception {
+      // connect explicitly to find out whether a new connection (and thus a handshake) was needed, the subsequent connect() in super.doSend() is a no-op
+      sslFactory.lastSocket = null;
+      final long startTime = System.currentTimeMillis();
+      final long start = System.nanoTime();
+      requestConnection.connect();
+      if (sslFactory.lastSocket != null) {
+         handshakeTime = (System.nanoTime() - start) / 1_000_000d;
+         sslContext.handshakeCompleted(sslFactory.lastSocket.getSession(), startTime);
       }
 
-      return keyStore;
+      return super.doSend(message, properties, mu);
    }
 
-   private SSLSocketFactory initKeyStores() throws Exception {
-      KeyStore keyStore_ = null;
-      KeyStore trustStore_ = null;
-      KeyManagerFactory keyManager = null;
-      TrustManagerFactory trustManager = null;
-
-      if (keyStore != null) {
-         if (keyStorePassword == null) {
-            throw new PerfCakeException("The keyStore password is not set. (Use keyStorePassword property of the HttpsSender to set it!)");
-         } else {
-            keyStore_ = initKeyStore(keyStore, keyStorePassword);
-            keyManager = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-            keyManager.init(keyStore_, keyStorePassword.toCharArray());
-         }
-      }
-
-      if (trustStore != null) {
-         if (trustStorePassword == null) {
-            throw new PerfCakeException("The trustStore password is not set. (Use trustStorePassword property of the HttpsSender to set it!)");
-         } else {
-            trustStore_ = initKeyStore(trustStore, trustStorePassword);
-            trustManager = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-            trustManager.init(trustStore_);
-         }
+   @Override
+   public void postSend(final Message message) throws Exception {
+      super.postSend(message);
+      final MeasurementUnit mu = getMeasurementUnit();
+      if (mu != null) {
+         sslContext.report(mu, handshakeTime);
+         handshakeTime = -1;
       }
-
-      SSLContext ctx = SSLContext.getInstance("TLS");
-      ctx.init(keyManager == null ? null : keyManager.getKeyManagers(), trustManager == null ? null : trustManager.getTrustManagers(), null);
-
-      return ctx.getSocketFactory();
    }
 
    public String getKeyStore() {
@@ -136,4 +153,84 @@ public class HttpsSender extends HttpSender {
       return this;
    }
 
+   /**
+    * Used to read the size of the client TLS session cache.
+    *
+    * @return The session cache size.
+    */
+   public int getSessionCacheSize() {
+      return sessionCacheSize;
+   }
+
+   /**
+    * Sets the size of the client TLS session cache. 0 means unlimited, a negative value keeps the JVM default.
+    *
+    * @param sessionCacheSize
+    *       The session cache size to set.
+    */
+   public HttpsSender setSessionCacheSize(final int sessionCacheSize) {
+      this.sessionCacheSize = sessionCacheSize;
+      return this;
+   }
+
+   /**
+    * Delegates to the shared socket factory and remembers the last SSL socket created.
+    */
+   private static class TrackingSocketFactory extends SSLSocketFactory {
+
+      private final SSLSocketFactory delegate;
+
+      private SSLSocket lastSocket;
+
+      private TrackingSocketFactory(final SSLSocketFactory delegate) {
+         this.delegate = delegate;
+      }
+
+      private Socket track(final Socket socket) {
+         if (socket instanceof SSLSocket) {
+            lastSocket = (SSLSocket) socket;
+         }
+         return socket;
+      }
+
+      @Override
+      public String[] getDefaultCipherSuites() {
+         return delegate.getDefaultCipherSuites();
+      }
+
+      @Override
+      public String[] getSupportedCipherSuites() {
+         return delegate.getSupportedCipherSuites();
+      }
+
+      @Override
+      public Socket createSocket() throws IOException {
+         return track(delegate.createSocket());
+      }
+
+      @Override
+      public Socket createSocket(final Socket s, final String host, final int port, final boolean autoClose) throws IOException {
+         return track(delegate.createSocket(s, host, port, autoClose));
+      }
+
+      @Override
+      public Socket createSocket(final String host, final int port) throws IOException {
+         return track(delegate.createSocket(host, port));
+      }
+
+      @Override
+      public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) throws IOException {
+         return track(delegate.createSocket(host, port, localHost, localPort));
+      }
+
+      @Override
+      public Socket createSocket(final InetAddress host, final int port) throws IOException {
+         return track(delegate.createSocket(host, port));
+      }
+
+      @Override
+      public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort) throws IOException {
+         return track(delegate.createSocket(address, port, localAddress, localPort));
+      }
+   }
 }
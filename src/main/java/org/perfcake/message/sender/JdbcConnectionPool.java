@@ -0,0 +1,371 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import org.perfcake.PerfCakeException;
+
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A pool of JDBC connections shared by all the {@link JdbcSender senders} with the same database URL and credentials.
+ * The pool is created with the first sender to be initialized and closed with the last sender to be closed.
+ * It keeps at least minSize connections open and opens at most maxSize connections. The connections idle for longer than
+ * the idle timeout are closed when the pool has more than minSize connections. The connections can be validated before
+ * they are borrowed.
+ */
+public class JdbcConnectionPool {
+
+   /**
+    * The logger.
+    */
+   private static final Logger log = Logger.getLogger(JdbcConnectionPool.class);
+
+   /**
+    * Pools currently in use, identified by their database URL and credentials.
+    */
+   private static final Map<String, JdbcConnectionPool> pools = new HashMap<>();
+
+   /**
+    * The key identifying this pool in {@link #pools}.
+    */
+   private final String key;
+
+   private final String jdbcUrl;
+
+   private final String username;
+
+   private final String password;
+
+   /**
+    * Minimal number of connections kept open.
+    */
+   private final int minSize;
+
+   /**
+    * Maximal number of connections opened.
+    */
+   private final int maxSize;
+
+   /**
+    * Time in milliseconds after which an idle connection above the minimal pool size is closed.
+    */
+   private final long idleTimeout;
+
+   /**
+    * Maximal time in milliseconds to wait for a connection.
+    */
+   private final long borrowTimeout;
+
+   /**
+    * Timeout of the connection validation in seconds, negative value disables the validation.
+    */
+   private final int validationTimeout;
+
+   /**
+    * Idle connections, the most recently returned first.
+    */
+   private final Deque<PooledConnection> idle = new ArrayDeque<>();
+
+   /**
+    * Number of connections opened, or being opened, by this pool.
+    */
+   private int size = 0;
+
+   /**
+    * Number of the senders using this pool.
+    */
+   private int references = 0;
+
+   private JdbcConnectionPool(final String key, final String jdbcUrl, final String username, final String password, final int minSize, final int maxSize, final long idleTimeout, final long borrowTimeout, final int validationTimeout) {
+      this.key = key;
+      this.jdbcUrl = jdbcUrl;
+      this.username = username;
+      this.password = password;
+      this.minSize = minSize;
+      this.maxSize = maxSize;
+      this.idleTimeout = idleTimeout;
+      this.borrowTimeout = borrowTimeout;
+      this.validationTimeout = validationTimeout;
+   }
+
+   /**
+    * Gets the shared pool for the given database. The pool is created and filled with minSize connections when there is no such pool yet,
+    * otherwise the sizing parameters are ignored. Each call must be paired with a call to {@link #release()}.
+    *
+    * @param jdbcUrl
+    *       The JDBC URL of the database.
+    * @param username
+    *       The database user name.
+    * @param password
+    *       The database user password.
+    * @param minSize
+    *       Minimal number of connections kept open.
+    * @param maxSize
+    *       Maximal number of connections opened.
+    * @param idleTimeout
+    *       Time in milliseconds after which an idle connection above the minimal pool size is closed.
+    * @param borrowTimeout
+    *       Maximal time in milliseconds to wait for a connection.
+    * @param validationTimeout
+    *       Timeout of the connection validation in seconds, negative value disables the validation.
+    * @return The shared pool.
+    * @throws SQLException
+    *       When it was not possible to open the initial connections.
+    */
+   public static synchronized JdbcConnectionPool acquire(final String jdbcUrl, final String username, final String password, final int minSize, final int maxSize, final long idleTimeout, final long borrowTimeout, final int validationTimeout) throws SQLException {
+      final String key = jdbcUrl + ":" + username + ":" + password;
+      JdbcConnectionPool pool = pools.get(key);
+
+      if (pool == null) {
+         pool = new JdbcConnectionPool(key, jdbcUrl, username, password, minSize, Math.max(maxSize, 1), idleTimeout, borrowTimeout, validationTimeout);
+         for (int i = 0; i < minSize; i++) {
+            pool.idle.push(new PooledConnection(DriverManager.getConnection(jdbcUrl, username, password)));
+            pool.size++;
+         }
+         pools.put(key, pool);
+
+         if (log.isDebugEnabled()) {
+            log.debug(String.format("Created a connection pool for %s (minSize=%d, maxSize=%d).", jdbcUrl, minSize, maxSize));
+         }
+      }
+      pool.references++;
+
+      return pool;
+   }
+
+   /**
+    * Releases the pool. When no sender uses the pool any longer, all the idle connections are closed.
+    */
+   public void release() {
+      synchronized (JdbcConnectionPool.class) {
+         if (--references == 0) {
+            pools.remove(key);
+
+            synchronized (this) {
+               if (log.isDebugEnabled()) {
+                  log.debug(String.format("Closing a connection pool for %s with %d connections.", jdbcUrl, size));
+               }
+
+               for (PooledConnection pooledConnection : idle) {
+                  pooledConnection.close();
+               }
+               idle.clear();
+               size = 0;
+            }
+         }
+      }
+   }
+
+   /**
+    * Borrows a connection from the pool. When there is no idle connection and the pool is full, waits for a connection to be returned.
+    *
+    * @return The borrowed connection.
+    * @throws SQLException
+    *       When it was not possible to open a new connection.
+    * @throws PerfCakeException
+    *       When no connection was available within the borrow timeout.
+    * @throws InterruptedException
+    *       When interrupted while waiting for a connection.
+    */
+   public PooledConnection borrow() throws SQLException, PerfCakeException, InterruptedException {
+      final long deadline = System.currentTimeMillis() + borrowTimeout;
+
+      while (true) {
+         PooledConnection pooledConnection = null;
+
+         synchronized (this) {
+            while (idle.isEmpty() && size >= maxSize) {
+               final long remaining = deadline - System.currentTimeMillis();
+               if (remaining <= 0) {
+                  throw new PerfCakeException(String.format("No connection to %s available within %d ms (maximal pool size is %d).", jdbcUrl, borrowTimeout, maxSize));
+               }
+               wait(remaining);
+            }
+
+            if (idle.isEmpty()) {
+               size++; // reserve a slot for the new connection
+            } else {
+               pooledConnection = idle.pop();
+            }
+         }
+
+         if (pooledConnection == null) {
+            try {
+               return new PooledConnection(DriverManager.getConnection(jdbcUrl, username, password));
+            } catch (SQLException e) {
+               discard(null);
+               throw e;
+            }
+         }
+
+         if (validationTimeout < 0 || isValid(pooledConnection)) {
+            return pooledConnection;
+         }
+
+         log.warn("Discarding an invalid connection to " + jdbcUrl);
+         discard(pooledConnection);
+      }
+   }
+
+   private boolean isValid(final PooledConnection pooledConnection) {
+      try {
+         return pooledConnection.connection.isValid(validationTimeout);
+      } catch (SQLException e) {
+         return false;
+      }
+   }
+
+   /**
+    * Returns the borrowed connection to the pool and closes the connections that were idle for too long.
+    *
+    * @param pooledConnection
+    *       The connection being returned.
+    */
+   public void giveBack(final PooledConnection pooledConnection) {
+      final long now = System.currentTimeMillis();
+      pooledConnection.lastUsed = now;
+
+      synchronized (this) {
+         if (references == 0) { // the pool is already closed
+            pooledConnection.close();
+            return;
+         }
+
+         idle.push(pooledConnection);
+
+         // the least recently used connections are at the end
+         final Iterator<PooledConnection> it = idle.descendingIterator();
+         while (size > minSize && it.hasNext()) {
+            final PooledConnection candidate = it.next();
+            if (now - candidate.lastUsed < idleTimeout) {
+               break;
+            }
+            it.remove();
+            size--;
+            candidate.close();
+         }
+
+         notify();
+      }
+   }
+
+   /**
+    * Closes a broken connection and frees its slot in the pool.
+    *
+    * @param pooledConnection
+    *       The connection to discard, or null when the connection was not opened at all.
+    */
+   public void discard(final PooledConnection pooledConnection) {
+      if (pooledConnection != null) {
+         pooledConnection.close();
+      }
+
+      synchronized (this) {
+         size--;
+         notify();
+      }
+   }
+
+   /**
+    * Gets the number of connections currently opened by the pool.
+    *
+    * @return The pool size.
+    */
+   public synchronized int getSize() {
+      return size;
+   }
+
+   /**
+    * Gets the number of idle connections.
+    *
+    * @return The number of idle connections.
+    */
+   public synchronized int getIdle() {
+      return idle.size();
+   }
+
+   /**
+    * A connection managed by the pool along with the prepared statements cached for it.
+    */
+   public static class PooledConnection {
+
+      private final Connection connection;
+
+      /**
+       * Prepared statements cached for this connection.
+       */
+      private Map<String, PreparedStatement> statementCache;
+
+      /**
+       * When the connection was returned to the pool for the last time.
+       */
+      private long lastUsed;
+
+      private PooledConnection(final Connection connection) {
+         this.connection = connection;
+      }
+
+      /**
+       * Gets the JDBC connection.
+       *
+       * @return The connection.
+       */
+      public Connection getConnection() {
+         return connection;
+      }
+
+      /**
+       * Gets the cache of the prepared statements for this connection.
+       *
+       * @return The statement cache, or null when no cache was set yet.
+       */
+      public Map<String, PreparedStatement> getStatementCache() {
+         return statementCache;
+      }
+
+      /**
+       * Sets the cache of the prepared statements for this connection.
+       *
+       * @param statementCache
+       *       The statement cache.
+       */
+      public void setStatementCache(final Map<String, PreparedStatement> statementCache) {
+         this.statementCache = statementCache;
+      }
+
+      private void close() {
+         try {
+            connection.close();
+         } catch (SQLException e) {
+            log.warn("Cannot close connection: " + e.getMessage());
+         }
+      }
+   }
+}
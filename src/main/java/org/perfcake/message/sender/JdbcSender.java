@@ -19,6 +19,7 @@
  */
 package org.perfcake.message.sender;
 
+import org.perfcake.PerfCakeException;
 import org.perfcake.message.Message;
 import org.perfcake.reporting.MeasurementUnit;
 
@@ -27,15 +28,31 @@ import org.apache.log4j.Logger;
 import java.io.Serializable;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * The sender that is able to send SQL queries via JDBC.
  * <p/>
+ * In the prepared mode, the SQL query can contain <code>?</code> placeholders. The query is prepared only once and the prepared statements
+ * are cached for the connection (the least recently used statement is closed when the cache is full). The placeholders are bound to the values
+ * of message properties or headers named by the parameters property.
+ * <p/>
+ * With batchSize greater than 1, the update statements are accumulated and executed together in a batch once the batch is full.
+ * Only the message that completes the batch carries the execution time. In the streaming mode, the result set is read row by row
+ * using the configured fetch size without holding it in memory, and the time to the first row and the time to drain the whole result set
+ * are reported separately. Note that some drivers (e.g. PostgreSQL) stream the results only outside of the auto-commit mode.
+ * The total number of rows read or updated and the rows rate are reported for each message.
+ * <p/>
+ * In the pooled mode, the senders with the same database share a {@link JdbcConnectionPool} and borrow a connection for each message
+ * (a connection with a pending batch is kept until the batch is executed). The time spent waiting for the connection is reported
+ * separately from the query time.
+ * <p/>
  * TODO: Report individual result lines to result validator
  *
  * @author Pavel Macík <pavel.macik@gmail.com>
@@ -47,6 +64,36 @@ public class JdbcSender extends AbstractSender {
     */
    private static final Logger log = Logger.getLogger(JdbcSender.class);
 
+   /**
+    * Result name for the total number of rows read or updated.
+    */
+   public static final String ROWS = "Rows";
+
+   /**
+    * Result name for the rate of rows read or updated.
+    */
+   public static final String ROW_RATE = "RowRate";
+
+   /**
+    * Result name for the time to the first row of the result set in the streaming mode in milliseconds.
+    */
+   public static final String FIRST_ROW_TIME = "FirstRowTime";
+
+   /**
+    * Result name for the time to read the whole result set in the streaming mode in milliseconds.
+    */
+   public static final String DRAIN_TIME = "DrainTime";
+
+   /**
+    * Result name for the time spent waiting for a pooled connection in milliseconds.
+    */
+   public static final String POOL_WAIT_TIME = "PoolWaitTime";
+
+   /**
+    * Timeout of the validation of pooled connections in seconds.
+    */
+   private static final int VALIDATION_TIMEOUT = 5;
+
    /**
     * JDBC URL string.
     */
@@ -77,6 +124,121 @@ public class JdbcSender extends AbstractSender {
     */
    private Statement statement;
 
+   /**
+    * Whether to use prepared statements.
+    */
+   private boolean prepared = false;
+
+   /**
+    * Comma separated list of names of message properties or headers whose values are bound to the placeholders in the prepared mode.
+    */
+   private String parameters = "";
+
+   /**
+    * Names of the bound parameters parsed from {@link #parameters}.
+    */
+   private String[] parameterNames = new String[0];
+
+   /**
+    * Maximal number of prepared statements cached for the connection.
+    */
+   private int statementCacheSize = 32;
+
+   /**
+    * Prepared statements cached for the connection, in the least recently used order.
+    */
+   private StatementCache statementCache;
+
+   /**
+    * Number of statements executed together in a batch, 1 means no batching.
+    */
+   private int batchSize = 1;
+
+   /**
+    * The statement with the pending batch.
+    */
+   private Statement batchStatement;
+
+   /**
+    * Number of statements in the pending batch.
+    */
+   private int batchCount = 0;
+
+   /**
+    * Whether to read the result sets row by row.
+    */
+   private boolean streaming = false;
+
+   /**
+    * The fetch size hint for the driver, 0 means the driver default.
+    */
+   private int fetchSize = 0;
+
+   /**
+    * Number of rows read or updated by the last message.
+    */
+   private long rows = 0;
+
+   /**
+    * Time to the first row of the last result set in milliseconds, negative when not measured.
+    */
+   private double firstRowTime = -1;
+
+   /**
+    * Time to read the whole last result set in milliseconds, negative when not measured.
+    */
+   private double drainTime = -1;
+
+   /**
+    * Counter of the rows shared with the other senders.
+    */
+   private SharedCounter counter;
+
+   /**
+    * Whether to borrow the connections from a shared pool.
+    */
+   private boolean pooled = false;
+
+   /**
+    * Minimal number of connections kept open by the pool.
+    */
+   private int poolMinSize = 0;
+
+   /**
+    * Maximal number of connections opened by the pool.
+    */
+   private int poolMaxSize = 10;
+
+   /**
+    * Time in milliseconds after which an idle connection above the minimal pool size is closed.
+    */
+   private long poolIdleTimeout = 60000;
+
+   /**
+    * Maximal time in milliseconds to wait for a pooled connection.
+    */
+   private long poolBorrowTimeout = 30000;
+
+   /**
+    * Whether to validate the pooled connections before they are borrowed.
+    */
+   private boolean validateOnBorrow = true;
+
+   /**
+    * The shared connection pool.
+    */
+   private JdbcConnectionPool pool;
+
+   /**
+    * The connection currently borrowed from the pool.
+    */
+   private JdbcConnectionPool.PooledConnection pooledConnection;
+
+   /**
+    * Time spent waiting for the pooled connection of the last message in milliseconds, negative when no connection was borrowed.
+    */
+   private double poolWaitTime = -1;
+
    /*
     * (non-Javadoc)
     *
@@ -86,7 +248,62 @@ public class JdbcSender extends AbstractSender {
    public void init() throws Exception {
       this.jdbcUrl = target;
       Class.forName(driverClass);
-      connection = DriverManager.getConnection(jdbcUrl, username, password);
+      if (pooled) {
+         pool = JdbcConnectionPool.acquire(jdbcUrl, username, password, poolMinSize, poolMaxSize, poolIdleTimeout, poolBorrowTimeout, validateOnBorrow ? VALIDATION_TIMEOUT : -1);
+      } else {
+         connection = DriverManager.getConnection(jdbcUrl, username, password);
+      }
+
+      counter = SharedCounter.acquire(ROWS, target);
+      counter.start();
+   }
+
+   /**
+    * Borrows a connection from the pool and measures the time spent waiting for it.
+    *
+    * @throws Exception
+    *       When it was not possible to obtain a connection.
+    */
+   private void borrowConnection() throws Exception {
+      final long start = System.nanoTime();
+      pooledConnection = pool.borrow();
+      poolWaitTime = (System.nanoTime() - start) / 1_000_000d;
+
+      connection = pooledConnection.getConnection();
+      statementCache = (StatementCache) pooledConnection.getStatementCache();
+      if (statementCache == null) {
+         statementCache = new StatementCache(statementCacheSize);
+         pooledConnection.setStatementCache(statementCache);
+      }
+   }
+
+   /**
+    * Returns the borrowed connection to the pool.
+    */
+   private void returnConnection() {
+      if (batchStatement != null && !prepared) {
+         closeStatement(batchStatement);
+      }
+      batchStatement = null;
+
+      pool.giveBack(pooledConnection);
+      pooledConnection = null;
+      connection = null;
+      statementCache = null;
+   }
+
+   /**
+    * Closes the statement and logs any error.
+    *
+    * @param statement
+    *       The statement to close.
+    */
+   private static void closeStatement(final Statement statement) {
+      try {
+         statement.close();
+      } catch (SQLException ex) {
+         log.warn("Cannot close statement: " + ex.getMessage());
+      }
    }
 
    /*
@@ -96,6 +313,39 @@ public class JdbcSender extends AbstractSender {
     */
    @Override
    public void close() {
+      if (batchCount > 0) {
+         try {
+            executeBatch();
+         } catch (SQLException ex) {
+            log.error("Cannot execute the remaining batch: " + ex.getMessage());
+         }
+      }
+      if (counter != null) {
+         counter.release();
+         counter = null;
+      }
+
+      if (pool != null) {
+         if (pooledConnection != null) {
+            returnConnection();
+         }
+         pool.release();
+         pool = null;
+         return;
+      }
+
+      if (batchStatement != null && !prepared) {
+         closeStatement(batchStatement);
+      }
+      batchStatement = null;
+
+      if (statementCache != null) {
+         for (PreparedStatement cached : statementCache.values()) {
+            closeStatement(cached);
+         }
+         statementCache = null;
+      }
+
       try {
          connection.close();
       } catch (SQLException ex) {
@@ -111,7 +361,68 @@ public class JdbcSender extends AbstractSender {
    @Override
    public void preSend(final Message message, final Map<String, String> properties) throws Exception {
       super.preSend(message, properties);
-      statement = connection.createStatement();
+      statement = null;
+      if (pool != null && pooledConnection == null) {
+         borrowConnection();
+      }
+
+      if (prepared) {
+         statement = prepareStatement((String) message.getPayload(), message, properties);
+      } else if (batchSize > 1) {
+         if (batchStatement == null) {
+            batchStatement = connection.createStatement();
+         }
+         statement = batchStatement;
+      } else {
+         statement = connection.createStatement();
+         if (fetchSize > 0) {
+            statement.setFetchSize(fetchSize);
+         }
+      }
+   }
+
+   /**
+    * Gets the prepared statement for the SQL query from the cache (or prepares a new one) and binds the parameters.
+    *
+    * @param sql
+    *       The SQL query.
+    * @param message
+    *       The message with properties and headers to be bound.
+    * @param properties
+    *       Additional properties that take precedence over the message properties and headers.
+    * @return The prepared statement ready to be executed.
+    * @throws SQLException
+    *       When it was not possible to prepare the statement or bind the parameters.
+    * @throws PerfCakeException
+    *       When there is no value for a parameter.
+    */
+   private PreparedStatement prepareStatement(final String sql, final Message message, final Map<String, String> properties) throws SQLException, PerfCakeException {
+      if (statementCache == null) {
+         statementCache = new StatementCache(statementCacheSize);
+      }
+
+      PreparedStatement preparedStatement = statementCache.get(sql);
+      if (preparedStatement == null) {
+         preparedStatement = connection.prepareStatement(sql);
+         if (fetchSize > 0) {
+            preparedStatement.setFetchSize(fetchSize);
+         }
+         statementCache.put(sql, preparedStatement);
+      }
+
+      for (int i = 0; i < parameterNames.length; i++) {
+         final String name = parameterNames[i];
+         String value = properties == null ? null : properties.get(name);
+         if (value == null) {
+            value = message.getProperty(name, message.getHeader(name));
+         }
+         if (value == null) {
+            throw new PerfCakeException(String.format("There is no message property or header named %s to be bound to the SQL query.", name));
+         }
+         preparedStatement.setString(i + 1, value);
+      }
+
+      return preparedStatement;
    }
 
    /*
@@ -121,11 +432,20 @@ public class JdbcSender extends AbstractSender {
     */
    @Override
    public Serializable doSend(final Message message, final Map<String, String> properties, final MeasurementUnit mu) throws Exception {
-      boolean result = statement.execute((String) message.getPayload());
+      if (batchSize > 1) {
+         return addToBatch(message);
+      }
+
+      final long start = System.nanoTime();
+      boolean result = prepared ? ((PreparedStatement) statement).execute() : statement.execute((String) message.getPayload());
       Serializable retVal;
       if (result) {
          ResultSet resultSet = statement.getResultSet();
 
+         if (streaming) {
+            return drain(resultSet, start);
+         }
+
          if (log.isDebugEnabled()) {
             ResultSetMetaData rsmd = resultSet.getMetaData();
             int columnCount = rsmd.getColumnCount();
@@ -154,12 +474,96 @@ public class JdbcSender extends AbstractSender {
 
          retVal = resultSet.toString();
       } else {
-         retVal = statement.getUpdateCount();
+         final int updateCount = statement.getUpdateCount();
+         rows = Math.max(updateCount, 0);
+         retVal = updateCount;
       }
 
       return retVal;
    }
 
+   /**
+    * Reads the whole result set row by row and measures the time to the first row and to the last row.
+    *
+    * @param resultSet
+    *       The result set to read.
+    * @param start
+    *       Time of the statement execution start in nanoseconds.
+    * @return The number of rows read.
+    * @throws SQLException
+    *       When it was not possible to read the result set.
+    */
+   private Integer drain(final ResultSet resultSet, final long start) throws SQLException {
+      int rowCount = 0;
+      try (ResultSet rs = resultSet) {
+         if (rs.next()) {
+            firstRowTime = (System.nanoTime() - start) / 1_000_000d;
+            do {
+               rowCount++;
+            } while (rs.next());
+         }
+      }
+      drainTime = (System.nanoTime() - start) / 1_000_000d;
+      rows = rowCount;
+
+      return rowCount;
+   }
+
+   /**
+    * Adds the current statement to the batch and executes the batch when it is full.
+    * A pending batch of a different prepared statement is executed first.
+    *
+    * @param message
+    *       The message with the SQL query.
+    * @return The number of rows updated by the batch, or null when the batch was not executed.
+    * @throws SQLException
+    *       When it was not possible to add the statement to the batch or to execute the batch.
+    */
+   private Integer addToBatch(final Message message) throws SQLException {
+      int updated = 0;
+      if (batchCount > 0 && batchStatement != statement) {
+         updated = executeBatch();
+      }
+
+      if (prepared) {
+         ((PreparedStatement) statement).addBatch();
+         statementCache.pendingBatch = statement;
+      } else {
+         statement.addBatch((String) message.getPayload());
+      }
+      batchStatement = statement;
+
+      if (++batchCount >= batchSize) {
+         return updated + executeBatch();
+      }
+
+      return updated > 0 ? updated : null;
+   }
+
+   /**
+    * Executes the pending batch.
+    *
+    * @return The number of rows updated. Statements that succeeded without the information about the number of rows count as a single row.
+    * @throws SQLException
+    *       When it was not possible to execute the batch.
+    */
+   private int executeBatch() throws SQLException {
+      int updated = 0;
+      try {
+         for (int count : batchStatement.executeBatch()) {
+            updated += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+         }
+      } finally {
+         batchCount = 0;
+         if (statementCache != null) {
+            statementCache.pendingBatch = null;
+         }
+      }
+      rows += updated;
+
+      return updated;
+   }
+
    /*
     * (non-Javadoc)
     *
@@ -168,7 +572,33 @@ public class JdbcSender extends AbstractSender {
    @Override
    public void postSend(final Message message) throws Exception {
       super.postSend(message);
-      statement.close();
+      if (!prepared && batchSize <= 1 && statement != null) {
+         closeStatement(statement);
+      }
+
+      final MeasurementUnit mu = getMeasurementUnit();
+      if (mu != null && counter != null) {
+         counter.add(rows);
+         counter.report(mu, ROWS, ROW_RATE, "rows/s");
+         if (firstRowTime >= 0) {
+            mu.appendResult(FIRST_ROW_TIME, firstRowTime);
+         }
+         if (drainTime >= 0) {
+            mu.appendResult(DRAIN_TIME, drainTime);
+         }
+         if (poolWaitTime >= 0) {
+            mu.appendResult(POOL_WAIT_TIME, poolWaitTime);
+         }
+      }
+      rows = 0;
+      firstRowTime = -1;
+      drainTime = -1;
+      poolWaitTime = -1;
+
+      // keep the connection while there is a pending batch
+      if (pooledConnection != null && batchCount == 0) {
+         returnConnection();
+      }
    }
 
    /**
@@ -251,4 +681,275 @@ public class JdbcSender extends AbstractSender {
       return this;
    }
 
+   /**
+    * Used to read the value of prepared.
+    *
+    * @return The prepared.
+    */
+   public boolean isPrepared() {
+      return prepared;
+   }
+
+   /**
+    * Sets the value of prepared. In the prepared mode, the SQL queries are executed as prepared statements.
+    *
+    * @param prepared
+    *       The prepared to set.
+    */
+   public JdbcSender setPrepared(final boolean prepared) {
+      this.prepared = prepared;
+      return this;
+   }
+
+   /**
+    * Used to read the value of parameters.
+    *
+    * @return The parameters.
+    */
+   public String getParameters() {
+      return parameters;
+   }
+
+   /**
+    * Sets the value of parameters. This is a comma separated list of names of message properties or headers whose values
+    * are bound to the placeholders of the prepared statement in the given order.
+    *
+    * @param parameters
+    *       The parameters to set.
+    */
+   public JdbcSender setParameters(final String parameters) {
+      this.parameters = parameters;
+      this.parameterNames = parameters.trim().isEmpty() ? new String[0] : parameters.trim().split("\\s*,\\s*");
+      return this;
+   }
+
+   /**
+    * Used to read the value of statementCacheSize.
+    *
+    * @return The statementCacheSize.
+    */
+   public int getStatementCacheSize() {
+      return statementCacheSize;
+   }
+
+   /**
+    * Sets the value of statementCacheSize. This is the maximal number of prepared statements cached for the connection.
+    *
+    * @param statementCacheSize
+    *       The statementCacheSize to set.
+    */
+   public JdbcSender setStatementCacheSize(final int statementCacheSize) {
+      this.statementCacheSize = statementCacheSize;
+      return this;
+   }
+
+   /**
+    * Used to read the value of batchSize.
+    *
+    * @return The batchSize.
+    */
+   public int getBatchSize() {
+      return batchSize;
+   }
+
+   /**
+    * Sets the value of batchSize. This is the number of statements executed together in a batch, 1 means no batching.
+    *
+    * @param batchSize
+    *       The batchSize to set.
+    */
+   public JdbcSender setBatchSize(final int batchSize) {
+      this.batchSize = batchSize;
+      return this;
+   }
+
+   /**
+    * Used to read the value of streaming.
+    *
+    * @return The streaming.
+    */
+   public boolean isStreaming() {
+      return streaming;
+   }
+
+   /**
+    * Sets the value of streaming. In the streaming mode, the result sets are read row by row and the number of rows is returned.
+    *
+    * @param streaming
+    *       The streaming to set.
+    */
+   public JdbcSender setStreaming(final boolean streaming) {
+      this.streaming = streaming;
+      return this;
+   }
+
+   /**
+    * Used to read the value of fetchSize.
+    *
+    * @return The fetchSize.
+    */
+   public int getFetchSize() {
+      return fetchSize;
+   }
+
+   /**
+    * Sets the value of fetchSize. This is the number of rows fetched from the database at once, 0 means the driver default.
+    *
+    * @param fetchSize
+    *       The fetchSize to set.
+    */
+   public JdbcSender setFetchSize(final int fetchSize) {
+      this.fetchSize = fetchSize;
+      return this;
+   }
+
+   /**
+    * Used to read the value of pooled.
+    *
+    * @return The pooled.
+    */
+   public boolean isPooled() {
+      return pooled;
+   }
+
+   /**
+    * Sets the value of pooled. In the pooled mode, the connections are borrowed for each message from a pool shared by the senders with the same database.
+    *
+    * @param pooled
+    *       The pooled to set.
+    */
+   public JdbcSender setPooled(final boolean pooled) {
+      this.pooled = pooled;
+      return this;
+   }
+
+   /**
+    * Used to read the value of poolMinSize.
+    *
+    * @return The poolMinSize.
+    */
+   public int getPoolMinSize() {
+      return poolMinSize;
+   }
+
+   /**
+    * Sets the value of poolMinSize. This is the minimal number of connections kept open by the pool.
+    *
+    * @param poolMinSize
+    *       The poolMinSize to set.
+    */
+   public JdbcSender setPoolMinSize(final int poolMinSize) {
+      this.poolMinSize = poolMinSize;
+      return this;
+   }
+
+   /**
+    * Used to read the value of poolMaxSize.
+    *
+    * @return The poolMaxSize.
+    */
+   public int getPoolMaxSize() {
+      return poolMaxSize;
+   }
+
+   /**
+    * Sets the value of poolMaxSize. This is the maximal number of connections opened by the pool.
+    *
+    * @param poolMaxSize
+    *       The poolMaxSize to set.
+    */
+   public JdbcSender setPoolMaxSize(final int poolMaxSize) {
+      this.poolMaxSize = poolMaxSize;
+      return this;
+   }
+
+   /**
+    * Used to read the value of poolIdleTimeout.
+    *
+    * @return The poolIdleTimeout.
+    */
+   public long getPoolIdleTimeout() {
+      return poolIdleTimeout;
+   }
+
+   /**
+    * Sets the value of poolIdleTimeout. This is the time in milliseconds after which an idle connection above the minimal pool size is closed.
+    *
+    * @param poolIdleTimeout
+    *       The poolIdleTimeout to set.
+    */
+   public JdbcSender setPoolIdleTimeout(final long poolIdleTimeout) {
+      this.poolIdleTimeout = poolIdleTimeout;
+      return this;
+   }
+
+   /**
+    * Used to read the value of poolBorrowTimeout.
+    *
+    * @return The poolBorrowTimeout.
+    */
+   public long getPoolBorrowTimeout() {
+      return poolBorrowTimeout;
+   }
+
+   /**
+    * Sets the value of poolBorrowTimeout. This is the maximal time in milliseconds to wait for a pooled connection.
+    *
+    * @param poolBorrowTimeout
+    *       The poolBorrowTimeout to set.
+    */
+   public JdbcSender setPoolBorrowTimeout(final long poolBorrowTimeout) {
+      this.poolBorrowTimeout = poolBorrowTimeout;
+      return this;
+   }
+
+   /**
+    * Used to read the value of validateOnBorrow.
+    *
+    * @return The validateOnBorrow.
+    */
+   public boolean isValidateOnBorrow() {
+      return validateOnBorrow;
+   }
+
+   /**
+    * Sets the value of validateOnBorrow. When true, the pooled connections are validated before they are borrowed.
+    *
+    * @param validateOnBorrow
+    *       The validateOnBorrow to set.
+    */
+   public JdbcSender setValidateOnBorrow(final boolean validateOnBorrow) {
+      this.validateOnBorrow = validateOnBorrow;
+      return this;
+   }
+
+   /**
+    * Cache of prepared statements of a single connection. When full, the least recently used statement is closed,
+    * unless it has a pending batch.
+    */
+   private static class StatementCache extends LinkedHashMap<String, PreparedStatement> {
+
+      private static final long serialVersionUID = 1L;
+
+      private final int maxSize;
+
+      /**
+       * The statement with a pending batch that must not be evicted.
+       */
+      private transient Statement pendingBatch;
+
+      private StatementCache(final int maxSize) {
+         super(16, 0.75f, true);
+         this.maxSize = maxSize;
+      }
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, PreparedStatement> eldest) {
+         if (size() > maxSize && eldest.getValue() != pendingBatch) {
+            closeStatement(eldest.getValue());
+            return true;
+         }
+         return false;
+      }
+   }
 }
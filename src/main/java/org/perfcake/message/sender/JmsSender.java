@@ -19,15 +19,27 @@
  */
 package org.perfcake.message.sender;
 
+import org.perfcake.PerfCakeConst;
 import org.perfcake.PerfCakeException;
 import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.util.Utils;
 
 import org.apache.log4j.Logger;
 
 import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
@@ -43,6 +55,17 @@ import javax.naming.NamingException;
 
 /**
  * The sender that is able to send messages via JMS.
+ * <p/>
+ * In a transacted session, the messages are committed once per commitBatchSize messages and/or once the commitInterval elapsed
+ * since the last commit (by default only when the sender is closed). The commit is a part of the measured time of the message
+ * that triggered it and the commit duration is reported separately.
+ * <p/>
+ * In the asynchronous mode, the messages are sent without waiting for the provider acknowledgement, which requires a JMS 2.0 provider
+ * on the class path. The time from the send to its completion is reported, as well as the number of failed sends.
+ * <p/>
+ * To reduce the client side overhead, the JMS message can be reused as long as the sender gets the same message instance
+ * (i.e. the message template has no dynamic parts), only the additional per-message properties are updated then. With the sharedConnection
+ * property set, all the senders with the same connection settings share a single JMS connection and each of them creates its own session.
  *
  * @author Martin Večeřa <marvenec@gmail.com>
  * @author Pavel Macík <pavel.macik@gmail.com>
@@ -62,6 +85,36 @@ public class JmsSender extends AbstractSender {
     */
    private static final Logger log = Logger.getLogger(JmsSender.class);
 
+   /**
+    * Result name for the duration of the commit in milliseconds.
+    */
+   public static final String COMMIT_TIME = "CommitTime";
+
+   /**
+    * Result name for the duration of the last completed asynchronous send in milliseconds.
+    */
+   public static final String COMPLETION_TIME = "CompletionTime";
+
+   /**
+    * Result name for the number of failed asynchronous sends.
+    */
+   public static final String SEND_FAILURES = "SendFailures";
+
+   /**
+    * The JMS 2.0 completion listener interface used for asynchronous sends.
+    */
+   private static final String COMPLETION_LISTENER_CLASS = "javax.jms.CompletionListener";
+
+   /**
+    * Counters of the failed asynchronous sends shared by the senders with the same target.
+    */
+   private static final ConcurrentMap<String, AtomicLong> sharedFailures = new ConcurrentHashMap<>();
+
+   /**
+    * JMS connections shared by the senders, identified by the connection settings.
+    */
+   private static final Map<String, SharedConnection> sharedConnections = new HashMap<>();
+
    /**
     * JMS initial context.
     */
@@ -158,6 +211,81 @@ public class JmsSender extends AbstractSender {
     */
    protected Message mess = null;
 
+   /**
+    * Number of messages committed together in a transacted session, 0 means no limit.
+    */
+   protected int commitBatchSize = 0;
+
+   /**
+    * Maximal time between two commits in milliseconds in a transacted session, 0 means no limit.
+    */
+   protected long commitInterval = 0;
+
+   /**
+    * Number of messages sent since the last commit.
+    */
+   private int uncommitted = 0;
+
+   /**
+    * Time of the last commit.
+    */
+   private long lastCommit = System.currentTimeMillis();
+
+   /**
+    * Duration of the commit performed for the last message in milliseconds, negative when there was no commit.
+    */
+   private double commitTime = -1;
+
+   /**
+    * Whether to send the messages asynchronously.
+    */
+   protected boolean async = false;
+
+   /**
+    * The JMS 2.0 method for asynchronous send.
+    */
+   private Method asyncSendMethod;
+
+   /**
+    * The completion listener for asynchronous sends.
+    */
+   private Object completionListener;
+
+   /**
+    * Start times of the asynchronous sends waiting for completion in nanoseconds. The provider completes the sends of a producer in order.
+    */
+   private final Queue<Long> inFlight = new ConcurrentLinkedQueue<>();
+
+   /**
+    * Duration of the last completed asynchronous send in nanoseconds, negative when there was none.
+    */
+   private volatile long lastCompletionTime = -1;
+
+   /**
+    * Number of failed asynchronous sends shared with the other senders.
+    */
+   private AtomicLong failures;
+
+   /**
+    * Whether to reuse the JMS message when the same message is sent repeatedly.
+    */
+   protected boolean reuseMessage = false;
+
+   /**
+    * The message the current JMS message was created from.
+    */
+   private org.perfcake.message.Message lastMessage;
+
+   /**
+    * Whether to share the JMS connection with the other senders.
+    */
+   protected boolean sharedConnection = false;
+
+   /**
+    * The shared connection used by this sender.
+    */
+   private SharedConnection sharedConnectionHolder;
+
    /**
     * Creates a new instance of JmsSender.
     */
@@ -197,10 +325,10 @@ public class JmsSender extends AbstractSender {
          }
 
          qcf = (ConnectionFactory) ctx.lookup(connectionFactory);
-         if (checkCredentials(username, password)) {
-            connection = qcf.createConnection(username, password);
+         if (sharedConnection) {
+            connection = acquireSharedConnection(ctxProps);
          } else {
-            connection = qcf.createConnection();
+            connection = createConnection();
          }
          destination = (Destination) ctx.lookup(target);
          if (replyTo != null && !"".equals(replyTo)) {
@@ -213,6 +341,139 @@ public class JmsSender extends AbstractSender {
       } catch (JMSException | NamingException | RuntimeException e) {
          throw new PerfCakeException(e);
       }
+
+      lastCommit = System.currentTimeMillis();
+      if (async) {
+         initAsyncSend();
+      }
+   }
+
+   /**
+    * Creates a new JMS connection.
+    *
+    * @return The new connection.
+    * @throws JMSException
+    *       When the connection cannot be created.
+    * @throws PerfCakeException
+    *       When only one of the credentials is set.
+    */
+   private Connection createConnection() throws JMSException, PerfCakeException {
+      if (checkCredentials(username, password)) {
+         return qcf.createConnection(username, password);
+      } else {
+         return qcf.createConnection();
+      }
+   }
+
+   /**
+    * Gets the connection shared by the senders with the same settings, the connection is created when there is none yet.
+    *
+    * @param ctxProps
+    *       The JNDI context properties.
+    * @return The shared connection.
+    * @throws JMSException
+    *       When the connection cannot be created.
+    * @throws PerfCakeException
+    *       When only one of the credentials is set.
+    */
+   private Connection acquireSharedConnection(final Properties ctxProps) throws JMSException, PerfCakeException {
+      final String key = ctxProps + ":" + connectionFactory + ":" + username + ":" + password;
+
+      synchronized (sharedConnections) {
+         sharedConnectionHolder = sharedConnections.get(key);
+         if (sharedConnectionHolder == null) {
+            sharedConnectionHolder = new SharedConnection(key, createConnection());
+            sharedConnections.put(key, sharedConnectionHolder);
+         }
+         sharedConnectionHolder.references++;
+
+         return sharedConnectionHolder.connection;
+      }
+   }
+
+   /**
+    * Closes the connection unless it is still shared with other senders.
+    *
+    * @throws JMSException
+    *       When the connection cannot be closed.
+    */
+   private void closeConnection() throws JMSException {
+      if (sharedConnectionHolder == null) {
+         connection.close();
+         return;
+      }
+
+      synchronized (sharedConnections) {
+         if (--sharedConnectionHolder.references == 0) {
+            sharedConnections.remove(sharedConnectionHolder.key);
+            connection.close();
+         }
+         sharedConnectionHolder = null;
+      }
+   }
+
+   /**
+    * Looks up the JMS 2.0 asynchronous send method and creates the completion listener.
+    *
+    * @throws PerfCakeException
+    *       When the JMS provider does not support asynchronous sends.
+    */
+   protected void initAsyncSend() throws PerfCakeException {
+      final Class<?> listenerClass;
+      try {
+         listenerClass = Class.forName(COMPLETION_LISTENER_CLASS, true, sender.getClass().getClassLoader());
+         asyncSendMethod = sender.getClass().getMethod("send", Message.class, listenerClass);
+      } catch (ClassNotFoundException | NoSuchMethodException e) {
+         throw new PerfCakeException("Asynchronous send requires a JMS 2.0 provider.", e);
+      }
+
+      final AtomicLong newFailures = new AtomicLong(0);
+      failures = sharedFailures.putIfAbsent(target, newFailures);
+      if (failures == null) {
+         failures = newFailures;
+      }
+
+      completionListener = Proxy.newProxyInstance(listenerClass.getClassLoader(), new Class<?>[] { listenerClass }, new InvocationHandler() {
+         @Override
+         public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            switch (method.getName()) {
+               case "onCompletion":
+                  completed(true, null);
+                  return null;
+               case "onException":
+                  completed(false, (Exception) args[1]);
+                  return null;
+               case "equals":
+                  return proxy == args[0];
+               case "hashCode":
+                  return System.identityHashCode(proxy);
+               default:
+                  return "JmsSender completion listener";
+            }
+         }
+      });
+   }
+
+   /**
+    * Records the completion of an asynchronous send.
+    *
+    * @param success
+    *       True if and only if the message was sent successfully.
+    * @param e
+    *       The failure cause.
+    */
+   private void completed(final boolean success, final Exception e) {
+      final Long start = inFlight.poll();
+      if (start != null) {
+         lastCompletionTime = System.nanoTime() - start;
+      }
+
+      if (!success) {
+         failures.incrementAndGet();
+         if (log.isDebugEnabled()) {
+            log.debug("Asynchronous send failed: ", e);
+         }
+      }
    }
 
    /*
@@ -225,6 +486,9 @@ public class JmsSender extends AbstractSender {
       if (log.isDebugEnabled()) {
          log.debug("Closing...");
       }
+      if (failures != null) {
+         sharedFailures.remove(target, failures);
+      }
       try {
          try {
             if (sender != null) {
@@ -244,7 +508,7 @@ public class JmsSender extends AbstractSender {
                } finally {
                   try {
                      if (connection != null) {
-                        connection.close();
+                        closeConnection();
                      }
                   } finally {
                      if (ctx != null) {
@@ -268,32 +532,64 @@ public class JmsSender extends AbstractSender {
    @Override
    public void preSend(final org.perfcake.message.Message message, final Map<String, String> properties) throws Exception {
       super.preSend(message, properties);
+
+      // a message being sent asynchronously must not be modified until the send completes
+      if (!reuseMessage || async || mess == null || message != lastMessage) {
+         mess = createMessage(message);
+         lastMessage = message;
+      }
+
+      // set additional properties
+      if (properties != null) {
+         for (Map.Entry<String, String> entry : properties.entrySet()) {
+            mess.setStringProperty(entry.getKey(), entry.getValue());
+         }
+      }
+
+      // the send time for a receiver measuring the end-to-end latency, the provider's JMSTimestamp may be disabled or use a different clock
+      if (properties != null && properties.containsKey(PerfCakeConst.MESSAGE_TIMESTAMP_HEADER)) {
+         mess.setLongProperty(PerfCakeConst.MESSAGE_TIMESTAMP_HEADER, System.currentTimeMillis());
+      }
+   }
+
+   /**
+    * Creates a new JMS message with the payload and properties of the message.
+    *
+    * @param message
+    *       The message to be sent.
+    * @return The new JMS message.
+    * @throws Exception
+    *       When the JMS message cannot be created.
+    */
+   private Message createMessage(final org.perfcake.message.Message message) throws Exception {
+      Message jmsMessage = null;
       switch (messageType) {
          case STRING:
-            mess = session.createTextMessage((String) message.getPayload());
+            jmsMessage = session.createTextMessage((String) message.getPayload());
             break;
          case BYTEARRAY:
             BytesMessage bytesMessage = session.createBytesMessage();
-            bytesMessage.writeUTF((String) message.getPayload());
-            mess = bytesMessage;
+            final Serializable payload = message.getPayload();
+            if (payload instanceof byte[]) {
+               bytesMessage.writeBytes((byte[]) payload);
+            } else if (payload != null) {
+               bytesMessage.writeBytes(payload.toString().getBytes(Utils.getDefaultEncoding()));
+            }
+            jmsMessage = bytesMessage;
             break;
          case OBJECT:
-            mess = session.createObjectMessage(message.getPayload());
+            jmsMessage = session.createObjectMessage(message.getPayload());
             break;
       }
       Set<String> propertyNameSet = message.getProperties().stringPropertyNames();
       for (String property : propertyNameSet) {
-         mess.setStringProperty(property, message.getProperty(property));
-      }
-      // set additional properties
-      if (properties != null) {
-         for (Map.Entry<String, String> entry : properties.entrySet()) {
-            mess.setStringProperty(entry.getKey(), entry.getValue());
-         }
+         jmsMessage.setStringProperty(property, message.getProperty(property));
       }
       if (replyToDestination != null) {
-         mess.setJMSReplyTo(replyToDestination);
+         jmsMessage.setJMSReplyTo(replyToDestination);
       }
+
+      return jmsMessage;
    }
 
    /*
@@ -307,14 +603,100 @@ public class JmsSender extends AbstractSender {
          log.debug("Sending a message: " + message.getPayload().toString());
       }
       try {
-         sender.send(mess);
+         if (asyncSendMethod != null) {
+            sendAsync(mess);
+         } else {
+            sender.send(mess);
+         }
       } catch (JMSException e) {
          throw new PerfCakeException("JMS Message cannot be sent", e);
       }
 
+      if (transacted && isCommitDue()) {
+         try {
+            commit();
+         } catch (JMSException e) {
+            throw new PerfCakeException("JMS transaction cannot be committed", e);
+         }
+      }
+
       return null;
    }
 
+   /**
+    * Sends the message without waiting for the provider acknowledgement.
+    *
+    * @param message
+    *       The message to send.
+    * @throws JMSException
+    *       When the message cannot be sent.
+    * @throws PerfCakeException
+    *       When the asynchronous send method cannot be invoked.
+    */
+   private void sendAsync(final Message message) throws JMSException, PerfCakeException {
+      inFlight.add(System.nanoTime());
+      try {
+         asyncSendMethod.invoke(sender, message, completionListener);
+      } catch (InvocationTargetException e) {
+         inFlight.poll();
+         if (e.getCause() instanceof JMSException) {
+            throw (JMSException) e.getCause();
+         }
+         throw new PerfCakeException("JMS Message cannot be sent", e.getCause());
+      } catch (IllegalAccessException e) {
+         inFlight.poll();
+         throw new PerfCakeException("JMS Message cannot be sent", e);
+      }
+   }
+
+   /**
+    * Checks whether the messages sent so far should be committed. This is called after each message sent in a transacted session.
+    *
+    * @return True if and only if the commit batch is full or the commit interval elapsed.
+    */
+   protected boolean isCommitDue() {
+      uncommitted++;
+      return (commitBatchSize > 0 && uncommitted >= commitBatchSize) || (commitInterval > 0 && System.currentTimeMillis() - lastCommit >= commitInterval);
+   }
+
+   /**
+    * Commits the session and measures the commit duration.
+    *
+    * @throws JMSException
+    *       When the session cannot be committed.
+    */
+   protected void commit() throws JMSException {
+      final long start = System.nanoTime();
+      session.commit();
+      commitTime = (System.nanoTime() - start) / 1_000_000d;
+      uncommitted = 0;
+      lastCommit = System.currentTimeMillis();
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSender#postSend(org.perfcake.message.Message)
+    */
+   @Override
+   public void postSend(final org.perfcake.message.Message message) throws Exception {
+      super.postSend(message);
+      final MeasurementUnit mu = getMeasurementUnit();
+      if (mu != null) {
+         if (commitTime >= 0) {
+            mu.appendResult(COMMIT_TIME, commitTime);
+         }
+         if (failures != null) {
+            final long completionTime = lastCompletionTime;
+            if (completionTime >= 0) {
+               mu.appendResult(COMPLETION_TIME, completionTime / 1_000_000d);
+            }
+            mu.appendResult(SEND_FAILURES, failures.get());
+         }
+      }
+      commitTime = -1;
+   }
+
    /**
     * Checks if both of the provided credentials are set.
     *
@@ -432,6 +814,107 @@ public class JmsSender extends AbstractSender {
       return messageType;
    }
 
+   /**
+    * Used to read the value of commitBatchSize.
+    *
+    * @return The commitBatchSize.
+    */
+   public int getCommitBatchSize() {
+      return commitBatchSize;
+   }
+
+   /**
+    * Sets the value of commitBatchSize. In a transacted session, the messages are committed once per this number of messages, 0 means no limit.
+    *
+    * @param commitBatchSize
+    *       The commitBatchSize to set.
+    */
+   public JmsSender setCommitBatchSize(final int commitBatchSize) {
+      this.commitBatchSize = commitBatchSize;
+      return this;
+   }
+
+   /**
+    * Used to read the value of commitInterval.
+    *
+    * @return The commitInterval.
+    */
+   public long getCommitInterval() {
+      return commitInterval;
+   }
+
+   /**
+    * Sets the value of commitInterval. In a transacted session, the messages are committed once this number of milliseconds elapsed since the last commit, 0 means no limit.
+    *
+    * @param commitInterval
+    *       The commitInterval to set.
+    */
+   public JmsSender setCommitInterval(final long commitInterval) {
+      this.commitInterval = commitInterval;
+      return this;
+   }
+
+   /**
+    * Used to read the value of async.
+    *
+    * @return The async.
+    */
+   public boolean isAsync() {
+      return async;
+   }
+
+   /**
+    * Sets the value of async. When true, the messages are sent without waiting for the provider acknowledgement. Requires a JMS 2.0 provider.
+    *
+    * @param async
+    *       The async to set.
+    */
+   public JmsSender setAsync(final boolean async) {
+      this.async = async;
+      return this;
+   }
+
+   /**
+    * Used to read the value of reuseMessage.
+    *
+    * @return The reuseMessage.
+    */
+   public boolean isReuseMessage() {
+      return reuseMessage;
+   }
+
+   /**
+    * Sets the value of reuseMessage. When true, the JMS message is created only once for the same message and reused for the subsequent sends.
+    * This is ignored in the asynchronous mode.
+    *
+    * @param reuseMessage
+    *       The reuseMessage to set.
+    */
+   public JmsSender setReuseMessage(final boolean reuseMessage) {
+      this.reuseMessage = reuseMessage;
+      return this;
+   }
+
+   /**
+    * Used to read the value of sharedConnection.
+    *
+    * @return The sharedConnection.
+    */
+   public boolean isSharedConnection() {
+      return sharedConnection;
+   }
+
+   /**
+    * Sets the value of sharedConnection. When true, a single JMS connection is shared by all the senders with the same connection settings.
+    *
+    * @param sharedConnection
+    *       The sharedConnection to set.
+    */
+   public JmsSender setSharedConnection(final boolean sharedConnection) {
+      this.sharedConnection = sharedConnection;
+      return this;
+   }
+
    /**
     * Used to read the value of connectionFactory.
     *
@@ -552,4 +1035,23 @@ public class JmsSender extends AbstractSender {
       return this;
    }
 
+   /**
+    * A JMS connection shared by several senders.
+    */
+   private static class SharedConnection {
+
+      private final String key;
+
+      private final Connection connection;
+
+      /**
+       * Number of the senders using the connection.
+       */
+      private int references = 0;
+
+      private SharedConnection(final String key, final Connection connection) {
+         this.key = key;
+         this.connection = connection;
+      }
+   }
 }
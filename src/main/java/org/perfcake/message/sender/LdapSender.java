@@ -27,18 +27,40 @@ import org.apache.log4j.Logger;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.naming.CommunicationException;
 import javax.naming.Context;
+import javax.naming.InterruptedNamingException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
 import javax.naming.ldap.InitialLdapContext;
 import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
 
 /**
  * The sender which queries LDAP server.
+ * <p/>
+ * The search base and the filter can contain placeholders in the form of <code>#{name:default}</code> that are replaced before each search
+ * by the additional message properties, the message properties, or the message headers (in this order). The placeholder <code>#{payload}</code>
+ * is replaced by the message payload. The values substituted to the filter are escaped according to RFC 4515.
+ * <p/>
+ * When {@link #poolSize} is set, the LDAP contexts are shared by all the senders with the same target and credentials
+ * and at most {@link #poolSize} of them are opened. Otherwise, each sender uses its own context.
+ * When {@link #pageSize} is set, the results are requested in pages using {@link javax.naming.ldap.PagedResultsControl}.
+ * In the {@link #countOnly} mode, no attributes are requested and only the number of found entries is returned.
  *
  * @author vjuranek
  */
@@ -46,6 +68,26 @@ public class LdapSender extends AbstractSender {
 
    private static final Logger logger = Logger.getLogger(LdapSender.class);
 
+   /**
+    * Pattern of the placeholders in the search base and the filter.
+    */
+   private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("#\\{([^#\\{:}]+)(:[^#\\{:}]*)?}");
+
+   /**
+    * Name of the placeholder replaced by the message payload.
+    */
+   private static final String PAYLOAD_PLACEHOLDER = "payload";
+
+   /**
+    * Context pools shared by the senders, identified by the target, the authentication mechanism and the credentials.
+    */
+   private static final Map<String, ContextPool> pools = new HashMap<>();
+
+   /**
+    * The authentication mechanism of the LDAP contexts.
+    */
+   private static final String AUTHENTICATION = "simple";
+
    private LdapContext ctx = null;
    private String ldapUsername = null;
    private String ldapPassword = null;
@@ -54,6 +96,41 @@ public class LdapSender extends AbstractSender {
    private String searchBase = null;
    private String filter = null;
 
+   /**
+    * The maximal number of LDAP contexts shared by all the senders, 0 means that each sender uses its own context.
+    */
+   private int poolSize = 0;
+
+   /**
+    * The number of results requested in a single page, 0 disables the paged results.
+    */
+   private int pageSize = 0;
+
+   /**
+    * Whether only the number of found entries is returned.
+    */
+   private boolean countOnly = false;
+
+   private SearchTemplate searchBaseTemplate;
+   private SearchTemplate filterTemplate;
+
+   private ContextPool pool;
+
+   /**
+    * The search base of the current message.
+    */
+   private String currentSearchBase;
+
+   /**
+    * The filter of the current message.
+    */
+   private String currentFilter;
+
+   /**
+    * Set when the context borrowed from the pool failed and must not be reused.
+    */
+   private boolean contextBroken;
+
    public String getLdapUsername() {
       return ldapUsername;
    }
@@ -90,10 +167,62 @@ public class LdapSender extends AbstractSender {
       return this;
    }
 
+   public int getPoolSize() {
+      return poolSize;
+   }
+
+   public LdapSender setPoolSize(int poolSize) {
+      this.poolSize = poolSize;
+      return this;
+   }
+
+   public int getPageSize() {
+      return pageSize;
+   }
+
+   public LdapSender setPageSize(int pageSize) {
+      this.pageSize = pageSize;
+      return this;
+   }
+
+   public boolean isCountOnly() {
+      return countOnly;
+   }
+
+   public LdapSender setCountOnly(boolean countOnly) {
+      this.countOnly = countOnly;
+      return this;
+   }
+
    @Override
    public void init() throws Exception {
+      if (searchBase != null && filter != null) {
+         searchBaseTemplate = new SearchTemplate(searchBase, false);
+         filterTemplate = new SearchTemplate(filter, true);
+      }
+
+      searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+      if (countOnly) {
+         searchControls.setReturningAttributes(new String[] { "1.1" }); // no attributes, RFC 4511
+      }
+
+      if (poolSize > 0) {
+         acquirePool();
+      } else {
+         ctx = createContext();
+      }
+   }
+
+   /**
+    * Creates a new LDAP context connected to the target.
+    *
+    * @return The new LDAP context.
+    * @throws NamingException
+    *       When the connection fails.
+    */
+   LdapContext createContext() throws NamingException {
       Hashtable<String, Object> env = new Hashtable<String, Object>();
-      env.put(Context.SECURITY_AUTHENTICATION, "simple");
+      env.put(Context.SECURITY_AUTHENTICATION, AUTHENTICATION);
       if (ldapUsername != null) {
          env.put(Context.SECURITY_PRINCIPAL, ldapUsername);
       }
@@ -106,15 +235,46 @@ public class LdapSender extends AbstractSender {
       if (logger.isDebugEnabled()) {
          logger.debug("Connecting to " + target);
       }
-      ctx = new InitialLdapContext(env, null);
+      return new InitialLdapContext(env, null);
+   }
 
-      searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+   private void acquirePool() {
+      // the contexts are authenticated, so they can only be shared by the senders with exactly the same credentials
+      final String key = target + "\n" + AUTHENTICATION + "\n" + ldapUsername + "\n" + ldapPassword;
+
+      synchronized (pools) {
+         pool = pools.get(key);
+         if (pool == null) {
+            pool = new ContextPool(key, poolSize);
+            pools.put(key, pool);
+         }
+         pool.references++;
+      }
+   }
+
+   private void releasePool() throws NamingException {
+      synchronized (pools) {
+         if (--pool.references == 0) {
+            pools.remove(pool.key);
+            pool.close();
+         }
+         pool = null;
+      }
    }
 
    @Override
    public void close() throws PerfCakeException {
       try {
-         ctx.close();
+         if (pool != null) {
+            if (ctx != null) {
+               pool.release(ctx, false);
+               ctx = null;
+            }
+            releasePool();
+         } else if (ctx != null) {
+            ctx.close();
+            ctx = null;
+         }
       } catch (NamingException e) {
          throw new PerfCakeException("Failed to close LDAP context.", e.getCause());
       }
@@ -126,15 +286,248 @@ public class LdapSender extends AbstractSender {
       if (searchBase == null || filter == null) {
          throw new PerfCakeException("LDAP search base or filter is not set. Both properties have to be set up");
       }
+
+      currentSearchBase = searchBaseTemplate.render(message, properties);
+      currentFilter = filterTemplate.render(message, properties);
+
+      if (pool != null) {
+         ctx = pool.borrow(this);
+         contextBroken = false;
+      }
    }
 
    @Override
    public Serializable doSend(final Message message, final Map<String, String> properties, final MeasurementUnit mu) throws Exception {
-      NamingEnumeration<SearchResult> results = ctx.search(searchBase, filter, searchControls);
-      ArrayList<SearchResult> res = new ArrayList<SearchResult>();
-      while (results.hasMoreElements()) {
-         res.add(results.nextElement());
+      try {
+         if (pageSize > 0) {
+            return searchPaged();
+         }
+
+         final ArrayList<SearchResult> res = countOnly ? null : new ArrayList<SearchResult>();
+         final long count = consume(ctx.search(currentSearchBase, currentFilter, searchControls), res);
+         return countOnly ? count : res;
+      } catch (NamingException e) {
+         contextBroken = isConnectionFailure(e);
+         throw e;
+      }
+   }
+
+   /**
+    * Decides whether the failure means that the context cannot be used anymore. The other failures (e.g. no such entry or an invalid filter)
+    * are the results of the search and the context stays in the pool.
+    *
+    * @param e
+    *       The failure of the search.
+    * @return True if the connection of the context failed.
+    */
+   private static boolean isConnectionFailure(final NamingException e) {
+      return e instanceof CommunicationException || e instanceof ServiceUnavailableException || e instanceof InterruptedNamingException;
+   }
+
+   private Serializable searchPaged() throws Exception {
+      final ArrayList<SearchResult> res = countOnly ? null : new ArrayList<SearchResult>();
+      long count = 0;
+      byte[] cookie = null;
+
+      try {
+         do {
+            ctx.setRequestControls(new Control[] { new PagedResultsControl(pageSize, cookie, Control.CRITICAL) });
+            count += consume(ctx.search(currentSearchBase, currentFilter, searchControls), res);
+
+            cookie = null;
+            final Control[] controls = ctx.getResponseControls();
+            if (controls != null) {
+               for (Control control : controls) {
+                  if (control instanceof PagedResultsResponseControl) {
+                     cookie = ((PagedResultsResponseControl) control).getCookie();
+                  }
+               }
+            }
+         } while (cookie != null && cookie.length > 0);
+      } finally {
+         ctx.setRequestControls(null);
+      }
+
+      return countOnly ? count : res;
+   }
+
+   /**
+    * Reads all the search results.
+    *
+    * @param results
+    *       The search results.
+    * @param res
+    *       The list to collect the results to, or null to only count them.
+    * @return The number of results read.
+    */
+   private static long consume(final NamingEnumeration<SearchResult> results, final ArrayList<SearchResult> res) throws NamingException {
+      long total = 0;
+      try {
+         while (results.hasMore()) {
+            final SearchResult result = results.next();
+            if (res != null) {
+               res.add(result);
+            }
+            total++;
+         }
+      } finally {
+         results.close();
+      }
+
+      return total;
+   }
+
+   @Override
+   public void postSend(final Message message) throws Exception {
+      super.postSend(message);
+      if (pool != null && ctx != null) {
+         pool.release(ctx, contextBroken);
+         ctx = null;
+      }
+   }
+
+   /**
+    * Search base or filter with placeholders, parsed once so that rendering it for each message is cheap.
+    */
+   private static final class SearchTemplate {
+
+      private final String[] literals;
+      private final String[] names;
+      private final String[] defaults;
+      private final boolean escape;
+
+      private SearchTemplate(final String template, final boolean escape) {
+         final List<String> literalList = new ArrayList<>();
+         final List<String> nameList = new ArrayList<>();
+         final List<String> defaultList = new ArrayList<>();
+         final Matcher matcher = PLACEHOLDER_PATTERN.matcher(template);
+         int last = 0;
+         while (matcher.find()) {
+            literalList.add(template.substring(last, matcher.start()));
+            nameList.add(matcher.group(1));
+            defaultList.add(matcher.group(2) == null ? null : matcher.group(2).substring(1));
+            last = matcher.end();
+         }
+         literalList.add(template.substring(last));
+
+         this.literals = literalList.toArray(new String[literalList.size()]);
+         this.names = nameList.toArray(new String[nameList.size()]);
+         this.defaults = defaultList.toArray(new String[defaultList.size()]);
+         this.escape = escape;
+      }
+
+      private String render(final Message message, final Map<String, String> properties) {
+         if (names.length == 0) {
+            return literals[0];
+         }
+
+         final StringBuilder sb = new StringBuilder(literals[0]);
+         for (int i = 0; i < names.length; i++) {
+            String value = lookup(names[i], message, properties);
+            if (value == null) {
+               value = defaults[i] == null ? "" : defaults[i];
+            }
+            sb.append(escape ? escapeFilterValue(value) : value).append(literals[i + 1]);
+         }
+
+         return sb.toString();
+      }
+
+      private static String lookup(final String name, final Message message, final Map<String, String> properties) {
+         if (properties != null && properties.containsKey(name)) {
+            return properties.get(name);
+         }
+         if (message != null) {
+            String value = message.getProperty(name);
+            if (value == null) {
+               value = message.getHeader(name);
+            }
+            if (value == null && PAYLOAD_PLACEHOLDER.equals(name) && message.getPayload() != null) {
+               value = message.getPayload().toString();
+            }
+            return value;
+         }
+         return null;
+      }
+
+      /**
+       * Escapes the special characters of a filter value according to RFC 4515.
+       */
+      private static String escapeFilterValue(final String value) {
+         final StringBuilder sb = new StringBuilder(value.length());
+         for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+               case '\\':
+                  sb.append("\\5c");
+                  break;
+               case '*':
+                  sb.append("\\2a");
+                  break;
+               case '(':
+                  sb.append("\\28");
+                  break;
+               case ')':
+                  sb.append("\\29");
+                  break;
+               case '\0':
+                  sb.append("\\00");
+                  break;
+               default:
+                  sb.append(c);
+            }
+         }
+         return sb.toString();
+      }
+   }
+
+   /**
+    * LDAP contexts shared by the senders. A context is used by a single sender at a time.
+    */
+   static final class ContextPool {
+
+      private final String key;
+      private final BlockingQueue<LdapContext> idle = new LinkedBlockingQueue<>();
+      private final Semaphore permits;
+      private int references = 0;
+
+      private ContextPool(final String key, final int size) {
+         this.key = key;
+         this.permits = new Semaphore(size);
+      }
+
+      private LdapContext borrow(final LdapSender sender) throws InterruptedException, NamingException {
+         permits.acquire();
+         final LdapContext context = idle.poll();
+         if (context != null) {
+            return context;
+         }
+
+         try {
+            return sender.createContext();
+         } catch (NamingException | RuntimeException e) {
+            permits.release();
+            throw e;
+         }
+      }
+
+      private void release(final LdapContext context, final boolean broken) throws NamingException {
+         try {
+            if (broken) {
+               context.close();
+            } else {
+               idle.offer(context);
+            }
+         } finally {
+            permits.release();
+         }
+      }
+
+      private void close() throws NamingException {
+         LdapContext context;
+         while ((context = idle.poll()) != null) {
+            context.close();
+         }
       }
-      return res;
    }
 }
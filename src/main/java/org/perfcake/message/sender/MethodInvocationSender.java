@@ -0,0 +1,226 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.util.Blackhole;
+import org.perfcake.util.ObjectFactory;
+
+import org.apache.log4j.Logger;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+
+/**
+ * The sender invokes a Java method in the running JVM. It is intended for microbenchmarks of in-process code
+ * driven by the PerfCake generators and reporters, possibly combined with the {@link org.perfcake.reporting.reporters.WarmUpReporter}.
+ * <p/>
+ * The {@link #target} is the fully qualified name of the class and the {@link #method} is the name of its public method.
+ * The method can be either static, or an instance method in which case a single instance of the class is created for each sender
+ * using its public no-argument constructor. The method can declare up to two parameters:
+ * <ul>
+ * <li>no parameters,</li>
+ * <li>a single parameter of the type {@link org.perfcake.message.Message} that receives the whole message,</li>
+ * <li>a single parameter of any other type (including {@link Object}) that receives the message payload,</li>
+ * <li>two parameters, the message payload and a {@link java.util.Map} of the additional message properties.</li>
+ * </ul>
+ * The method is resolved and bound to a {@link java.lang.invoke.MethodHandle} in the initialization, so that only the invocation itself
+ * is measured. The value returned by the method is consumed by a {@link Blackhole} to prevent the JIT compiler from eliminating
+ * the invoked code, and it is returned as the response when it is serializable and {@link #returnResult} is set.
+ */
+public class MethodInvocationSender extends AbstractSender {
+
+   /**
+    * The sender's logger.
+    */
+   private static final Logger log = Logger.getLogger(MethodInvocationSender.class);
+
+   /**
+    * The type the method handle is adapted to.
+    */
+   private static final MethodType INVOCATION_TYPE = MethodType.methodType(Object.class, Message.class, Object.class, Map.class);
+
+   /**
+    * The name of the method to be invoked.
+    */
+   private String method;
+
+   /**
+    * Whether the value returned by the method is returned as the response.
+    */
+   private boolean returnResult = true;
+
+   /**
+    * The method handle bound to the target instance and adapted to {@link #INVOCATION_TYPE}.
+    */
+   private MethodHandle handle;
+
+   /**
+    * Consumes the values returned by the invoked method.
+    */
+   private final Blackhole blackhole = new Blackhole();
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSender#init()
+    */
+   @Override
+   public void init() throws Exception {
+      if (method == null) {
+         throw new PerfCakeException("The method to be invoked must be specified.");
+      }
+
+      final Class<?> targetClass = Class.forName(target, true, ObjectFactory.getPluginClassLoader());
+      final Method targetMethod = findMethod(targetClass);
+      if (log.isDebugEnabled()) {
+         log.debug("Binding method " + targetMethod);
+      }
+
+      MethodHandle mh = MethodHandles.publicLookup().unreflect(targetMethod);
+      if (!Modifier.isStatic(targetMethod.getModifiers())) {
+         mh = mh.bindTo(targetClass.newInstance());
+      }
+
+      final Class<?>[] params = targetMethod.getParameterTypes();
+      switch (params.length) {
+         case 0:
+            mh = MethodHandles.dropArguments(mh, 0, Message.class, Object.class, Map.class);
+            break;
+         case 1:
+            if (params[0] == Message.class) {
+               mh = MethodHandles.dropArguments(mh, 1, Object.class, Map.class);
+            } else {
+               mh = MethodHandles.dropArguments(MethodHandles.dropArguments(mh, 0, Message.class), 2, Map.class);
+            }
+            break;
+         default:
+            mh = MethodHandles.dropArguments(mh, 0, Message.class);
+      }
+
+      handle = mh.asType(INVOCATION_TYPE);
+   }
+
+   /**
+    * Finds the public method to be invoked. Methods with more parameters are preferred.
+    *
+    * @param targetClass
+    *       The class declaring the method.
+    * @return The method to be invoked.
+    * @throws PerfCakeException
+    *       When there is no suitable method.
+    */
+   private Method findMethod(final Class<?> targetClass) throws PerfCakeException {
+      Method result = null;
+      for (final Method m : targetClass.getMethods()) {
+         final Class<?>[] params = m.getParameterTypes();
+         if (m.getName().equals(method) && params.length <= 2 && (params.length < 2 || params[1].isAssignableFrom(Map.class))) {
+            if (result == null || result.getParameterTypes().length < params.length) {
+               result = m;
+            }
+         }
+      }
+
+      if (result == null) {
+         throw new PerfCakeException(String.format("There is no public method %s in %s with up to two parameters (payload, properties).", method, targetClass.getName()));
+      }
+
+      return result;
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSender#close()
+    */
+   @Override
+   public void close() {
+      handle = null;
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSender#doSend(org.perfcake.message.Message, java.util.Map)
+    */
+   @Override
+   public Serializable doSend(final Message message, final Map<String, String> properties, final MeasurementUnit mu) throws Exception {
+      final Object payload = message == null ? null : message.getPayload();
+      final Object result;
+      try {
+         result = (Object) handle.invokeExact(message, payload, (Map) properties);
+      } catch (Exception | Error e) {
+         throw e;
+      } catch (Throwable t) {
+         throw new PerfCakeException("The invoked method failed: ", t);
+      }
+
+      blackhole.consume(result);
+
+      return returnResult && result instanceof Serializable ? (Serializable) result : null;
+   }
+
+   /**
+    * Used to read the value of method.
+    *
+    * @return The name of the method to be invoked.
+    */
+   public String getMethod() {
+      return method;
+   }
+
+   /**
+    * Sets the value of method.
+    *
+    * @param method
+    *       The name of the method to be invoked.
+    */
+   public MethodInvocationSender setMethod(final String method) {
+      this.method = method;
+      return this;
+   }
+
+   /**
+    * Used to read the value of returnResult.
+    *
+    * @return Whether the value returned by the method is returned as the response.
+    */
+   public boolean isReturnResult() {
+      return returnResult;
+   }
+
+   /**
+    * Sets the value of returnResult.
+    *
+    * @param returnResult
+    *       When false, the value returned by the method is only consumed and no response is returned.
+    */
+   public MethodInvocationSender setReturnResult(final boolean returnResult) {
+      this.returnResult = returnResult;
+      return this;
+   }
+}
@@ -19,15 +19,19 @@
  */
 package org.perfcake.message.sender;
 
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
 
 /**
+ * The sender sending the messages through a plain TCP socket. The socket is opened through a channel
+ * so that the file payloads can be transferred to it directly.
+ *
  * @author Martin Večeřa <marvenec@gmail.com>
  */
 public class PlainSocketSender extends AbstractSocketSender {
 
    @Override
    protected void openSocket() throws Exception {
-      socket = new Socket(host, port);
+      socket = SocketChannel.open(new InetSocketAddress(host, port)).socket();
    }
 }
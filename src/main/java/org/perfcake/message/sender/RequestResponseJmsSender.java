@@ -26,9 +26,15 @@ import org.perfcake.util.Utils;
 import org.apache.log4j.Logger;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
@@ -36,6 +42,7 @@ import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
 import javax.jms.ObjectMessage;
 import javax.jms.Session;
 import javax.jms.TextMessage;
@@ -45,6 +52,17 @@ import javax.naming.NamingException;
 
 /**
  * A sender that is the same with @{link JmsSender} and adds a response retrieval.
+ * <p/>
+ * By default, each sender reads the responses with its own consumer. With the sharedResponseConsumer property set, all the senders
+ * with the same response destination share a single consumer with a message listener. Each request then gets a unique correlation ID that the responding
+ * service is expected to copy to the response. The listener dispatches the responses to the waiting senders by their correlation IDs,
+ * so that the responses cannot be mismatched and the number of consumers does not grow with the number of senders.
+ * The responses that do not belong to any pending request are counted and reported outside of the measured time.
+ * <p/>
+ * The shared consumer only dispatches the responses, it does not complete the measurements asynchronously. Each sender thread blocks until
+ * its own response arrives, because the measured time of a message ends when the sender returns the response. Therefore the number of requests
+ * waiting for their responses is limited by the number of the sender threads of the message generator, the thread count must be raised to have
+ * more requests in flight.
  *
  * @author Pavel Macík <pavel.macik@gmail.com>
  * @author Martin Večeřa <marvenec@gmail.com>
@@ -56,6 +74,16 @@ public class RequestResponseJmsSender extends JmsSender {
     */
    private static final Logger log = Logger.getLogger(RequestResponseJmsSender.class);
 
+   /**
+    * Result name for the number of responses that did not match any pending request.
+    */
+   public static final String UNMATCHED_RESPONSES = "UnmatchedResponses";
+
+   /**
+    * Response dispatchers shared by the senders, identified by the response destination and connection settings.
+    */
+   private static final Map<String, ResponseDispatcher> dispatchers = new HashMap<>();
+
    /**
     * JMS initial context for response reception.
     */
@@ -146,6 +174,26 @@ public class RequestResponseJmsSender extends JmsSender {
     */
    protected String responsePassword = null;
 
+   /**
+    * Whether to share a single response consumer among all the senders.
+    */
+   protected boolean sharedResponseConsumer = false;
+
+   /**
+    * The shared response dispatcher.
+    */
+   ResponseDispatcher dispatcher;
+
+   /**
+    * Sequence number of the requests used to generate unique correlation IDs.
+    */
+   private long requestSequence = 0;
+
+   /**
+    * The response of the request being sent.
+    */
+   private PendingResponse pendingResponse;
+
    @Override
    public void init() throws Exception {
       super.init();
@@ -153,6 +201,11 @@ public class RequestResponseJmsSender extends JmsSender {
          if (responseTarget == null || responseTarget.equals("")) {
             throw new PerfCakeException("responseTarget property is not defined in the scenario or is empty");
          } else {
+            if (sharedResponseConsumer) {
+               acquireDispatcher();
+               return;
+            }
+
             initResponseConnection();
 
             Destination responseDestination = (Destination) responseCtx.lookup(responseTarget);
@@ -174,6 +227,43 @@ public class RequestResponseJmsSender extends JmsSender {
       }
    }
 
+   /**
+    * Gets the response dispatcher shared by the senders with the same response destination, the dispatcher is created when there is none yet.
+    *
+    * @throws Exception
+    *       When the dispatcher cannot be created.
+    */
+   private void acquireDispatcher() throws Exception {
+      final String key = responseTarget + ":" + Utils.getFirstNotNull(responseJndiUrl, jndiUrl) + ":" + Utils.getFirstNotNull(responseConnectionFactory, connectionFactory) + ":" + responseUsername;
+
+      synchronized (dispatchers) {
+         dispatcher = dispatchers.get(key);
+         if (dispatcher == null) {
+            initResponseConnection();
+            dispatcher = new ResponseDispatcher(key, responseConnection, (Destination) responseCtx.lookup(responseTarget));
+            responseConnection = null; // owned by the dispatcher now
+            dispatchers.put(key, dispatcher);
+         }
+         dispatcher.references++;
+      }
+   }
+
+   /**
+    * Releases the response dispatcher and closes it when no other sender uses it.
+    *
+    * @throws JMSException
+    *       When the dispatcher connection cannot be closed.
+    */
+   private void releaseDispatcher() throws JMSException {
+      synchronized (dispatchers) {
+         if (--dispatcher.references == 0) {
+            dispatchers.remove(dispatcher.key);
+            dispatcher.close();
+         }
+         dispatcher = null;
+      }
+   }
+
    private void initResponseConnection() throws Exception {
       if (log.isDebugEnabled()) {
          log.debug("Initializing JMS response connection...");
@@ -208,25 +298,35 @@ public class RequestResponseJmsSender extends JmsSender {
       try {
          try {
             super.close();
+         } finally {
+            if (dispatcher != null) {
+               releaseDispatcher();
+            }
+         }
+      } catch (JMSException e) {
+         throw new PerfCakeException(e);
+      }
+
+      if (responseSession == null) { // there is no own response consumer
+         return;
+      }
+
+      try {
+         try {
+            if (responseReceiver != null) {
+               responseReceiver.close();
+            }
          } finally {
             try {
-               if (responseReceiver != null) {
-                  responseReceiver.close();
+               if (transacted) {
+                  responseSession.commit();
                }
             } finally {
                try {
-                  if (transacted) {
-                     responseSession.commit();
-                  }
+                  responseSession.close();
                } finally {
-                  try {
-                     if (responseSession != null) {
-                        responseSession.close();
-                     }
-                  } finally {
-                     if (responseConnection != null) {
-                        responseConnection.close();
-                     }
+                  if (responseConnection != null) {
+                     responseConnection.close();
                   }
                }
             }
@@ -239,20 +339,34 @@ public class RequestResponseJmsSender extends JmsSender {
    @Override
    public void preSend(final org.perfcake.message.Message message, final Map<String, String> properties) throws Exception {
       super.preSend(message, properties);
-      if (useCorrelationId) { // set the correlation ID
+      if (dispatcher != null) {
+         // register the request before it is sent so that the response cannot come first
+         final String requestCorrelationId = correlationId + "-" + (requestSequence++);
+         mess.setJMSCorrelationID(requestCorrelationId);
+         pendingResponse = dispatcher.register(requestCorrelationId);
+      } else if (useCorrelationId) { // set the correlation ID
          mess.setJMSCorrelationID(correlationId);
       }
    }
 
    @Override
    public Serializable doSend(final org.perfcake.message.Message message, final Map<String, String> properties, final MeasurementUnit mu) throws Exception {
-      // send the request message
-      super.doSend(message, properties, mu);
-
+      // send the request message (and commit it, see isCommitDue())
       try {
-         if (transacted) {
-            session.commit();
+         super.doSend(message, properties, mu);
+      } catch (Exception e) {
+         if (pendingResponse != null) {
+            dispatcher.unregister(pendingResponse);
+            pendingResponse = null;
          }
+         throw e;
+      }
+
+      if (pendingResponse != null) {
+         return awaitResponse();
+      }
+
+      try {
          // receive response
          Serializable retVal = null;
          int attempts = 0;
@@ -268,17 +382,7 @@ public class RequestResponseJmsSender extends JmsSender {
                   response.acknowledge();
                }
 
-               if (response instanceof ObjectMessage) {
-                  retVal = ((ObjectMessage) response).getObject();
-               } else if (response instanceof TextMessage) {
-                  retVal = ((TextMessage) response).getText();
-               } else if (response instanceof BytesMessage) {
-                  byte[] bytes = new byte[(int) (((BytesMessage) response).getBodyLength())];
-                  ((BytesMessage) response).readBytes(bytes);
-                  retVal = bytes;
-               } else {
-                  throw new PerfCakeException("Received message is not one of (ObjectMessage, TextMessage, BytesMessage) but: " + response.getClass().getName());
-               }
+               retVal = getResponsePayload(response);
 
                if (transacted) {
                   responseSession.commit();
@@ -297,6 +401,88 @@ public class RequestResponseJmsSender extends JmsSender {
       }
    }
 
+   @Override
+   public void postSend(final org.perfcake.message.Message message) throws Exception {
+      super.postSend(message);
+      final MeasurementUnit mu = getMeasurementUnit();
+      if (mu != null && dispatcher != null) {
+         mu.appendResult(UNMATCHED_RESPONSES, dispatcher.getUnmatched());
+      }
+   }
+
+   /**
+    * The request must be committed before the response can be received, so each message is committed in a transacted session.
+    *
+    * @return Always true.
+    */
+   @Override
+   protected boolean isCommitDue() {
+      super.isCommitDue();
+      return true;
+   }
+
+   /**
+    * Waits for the response to be dispatched by the shared consumer. The sender thread is blocked until the response arrives or the timeout expires.
+    *
+    * @return The response payload.
+    * @throws Exception
+    *       When no response was received in time or the response cannot be read.
+    */
+   private Serializable awaitResponse() throws Exception {
+      final PendingResponse response = pendingResponse;
+      pendingResponse = null;
+
+      if (!response.latch.await(receivingTimeout * receiveAttempts, TimeUnit.MILLISECONDS)) {
+         dispatcher.unregister(response);
+         throw new PerfCakeException("No message in " + responseTarget + " with correlation ID " + response.correlationId + " received within the specified timeout (" + (receivingTimeout * receiveAttempts) + " ms).");
+      }
+
+      return getResponsePayload(response.message);
+   }
+
+   /**
+    * Reads the payload of the response message.
+    *
+    * @param response
+    *       The response message.
+    * @return The response payload.
+    * @throws Exception
+    *       When the response is not of a supported type or cannot be read.
+    */
+   private static Serializable getResponsePayload(final Message response) throws Exception {
+      if (response instanceof ObjectMessage) {
+         return ((ObjectMessage) response).getObject();
+      } else if (response instanceof TextMessage) {
+         return ((TextMessage) response).getText();
+      } else if (response instanceof BytesMessage) {
+         byte[] bytes = new byte[(int) (((BytesMessage) response).getBodyLength())];
+         ((BytesMessage) response).readBytes(bytes);
+         return bytes;
+      } else {
+         throw new PerfCakeException("Received message is not one of (ObjectMessage, TextMessage, BytesMessage) but: " + response.getClass().getName());
+      }
+   }
+
+   /**
+    * Sets the configuration of using a single response consumer shared by all the senders.
+    *
+    * @param sharedResponseConsumer
+    *       When true, the responses are received by a shared consumer and dispatched to the waiting senders by unique correlation IDs.
+    */
+   public RequestResponseJmsSender setSharedResponseConsumer(final boolean sharedResponseConsumer) {
+      this.sharedResponseConsumer = sharedResponseConsumer;
+      return this;
+   }
+
+   /**
+    * Gets the configuration of using a single response consumer shared by all the senders.
+    *
+    * @return Whether the responses are received by a shared consumer.
+    */
+   public boolean isSharedResponseConsumer() {
+      return sharedResponseConsumer;
+   }
+
    /**
     * Sets the configuration of using the correlation ID in response retrieval.
     *
@@ -541,4 +727,98 @@ public class RequestResponseJmsSender extends JmsSender {
       this.responsePassword = responsePassword;
       return this;
    }
+
+   /**
+    * A response awaited by a sender.
+    */
+   static class PendingResponse {
+
+      private final String correlationId;
+
+      private final CountDownLatch latch = new CountDownLatch(1);
+
+      private volatile Message message;
+
+      private PendingResponse(final String correlationId) {
+         this.correlationId = correlationId;
+      }
+   }
+
+   /**
+    * Receives the responses from a destination and dispatches them to the senders waiting for them by their correlation IDs.
+    */
+   static class ResponseDispatcher implements MessageListener {
+
+      private final String key;
+
+      private final Connection connection;
+
+      /**
+       * The pending responses by their correlation IDs.
+       */
+      private final ConcurrentMap<String, PendingResponse> pending = new ConcurrentHashMap<>();
+
+      /**
+       * Number of the responses that did not match any pending request.
+       */
+      private final AtomicLong unmatched = new AtomicLong(0);
+
+      /**
+       * Number of the senders using the dispatcher.
+       */
+      private int references = 0;
+
+      ResponseDispatcher(final String key, final Connection connection, final Destination destination) throws JMSException {
+         this.key = key;
+         this.connection = connection;
+
+         final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+         session.createConsumer(destination).setMessageListener(this);
+      }
+
+      private PendingResponse register(final String correlationId) {
+         final PendingResponse response = new PendingResponse(correlationId);
+         pending.put(correlationId, response);
+
+         return response;
+      }
+
+      private void unregister(final PendingResponse response) {
+         pending.remove(response.correlationId, response);
+      }
+
+      @Override
+      public void onMessage(final Message message) {
+         String correlationId = null;
+         try {
+            correlationId = message.getJMSCorrelationID();
+         } catch (JMSException e) {
+            log.warn("Cannot read the correlation ID of a response: ", e);
+         }
+
+         final PendingResponse response = correlationId == null ? null : pending.remove(correlationId);
+         if (response == null) {
+            unmatched.incrementAndGet();
+            if (log.isDebugEnabled()) {
+               log.debug("Received a response with an unknown correlation ID " + correlationId);
+            }
+         } else {
+            response.message = message;
+            response.latch.countDown();
+         }
+      }
+
+      /**
+       * Gets the number of the responses that did not match any pending request.
+       *
+       * @return The number of unmatched responses.
+       */
+      long getUnmatched() {
+         return unmatched.get();
+      }
+
+      private void close() throws JMSException {
+         connection.close();
+      }
+   }
 }
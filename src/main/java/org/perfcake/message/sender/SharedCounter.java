@@ -0,0 +1,129 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.reporting.Quantity;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the events (e.g. packets, bytes or rows) of all the sender instances with the same target and reports their total number
+ * and rate since the counter was started. The senders acquire the counter in their initialization and release it when they are closed.
+ */
+final class SharedCounter {
+
+   /**
+    * The counters by their names and targets.
+    */
+   private static final ConcurrentMap<String, SharedCounter> counters = new ConcurrentHashMap<>();
+
+   private final String key;
+
+   private final AtomicLong count = new AtomicLong(0);
+
+   /**
+    * Time of the counter start in nanoseconds.
+    */
+   private final AtomicLong startTime = new AtomicLong(-1);
+
+   private SharedCounter(final String key) {
+      this.key = key;
+   }
+
+   /**
+    * Gets the counter shared by the senders with the same target.
+    *
+    * @param name
+    *       The name of the counter.
+    * @param target
+    *       The target of the sender.
+    * @return The shared counter.
+    */
+   static SharedCounter acquire(final String name, final String target) {
+      final String key = name + "@" + target;
+      final SharedCounter newCounter = new SharedCounter(key);
+      final SharedCounter counter = counters.putIfAbsent(key, newCounter);
+
+      return counter == null ? newCounter : counter;
+   }
+
+   /**
+    * Releases the counter so that the senders initialized later start counting from zero.
+    */
+   void release() {
+      counters.remove(key, this);
+   }
+
+   /**
+    * Starts measuring the rate if it was not started yet.
+    */
+   void start() {
+      if (startTime.get() == -1) {
+         startTime.compareAndSet(-1, System.nanoTime());
+      }
+   }
+
+   /**
+    * Adds the number of events.
+    *
+    * @param delta
+    *       The number of events.
+    */
+   void add(final long delta) {
+      count.addAndGet(delta);
+   }
+
+   /**
+    * Gets the total number of events.
+    *
+    * @return The total number of events.
+    */
+   long get() {
+      return count.get();
+   }
+
+   /**
+    * Appends the total number of events and their rate to the measurement unit.
+    *
+    * @param mu
+    *       The measurement unit.
+    * @param countName
+    *       The name of the result with the number of events.
+    * @param rateName
+    *       The name of the result with the rate.
+    * @param rateUnit
+    *       The unit of the rate.
+    */
+   void report(final MeasurementUnit mu, final String countName, final String rateName, final String rateUnit) {
+      final long value = count.get();
+      mu.appendResult(countName, value);
+
+      final long start = startTime.get();
+      if (start != -1) {
+         final double seconds = (System.nanoTime() - start) / 1_000_000_000d;
+         if (seconds > 0) {
+            mu.appendResult(rateName, new Quantity<Number>(value / seconds, rateUnit));
+         }
+      }
+   }
+}
@@ -0,0 +1,260 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.util.Utils;
+
+import org.apache.log4j.Logger;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * An SSL context shared by all the senders configured with the same key and trust stores.
+ * The context is built only once per scenario (the first sender to be initialized builds it and the last one to be closed disposes it)
+ * so that all the senders use the same client session cache and the TLS sessions can be resumed instead of negotiating
+ * a full handshake for each new connection. The shared context also keeps track of the handshakes performed.
+ */
+public class SharedSslContext {
+
+   /**
+    * Result name for the total number of TLS handshakes.
+    */
+   public static final String HANDSHAKES = "Handshakes";
+
+   /**
+    * Result name for the number of TLS handshakes that resumed a previous session.
+    */
+   public static final String RESUMED_HANDSHAKES = "ResumedHandshakes";
+
+   /**
+    * Result name for the duration of the last TLS handshake in milliseconds.
+    */
+   public static final String HANDSHAKE_TIME = "HandshakeTime";
+
+   /**
+    * The logger.
+    */
+   private static final Logger log = Logger.getLogger(SharedSslContext.class);
+
+   /**
+    * Contexts currently in use, identified by their configuration.
+    */
+   private static final Map<String, SharedSslContext> contexts = new HashMap<>();
+
+   /**
+    * The key identifying this context in {@link #contexts}.
+    */
+   private final String key;
+
+   /**
+    * The SSL context.
+    */
+   private final SSLContext sslContext;
+
+   /**
+    * The socket factory of the SSL context.
+    */
+   private final SSLSocketFactory socketFactory;
+
+   /**
+    * Number of the senders using this context.
+    */
+   private int references = 0;
+
+   /**
+    * Total number of handshakes.
+    */
+   private final AtomicLong handshakes = new AtomicLong(0);
+
+   /**
+    * Number of handshakes that resumed a previous session.
+    */
+   private final AtomicLong resumedHandshakes = new AtomicLong(0);
+
+   private SharedSslContext(final String key, final SSLContext sslContext) {
+      this.key = key;
+      this.sslContext = sslContext;
+      this.socketFactory = sslContext.getSocketFactory();
+   }
+
+   /**
+    * Gets the shared SSL context for the given configuration. The context is created when there is no such context yet.
+    * Each call must be paired with a call to {@link #release()}.
+    *
+    * @param keyStore
+    *       Location of the key store, resolved against the {@link HttpsSender#KEYSTORES_DIR_PROPERTY} directory, or null for no key store.
+    * @param keyStorePassword
+    *       The key store password.
+    * @param trustStore
+    *       Location of the trust store, resolved against the {@link HttpsSender#KEYSTORES_DIR_PROPERTY} directory, or null for no trust store.
+    * @param trustStorePassword
+    *       The trust store password.
+    * @param sessionCacheSize
+    *       Size of the client session cache, 0 for unlimited, negative value to keep the JVM default.
+    * @return The shared SSL context.
+    * @throws Exception
+    *       When it was not possible to load the stores or to create the SSL context.
+    */
+   public static synchronized SharedSslContext acquire(final String keyStore, final String keyStorePassword, final String trustStore, final String trustStorePassword, final int sessionCacheSize) throws Exception {
+      final String key = keyStore + ":" + keyStorePassword + ":" + trustStore + ":" + trustStorePassword + ":" + sessionCacheSize;
+      SharedSslContext context = contexts.get(key);
+
+      if (context == null) {
+         context = new SharedSslContext(key, createSslContext(keyStore, keyStorePassword, trustStore, trustStorePassword));
+         if (sessionCacheSize >= 0) {
+            context.sslContext.getClientSessionContext().setSessionCacheSize(sessionCacheSize);
+         }
+         contexts.put(key, context);
+
+         if (log.isDebugEnabled()) {
+            log.debug(String.format("Created a shared SSL context (keyStore=%s, trustStore=%s, sessionCacheSize=%d).", keyStore, trustStore, sessionCacheSize));
+         }
+      }
+      context.references++;
+
+      return context;
+   }
+
+   /**
+    * Releases the context. When no sender uses the context any longer, it is disposed.
+    */
+   public void release() {
+      synchronized (SharedSslContext.class) {
+         if (--references == 0) {
+            contexts.remove(key);
+
+            if (log.isDebugEnabled()) {
+               log.debug(String.format("Disposing a shared SSL context (%d handshakes, %d resumed).", handshakes.get(), resumedHandshakes.get()));
+            }
+         }
+      }
+   }
+
+   private static KeyStore loadKeyStore(final String keyStoreLocation, final String keyStorePassword) throws Exception {
+      KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      try (InputStream is = Utils.locationToUrl(keyStoreLocation, HttpsSender.KEYSTORES_DIR_PROPERTY, Utils.determineDefaultLocation("keystores"), "").openStream()) {
+         keyStore.load(is, keyStorePassword.toCharArray());
+      }
+
+      return keyStore;
+   }
+
+   private static SSLContext createSslContext(final String keyStore, final String keyStorePassword, final String trustStore, final String trustStorePassword) throws Exception {
+      KeyManagerFactory keyManager = null;
+      TrustManagerFactory trustManager = null;
+
+      if (keyStore != null) {
+         if (keyStorePassword == null) {
+            throw new PerfCakeException("The keyStore password is not set. (Use keyStorePassword property of the sender to set it!)");
+         } else {
+            keyManager = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManager.init(loadKeyStore(keyStore, keyStorePassword), keyStorePassword.toCharArray());
+         }
+      }
+
+      if (trustStore != null) {
+         if (trustStorePassword == null) {
+            throw new PerfCakeException("The trustStore password is not set. (Use trustStorePassword property of the sender to set it!)");
+         } else {
+            trustManager = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManager.init(loadKeyStore(trustStore, trustStorePassword));
+         }
+      }
+
+      SSLContext ctx = SSLContext.getInstance("TLS");
+      ctx.init(keyManager == null ? null : keyManager.getKeyManagers(), trustManager == null ? null : trustManager.getTrustManagers(), null);
+
+      return ctx;
+   }
+
+   /**
+    * Gets the socket factory of the shared SSL context.
+    *
+    * @return The socket factory.
+    */
+   public SSLSocketFactory getSocketFactory() {
+      return socketFactory;
+   }
+
+   /**
+    * Records a completed handshake. The handshake resumed a previous session when the session had been created before the handshake started.
+    *
+    * @param session
+    *       The session negotiated by the handshake.
+    * @param startTime
+    *       The time when the handshake started as returned by {@link System#currentTimeMillis()}.
+    * @return True if and only if the handshake resumed a previous session.
+    */
+   public boolean handshakeCompleted(final SSLSession session, final long startTime) {
+      final boolean resumed = session.getCreationTime() < startTime;
+
+      handshakes.incrementAndGet();
+      if (resumed) {
+         resumedHandshakes.incrementAndGet();
+      }
+
+      return resumed;
+   }
+
+   /**
+    * Gets the total number of handshakes performed with this context.
+    *
+    * @return The number of handshakes.
+    */
+   public long getHandshakes() {
+      return handshakes.get();
+   }
+
+   /**
+    * Gets the number of handshakes that resumed a previous session.
+    *
+    * @return The number of resumed handshakes.
+    */
+   public long getResumedHandshakes() {
+      return resumedHandshakes.get();
+   }
+
+   /**
+    * Appends the handshake statistics to the measurement unit.
+    *
+    * @param mu
+    *       The measurement unit.
+    * @param handshakeTime
+    *       The duration of the handshake performed for the measured message in milliseconds, or a negative value when there was no handshake.
+    */
+   public void report(final MeasurementUnit mu, final double handshakeTime) {
+      mu.appendResult(HANDSHAKES, handshakes.get());
+      mu.appendResult(RESUMED_HANDSHAKES, resumedHandshakes.get());
+      if (handshakeTime >= 0) {
+         mu.appendResult(HANDSHAKE_TIME, handshakeTime);
+      }
+   }
+}
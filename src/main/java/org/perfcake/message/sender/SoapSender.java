@@ -19,50 +19,523 @@
  */
 package org.perfcake.message.sender;
 
+import org.perfcake.PerfCakeException;
 import org.perfcake.message.Message;
 import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.util.Utils;
 
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
 
 /**
- * TODO: Provide implementation. This is to cover jMeter functionality. Can be based on HTTP sender???
+ * The sender that is able to send SOAP 1.1 and SOAP 1.2 messages via HTTP protocol.
+ * <p/>
+ * The message payload is either a complete SOAP envelope, or the content of the SOAP body when {@link #wrapBody} is set.
+ * The request bytes including the envelope are built only once for each message template. The HTTP connections are kept alive
+ * and reused by the subsequent requests (see the <code>http.keepAlive</code> and <code>http.maxConnections</code> system properties).
+ * <p/>
+ * The files listed in {@link #attachments} are sent as MTOM/XOP attachments. Each attachment has the file name as its Content-ID,
+ * so that it can be referenced from the envelope as <code>&lt;xop:Include href="cid:file.bin"/&gt;</code>. The attachments are streamed
+ * from the files for each request, they are never loaded to memory.
+ * <p/>
+ * In the {@link ResponseMode#FAULT_DETECTION} response mode, the response is only scanned for a SOAP fault as it is received
+ * without parsing it to a document, a fault is reported as a failure and no response is returned.
  *
  * @author Martin Večeřa <marvenec@gmail.com>
  */
 public class SoapSender extends AbstractSender {
 
-   /*
-    * (non-Javadoc)
-    *
-    * @see org.perfcake.message.sender.AbstractSender#init()
+   /**
+    * The sender's logger.
+    */
+   private static final Logger log = Logger.getLogger(SoapSender.class);
+
+   /**
+    * The maximal number of cached request bodies.
+    */
+   private static final int MAX_CACHED_REQUESTS = 64;
+
+   /**
+    * Line separator in the MIME parts.
+    */
+   private static final String CRLF = "\r\n";
+
+   /**
+    * SOAP protocol version.
+    */
+   public static enum SoapVersion {
+      SOAP_1_1("http://schemas.xmlsoap.org/soap/envelope/", "text/xml"),
+      SOAP_1_2("http://www.w3.org/2003/05/soap-envelope", "application/soap+xml");
+
+      private final String namespace;
+      private final String contentType;
+
+      private SoapVersion(final String namespace, final String contentType) {
+         this.namespace = namespace;
+         this.contentType = contentType;
+      }
+   }
+
+   /**
+    * How the response is processed.
+    */
+   public static enum ResponseMode {
+      /**
+       * The whole response is read and returned.
+       */
+      BODY,
+
+      /**
+       * The response is only scanned for a SOAP fault, no response is returned.
+       */
+      FAULT_DETECTION
+   }
+
+   /**
+    * The URL where the SOAP request is send.
+    */
+   private URL url;
+
+   /**
+    * The SOAP protocol version.
+    */
+   private SoapVersion soapVersion = SoapVersion.SOAP_1_1;
+
+   /**
+    * The SOAP action, null when no action is specified.
+    */
+   private String soapAction = null;
+
+   /**
+    * Whether the message payload is the content of the SOAP body rather than the whole envelope.
+    */
+   private boolean wrapBody = false;
+
+   /**
+    * Comma separated list of files sent as MTOM attachments.
+    */
+   private String attachments = null;
+
+   /**
+    * How the response is processed.
+    */
+   private ResponseMode responseMode = ResponseMode.BODY;
+
+   /**
+    * The attachment files.
+    */
+   private File[] attachmentFiles = new File[0];
+
+   /**
+    * The MIME headers preceding each attachment.
     */
+   private byte[][] attachmentHeaders;
+
+   /**
+    * The MIME boundary closing the multipart request.
+    */
+   private byte[] closingBoundary;
+
+   /**
+    * The MIME boundary of the multipart request.
+    */
+   private String boundary;
+
+   /**
+    * The content type of the request.
+    */
+   private String contentType;
+
+   /**
+    * The request bodies (without the attachments) built for the message templates.
+    */
+   private final Map<Message, byte[]> requestCache = new IdentityHashMap<>();
+
+   /**
+    * The request body of the current message.
+    */
+   private byte[] request;
+
+   /**
+    * The total length of the current request.
+    */
+   private long requestLength;
+
+   /**
+    * The HTTP request connection.
+    */
+   protected HttpURLConnection requestConnection;
+
    @Override
    public void init() throws Exception {
-      // TODO Auto-generated method stub
+      url = new URL(target);
 
+      final String action = soapAction == null ? "" : ";action=\"" + soapAction + "\"";
+      if (attachments == null || attachments.trim().isEmpty()) {
+         contentType = soapVersion.contentType + ";charset=" + Utils.getDefaultEncoding() + (soapVersion == SoapVersion.SOAP_1_2 ? action : "");
+         return;
+      }
+
+      final String[] files = attachments.split(",");
+      attachmentFiles = new File[files.length];
+      attachmentHeaders = new byte[files.length][];
+      boundary = "uuid:" + UUID.randomUUID();
+      for (int i = 0; i < files.length; i++) {
+         attachmentFiles[i] = new File(files[i].trim());
+         if (!attachmentFiles[i].isFile()) {
+            throw new PerfCakeException("Cannot read the attachment file " + attachmentFiles[i].getPath());
+         }
+         attachmentHeaders[i] = (CRLF + "--" + boundary + CRLF
+               + "Content-Type: application/octet-stream" + CRLF
+               + "Content-Transfer-Encoding: binary" + CRLF
+               + "Content-ID: <" + attachmentFiles[i].getName() + ">" + CRLF + CRLF).getBytes(Utils.getDefaultEncoding());
+      }
+      closingBoundary = (CRLF + "--" + boundary + "--" + CRLF).getBytes(Utils.getDefaultEncoding());
+
+      contentType = "multipart/related;type=\"application/xop+xml\";boundary=\"" + boundary + "\";start=\"<root.message@perfcake.org>\";start-info=\""
+            + soapVersion.contentType + (soapVersion == SoapVersion.SOAP_1_2 ? action.replace("\"", "\\\"") : "") + "\"";
    }
 
-   /*
-    * (non-Javadoc)
-    *
-    * @see org.perfcake.message.sender.AbstractSender#close()
-    */
    @Override
    public void close() {
-      // TODO Auto-generated method stub
-
+      requestCache.clear();
    }
 
-   /*
-    * (non-Javadoc)
+   /**
+    * Builds the request body of the message up to the attachments.
     *
-    * @see org.perfcake.message.sender.AbstractSender#doSend(org.perfcake.message.Message, java.util.Map, org.perfcake.reporting.MeasurementUnit)
+    * @param message
+    *       The message to be sent.
+    * @return The request body.
+    * @throws IOException
+    *       When the payload cannot be encoded.
     */
+   private byte[] buildRequest(final Message message) throws IOException {
+      final String payload = message == null || message.getPayload() == null ? "" : message.getPayload().toString();
+      final StringBuilder sb = new StringBuilder();
+
+      if (attachmentFiles.length > 0) {
+         sb.append("--").append(boundary).append(CRLF)
+           .append("Content-Type: application/xop+xml;charset=").append(Utils.getDefaultEncoding()).append(";type=\"").append(soapVersion.contentType).append("\"").append(CRLF)
+           .append("Content-Transfer-Encoding: binary").append(CRLF)
+           .append("Content-ID: <root.message@perfcake.org>").append(CRLF).append(CRLF);
+      }
+
+      if (wrapBody) {
+         sb.append("<soap:Envelope xmlns:soap=\"").append(soapVersion.namespace).append("\"><soap:Body>")
+           .append(payload)
+           .append("</soap:Body></soap:Envelope>");
+      } else {
+         sb.append(payload);
+      }
+
+      return sb.toString().getBytes(Utils.getDefaultEncoding());
+   }
+
+   @Override
+   public void preSend(final Message message, final Map<String, String> properties) throws Exception {
+      super.preSend(message, properties);
+
+      request = requestCache.get(message);
+      if (request == null) {
+         request = buildRequest(message);
+         if (requestCache.size() >= MAX_CACHED_REQUESTS) { // the messages are not templates, do not keep them
+            requestCache.clear();
+         }
+         requestCache.put(message, request);
+      }
+
+      requestLength = request.length;
+      for (int i = 0; i < attachmentFiles.length; i++) {
+         requestLength += attachmentHeaders[i].length + attachmentFiles[i].length();
+      }
+      if (attachmentFiles.length > 0) {
+         requestLength += closingBoundary.length;
+      }
+
+      requestConnection = (HttpURLConnection) url.openConnection();
+      requestConnection.setRequestMethod("POST");
+      requestConnection.setDoInput(true);
+      requestConnection.setDoOutput(true);
+      requestConnection.setFixedLengthStreamingMode(requestLength);
+      requestConnection.setRequestProperty("Content-Type", contentType);
+      if (soapVersion == SoapVersion.SOAP_1_1) { // the header is mandatory in SOAP 1.1, an empty value means the request URI
+         requestConnection.setRequestProperty("SOAPAction", "\"" + (soapAction == null ? "" : soapAction) + "\"");
+      }
+      if (attachmentFiles.length > 0) {
+         requestConnection.setRequestProperty("MIME-Version", "1.0");
+      }
+
+      // set message properties, headers and additional properties as HTTP headers
+      if (message != null) {
+         for (Entry<Object, Object> property : message.getProperties().entrySet()) {
+            requestConnection.setRequestProperty(property.getKey().toString(), property.getValue().toString());
+         }
+         for (Entry<Object, Object> header : message.getHeaders().entrySet()) {
+            requestConnection.setRequestProperty(header.getKey().toString(), header.getValue().toString());
+         }
+      }
+      if (properties != null) {
+         for (Entry<String, String> property : properties.entrySet()) {
+            requestConnection.setRequestProperty(property.getKey(), property.getValue());
+         }
+      }
+   }
+
    @Override
    public Serializable doSend(final Message message, final Map<String, String> properties, final MeasurementUnit mu) throws Exception {
-      // TODO Auto-generated method stub
-      return null;
+      try (OutputStream out = requestConnection.getOutputStream()) {
+         out.write(request);
+         if (attachmentFiles.length > 0) {
+            final byte[] buffer = new byte[8192];
+            for (int i = 0; i < attachmentFiles.length; i++) {
+               out.write(attachmentHeaders[i]);
+               try (InputStream in = new FileInputStream(attachmentFiles[i])) {
+                  int n;
+                  while ((n = in.read(buffer)) != -1) {
+                     out.write(buffer, 0, n);
+                  }
+               }
+            }
+            out.write(closingBoundary);
+         }
+      }
+
+      final int respCode = requestConnection.getResponseCode();
+      final InputStream in = respCode < 400 ? requestConnection.getInputStream() : requestConnection.getErrorStream();
+      if (in == null) {
+         return null;
+      }
+
+      // the stream must be read completely and closed to keep the connection alive
+      try {
+         if (responseMode == ResponseMode.FAULT_DETECTION) {
+            final FaultScanner scanner = new FaultScanner();
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+               scanner.scan(buffer, n);
+            }
+            if (scanner.isFault()) {
+               throw new PerfCakeException("The server returned a SOAP fault (HTTP response code " + respCode + ").");
+            }
+            return null;
+         }
+
+         final ByteArrayOutputStream response = new ByteArrayOutputStream();
+         final byte[] buffer = new byte[8192];
+         int n;
+         while ((n = in.read(buffer)) != -1) {
+            response.write(buffer, 0, n);
+         }
+         return response.toString(Utils.getDefaultEncoding());
+      } finally {
+         in.close();
+      }
+   }
+
+   @Override
+   public void postSend(final Message message) throws Exception {
+      super.postSend(message);
+      // no disconnect, the underlying connection is returned to the keep-alive cache
+      requestConnection = null;
+      request = null;
+   }
+
+   /**
+    * Used to read the value of soapVersion.
+    *
+    * @return The SOAP protocol version.
+    */
+   public SoapVersion getSoapVersion() {
+      return soapVersion;
+   }
+
+   /**
+    * Sets the value of soapVersion.
+    *
+    * @param soapVersion
+    *       The SOAP protocol version.
+    */
+   public SoapSender setSoapVersion(final SoapVersion soapVersion) {
+      this.soapVersion = soapVersion;
+      return this;
+   }
+
+   /**
+    * Used to read the value of soapAction.
+    *
+    * @return The SOAP action.
+    */
+   public String getSoapAction() {
+      return soapAction;
+   }
+
+   /**
+    * Sets the value of soapAction.
+    *
+    * @param soapAction
+    *       The SOAP action, sent in the SOAPAction header with SOAP 1.1 and as the action parameter of the content type with SOAP 1.2.
+    *       When not set, an empty SOAPAction header is sent with SOAP 1.1 as required by the specification.
+    */
+   public SoapSender setSoapAction(final String soapAction) {
+      this.soapAction = soapAction;
+      return this;
+   }
+
+   /**
+    * Used to read the value of wrapBody.
+    *
+    * @return Whether the message payload is wrapped in a SOAP envelope.
+    */
+   public boolean isWrapBody() {
+      return wrapBody;
+   }
+
+   /**
+    * Sets the value of wrapBody.
+    *
+    * @param wrapBody
+    *       When true, the message payload is the content of the SOAP body and the envelope is generated.
+    */
+   public SoapSender setWrapBody(final boolean wrapBody) {
+      this.wrapBody = wrapBody;
+      return this;
+   }
+
+   /**
+    * Used to read the value of attachments.
+    *
+    * @return The comma separated list of attachment files.
+    */
+   public String getAttachments() {
+      return attachments;
+   }
+
+   /**
+    * Sets the value of attachments.
+    *
+    * @param attachments
+    *       The comma separated list of files sent as MTOM attachments.
+    */
+   public SoapSender setAttachments(final String attachments) {
+      this.attachments = attachments;
+      return this;
+   }
+
+   /**
+    * Used to read the value of responseMode.
+    *
+    * @return How the response is processed.
+    */
+   public ResponseMode getResponseMode() {
+      return responseMode;
+   }
+
+   /**
+    * Sets the value of responseMode.
+    *
+    * @param responseMode
+    *       How the response is processed.
+    */
+   public SoapSender setResponseMode(final ResponseMode responseMode) {
+      this.responseMode = responseMode;
+      return this;
    }
 
+   /**
+    * Finds out whether the first element in the SOAP body is a fault. Only the element names are checked byte by byte,
+    * the scanning stops at the first element in the body.
+    */
+   static final class FaultScanner {
+
+      private static final byte[] BODY = "Body".getBytes();
+      private static final byte[] FAULT = "Fault".getBytes();
+
+      /**
+       * The local name of the element being read.
+       */
+      private final byte[] name = new byte[16];
+      private int nameLength = 0;
+
+      /**
+       * Whether the element name is being read.
+       */
+      private boolean inName = false;
+
+      /**
+       * The previous character was '&lt;'.
+       */
+      private boolean tagStart = false;
+
+      private boolean inBody = false;
+      private boolean done = false;
+      private boolean fault = false;
+
+      void scan(final byte[] data, final int length) {
+         for (int i = 0; i < length && !done; i++) {
+            final byte b = data[i];
+            if (tagStart) {
+               tagStart = false;
+               if (b != '/' && b != '?' && b != '!') {
+                  inName = true;
+                  nameLength = 0;
+               }
+            }
+
+            if (inName) {
+               if (b == ' ' || b == '>' || b == '/' || b == '\t' || b == '\r' || b == '\n') {
+                  inName = false;
+                  endName();
+               } else if (b == ':') {
+                  nameLength = 0; // skip the prefix
+               } else if (nameLength < name.length) {
+                  name[nameLength++] = b;
+               } else {
+                  nameLength = name.length + 1; // too long to match
+               }
+            } else if (b == '<') {
+               tagStart = true;
+            }
+         }
+      }
+
+      private void endName() {
+         if (inBody) {
+            fault = matches(FAULT);
+            done = true;
+         } else if (matches(BODY)) {
+            inBody = true;
+         }
+      }
+
+      private boolean matches(final byte[] expected) {
+         if (nameLength != expected.length) {
+            return false;
+         }
+         for (int i = 0; i < nameLength; i++) {
+            if (name[i] != expected[i]) {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      boolean isFault() {
+         return fault;
+      }
+   }
 }
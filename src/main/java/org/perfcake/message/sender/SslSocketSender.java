@@ -19,14 +19,80 @@
  */
 package org.perfcake.message.sender;
 
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+
 import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
 
 /**
+ * Sends messages over an SSL socket. The SSL context is built only once and shared by all the senders with the same key and trust stores
+ * (see {@link SharedSslContext}), so that new connections can resume existing TLS sessions. The number of handshakes, the number of resumed handshakes
+ * and the duration of the handshake are reported with the results.
+ *
  * @author Martin Večeřa <marvenec@gmail.com>
  */
 public class SslSocketSender extends AbstractSocketSender {
 
+   /**
+    * The key store location.
+    */
+   private String keyStore;
+
+   /**
+    * The key store password.
+    */
+   private String keyStorePassword;
+
+   /**
+    * The trust store location.
+    */
+   private String trustStore;
+
+   /**
+    * The trust store password.
+    */
+   private String trustStorePassword;
+
+   /**
+    * Size of the client TLS session cache, 0 means unlimited, a negative value keeps the JVM default.
+    */
+   private int sessionCacheSize = -1;
+
+   /**
+    * The SSL context shared among the senders.
+    */
+   private SharedSslContext sslContext;
+
+   /**
+    * Duration of the last handshake in milliseconds that has not been reported yet, negative when there is no such handshake.
+    */
+   private double handshakeTime = -1;
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSocketSender#init()
+    */
+   @Override
+   public void init() throws Exception {
+      sslContext = SharedSslContext.acquire(keyStore, keyStorePassword, trustStore, trustStorePassword, sessionCacheSize);
+      super.init();
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSocketSender#close()
+    */
+   @Override
+   public void close() {
+      super.close();
+      if (sslContext != null) {
+         sslContext.release();
+         sslContext = null;
+      }
+   }
+
    /*
     * (non-Javadoc)
     *
@@ -34,8 +100,84 @@ public class SslSocketSender extends AbstractSocketSender {
     */
    @Override
    protected void openSocket() throws Exception {
-      SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
-      socket = factory.createSocket(host, port);
-      ((SSLSocket) socket).startHandshake();
+      final SSLSocket sslSocket = (SSLSocket) sslContext.getSocketFactory().createSocket(host, port);
+      socket = sslSocket;
+
+      final long startTime = System.currentTimeMillis();
+      final long start = System.nanoTime();
+      sslSocket.startHandshake();
+      handshakeTime = (System.nanoTime() - start) / 1_000_000d;
+      sslContext.handshakeCompleted(sslSocket.getSession(), startTime);
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see org.perfcake.message.sender.AbstractSocketSender#postSend(org.perfcake.message.Message)
+    */
+   @Override
+   public void postSend(final Message message) throws Exception {
+      super.postSend(message);
+      final MeasurementUnit mu = getMeasurementUnit();
+      if (mu != null) {
+         sslContext.report(mu, handshakeTime);
+         handshakeTime = -1;
+      }
+   }
+
+   public String getKeyStore() {
+      return keyStore;
+   }
+
+   public SslSocketSender setKeyStore(final String keyStore) {
+      this.keyStore = keyStore;
+      return this;
+   }
+
+   public String getKeyStorePassword() {
+      return keyStorePassword;
+   }
+
+   public SslSocketSender setKeyStorePassword(final String keyStorePassword) {
+      this.keyStorePassword = keyStorePassword;
+      return this;
+   }
+
+   public String getTrustStore() {
+      return trustStore;
+   }
+
+   public SslSocketSender setTrustStore(final String trustStore) {
+      this.trustStore = trustStore;
+      return this;
+   }
+
+   public String getTrustStorePassword() {
+      return trustStorePassword;
+   }
+
+   public SslSocketSender setTrustStorePassword(final String trustStorePassword) {
+      this.trustStorePassword = trustStorePassword;
+      return this;
+   }
+
+   /**
+    * Used to read the size of the client TLS session cache.
+    *
+    * @return The session cache size.
+    */
+   public int getSessionCacheSize() {
+      return sessionCacheSize;
+   }
+
+   /**
+    * Sets the size of the client TLS session cache. 0 means unlimited, a negative value keeps the JVM default.
+    *
+    * @param sessionCacheSize
+    *       The session cache size to set.
+    */
+   public SslSocketSender setSessionCacheSize(final int sessionCacheSize) {
+      this.sessionCacheSize = sessionCacheSize;
+      return this;
    }
 }
@@ -22,6 +22,7 @@ package org.perfcake.message.sender;
 import org.perfcake.PerfCakeException;
 import org.perfcake.message.Message;
 import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.util.Utils;
 
 import org.apache.log4j.Logger;
 
@@ -29,7 +30,19 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.websocket.ClientEndpoint;
 import javax.websocket.CloseReason;
 import javax.websocket.ContainerProvider;
@@ -37,19 +50,66 @@ import javax.websocket.DeploymentException;
 import javax.websocket.OnClose;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
+import javax.websocket.PongMessage;
 import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 import javax.websocket.WebSocketContainer;
 
 /**
  * The sender can be used to send a simple messages via websocket protocol to a remote websocket server endpoint.
+ * <p/>
+ * Binary payloads are encoded to a byte buffer before the measurement starts and the buffer is reused while the message does not change.
+ * A ping is always measured until the corresponding pong arrives. With the awaitResponse property set, the same applies to text and binary
+ * messages and the reply of the server completes the request. The replies are matched to the requests in the order of sending, or by
+ * a correlation ID found by the correlationIdPattern in both the request and the reply. Without the correlation ID, the server must reply
+ * to every request in the order of sending. The reply to a request that was given up after the response timeout is still expected
+ * and it is discarded when it arrives, so that it is not taken for the reply to a later request.
+ * <p/>
+ * The basic remote endpoint waits for the reply so that the measured time is the full round-trip time. The async remote endpoint waits neither
+ * for the send to complete nor for the reply, so the measured time is just the time of the send call. The round-trip time of each reply
+ * is measured when the reply arrives instead, and the average round-trip time of the replies received since the previous message is reported
+ * as an additional result. The completion of each send is reported back asynchronously and the failed sends are counted and reported
+ * as an additional result as well. The replies limit the number of messages in flight by maxInFlight and the requests that did not receive
+ * a reply in time are counted.
  */
 public class WebSocketSender extends AbstractSender {
 
    private static final Logger logger = Logger.getLogger(WebSocketSender.class);
 
+   /**
+    * Result name for the number of asynchronous sends that failed.
+    */
+   public static final String SEND_FAILURES = "SendFailures";
+
+   /**
+    * Result name for the average round-trip time in milliseconds of the replies received since the previous message with the async remote endpoint.
+    */
+   public static final String ROUND_TRIP_TIME = "RoundTripTime";
+
+   /**
+    * Result name for the number of messages being in flight.
+    */
+   public static final String IN_FLIGHT = "InFlight";
+
+   /**
+    * Result name for the number of asynchronous requests that did not receive a reply in time.
+    */
+   public static final String RESPONSE_TIMEOUTS = "ResponseTimeouts";
+
+   /**
+    * Result name for the number of replies that did not match any pending request.
+    */
+   public static final String UNMATCHED_RESPONSES = "UnmatchedResponses";
+
+   /**
+    * Maximal length of a ping payload allowed by the web socket protocol.
+    */
+   private static final int MAX_PING_LENGTH = 125;
+
    private WebSocketContainer container;
-   private Session session;
+   protected Session session;
 
    public enum RemoteEndpointType {
       BASIC, ASYNC
@@ -63,6 +123,102 @@ public class WebSocketSender extends AbstractSender {
 
    private PayloadType payloadType = PayloadType.TEXT;
 
+   /**
+    * Whether to wait for the reply of the server.
+    */
+   private boolean awaitResponse = false;
+
+   /**
+    * How long to wait for the reply in milliseconds.
+    */
+   private long responseTimeout = 10000;
+
+   /**
+    * Regular expression with a group capturing the correlation ID in the requests and the replies.
+    */
+   private String correlationIdPattern = null;
+
+   /**
+    * Maximal number of messages in flight with the async remote endpoint, 0 means no limit.
+    */
+   private int maxInFlight = 0;
+
+   /**
+    * Compiled correlation ID pattern.
+    */
+   private Pattern correlationIdRegexp;
+
+   /**
+    * Limits the number of messages in flight.
+    */
+   private Semaphore inFlightWindow;
+
+   /**
+    * Requests waiting for the reply in the order of sending.
+    */
+   private final Queue<PendingReply> pendingReplies = new ConcurrentLinkedQueue<>();
+
+   /**
+    * Requests waiting for the reply by their correlation ID.
+    */
+   private final ConcurrentMap<String, PendingReply> correlatedReplies = new ConcurrentHashMap<>();
+
+   /**
+    * The number of messages in flight.
+    */
+   private final AtomicLong inFlight = new AtomicLong(0);
+
+   /**
+    * The number of asynchronous requests that did not receive a reply in time.
+    */
+   private final AtomicLong timeouts = new AtomicLong(0);
+
+   /**
+    * The number of replies that did not match any pending request.
+    */
+   private final AtomicLong unmatched = new AtomicLong(0);
+
+   /**
+    * The number of asynchronous sends that failed.
+    */
+   private final AtomicLong sendFailures = new AtomicLong(0);
+
+   /**
+    * The number of the replies still expected for the requests that were given up. They are discarded when they arrive,
+    * which is only possible when the replies are matched in the order of sending.
+    */
+   private final AtomicLong lateReplies = new AtomicLong(0);
+
+   /**
+    * Guards the round-trip times of the replies received since the previous message.
+    */
+   private final Object roundTripLock = new Object();
+
+   /**
+    * The sum of the round-trip times of the replies received since the previous message in nanoseconds.
+    */
+   private long roundTripTime = 0;
+
+   /**
+    * The number of the replies received since the previous message.
+    */
+   private long roundTrips = 0;
+
+   /**
+    * The message the encoded payload belongs to.
+    */
+   private Message lastMessage;
+
+   /**
+    * The payload of the last message encoded for a binary message or a ping.
+    */
+   private ByteBuffer encodedPayload;
+
+   /**
+    * The request being sent.
+    */
+   private PendingReply pendingReply;
+
    public WebSocketSender setRemoteEndpointType(final String remoteEndpointType) {
       switch (remoteEndpointType) {
          case "basic":
@@ -119,44 +275,415 @@ public class WebSocketSender extends AbstractSender {
       }
    }
 
+   @Override
+   public void preSend(final Message message, final Map<String, String> properties) throws Exception {
+      super.preSend(message, properties);
+
+      if (payloadType != PayloadType.TEXT && (encodedPayload == null || message != lastMessage)) {
+         final Serializable payload = message.getPayload();
+         encodedPayload = ByteBuffer.wrap(payload instanceof byte[] ? (byte[]) payload : payload.toString().getBytes(Utils.getDefaultEncoding()));
+         lastMessage = message;
+
+         if (payloadType == PayloadType.PING && encodedPayload.remaining() > MAX_PING_LENGTH) {
+            throw new PerfCakeException("Web socket ping payload cannot be longer than " + MAX_PING_LENGTH + " bytes.");
+         }
+      }
+   }
+
    @Override
    public Serializable doSend(Message message, Map<String, String> properties, MeasurementUnit mu) throws Exception {
-      if (remoteEndpointType == RemoteEndpointType.BASIC) {
-         RemoteEndpoint.Basic basic = session.getBasicRemote();
-         switch (payloadType) {
-            case TEXT:
-               basic.sendText(message.getPayload().toString());
-               break;
-            case BINARY:
-               throw new UnsupportedOperationException("Web socket binary payload is not supported yet.");
-               // basic.sendBinary(null);
-            case PING:
-               throw new UnsupportedOperationException("Web socket ping payload is not supported yet.");
-               // basic.sendPing(null);
-            default:
-               throw new IllegalStateException("Unknown or undefined web socket payload type. Use text, binary or ping.");
-         }
-      } else if (remoteEndpointType == RemoteEndpointType.ASYNC) {
-         RemoteEndpoint.Async async = session.getAsyncRemote();
-         switch (payloadType) {
-            case TEXT:
-               async.sendText(message.getPayload().toString());
-               break;
-            case BINARY:
-               throw new UnsupportedOperationException("Web socket binary payload is not supported yet.");
-               // async.sendBinary(null);
-            case PING:
-               throw new UnsupportedOperationException("Web socket ping payload is not supported yet.");
-               // async.sendPing(null);
-            default:
-               throw new IllegalStateException("Unknown or undefined web socket payload type. Use text, binary or ping.");
+      if (remoteEndpointType == RemoteEndpointType.ASYNC) {
+         if (isAwaitingResponse()) {
+            expire();
+         }
+         if (inFlightWindow != null) {
+            acquireInFlight();
          }
-      } else {
-         throw new IllegalStateException("Unknown or undefined web socket remote endpoint type. Use either basic or async.");
       }
+
+      if (isAwaitingResponse()) {
+         pendingReply = register(message);
+      }
+      inFlight.incrementAndGet();
+
+      try {
+         if (remoteEndpointType == RemoteEndpointType.BASIC) {
+            RemoteEndpoint.Basic basic = session.getBasicRemote();
+            switch (payloadType) {
+               case TEXT:
+                  basic.sendText(message.getPayload().toString());
+                  break;
+               case BINARY:
+                  basic.sendBinary(encodedPayload.duplicate());
+                  break;
+               case PING:
+                  basic.sendPing(encodedPayload.duplicate());
+                  break;
+               default:
+                  throw new IllegalStateException("Unknown or undefined web socket payload type. Use text, binary or ping.");
+            }
+            if (pendingReply == null) {
+               inFlight.decrementAndGet();
+            }
+         } else if (remoteEndpointType == RemoteEndpointType.ASYNC) {
+            RemoteEndpoint.Async async = session.getAsyncRemote();
+            switch (payloadType) {
+               case TEXT:
+                  async.sendText(message.getPayload().toString(), new AsyncSendHandler(pendingReply));
+                  break;
+               case BINARY:
+                  async.sendBinary(encodedPayload.duplicate(), new AsyncSendHandler(pendingReply));
+                  break;
+               case PING:
+                  async.sendPing(encodedPayload.duplicate());
+                  break;
+               default:
+                  throw new IllegalStateException("Unknown or undefined web socket payload type. Use text, binary or ping.");
+            }
+         } else {
+            throw new IllegalStateException("Unknown or undefined web socket remote endpoint type. Use either basic or async.");
+         }
+      } catch (Exception e) {
+         if (pendingReply != null) {
+            unregister(pendingReply);
+         } else {
+            release();
+         }
+         pendingReply = null;
+         throw e;
+      }
+
+      final PendingReply reply = pendingReply;
+      pendingReply = null;
+
+      if (reply != null && remoteEndpointType == RemoteEndpointType.BASIC) {
+         if (!reply.latch.await(responseTimeout, TimeUnit.MILLISECONDS)) {
+            giveUp(reply);
+            throw new PerfCakeException("No web socket reply received within the specified timeout (" + responseTimeout + " ms).");
+         }
+
+         return reply.response;
+      }
+
       return null;
    }
 
+   @Override
+   public void postSend(final Message message) throws Exception {
+      super.postSend(message);
+
+      final MeasurementUnit mu = getMeasurementUnit();
+      if (mu != null && remoteEndpointType == RemoteEndpointType.ASYNC) {
+         mu.appendResult(IN_FLIGHT, inFlight.get());
+         mu.appendResult(SEND_FAILURES, sendFailures.get());
+         if (isAwaitingResponse()) {
+            mu.appendResult(RESPONSE_TIMEOUTS, timeouts.get());
+            synchronized (roundTripLock) {
+               if (roundTrips > 0) {
+                  mu.appendResult(ROUND_TRIP_TIME, roundTripTime / 1_000_000d / roundTrips);
+                  roundTripTime = 0;
+                  roundTrips = 0;
+               }
+            }
+         }
+      }
+      if (mu != null && isAwaitingResponse()) {
+         mu.appendResult(UNMATCHED_RESPONSES, unmatched.get());
+      }
+   }
+
+   private boolean isAwaitingResponse() {
+      return awaitResponse || payloadType == PayloadType.PING;
+   }
+
+   private boolean isCorrelated() {
+      return correlationIdRegexp != null && payloadType != PayloadType.PING;
+   }
+
+   /**
+    * Waits for a free slot in the in-flight window. The requests waiting for a reply longer than the response timeout are given up
+    * to free their slots.
+    *
+    * @throws Exception
+    *       When there is no free slot within the response timeout.
+    */
+   private void acquireInFlight() throws Exception {
+      if (!inFlightWindow.tryAcquire(responseTimeout, TimeUnit.MILLISECONDS)) {
+         expire();
+         if (!inFlightWindow.tryAcquire()) {
+            throw new PerfCakeException("The in-flight window of " + maxInFlight + " messages did not move within the specified timeout (" + responseTimeout + " ms).");
+         }
+      }
+   }
+
+   /**
+    * Gives up the requests waiting for a reply longer than the response timeout.
+    */
+   private void expire() {
+      final long limit = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(responseTimeout);
+      PendingReply reply = pendingReplies.peek();
+      while (reply != null && reply.start - limit < 0) {
+         if (giveUp(reply)) {
+            timeouts.incrementAndGet();
+         }
+         reply = pendingReplies.peek();
+      }
+   }
+
+   private PendingReply register(final Message message) {
+      final PendingReply reply;
+      if (isCorrelated()) {
+         reply = new PendingReply(getCorrelationId(message.getPayload().toString()));
+         if (reply.correlationId != null) {
+            correlatedReplies.put(reply.correlationId, reply);
+         }
+      } else {
+         reply = new PendingReply(null);
+      }
+      pendingReplies.add(reply);
+
+      return reply;
+   }
+
+   /**
+    * Removes a request from the requests waiting for a reply.
+    *
+    * @param reply
+    *       The request.
+    * @return True if the request was still waiting.
+    */
+   private boolean unregister(final PendingReply reply) {
+      if (pendingReplies.remove(reply)) {
+         if (reply.correlationId != null) {
+            correlatedReplies.remove(reply.correlationId, reply);
+         }
+         release();
+         return true;
+      }
+
+      return false;
+   }
+
+   /**
+    * Gives up a request that did not receive a reply in time. Its reply is still expected when the replies are matched in the order of sending.
+    *
+    * @param reply
+    *       The request.
+    * @return True if the request was still waiting.
+    */
+   private boolean giveUp(final PendingReply reply) {
+      if (unregister(reply)) {
+         if (!isCorrelated()) {
+            lateReplies.incrementAndGet();
+         }
+         return true;
+      }
+
+      return false;
+   }
+
+   /**
+    * Takes a reply for a request that was given up when there is any expected.
+    *
+    * @return True if the reply belongs to a request that was given up.
+    */
+   private boolean isLateReply() {
+      long late;
+      do {
+         late = lateReplies.get();
+         if (late == 0) {
+            return false;
+         }
+      } while (!lateReplies.compareAndSet(late, late - 1));
+
+      return true;
+   }
+
+   private void release() {
+      inFlight.decrementAndGet();
+      if (inFlightWindow != null && remoteEndpointType == RemoteEndpointType.ASYNC) {
+         inFlightWindow.release();
+      }
+   }
+
+   private String getCorrelationId(final String payload) {
+      final Matcher matcher = correlationIdRegexp.matcher(payload);
+      return matcher.find() ? matcher.group(1) : null;
+   }
+
+   /**
+    * Completes the request the reply belongs to.
+    *
+    * @param response
+    *       The reply payload.
+    * @param pong
+    *       Whether the reply is a pong.
+    */
+   private void replied(final Serializable response, final boolean pong) {
+      final PendingReply reply;
+      if (correlationIdRegexp != null && !pong) {
+         final String correlationId = getCorrelationId(response instanceof byte[] ? new String((byte[]) response, Charset.forName(Utils.getDefaultEncoding())) : response.toString());
+         reply = correlationId == null ? null : correlatedReplies.get(correlationId);
+      } else if (isLateReply()) {
+         reply = null;
+      } else {
+         reply = pendingReplies.peek();
+      }
+
+      if (reply == null || !unregister(reply)) {
+         unmatched.incrementAndGet();
+         if (logger.isDebugEnabled()) {
+            logger.debug("Received a reply that does not match any request.");
+         }
+         return;
+      }
+
+      if (remoteEndpointType == RemoteEndpointType.ASYNC) {
+         final long time = System.nanoTime() - reply.start;
+         synchronized (roundTripLock) {
+            roundTripTime += time;
+            roundTrips++;
+         }
+      }
+
+      reply.response = response;
+      reply.latch.countDown();
+   }
+
+   /**
+    * Gets the configuration of waiting for the reply.
+    *
+    * @return Whether the sender waits for the reply.
+    */
+   public boolean isAwaitResponse() {
+      return awaitResponse;
+   }
+
+   /**
+    * Sets the configuration of waiting for the reply.
+    *
+    * @param awaitResponse
+    *       When true, the request is completed by the reply of the server.
+    */
+   public WebSocketSender setAwaitResponse(final boolean awaitResponse) {
+      this.awaitResponse = awaitResponse;
+      return this;
+   }
+
+   /**
+    * Gets the time to wait for the reply.
+    *
+    * @return The response timeout in milliseconds.
+    */
+   public long getResponseTimeout() {
+      return responseTimeout;
+   }
+
+   /**
+    * Sets the time to wait for the reply.
+    *
+    * @param responseTimeout
+    *       The response timeout in milliseconds.
+    */
+   public WebSocketSender setResponseTimeout(final long responseTimeout) {
+      this.responseTimeout = responseTimeout;
+      return this;
+   }
+
+   /**
+    * Gets the regular expression capturing the correlation ID.
+    *
+    * @return The correlation ID pattern.
+    */
+   public String getCorrelationIdPattern() {
+      return correlationIdPattern;
+   }
+
+   /**
+    * Sets the regular expression capturing the correlation ID in its first group. When not set, the replies are matched in the order of sending.
+    *
+    * @param correlationIdPattern
+    *       The correlation ID pattern.
+    */
+   public WebSocketSender setCorrelationIdPattern(final String correlationIdPattern) {
+      this.correlationIdPattern = correlationIdPattern;
+      this.correlationIdRegexp = correlationIdPattern == null ? null : Pattern.compile(correlationIdPattern);
+      return this;
+   }
+
+   /**
+    * Gets the maximal number of messages in flight with the async remote endpoint.
+    *
+    * @return The maximal number of messages in flight, 0 means no limit.
+    */
+   public int getMaxInFlight() {
+      return maxInFlight;
+   }
+
+   /**
+    * Sets the maximal number of messages in flight with the async remote endpoint. A message is in flight until it is sent,
+    * or until its reply arrives when waiting for the replies.
+    *
+    * @param maxInFlight
+    *       The maximal number of messages in flight, 0 means no limit.
+    */
+   public WebSocketSender setMaxInFlight(final int maxInFlight) {
+      this.maxInFlight = maxInFlight;
+      this.inFlightWindow = maxInFlight > 0 ? new Semaphore(maxInFlight) : null;
+      return this;
+   }
+
+   /**
+    * A request waiting for the reply.
+    */
+   private static class PendingReply {
+
+      private final String correlationId;
+
+      private final long start = System.nanoTime();
+
+      private final CountDownLatch latch = new CountDownLatch(1);
+
+      private volatile Serializable response;
+
+      private PendingReply(final String correlationId) {
+         this.correlationId = correlationId;
+      }
+   }
+
+   /**
+    * Counts the failed asynchronous sends and frees the in-flight slot when the message is sent and no reply is expected,
+    * or when the send fails.
+    */
+   private class AsyncSendHandler implements SendHandler {
+
+      /**
+       * The request waiting for the reply, null when no reply is expected.
+       */
+      private final PendingReply reply;
+
+      private AsyncSendHandler(final PendingReply reply) {
+         this.reply = reply;
+      }
+
+      @Override
+      public void onResult(final SendResult result) {
+         if (!result.isOK()) {
+            sendFailures.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+               logger.debug("Cannot send a web socket message: ", result.getException());
+            }
+            if (reply != null) {
+               unregister(reply);
+               return;
+            }
+         }
+         if (reply == null) {
+            release();
+         }
+      }
+   }
+
    @ClientEndpoint
    public class PerfCakeClientEndpoint {
 
@@ -171,6 +698,29 @@ public class WebSocketSender extends AbstractSender {
          if (logger.isDebugEnabled()) {
             logger.debug("Received ... " + message);
          }
+         if (awaitResponse) {
+            replied(message, false);
+         }
+      }
+
+      @OnMessage
+      public void onMessage(ByteBuffer message, Session session) {
+         if (logger.isDebugEnabled()) {
+            logger.debug("Received ... " + message.remaining() + " bytes");
+         }
+         if (awaitResponse) {
+            final byte[] bytes = new byte[message.remaining()];
+            message.get(bytes);
+            replied(bytes, false);
+         }
+      }
+
+      @OnMessage
+      public void onPong(PongMessage message, Session session) {
+         if (logger.isDebugEnabled()) {
+            logger.debug("Received pong");
+         }
+         replied(null, true);
       }
 
       @OnClose
@@ -120,6 +120,20 @@ public class ObjectFactory {
       return new Scenario.Sender();
    }
 
+   /**
+    * Create an instance of {@link Scenario.Receiver }
+    */
+   public Scenario.Receiver createScenarioReceiver() {
+      return new Scenario.Receiver();
+   }
+
+   /**
+    * Create an instance of {@link Scenario.Feeder }
+    */
+   public Scenario.Feeder createScenarioFeeder() {
+      return new Scenario.Feeder();
+   }
+
    /**
     * Create an instance of {@link Property }
     */
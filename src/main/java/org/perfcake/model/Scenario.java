@@ -93,6 +93,30 @@ import javax.xml.bind.annotation.XmlType;
  *             &lt;/complexContent>
  *           &lt;/complexType>
  *         &lt;/element>
+ *         &lt;element name="receiver" minOccurs="0">
+ *           &lt;complexType>
+ *             &lt;complexContent>
+ *               &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType">
+ *                 &lt;sequence>
+ *                   &lt;element ref="{urn:perfcake:scenario:3.0}property" maxOccurs="unbounded" minOccurs="0"/>
+ *                 &lt;/sequence>
+ *                 &lt;attribute name="class" type="{http://www.w3.org/2001/XMLSchema}string" />
+ *               &lt;/restriction>
+ *             &lt;/complexContent>
+ *           &lt;/complexType>
+ *         &lt;/element>
+ *         &lt;element name="feeder" minOccurs="0">
+ *           &lt;complexType>
+ *             &lt;complexContent>
+ *               &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType">
+ *                 &lt;sequence>
+ *                   &lt;element ref="{urn:perfcake:scenario:3.0}property" maxOccurs="unbounded" minOccurs="0"/>
+ *                 &lt;/sequence>
+ *                 &lt;attribute name="class" type="{http://www.w3.org/2001/XMLSchema}string" />
+ *               &lt;/restriction>
+ *             &lt;/complexContent>
+ *           &lt;/complexType>
+ *         &lt;/element>
  *         &lt;element name="reporting" minOccurs="0">
  *           &lt;complexType>
  *             &lt;complexContent>
@@ -133,6 +157,7 @@ import javax.xml.bind.annotation.XmlType;
  *                           &lt;/sequence>
  *                           &lt;attribute name="class" type="{http://www.w3.org/2001/XMLSchema}string" />
  *                           &lt;attribute name="enabled" type="{http://www.w3.org/2001/XMLSchema}boolean" default="true" />
+ *                           &lt;attribute name="receiver" type="{http://www.w3.org/2001/XMLSchema}boolean" default="false" />
  *                         &lt;/restriction>
  *                       &lt;/complexContent>
  *                     &lt;/complexType>
@@ -212,6 +237,8 @@ import javax.xml.bind.annotation.XmlType;
       "properties",
       "generator",
       "sender",
+      "receiver",
+      "feeder",
       "reporting",
       "messages",
       "validation"
@@ -224,6 +251,8 @@ public class Scenario {
    protected Scenario.Generator generator;
    @XmlElement(required = true)
    protected Scenario.Sender sender;
+   protected Scenario.Receiver receiver;
+   protected Scenario.Feeder feeder;
    protected Scenario.Reporting reporting;
    protected Scenario.Messages messages;
    protected Scenario.Validation validation;
@@ -291,6 +320,48 @@ public class Scenario {
       this.sender = value;
    }
 
+   /**
+    * Gets the value of the receiver property.
+    *
+    * @return possible object is
+    * {@link Scenario.Receiver }
+    */
+   public Scenario.Receiver getReceiver() {
+      return receiver;
+   }
+
+   /**
+    * Sets the value of the receiver property.
+    *
+    * @param value
+    *       allowed object is
+    *       {@link Scenario.Receiver }
+    */
+   public void setReceiver(Scenario.Receiver value) {
+      this.receiver = value;
+   }
+
+   /**
+    * Gets the value of the feeder property.
+    *
+    * @return possible object is
+    * {@link Scenario.Feeder }
+    */
+   public Scenario.Feeder getFeeder() {
+      return feeder;
+   }
+
+   /**
+    * Sets the value of the feeder property.
+    *
+    * @param value
+    *       allowed object is
+    *       {@link Scenario.Feeder }
+    */
+   public void setFeeder(Scenario.Feeder value) {
+      this.feeder = value;
+   }
+
    /**
     * Gets the value of the reporting property.
     *
@@ -596,6 +667,9 @@ public class Scenario {
     *           &lt;/complexType>
     *         &lt;/element>
     *       &lt;/sequence>
+    *       &lt;attribute name="preRender" type="{http://www.w3.org/2001/XMLSchema}int" default="0" />
+    *       &lt;attribute name="preRenderContinuously" type="{http://www.w3.org/2001/XMLSchema}boolean" default="false" />
+    *       &lt;attribute name="selection" type="{http://www.w3.org/2001/XMLSchema}string" default="ALL" />
     *     &lt;/restriction>
     *   &lt;/complexContent>
     * &lt;/complexType>
@@ -609,6 +683,12 @@ public class Scenario {
 
       @XmlElement(required = true)
       protected List<Scenario.Messages.Message> message;
+      @XmlAttribute(name = "preRender")
+      protected Integer preRender;
+      @XmlAttribute(name = "preRenderContinuously")
+      protected Boolean preRenderContinuously;
+      @XmlAttribute(name = "selection")
+      protected String selection;
 
       /**
        * Gets the value of the message property.
@@ -637,6 +717,81 @@ public class Scenario {
          return this.message;
       }
 
+      /**
+       * Gets the value of the preRender property.
+       *
+       * @return possible object is
+       * {@link Integer }
+       */
+      public int getPreRender() {
+         if (preRender == null) {
+            return 0;
+         } else {
+            return preRender;
+         }
+      }
+
+      /**
+       * Sets the value of the preRender property.
+       *
+       * @param value
+       *       allowed object is
+       *       {@link Integer }
+       */
+      public void setPreRender(Integer value) {
+         this.preRender = value;
+      }
+
+      /**
+       * Gets the value of the preRenderContinuously property.
+       *
+       * @return possible object is
+       * {@link Boolean }
+       */
+      public boolean isPreRenderContinuously() {
+         if (preRenderContinuously == null) {
+            return false;
+         } else {
+            return preRenderContinuously;
+         }
+      }
+
+      /**
+       * Sets the value of the preRenderContinuously property.
+       *
+       * @param value
+       *       allowed object is
+       *       {@link Boolean }
+       */
+      public void setPreRenderContinuously(Boolean value) {
+         this.preRenderContinuously = value;
+      }
+
+      /**
+       * Gets the value of the selection property.
+       *
+       * @return possible object is
+       * {@link String }
+       */
+      public String getSelection() {
+         if (selection == null) {
+            return "ALL";
+         } else {
+            return selection;
+         }
+      }
+
+      /**
+       * Sets the value of the selection property.
+       *
+       * @param value
+       *       allowed object is
+       *       {@link String }
+       */
+      public void setSelection(String value) {
+         this.selection = value;
+      }
+
       /**
        * <p>Java class for anonymous complex type.
        *
@@ -662,6 +817,10 @@ public class Scenario {
        *       &lt;attribute name="uri" type="{http://www.w3.org/2001/XMLSchema}string" />
        *       &lt;attribute name="content" type="{http://www.w3.org/2001/XMLSchema}string" />
        *       &lt;attribute name="multiplicity" type="{http://www.w3.org/2001/XMLSchema}string" />
+       *       &lt;attribute name="mapped" type="{http://www.w3.org/2001/XMLSchema}boolean" default="false" />
+       *       &lt;attribute name="name" type="{http://www.w3.org/2001/XMLSchema}string" />
+       *       &lt;attribute name="weight" type="{http://www.w3.org/2001/XMLSchema}double" default="1" />
+       *       &lt;attribute name="tags" type="{http://www.w3.org/2001/XMLSchema}string" />
        *     &lt;/restriction>
        *   &lt;/complexContent>
        * &lt;/complexType>
@@ -684,6 +843,14 @@ public class Scenario {
          protected String content;
          @XmlAttribute(name = "multiplicity")
          protected String multiplicity;
+         @XmlAttribute(name = "mapped")
+         protected Boolean mapped;
+         @XmlAttribute(name = "name")
+         protected String name;
+         @XmlAttribute(name = "weight")
+         protected Double weight;
+         @XmlAttribute(name = "tags")
+         protected String tags;
 
          /**
           * Gets the value of the header property.
@@ -829,6 +996,98 @@ public class Scenario {
             this.multiplicity = value;
          }
 
+         /**
+          * Gets the value of the mapped property.
+          *
+          * @return possible object is
+          * {@link Boolean }
+          */
+         public boolean isMapped() {
+            if (mapped == null) {
+               return false;
+            } else {
+               return mapped;
+            }
+         }
+
+         /**
+          * Sets the value of the mapped property.
+          *
+          * @param value
+          *       allowed object is
+          *       {@link Boolean }
+          */
+         public void setMapped(Boolean value) {
+            this.mapped = value;
+         }
+
+         /**
+          * Gets the value of the name property.
+          *
+          * @return possible object is
+          * {@link String }
+          */
+         public String getName() {
+            return name;
+         }
+
+         /**
+          * Sets the value of the name property.
+          *
+          * @param value
+          *       allowed object is
+          *       {@link String }
+          */
+         public void setName(String value) {
+            this.name = value;
+         }
+
+         /**
+          * Gets the value of the weight property.
+          *
+          * @return possible object is
+          * {@link Double }
+          */
+         public double getWeight() {
+            if (weight == null) {
+               return 1.0d;
+            } else {
+               return weight;
+            }
+         }
+
+         /**
+          * Sets the value of the weight property.
+          *
+          * @param value
+          *       allowed object is
+          *       {@link Double }
+          */
+         public void setWeight(Double value) {
+            this.weight = value;
+         }
+
+         /**
+          * Gets the value of the tags property.
+          *
+          * @return possible object is
+          * {@link String }
+          */
+         public String getTags() {
+            return tags;
+         }
+
+         /**
+          * Sets the value of the tags property.
+          *
+          * @param value
+          *       allowed object is
+          *       {@link String }
+          */
+         public void setTags(String value) {
+            this.tags = value;
+         }
+
          /**
           * <p>Java class for anonymous complex type.
           *
@@ -977,6 +1236,7 @@ public class Scenario {
     *                 &lt;/sequence>
     *                 &lt;attribute name="class" type="{http://www.w3.org/2001/XMLSchema}string" />
     *                 &lt;attribute name="enabled" type="{http://www.w3.org/2001/XMLSchema}boolean" default="true" />
+    *                 &lt;attribute name="receiver" type="{http://www.w3.org/2001/XMLSchema}boolean" default="false" />
     *               &lt;/restriction>
     *             &lt;/complexContent>
     *           &lt;/complexType>
@@ -1089,6 +1349,7 @@ public class Scenario {
        *       &lt;/sequence>
        *       &lt;attribute name="class" type="{http://www.w3.org/2001/XMLSchema}string" />
        *       &lt;attribute name="enabled" type="{http://www.w3.org/2001/XMLSchema}boolean" default="true" />
+       *       &lt;attribute name="receiver" type="{http://www.w3.org/2001/XMLSchema}boolean" default="false" />
        *     &lt;/restriction>
        *   &lt;/complexContent>
        * &lt;/complexType>
@@ -1107,6 +1368,8 @@ public class Scenario {
          protected String clazz;
          @XmlAttribute(name = "enabled")
          protected Boolean enabled;
+         @XmlAttribute(name = "receiver")
+         protected Boolean receiver;
 
          /**
           * Gets the value of the property property.
@@ -1208,6 +1471,31 @@ public class Scenario {
             this.enabled = value;
          }
 
+         /**
+          * Gets the value of the receiver property.
+          *
+          * @return possible object is
+          * {@link Boolean }
+          */
+         public boolean isReceiver() {
+            if (receiver == null) {
+               return false;
+            } else {
+               return receiver;
+            }
+         }
+
+         /**
+          * Sets the value of the receiver property.
+          *
+          * @param value
+          *       allowed object is
+          *       {@link Boolean }
+          */
+         public void setReceiver(Boolean value) {
+            this.receiver = value;
+         }
+
          /**
           * <p>Java class for anonymous complex type.
           *
@@ -1504,6 +1792,162 @@ public class Scenario {
 
    }
 
+   /**
+    * <p>Java class for anonymous complex type.
+    *
+    * <p>The following schema fragment specifies the expected content contained within this class.
+    *
+    * <pre>
+    * &lt;complexType>
+    *   &lt;complexContent>
+    *     &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType">
+    *       &lt;sequence>
+    *         &lt;element ref="{urn:perfcake:scenario:3.0}property" maxOccurs="unbounded" minOccurs="0"/>
+    *       &lt;/sequence>
+    *       &lt;attribute name="class" type="{http://www.w3.org/2001/XMLSchema}string" />
+    *     &lt;/restriction>
+    *   &lt;/complexContent>
+    * &lt;/complexType>
+    * </pre>
+    */
+   @XmlAccessorType(XmlAccessType.FIELD)
+   @XmlType(name = "", propOrder = {
+         "property"
+   })
+   public static class Receiver {
+
+      protected List<Property> property;
+      @XmlAttribute(name = "class")
+      protected String clazz;
+
+      /**
+       * Gets the value of the property property.
+       *
+       * <p>
+       * This accessor method returns a reference to the live list,
+       * not a snapshot. Therefore any modification you make to the
+       * returned list will be present inside the JAXB object.
+       * This is why there is not a <CODE>set</CODE> method for the property property.
+       *
+       * <p>
+       * For example, to add a new item, do as follows:
+       * <pre>
+       *    getProperty().add(newItem);
+       * </pre>
+       *
+       *
+       * <p>
+       * Objects of the following type(s) are allowed in the list
+       * {@link Property }
+       */
+      public List<Property> getProperty() {
+         if (property == null) {
+            property = new ArrayList<Property>();
+         }
+         return this.property;
+      }
+
+      /**
+       * Gets the value of the clazz property.
+       *
+       * @return possible object is
+       * {@link String }
+       */
+      public String getClazz() {
+         return clazz;
+      }
+
+      /**
+       * Sets the value of the clazz property.
+       *
+       * @param value
+       *       allowed object is
+       *       {@link String }
+       */
+      public void setClazz(String value) {
+         this.clazz = value;
+      }
+
+   }
+
+   /**
+    * <p>Java class for anonymous complex type.
+    *
+    * <p>The following schema fragment specifies the expected content contained within this class.
+    *
+    * <pre>
+    * &lt;complexType>
+    *   &lt;complexContent>
+    *     &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType">
+    *       &lt;sequence>
+    *         &lt;element ref="{urn:perfcake:scenario:3.0}property" maxOccurs="unbounded" minOccurs="0"/>
+    *       &lt;/sequence>
+    *       &lt;attribute name="class" type="{http://www.w3.org/2001/XMLSchema}string" />
+    *     &lt;/restriction>
+    *   &lt;/complexContent>
+    * &lt;/complexType>
+    * </pre>
+    */
+   @XmlAccessorType(XmlAccessType.FIELD)
+   @XmlType(name = "", propOrder = {
+         "property"
+   })
+   public static class Feeder {
+
+      protected List<Property> property;
+      @XmlAttribute(name = "class")
+      protected String clazz;
+
+      /**
+       * Gets the value of the property property.
+       *
+       * <p>
+       * This accessor method returns a reference to the live list,
+       * not a snapshot. Therefore any modification you make to the
+       * returned list will be present inside the JAXB object.
+       * This is why there is not a <CODE>set</CODE> method for the property property.
+       *
+       * <p>
+       * For example, to add a new item, do as follows:
+       * <pre>
+       *    getProperty().add(newItem);
+       * </pre>
+       *
+       *
+       * <p>
+       * Objects of the following type(s) are allowed in the list
+       * {@link Property }
+       */
+      public List<Property> getProperty() {
+         if (property == null) {
+            property = new ArrayList<Property>();
+         }
+         return this.property;
+      }
+
+      /**
+       * Gets the value of the clazz property.
+       *
+       * @return possible object is
+       * {@link String }
+       */
+      public String getClazz() {
+         return clazz;
+      }
+
+      /**
+       * Sets the value of the clazz property.
+       *
+       * @param value
+       *       allowed object is
+       *       {@link String }
+       */
+      public void setClazz(String value) {
+         this.clazz = value;
+      }
+
+   }
+
    /**
     * <p>Java class for anonymous complex type.
     *
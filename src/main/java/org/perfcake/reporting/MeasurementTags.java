@@ -0,0 +1,129 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.reporting;
+
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of the tags the measurement units can be marked with, so that the reporters can break their results down by the tags
+ * (e.g. by the name of the message that was sent). The number of the tags is bounded by {@link #MAX_TAGS}, each tag gets an index
+ * and the tags of a measurement unit are stored as a bit mask of the indexes. The tags should be registered before the reporters are started,
+ * the reporters preallocate their storage for the tags registered at that time.
+ */
+public class MeasurementTags {
+
+   /**
+    * The maximal number of the tags, the tags registered over this limit are ignored.
+    */
+   public static final int MAX_TAGS = Long.SIZE;
+
+   private static final Logger log = Logger.getLogger(MeasurementTags.class);
+
+   /**
+    * Names of the tags indexed by the tag indexes.
+    */
+   private volatile String[] names = new String[0];
+
+   /**
+    * Indexes of the tags by their names.
+    */
+   private final Map<String, Integer> indexes = new HashMap<>();
+
+   /**
+    * Registers the tag if it was not registered yet.
+    *
+    * @param tag
+    *       The name of the tag.
+    * @return The index of the tag or -1 when the maximal number of the tags was reached.
+    */
+   public synchronized int register(final String tag) {
+      final Integer index = indexes.get(tag);
+      if (index != null) {
+         return index;
+      }
+
+      if (names.length == MAX_TAGS) {
+         log.warn(String.format("Cannot register measurement tag '%s', the maximal number of %d tags was reached. The tag will be ignored.", tag, MAX_TAGS));
+         return -1;
+      }
+
+      final String[] newNames = Arrays.copyOf(names, names.length + 1);
+      newNames[names.length] = tag;
+      indexes.put(tag, names.length);
+      names = newNames;
+
+      return newNames.length - 1;
+   }
+
+   /**
+    * Registers the tags and gets their bit mask to be used for marking the measurement units.
+    *
+    * @param tags
+    *       The names of the tags.
+    * @return The bit mask of the tags.
+    * @see MeasurementUnit#addTags(long)
+    */
+   public synchronized long getMask(final Collection<String> tags) {
+      long mask = 0;
+      for (final String tag : tags) {
+         final int index = register(tag);
+         if (index >= 0) {
+            mask = mask | (1L << index);
+         }
+      }
+
+      return mask;
+   }
+
+   /**
+    * Gets the index of the tag.
+    *
+    * @param tag
+    *       The name of the tag.
+    * @return The index of the tag or -1 when the tag is not registered.
+    */
+   public synchronized int indexOf(final String tag) {
+      final Integer index = indexes.get(tag);
+      return index == null ? -1 : index;
+   }
+
+   /**
+    * Gets the names of all the registered tags ordered by their indexes.
+    *
+    * @return A copy of the tag names.
+    */
+   public String[] getNames() {
+      return names.clone();
+   }
+
+   /**
+    * Gets the number of the registered tags.
+    *
+    * @return The number of the registered tags.
+    */
+   public int size() {
+      return names.length;
+   }
+}
@@ -71,6 +71,11 @@ public class MeasurementUnit implements Serializable {
     */
    private long timeStarted = -1;
 
+   /**
+    * Bit mask of the tags this unit is marked with (see {@link MeasurementTags}).
+    */
+   private long tags = 0;
+
    /**
     * Constructor is protected. Use {@link org.perfcake.reporting.ReportManager#newMeasurementUnit()} to obtain a new instance.
     *
@@ -130,6 +135,21 @@ public class MeasurementUnit implements Serializable {
       totalTime = totalTime + getLastTime();
    }
 
+   /**
+    * Adds a measurement that was not measured by this unit, e.g. a delivery time computed from a timestamp carried by the message.
+    *
+    * @param timeStarted
+    *       When the measurement started in real time (timestamp value from {@link System#currentTimeMillis()}).
+    * @param time
+    *       The measured time in milliseconds.
+    */
+   public void addMeasure(final long timeStarted, final double time) {
+      if (this.timeStarted == -1) {
+         this.timeStarted = timeStarted;
+      }
+      totalTime = totalTime + time;
+   }
+
    /**
     * Gets total time measured during all measurements done by this Measurement Unit (all time periods between calls to {@link #startMeasure()} and {@link #stopMeasure()} in milliseconds.
     *
@@ -177,6 +197,25 @@ public class MeasurementUnit implements Serializable {
       return iteration;
    }
 
+   /**
+    * Marks this unit with the tags.
+    *
+    * @param mask
+    *       Bit mask of the tags obtained from {@link MeasurementTags#getMask(java.util.Collection)}.
+    */
+   public void addTags(final long mask) {
+      tags = tags | mask;
+   }
+
+   /**
+    * Gets the bit mask of the tags this unit is marked with. The bit at the position of a tag index is set when the unit is marked by the tag.
+    *
+    * @return The bit mask of the tags.
+    */
+   public long getTags() {
+      return tags;
+   }
+
    @Override
    public int hashCode() {
       int result;
@@ -233,6 +272,7 @@ public class MeasurementUnit implements Serializable {
             ", totalTime=" + totalTime +
             ", measurementResults=" + measurementResults +
             ", timeStarted=" + timeStarted +
+            ", tags=" + Long.toHexString(tags) +
             ']';
    }
 }
@@ -49,6 +49,11 @@ public class ReportManager {
     */
    private final Set<Reporter> reporters = new CopyOnWriteArraySet<>();
 
+   /**
+    * Subset of the reporters that only receive the measurement units reported by a receiver.
+    */
+   private final Set<Reporter> receiverReporters = new CopyOnWriteArraySet<>();
+
    /**
     * Current run info to control the measurement.
     */
@@ -59,6 +64,11 @@ public class ReportManager {
     */
    private Thread periodicThread;
 
+   /**
+    * Tags the measurement units can be marked with.
+    */
+   private final MeasurementTags tags = new MeasurementTags();
+
    /**
     * Create a new measurement unit with a unique iteration number.
     *
@@ -76,6 +86,22 @@ public class ReportManager {
       return new MeasurementUnit(runInfo.getNextIteration());
    }
 
+   /**
+    * Create a new measurement unit for an iteration that has already been counted, e.g. for a message that was sent in the given iteration and
+    * received by a receiver. The iteration counter of the current run is not changed.
+    *
+    * @param iteration
+    *       The iteration number of the measurement unit.
+    * @return A new measurement unit, or null if a measurement is not started or is already finished.
+    */
+   public MeasurementUnit newMeasurementUnit(final long iteration) {
+      if (!runInfo.isStarted()) {
+         return null;
+      }
+
+      return new MeasurementUnit(iteration);
+   }
+
    /**
     * Set {@link org.perfcake.RunInfo} for the current measurement run.
     *
@@ -106,10 +132,35 @@ public class ReportManager {
          log.trace("Reporting a new measurement unit " + mu);
       }
 
+      report(mu, false);
+   }
+
+   /**
+    * Report a {@link MeasurementUnit} measured by a receiver. The unit is passed only to the reporters registered by
+    * {@link #registerReceiverReporter(Reporter)}.
+    *
+    * @param mu
+    *       A MeasurementUnit to be reported.
+    * @throws ReportingException
+    *       If reporting could not be done properly.
+    */
+   public void reportReceived(final MeasurementUnit mu) throws ReportingException {
+      if (log.isTraceEnabled()) {
+         log.trace("Reporting a new received measurement unit " + mu);
+      }
+
+      report(mu, true);
+   }
+
+   private void report(final MeasurementUnit mu, final boolean received) throws ReportingException {
       ReportingException e = null;
 
       if (runInfo.isStarted()) { // cannot use isRunning while we still want the last iteration to be reported
          for (final Reporter r : getReporters()) {
+            if (receiverReporters.contains(r) != received) {
+               continue;
+            }
+
             try {
                r.report(mu);
             } catch (final ReportingException re) {
@@ -157,6 +208,17 @@ public class ReportManager {
       reporters.add(reporter);
    }
 
+   /**
+    * Registers a new {@link org.perfcake.reporting.reporters.Reporter} that gets only the measurement units reported by a receiver.
+    *
+    * @param reporter
+    *       A reporter to be registered.
+    */
+   public void registerReceiverReporter(final Reporter reporter) {
+      receiverReporters.add(reporter);
+      registerReporter(reporter);
+   }
+
    /**
     * Removes a registered {@link org.perfcake.reporting.reporters.Reporter}.
     *
@@ -171,6 +233,7 @@ public class ReportManager {
       reporter.setReportManager(null);
       reporter.setRunInfo(null);
       reporters.remove(reporter);
+      receiverReporters.remove(reporter);
    }
 
    /**
@@ -182,6 +245,16 @@ public class ReportManager {
       return Collections.unmodifiableSet(reporters);
    }
 
+   /**
+    * Gets the registry of the tags the measurement units can be marked with. The tags must be registered before the reporting starts
+    * for the reporters to break their results down by them.
+    *
+    * @return The registry of the measurement tags.
+    */
+   public MeasurementTags getTags() {
+      return tags;
+   }
+
    /**
     * Starts the reporting facility.
     */
@@ -34,12 +34,20 @@ import org.perfcake.reporting.reporters.accumulators.SlidingWindowAvgAccumulator
 import org.perfcake.reporting.reporters.accumulators.SlidingWindowMaxAccumulator;
 import org.perfcake.reporting.reporters.accumulators.SlidingWindowMinAccumulator;
 
+import java.util.ArrayList;
+
 /**
  * This abstract reporter is able to report the minimal, maximal and average value from the beginning
  * of the measuring to the moment when the results are published including. The actual value about what
  * the statistics are gathered is computed as a result of the {@link #computeResult(MeasurementUnit)} method.
  * 
  * The default value of the reporter is a current value at the moment of publishing.
+ *
+ * When the measurement units are marked with tags (see {@link org.perfcake.reporting.MeasurementTags}), e.g. by the name of the message
+ * when a single message is selected from the message store in each iteration, the metrics are also reported for each tag separately.
+ * The tags are either reported in a single wide measurement under the keys like <code>Average[tag]</code>, or as a separate measurement
+ * for each tag with the name of the tag under the {@link #TAG} key (see {@link TagBreakdown}). The accumulators for the tags are
+ * preallocated for the tags registered when the reporter is started.
  * 
  * @author Pavel Macík <pavel.macik@gmail.com>
  */
@@ -65,6 +73,16 @@ public abstract class StatsReporter extends AbstractReporter {
     */
    private int windowSize = Integer.MAX_VALUE;
 
+   /**
+    * A property that determines how the metrics are reported for each tag of the measurement units.
+    */
+   private TagBreakdown tagBreakdown = TagBreakdown.WIDE;
+
+   /**
+    * The accumulators of the tags.
+    */
+   private volatile TagResults tagResults = new TagResults(new String[0]);
+
    /**
     * A String representation of a metric of a maximal value.
     */
@@ -80,6 +98,55 @@ public abstract class StatsReporter extends AbstractReporter {
     */
    public static final String AVERAGE = "Average";
 
+   /**
+    * A String representation of the tag the results in a separate measurement for each tag belong to.
+    */
+   public static final String TAG = "Tag";
+
+   /**
+    * The value of the {@link #TAG} key in the measurement with the results of all the measurement units.
+    */
+   public static final String ALL_TAGS = "*";
+
+   /**
+    * The way the metrics are reported for each tag of the measurement units.
+    */
+   public enum TagBreakdown {
+      /**
+       * The metrics are not reported for the tags.
+       */
+      NONE,
+
+      /**
+       * The metrics of all the tags are reported in the same measurement under the keys like <code>Average[tag]</code>.
+       */
+      WIDE,
+
+      /**
+       * The metrics of each tag are reported in a separate measurement with the name of the tag under the {@link #TAG} key.
+       */
+      SEPARATE
+   }
+
+   /**
+    * The metrics accumulated for each tag in the order of the {@link TagResults#accumulators}.
+    */
+   private static final String[] TAG_METRICS = { Measurement.DEFAULT_RESULT, AVERAGE, MINIMUM, MAXIMUM };
+
+   /**
+    * The accumulators of the tags preallocated for the tags registered when the reporter was reset.
+    */
+   @SuppressWarnings("rawtypes")
+   private static final class TagResults {
+      private final String[] names;
+      private final Accumulator[][] accumulators;
+
+      private TagResults(final String[] names) {
+         this.names = names;
+         this.accumulators = new Accumulator[names.length][];
+      }
+   }
+
    @SuppressWarnings("rawtypes")
    @Override
    protected Accumulator getAccumulator(String key, Class clazz) {
@@ -93,6 +160,27 @@ public abstract class StatsReporter extends AbstractReporter {
       return super.getAccumulator(key, clazz);
    }
 
+   /**
+    * Gets the key of a metric reported for the given tag in the {@link TagBreakdown#WIDE} breakdown.
+    *
+    * @param metric
+    *        The name of the metric.
+    * @param tag
+    *        The name of the tag.
+    * @return The key of the metric for the tag.
+    */
+   public static String getTagKey(final String metric, final String tag) {
+      return metric + "[" + tag + "]";
+   }
+
+   /**
+    * Gets the name of the metric from the key of a metric possibly reported for a tag.
+    */
+   private static String getMetric(final String key) {
+      final int bracket = key.indexOf('[');
+      return bracket > 0 && key.endsWith("]") ? key.substring(0, bracket) : key;
+   }
+
    /**
     * Gets an appropriate accumulator for a given key from the Measurement Unit's results map for the case that the value of the {@link #windowSize} is
     * different from the default value of {@link Integer#MAX_VALUE}.
@@ -161,20 +249,108 @@ public abstract class StatsReporter extends AbstractReporter {
       if (maximumEnabled) {
          mu.appendResult(MAXIMUM, result);
       }
+
+      long tags = mu.getTags();
+      final TagResults results = tagResults;
+      while (tags != 0) {
+         final int index = Long.numberOfTrailingZeros(tags);
+         tags = tags & (tags - 1);
+         if (index < results.accumulators.length) {
+            accumulateTag(results.accumulators[index], result);
+         }
+      }
+   }
+
+   @SuppressWarnings({ "unchecked", "rawtypes" })
+   private void accumulateTag(final Accumulator[] accumulators, final Double result) {
+      accumulators[0].add(result);
+
+      if (averageEnabled) {
+         accumulators[1].add(result);
+      }
+
+      if (minimumEnabled) {
+         accumulators[2].add(result);
+      }
+
+      if (maximumEnabled) {
+         accumulators[3].add(result);
+      }
    }
 
    @Override
    public void publishResult(final PeriodType periodType, final Destination d) throws ReportingException {
       final Measurement m = newMeasurement();
       publishAccumulatedResult(m);
+
+      final TagResults results = tagResults;
+      if (tagBreakdown == TagBreakdown.WIDE) {
+         for (int i = 0; i < results.names.length; i++) {
+            for (int j = 1; j < TAG_METRICS.length; j++) {
+               if (isMetricEnabled(j)) {
+                  m.set(getTagKey(TAG_METRICS[j], results.names[i]), getTagResult(results.accumulators[i], j));
+               }
+            }
+         }
+      } else if (tagBreakdown == TagBreakdown.SEPARATE) {
+         m.set(TAG, ALL_TAGS);
+      }
+
+      wrapResultsByQuantity(m);
+      d.report(m);
+
+      if (tagBreakdown == TagBreakdown.SEPARATE) {
+         for (int i = 0; i < results.names.length; i++) {
+            if (results.accumulators[i][0].getResult() != null) { // nothing to report for a tag without any measurement
+               final Measurement tm = newMeasurement();
+               tm.set(TAG, results.names[i]);
+               for (int j = 0; j < TAG_METRICS.length; j++) {
+                  if (isMetricEnabled(j)) {
+                     tm.set(TAG_METRICS[j], getTagResult(results.accumulators[i], j));
+                  }
+               }
+               wrapResultsByQuantity(tm);
+               d.report(tm);
+            }
+         }
+      }
+   }
+
+   private boolean isMetricEnabled(final int metric) {
+      switch (metric) {
+         case 1:
+            return averageEnabled;
+         case 2:
+            return minimumEnabled;
+         case 3:
+            return maximumEnabled;
+         default:
+            return true;
+      }
+   }
+
+   /**
+    * Gets the result of a tag metric, {@link Double#NaN} when there was no measurement with the tag yet so that the same keys are reported in each measurement.
+    */
+   @SuppressWarnings("rawtypes")
+   private static Object getTagResult(final Accumulator[] accumulators, final int metric) {
+      return accumulators[0].getResult() == null ? Double.NaN : accumulators[metric].getResult();
+   }
+
+   private void wrapResultsByQuantity(final Measurement m) {
       final String unit = getResultUnit();
       if (unit != null) {
-         wrapResultByQuantity(m, Measurement.DEFAULT_RESULT, unit);
-         wrapResultByQuantity(m, AVERAGE, unit);
-         wrapResultByQuantity(m, MINIMUM, unit);
-         wrapResultByQuantity(m, MAXIMUM, unit);
+         for (final String key : new ArrayList<>(m.getAll().keySet())) {
+            switch (getMetric(key)) {
+               case Measurement.DEFAULT_RESULT:
+               case AVERAGE:
+               case MINIMUM:
+               case MAXIMUM:
+                  wrapResultByQuantity(m, key, unit);
+                  break;
+            }
+         }
       }
-      d.report(m);
    }
 
    private void wrapResultByQuantity(final Measurement m, final String key, final String unit) {
@@ -186,7 +362,15 @@ public abstract class StatsReporter extends AbstractReporter {
 
    @Override
    protected void doReset() {
-      // nothing needed, the parent does the job
+      // the parent resets the results, we preallocate the accumulators for the tags registered by now
+      final TagResults results = new TagResults(tagBreakdown == TagBreakdown.NONE || reportManager == null ? new String[0] : reportManager.getTags().getNames());
+      for (int i = 0; i < results.names.length; i++) {
+         results.accumulators[i] = new Accumulator[TAG_METRICS.length];
+         for (int j = 0; j < TAG_METRICS.length; j++) {
+            results.accumulators[i][j] = getAccumulator(TAG_METRICS[j], Double.class);
+         }
+      }
+      tagResults = results;
    }
 
    /**
@@ -249,6 +433,26 @@ public abstract class StatsReporter extends AbstractReporter {
       return this;
    }
 
+   /**
+    * Gets the way the metrics are reported for each tag of the measurement units.
+    *
+    * @return The tag breakdown.
+    */
+   public TagBreakdown getTagBreakdown() {
+      return tagBreakdown;
+   }
+
+   /**
+    * Sets the way the metrics are reported for each tag of the measurement units. It takes effect when the reporter is started.
+    *
+    * @param tagBreakdown
+    *        The tag breakdown.
+    */
+   public StatsReporter setTagBreakdown(TagBreakdown tagBreakdown) {
+      this.tagBreakdown = tagBreakdown;
+      return this;
+   }
+
    /**
     * Gets the sliding window size if set. If the size is equal to {@link Integer#MAX_VALUE}, then it means the
     * sliding window is not used at all and the statistics are taken from the whole run.
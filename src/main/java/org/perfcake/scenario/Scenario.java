@@ -20,14 +20,20 @@
 package org.perfcake.scenario;
 
 import org.perfcake.PerfCakeException;
+import org.perfcake.message.MessagePreRenderer;
+import org.perfcake.message.MessageSelector;
 import org.perfcake.message.MessageTemplate;
+import org.perfcake.message.feeder.DataFeeder;
 import org.perfcake.message.generator.AbstractMessageGenerator;
+import org.perfcake.message.receiver.Receiver;
 import org.perfcake.message.sender.MessageSenderManager;
+import org.perfcake.reporting.MeasurementTags;
 import org.perfcake.reporting.ReportManager;
 import org.perfcake.validation.ValidationManager;
 
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -44,6 +50,10 @@ public class Scenario {
    private ReportManager reportManager;
    private List<MessageTemplate> messageStore;
    private ValidationManager validationManager;
+   private Receiver receiver;
+   private MessagePreRenderer preRenderer;
+   private DataFeeder dataFeeder;
+   private MessageSelector.Strategy messageSelection = MessageSelector.Strategy.ALL;
 
    /**
     * Initialize the scenario execution
@@ -58,11 +68,50 @@ public class Scenario {
       generator.setReportManager(reportManager);
       generator.setValidationManager(validationManager);
 
+      if (receiver != null) {
+         receiver.setReportManager(reportManager);
+         generator.setReceiver(receiver);
+
+         try {
+            receiver.init();
+         } catch (final Exception e) {
+            throw new PerfCakeException("Cannot initialize message receiver: ", e);
+         }
+      }
+
+      if (dataFeeder != null) {
+         try {
+            dataFeeder.init(generator.getThreads());
+         } catch (final Exception e) {
+            throw new PerfCakeException("Cannot initialize data feeder: ", e);
+         }
+         generator.setDataFeeder(dataFeeder);
+      }
+
+      if (messageSelection != MessageSelector.Strategy.ALL && messageStore != null && !messageStore.isEmpty()) {
+         generator.setMessageSelector(new MessageSelector(messageStore, messageSelection));
+
+         // each measurement measures a single message now, so it can be tagged by the message
+         final MeasurementTags tags = reportManager.getTags();
+         for (final MessageTemplate template : messageStore) {
+            final List<String> templateTags = new ArrayList<>();
+            if (template.getName() != null) {
+               templateTags.add(template.getName());
+            }
+            templateTags.addAll(template.getTags());
+            template.setTagMask(tags.getMask(templateTags));
+         }
+      }
+
       try {
          generator.init(messageSenderManager, messageStore);
       } catch (final Exception e) {
          throw new PerfCakeException("Cannot initialize message generator: ", e);
       }
+
+      if (preRenderer != null) {
+         preRenderer.start();
+      }
    }
 
    /**
@@ -103,6 +152,22 @@ public class Scenario {
          generator.close();
       }
 
+      if (receiver != null) {
+         receiver.close();
+      }
+
+      if (dataFeeder != null) {
+         dataFeeder.close();
+      }
+
+      if (preRenderer != null) {
+         try {
+            preRenderer.stop();
+         } catch (final InterruptedException ie) {
+            throw new PerfCakeException("Could not stop message pre-rendering properly: ", ie);
+         }
+      }
+
       try {
          validationManager.waitForValidation();
       } catch (final InterruptedException ie) {
@@ -146,6 +211,38 @@ public class Scenario {
       this.messageStore = messageStore;
    }
 
+   Receiver getReceiver() {
+      return receiver;
+   }
+
+   void setReceiver(Receiver receiver) {
+      this.receiver = receiver;
+   }
+
+   DataFeeder getDataFeeder() {
+      return dataFeeder;
+   }
+
+   void setDataFeeder(DataFeeder dataFeeder) {
+      this.dataFeeder = dataFeeder;
+   }
+
+   MessageSelector.Strategy getMessageSelection() {
+      return messageSelection;
+   }
+
+   void setMessageSelection(MessageSelector.Strategy messageSelection) {
+      this.messageSelection = messageSelection;
+   }
+
+   MessagePreRenderer getPreRenderer() {
+      return preRenderer;
+   }
+
+   void setPreRenderer(MessagePreRenderer preRenderer) {
+      this.preRenderer = preRenderer;
+   }
+
    /**
     * Sets the value of validationManager.
     *
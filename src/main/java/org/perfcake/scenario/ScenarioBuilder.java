@@ -21,8 +21,12 @@ package org.perfcake.scenario;
 
 import org.perfcake.PerfCakeException;
 import org.perfcake.RunInfo;
+import org.perfcake.message.MessagePreRenderer;
+import org.perfcake.message.MessageSelector;
 import org.perfcake.message.MessageTemplate;
+import org.perfcake.message.feeder.DataFeeder;
 import org.perfcake.message.generator.AbstractMessageGenerator;
+import org.perfcake.message.receiver.Receiver;
 import org.perfcake.message.sender.MessageSender;
 import org.perfcake.message.sender.MessageSenderManager;
 import org.perfcake.reporting.ReportManager;
@@ -138,6 +142,42 @@ public class ScenarioBuilder {
       return this;
    }
 
+   /**
+    * Adds a {@link Reporter}, which will be used in {@link org.perfcake.scenario.Scenario} for reporting results measured by the {@link Receiver}.
+    *
+    * @param r
+    *       implementation
+    * @return this
+    */
+   public ScenarioBuilder addReceiverReporter(final Reporter r) {
+      scenario.getReportManager().registerReceiverReporter(r);
+      return this;
+   }
+
+   /**
+    * Sets a {@link Receiver}, which will be used in the {@link org.perfcake.scenario.Scenario} to measure the end-to-end latency of the sent messages.
+    *
+    * @param receiver
+    *       implementation
+    * @return this
+    */
+   public ScenarioBuilder setReceiver(final Receiver receiver) {
+      scenario.setReceiver(receiver);
+      return this;
+   }
+
+   /**
+    * Sets a {@link DataFeeder}, which will be used in the {@link org.perfcake.scenario.Scenario} to put different data into the messages in each iteration.
+    *
+    * @param dataFeeder
+    *       implementation
+    * @return this
+    */
+   public ScenarioBuilder setDataFeeder(final DataFeeder dataFeeder) {
+      scenario.setDataFeeder(dataFeeder);
+      return this;
+   }
+
    /**
     * Adds a {@link MessageTemplate}, which will be used in the {@link org.perfcake.scenario.Scenario}
     *
@@ -150,6 +190,34 @@ public class ScenarioBuilder {
       return this;
    }
 
+   /**
+    * Sets the way the messages are selected from the message store in each iteration. By default, the whole message store is sent in each iteration.
+    * The messages are selected according to their names and weights (see {@link MessageTemplate#setName(String)} and {@link MessageTemplate#setWeight(double)}).
+    *
+    * @param selection
+    *       The message selection strategy.
+    * @return this
+    */
+   public ScenarioBuilder setMessageSelection(final MessageSelector.Strategy selection) {
+      scenario.setMessageSelection(selection);
+      return this;
+   }
+
+   /**
+    * Enables pre-rendering of the dynamic message templates before and optionally during the scenario execution.
+    * Only the messages added before this call are pre-rendered.
+    *
+    * @param count
+    *       Number of messages pre-rendered in advance for each template.
+    * @param continuously
+    *       True to keep pre-rendering in a background thread while the scenario runs.
+    * @return this
+    */
+   public ScenarioBuilder setPreRender(final int count, final boolean continuously) {
+      scenario.setPreRenderer(count > 0 ? new MessagePreRenderer(scenario.getMessageStore(), count, continuously) : null);
+      return this;
+   }
+
    /**
     * Puts a validator under the given key.
     *
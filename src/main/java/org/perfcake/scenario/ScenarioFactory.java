@@ -32,6 +32,8 @@ public interface ScenarioFactory {
 
    static final String DEFAULT_GENERATOR_PACKAGE = "org.perfcake.message.generator";
    static final String DEFAULT_SENDER_PACKAGE = "org.perfcake.message.sender";
+   static final String DEFAULT_RECEIVER_PACKAGE = "org.perfcake.message.receiver";
+   static final String DEFAULT_FEEDER_PACKAGE = "org.perfcake.message.feeder";
    static final String DEFAULT_REPORTER_PACKAGE = "org.perfcake.reporting.reporters";
    static final String DEFAULT_DESTINATION_PACKAGE = "org.perfcake.reporting.destinations";
    static final String DEFAULT_VALIDATION_PACKAGE = "org.perfcake.validation";
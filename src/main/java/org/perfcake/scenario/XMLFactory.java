@@ -24,9 +24,14 @@ import org.perfcake.PerfCakeException;
 import org.perfcake.RunInfo;
 import org.perfcake.common.Period;
 import org.perfcake.common.PeriodType;
+import org.perfcake.message.FilePayload;
 import org.perfcake.message.Message;
+import org.perfcake.message.MessagePreRenderer;
+import org.perfcake.message.MessageSelector;
 import org.perfcake.message.MessageTemplate;
+import org.perfcake.message.feeder.DataFeeder;
 import org.perfcake.message.generator.AbstractMessageGenerator;
+import org.perfcake.message.receiver.Receiver;
 import org.perfcake.message.sender.MessageSenderManager;
 import org.perfcake.model.Header;
 import org.perfcake.model.Property;
@@ -52,10 +57,13 @@ import org.xml.sax.SAXException;
 import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -110,6 +118,8 @@ public class XMLFactory implements ScenarioFactory {
 
          scenario.setGenerator(messageGenerator);
          scenario.setMessageSenderManager(parseSender(messageGenerator.getThreads()));
+         scenario.setReceiver(parseReceiver());
+         scenario.setDataFeeder(parseFeeder());
          scenario.setReportManager(parseReporting());
          scenario.getReportManager().setRunInfo(runInfo);
 
@@ -117,6 +127,8 @@ public class XMLFactory implements ScenarioFactory {
          List<MessageTemplate> messageTemplates = parseMessages(validationManager);
          scenario.setMessageStore(messageTemplates);
          scenario.setValidationManager(validationManager);
+         scenario.setMessageSelection(parseMessageSelection());
+         scenario.setPreRenderer(parsePreRenderer(messageTemplates));
       }
 
       return scenario;
@@ -253,6 +265,130 @@ public class XMLFactory implements ScenarioFactory {
       return msm;
    }
 
+   /**
+    * Parse the <code>receiver</code> element into a {@link Receiver} instance.
+    *
+    * @return A receiver, or null when the scenario does not specify any.
+    */
+   protected Receiver parseReceiver() throws PerfCakeException {
+      org.perfcake.model.Scenario.Receiver rec = scenarioModel.getReceiver();
+      if (rec == null) {
+         return null;
+      }
+
+      String receiverClass = rec.getClazz();
+      if (!receiverClass.contains(".")) {
+         receiverClass = DEFAULT_RECEIVER_PACKAGE + "." + receiverClass;
+      }
+      log.info("--- Receiver (" + receiverClass + ") ---");
+
+      Properties receiverProperties = getPropertiesFromList(rec.getProperty());
+      Utils.logProperties(log, Level.DEBUG, receiverProperties, "   ");
+
+      try {
+         return (Receiver) ObjectFactory.summonInstance(receiverClass, receiverProperties);
+      } catch (InstantiationException | IllegalAccessException | InvocationTargetException | ClassNotFoundException e) {
+         throw new PerfCakeException("Cannot parse message receiver configuration: ", e);
+      }
+   }
+
+   /**
+    * Parse the <code>feeder</code> element into a {@link DataFeeder} instance.
+    *
+    * @return The data feeder or null when there is no feeder configured.
+    * @throws PerfCakeException
+    *       When there is a parse exception.
+    */
+   protected DataFeeder parseFeeder() throws PerfCakeException {
+      org.perfcake.model.Scenario.Feeder feed = scenarioModel.getFeeder();
+      if (feed == null) {
+         return null;
+      }
+
+      String feederClass = feed.getClazz();
+      if (!feederClass.contains(".")) {
+         feederClass = DEFAULT_FEEDER_PACKAGE + "." + feederClass;
+      }
+      log.info("--- Data feeder (" + feederClass + ") ---");
+
+      Properties feederProperties = getPropertiesFromList(feed.getProperty());
+      Utils.logProperties(log, Level.DEBUG, feederProperties, "   ");
+
+      try {
+         return (DataFeeder) ObjectFactory.summonInstance(feederClass, feederProperties);
+      } catch (InstantiationException | IllegalAccessException | InvocationTargetException | ClassNotFoundException e) {
+         throw new PerfCakeException("Cannot parse data feeder configuration: ", e);
+      }
+   }
+
+   /**
+    * Parses the way the messages are selected from the message store in each iteration.
+    *
+    * @return The message selection strategy.
+    * @throws PerfCakeException
+    *       When the selection strategy is not known.
+    */
+   protected MessageSelector.Strategy parseMessageSelection() throws PerfCakeException {
+      final Messages messages = scenarioModel.getMessages();
+      if (messages == null) {
+         return MessageSelector.Strategy.ALL;
+      }
+
+      try {
+         final MessageSelector.Strategy strategy = MessageSelector.Strategy.valueOf(messages.getSelection());
+         if (log.isDebugEnabled()) {
+            log.debug("--- Message selection ---");
+            log.debug("  " + strategy);
+         }
+
+         return strategy;
+      } catch (IllegalArgumentException e) {
+         throw new PerfCakeException("Unknown message selection: " + messages.getSelection(), e);
+      }
+   }
+
+   /**
+    * Creates a message pre-renderer when it is configured in the messages section.
+    *
+    * @param messageTemplates
+    *       Message templates to be pre-rendered.
+    * @return The message pre-renderer or null when no pre-rendering is configured.
+    */
+   protected MessagePreRenderer parsePreRenderer(final List<MessageTemplate> messageTemplates) {
+      final Messages messages = scenarioModel.getMessages();
+      if (messages == null || messages.getPreRender() <= 0) {
+         return null;
+      }
+
+      if (log.isDebugEnabled()) {
+         log.debug("--- Message pre-rendering ---");
+         log.debug("  " + messages.getPreRender() + " messages per template" + (messages.isPreRenderContinuously() ? ", continuously" : ""));
+      }
+
+      return new MessagePreRenderer(messageTemplates, messages.getPreRender(), messages.isPreRenderContinuously());
+   }
+
+   /**
+    * Maps the message file to the memory to be used as a binary payload shared by all the messages.
+    *
+    * @param messageUrl
+    *       The location of the message file.
+    * @return The payload backed by the file.
+    * @throws PerfCakeException
+    *       When the message is not a local file or it cannot be mapped.
+    */
+   private FilePayload mapPayload(final URL messageUrl) throws PerfCakeException {
+      if (!"file".equals(messageUrl.getProtocol())) {
+         throw new PerfCakeException("Only the messages in local files can be mapped to the memory: " + messageUrl);
+      }
+
+      try {
+         return new FilePayload(Paths.get(messageUrl.toURI()));
+      } catch (IOException | URISyntaxException e) {
+         throw new PerfCakeException("Cannot map message file " + messageUrl + ": ", e);
+      }
+   }
+
    /**
     * Parse the <code>messages</code> element into a message store.
     *
@@ -274,7 +410,7 @@ public class XMLFactory implements ScenarioFactory {
             log.info("--- Messages ---");
             for (Messages.Message m : messages.getMessage()) {
                URL messageUrl = null;
-               String currentMessagePayload;
+               Serializable currentMessagePayload;
                if (m.getContent() != null) {
                   if (m.getUri() != null) {
                      log.warn("Both 'content' and 'uri' attributes of a message element are set. 'uri' will be will be ignored");
@@ -283,7 +419,7 @@ public class XMLFactory implements ScenarioFactory {
                } else {
                   if (m.getUri() != null) {
                      messageUrl = Utils.locationToUrl(m.getUri(), PerfCakeConst.MESSAGES_DIR_PROPERTY, Utils.determineDefaultLocation("messages"), "");
-                     currentMessagePayload = Utils.readFilteredContent(messageUrl);
+                     currentMessagePayload = m.isMapped() ? mapPayload(messageUrl) : Utils.readFilteredContent(messageUrl);
                   } else {
                      messageUrl = null;
                      currentMessagePayload = null;
@@ -318,8 +454,21 @@ public class XMLFactory implements ScenarioFactory {
 
                // create message to be send
                MessageTemplate currentMessageToSend = new MessageTemplate(currentMessage, currentMessageMultiplicity, currentMessageValidatorIds);
+               currentMessageToSend.setName(m.getName() != null ? m.getName() : (m.getUri() != null ? m.getUri() : "message" + (messageStore.size() + 1)));
+               currentMessageToSend.setWeight(m.getWeight());
+               if (m.getTags() != null) {
+                  final List<String> currentMessageTags = new ArrayList<>();
+                  for (final String tag : m.getTags().split(",")) {
+                     if (!tag.trim().isEmpty()) {
+                        currentMessageTags.add(tag.trim());
+                     }
+                  }
+                  currentMessageToSend.setTags(currentMessageTags);
+               }
 
-               log.info("'- Message (" + (messageUrl != null ? messageUrl.toString() : "") + "), " + currentMessageMultiplicity + "x");
+               log.info("'- Message " + currentMessageToSend.getName() + " (" + (messageUrl != null ? messageUrl.toString() : "") + "), " + currentMessageMultiplicity + "x"
+                     + (messages.getSelection().equals(MessageSelector.Strategy.ALL.name()) ? "" : ", weight " + m.getWeight())
+                     + (currentMessageToSend.getTags().isEmpty() ? "" : ", tags " + currentMessageToSend.getTags()));
                if (log.isDebugEnabled()) {
                   log.debug("  '- Properties:");
                   Utils.logProperties(log, Level.DEBUG, currentMessageProperties, "   '- ");
@@ -385,7 +534,11 @@ public class XMLFactory implements ScenarioFactory {
                         currentReporter.registerDestination(currentDestination, currentDestinationPeriodSet);
                      }
                   }
-                  reportManager.registerReporter(currentReporter);
+                  if (r.isReceiver()) {
+                     reportManager.registerReceiverReporter(currentReporter);
+                  } else {
+                     reportManager.registerReporter(currentReporter);
+                  }
                }
             }
          }
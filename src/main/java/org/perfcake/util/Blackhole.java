@@ -0,0 +1,66 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.util;
+
+/**
+ * Consumes values so that the JIT compiler cannot prove they are unused and eliminate the code computing them.
+ * The values are compared against fields the compiler cannot predict and stored only rarely, so consuming a value is cheap.
+ * An instance is not thread-safe, each sender has its own one.
+ */
+public final class Blackhole {
+
+   /**
+    * Never equal to any consumed value, the compiler does not know that.
+    */
+   private volatile Object never = new Object();
+
+   /**
+    * Random number generator state.
+    */
+   private int seed = (int) System.nanoTime();
+
+   /**
+    * Mask of the random number deciding when to store the value.
+    */
+   private int mask = 1;
+
+   /**
+    * Occasionally stored value.
+    */
+   private Object sink;
+
+   /**
+    * Consumes the value.
+    *
+    * @param value
+    *       The value to be consumed.
+    */
+   public void consume(final Object value) {
+      final int s = seed = seed * 1664525 + 1013904223;
+      if ((s & mask) == 0) {
+         // store rarely to keep the value reachable, with increasingly lower probability
+         sink = value;
+         mask = (mask << 1) + 1;
+      }
+      if (value == never) {
+         throw new IllegalStateException("Blackhole consumed its own guard value.");
+      }
+   }
+}
@@ -0,0 +1,235 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.util;
+
+import org.perfcake.util.properties.PropertyGetter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A text with property placeholders parsed once to a list of literal chunks and placeholders, so that it can be rendered repeatedly
+ * in a single pass without any regular expression matching. The result is the same as of {@link Utils#filterProperties(String, java.util.regex.Matcher, PropertyGetter)}
+ * with the same pattern, i.e. the placeholders found by the pattern are replaced everywhere in the text, the placeholders without a value
+ * are kept untouched, and the escaped placeholders are kept untouched unless the same placeholder is also present unescaped. Unlike there,
+ * the property values are always inserted literally.
+ * <p/>
+ * The placeholders containing a closing brace before their end (e.g. <code>#{a}}</code>) can overlap with each other. The texts with such
+ * placeholders are rendered by {@link Utils#filterProperties(String, java.util.regex.Matcher, PropertyGetter)} to keep the results the same.
+ * <p/>
+ * A placeholder can call a {@link TemplateFunction} instead of referring to a property, e.g. <code>#{randomInt(1, 100)}</code>. The functions
+ * are parsed together with the template, they are not supported in the texts with overlapping placeholders.
+ */
+public final class CompiledTemplate {
+
+   /**
+    * Upper limit of the capacity of the reused rendering buffers, larger buffers are not kept.
+    */
+   private static final int MAX_BUFFER_CAPACITY = 16 * 1024 * 1024;
+
+   /**
+    * Rendering buffers reused by each thread.
+    */
+   private static final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+      @Override
+      protected StringBuilder initialValue() {
+         return new StringBuilder();
+      }
+   };
+
+   /**
+    * The original text when it must be rendered by the regular expression, null otherwise.
+    */
+   private final String text;
+
+   /**
+    * The pattern of placeholders when the text must be rendered by the regular expression, null otherwise.
+    */
+   private final Pattern pattern;
+
+   /**
+    * The literal chunks, there is one more than the placeholders.
+    */
+   private final String[] literals;
+
+   /**
+    * The placeholders as they appear in the text.
+    */
+   private final String[] placeholders;
+
+   /**
+    * The property names of the placeholders.
+    */
+   private final String[] names;
+
+   /**
+    * The default values of the placeholders, null when there is no default value.
+    */
+   private final String[] defaults;
+
+   /**
+    * The functions called by the placeholders, null for the placeholders referring to a property.
+    */
+   private final TemplateFunction[] functions;
+
+   /**
+    * Whether any placeholder calls a function.
+    */
+   private final boolean hasFunctions;
+
+   /**
+    * The total length of the literal chunks.
+    */
+   private final int literalLength;
+
+   /**
+    * Parses the text to the list of literal chunks and placeholders.
+    *
+    * @param text
+    *       The text with placeholders.
+    * @param pattern
+    *       The pattern of placeholders. The first group is the whole placeholder, the second group is the property name
+    *       and the optional third group is the default value preceded by a single separator character.
+    * @throws IllegalArgumentException
+    *       When there is an invalid function call.
+    */
+   public CompiledTemplate(final String text, final Pattern pattern) {
+      // the placeholders found by the pattern, each one is replaced everywhere in the text
+      final Map<String, String[]> found = new LinkedHashMap<>();
+      final Matcher matcher = pattern.matcher(text);
+      boolean overlapping = false;
+      while (matcher.find()) {
+         final String placeholder = matcher.group(1);
+         overlapping |= placeholder.indexOf('}') < placeholder.length() - 1;
+         if (!found.containsKey(placeholder)) {
+            final String defaultValue = matcher.groupCount() == 3 && matcher.group(3) != null ? matcher.group(3).substring(1) : null;
+            found.put(matcher.group(1), new String[] { matcher.group(2), defaultValue });
+         }
+      }
+
+      if (overlapping) {
+         this.text = text;
+         this.pattern = pattern;
+         found.clear();
+      } else {
+         this.text = null;
+         this.pattern = null;
+      }
+
+      final List<String> literalList = new ArrayList<>();
+      final List<String> placeholderList = new ArrayList<>();
+      int literalStart = 0;
+      int position = 0;
+      while (!found.isEmpty() && position < text.length()) {
+         String placeholder = null;
+         for (String candidate : found.keySet()) {
+            if (text.startsWith(candidate, position)) {
+               placeholder = candidate;
+               break;
+            }
+         }
+
+         if (placeholder == null) {
+            position++;
+         } else {
+            literalList.add(text.substring(literalStart, position));
+            placeholderList.add(placeholder);
+            position += placeholder.length();
+            literalStart = position;
+         }
+      }
+      literalList.add(overlapping ? text : text.substring(literalStart));
+
+      literals = literalList.toArray(new String[literalList.size()]);
+      placeholders = placeholderList.toArray(new String[placeholderList.size()]);
+      names = new String[placeholders.length];
+      defaults = new String[placeholders.length];
+      functions = new TemplateFunction[placeholders.length];
+      boolean anyFunction = false;
+      int length = 0;
+      for (int i = 0; i < placeholders.length; i++) {
+         names[i] = found.get(placeholders[i])[0];
+         defaults[i] = found.get(placeholders[i])[1];
+         functions[i] = TemplateFunction.parse(names[i]);
+         anyFunction |= functions[i] != null;
+      }
+      hasFunctions = anyFunction;
+      for (String literal : literals) {
+         length += literal.length();
+      }
+      literalLength = length;
+   }
+
+   /**
+    * Finds out whether there are any placeholders to be replaced.
+    *
+    * @return True if the template contains placeholders.
+    */
+   public boolean hasPlaceholders() {
+      return placeholders.length > 0 || text != null;
+   }
+
+   /**
+    * Finds out whether any placeholder calls a function, i.e. the result can differ even for the same property values.
+    *
+    * @return True if the template calls a function.
+    */
+   public boolean hasFunctions() {
+      return hasFunctions;
+   }
+
+   /**
+    * Renders the template with the given property values.
+    *
+    * @param propertyGetter
+    *       Provides the property values.
+    * @return The text with the placeholders replaced by the property values.
+    */
+   public String render(final PropertyGetter propertyGetter) {
+      if (text != null) {
+         return Utils.filterProperties(text, pattern.matcher(text), propertyGetter);
+      }
+
+      if (placeholders.length == 0) {
+         return literals[0];
+      }
+
+      final StringBuilder sb = buffers.get();
+      sb.setLength(0);
+      sb.ensureCapacity(literalLength + 16 * placeholders.length);
+
+      sb.append(literals[0]);
+      for (int i = 0; i < placeholders.length; i++) {
+         final String value = functions[i] != null ? functions[i].apply() : propertyGetter.getProperty(names[i], defaults[i]);
+         sb.append(value != null ? value : placeholders[i]).append(literals[i + 1]);
+      }
+
+      final String result = sb.toString();
+      if (sb.capacity() > MAX_BUFFER_CAPACITY) {
+         buffers.remove();
+      }
+
+      return result;
+   }
+}
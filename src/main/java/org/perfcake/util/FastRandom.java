@@ -0,0 +1,201 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.util;
+
+import org.perfcake.PerfCakeConst;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fast pseudo-random number generator (xorshift64*) with an instance for each thread, so that there is no contention between the threads.
+ * It is not suitable for any cryptographic purpose.
+ *
+ * <p>When a seed is configured by the {@link PerfCakeConst#SEED_PROPERTY} property or by {@link #setSeed(Long)}, the generators are seeded
+ * deterministically, otherwise they are seeded randomly. A thread that sets a stream key by {@link #setKey(long)} gets the values derived
+ * from the seed and the key only, so the sender tasks key their generators by the iteration number and each iteration gets the same values
+ * regardless of the thread it runs in. The generators without a key are seeded by the order in which the threads first used them.</p>
+ */
+public final class FastRandom {
+
+   /**
+    * The configured seed, null for random seeds.
+    */
+   private static volatile Long seed;
+
+   /**
+    * Changes whenever the seed is changed so that the threads seed their generators again.
+    */
+   private static volatile int generation = 0;
+
+   /**
+    * The number of the generators seeded in the current generation.
+    */
+   private static final AtomicLong seeded = new AtomicLong(0);
+
+   private static final ThreadLocal<FastRandom> current = new ThreadLocal<FastRandom>() {
+      @Override
+      protected FastRandom initialValue() {
+         return new FastRandom();
+      }
+   };
+
+   static {
+      final String configured = Utils.getProperty(PerfCakeConst.SEED_PROPERTY);
+      seed = configured == null ? null : Long.valueOf(configured);
+   }
+
+   private long state;
+
+   private int stateGeneration;
+
+   private FastRandom() {
+      reseed();
+   }
+
+   private void reseed() {
+      stateGeneration = generation;
+      final Long s = seed;
+      final long index = seeded.getAndIncrement();
+      long value = mix(s == null ? System.nanoTime() ^ Thread.currentThread().getId() * 0x9E3779B97F4A7C15L : s + index * 0x9E3779B97F4A7C15L);
+      state = value == 0 ? 0x9E3779B97F4A7C15L : value;
+   }
+
+   /**
+    * Derives the seed of a random stream identified by a key (e.g. the iteration number) from a base seed, so that the streams
+    * with different keys are not correlated and the same key always gets the same stream.
+    *
+    * @param seed
+    *       The base seed.
+    * @param key
+    *       The key of the stream.
+    * @return The seed of the stream.
+    */
+   public static long deriveSeed(final long seed, final long key) {
+      return mix(seed + key * 0x9E3779B97F4A7C15L);
+   }
+
+   /**
+    * The finalizer of SplitMix64 spreading the seed bits.
+    */
+   private static long mix(long z) {
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      return z ^ (z >>> 31);
+   }
+
+   /**
+    * Seeds the generator of the current thread by the configured seed and the given stream key, e.g. the iteration number. It does nothing
+    * when there is no seed configured.
+    *
+    * @param key
+    *       The key of the stream.
+    */
+   public static void setKey(final long key) {
+      final Long s = seed;
+      if (s != null) {
+         final FastRandom random = current.get();
+         final long value = deriveSeed(s, key);
+         random.state = value == 0 ? 0x9E3779B97F4A7C15L : value;
+         random.stateGeneration = generation;
+      }
+   }
+
+   /**
+    * Gets the generator of the current thread.
+    *
+    * @return The generator of the current thread.
+    */
+   public static FastRandom current() {
+      final FastRandom random = current.get();
+      if (random.stateGeneration != generation) {
+         random.reseed();
+      }
+
+      return random;
+   }
+
+   /**
+    * Sets the seed of the generators. All the threads seed their generators again the next time they use them.
+    *
+    * @param newSeed
+    *       The seed, null for random seeds.
+    */
+   public static synchronized void setSeed(final Long newSeed) {
+      seed = newSeed;
+      seeded.set(0);
+      generation++;
+   }
+
+   /**
+    * Gets the next random long value.
+    *
+    * @return A random long value.
+    */
+   public long nextLong() {
+      long x = state;
+      x ^= x >>> 12;
+      x ^= x << 25;
+      x ^= x >>> 27;
+      state = x;
+      return x * 0x2545F4914F6CDD1DL;
+   }
+
+   /**
+    * Gets a random int value between 0 (inclusive) and the bound (exclusive).
+    *
+    * @param bound
+    *       The upper bound, must be positive.
+    * @return A random int value.
+    */
+   public int nextInt(final int bound) {
+      return (int) (((nextLong() >>> 32) * bound) >>> 32);
+   }
+
+   /**
+    * Gets a random double value between 0 (inclusive) and 1 (exclusive).
+    *
+    * @return A random double value.
+    */
+   public double nextDouble() {
+      return (nextLong() >>> 11) * 0x1.0p-53;
+   }
+
+   /**
+    * Gets a random long value between the origin (inclusive) and the bound (exclusive).
+    *
+    * @param origin
+    *       The lower bound.
+    * @param bound
+    *       The upper bound, must be greater than the origin.
+    * @return A random long value.
+    */
+   public long nextLong(final long origin, final long bound) {
+      final long range = bound - origin;
+      if (range > 0) {
+         return origin + (nextLong() >>> 1) % range;
+      }
+
+      long value; // the range overflows
+      do {
+         value = nextLong();
+      } while (value < origin || value >= bound);
+      return value;
+   }
+}
@@ -114,7 +114,7 @@ public class ObjectFactory {
       return properties;
    }
 
-   protected static ClassLoader getPluginClassLoader() {
+   public static ClassLoader getPluginClassLoader() {
       if (pluginClassLoader == null) {
          final ClassLoader currentClassLoader = ObjectFactory.class.getClassLoader();
          final String pluginsDirProp = Utils.getProperty(PerfCakeConst.PLUGINS_DIR_PROPERTY);
@@ -0,0 +1,243 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A built-in function that can be used in a template placeholder instead of a property name, e.g. <code>#{randomInt(1, 100)}</code>.
+ * The random values are generated by {@link FastRandom}, the sequences are counted in each thread separately.
+ *
+ * <p>The available functions are:</p>
+ * <ul>
+ * <li><code>randomInt(max)</code>, <code>randomInt(min, max)</code> &ndash; a random integer from min (0 by default, inclusive) to max (exclusive),</li>
+ * <li><code>randomLong(max)</code>, <code>randomLong(min, max)</code> &ndash; the same for long integers,</li>
+ * <li><code>randomString(length)</code> &ndash; a random alphanumeric string of the given length,</li>
+ * <li><code>uuid()</code> &ndash; a random UUID,</li>
+ * <li><code>sequence()</code>, <code>sequence(start)</code> &ndash; a sequence starting at start (0 by default), each thread has its own sequence,</li>
+ * <li><code>timestamp()</code>, <code>timestamp(format)</code> &ndash; the current time in milliseconds, or formatted by {@link SimpleDateFormat},</li>
+ * <li><code>pick(value1, value2, ...)</code> &ndash; one of the values chosen randomly.</li>
+ * </ul>
+ *
+ * <p>The arguments are separated by commas and trimmed, they cannot contain the characters <code>#{:}</code> because the colon separates
+ * the default value of a placeholder. Therefore the time formats cannot contain a colon, e.g. <code>timestamp(HHmmss)</code> or
+ * <code>timestamp(yyyyMMdd'T'HHmmss)</code> must be used instead of <code>timestamp(HH:mm:ss)</code>. A call of a known function cut by
+ * such a character is reported as an error.</p>
+ */
+public abstract class TemplateFunction {
+
+   private static final Pattern FUNCTION_PATTERN = Pattern.compile("\\s*([a-zA-Z]+)\\s*\\((.*)\\)\\s*");
+
+   private static final Pattern UNTERMINATED_PATTERN = Pattern.compile("\\s*(randomInt|randomLong|randomString|uuid|sequence|timestamp|pick)\\s*\\([^)]*");
+
+   private static final char[] ALPHANUMERIC = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+
+   /**
+    * Computes the function value.
+    *
+    * @return The function value.
+    */
+   public abstract String apply();
+
+   /**
+    * Parses the function call.
+    *
+    * @param expression
+    *       The function call, e.g. <code>randomInt(1, 100)</code>.
+    * @return The function, or null when the expression is not a call of a known function.
+    * @throws IllegalArgumentException
+    *       When the function arguments are not valid, or the call of a known function is not terminated.
+    */
+   public static TemplateFunction parse(final String expression) {
+      final Matcher matcher = FUNCTION_PATTERN.matcher(expression);
+      if (!matcher.matches()) {
+         if (UNTERMINATED_PATTERN.matcher(expression).matches()) {
+            throw new IllegalArgumentException(String.format("Invalid template function %s: the closing parenthesis is missing, the arguments cannot contain the characters #{:}", expression.trim()));
+         }
+         return null;
+      }
+
+      final String name = matcher.group(1);
+      final String[] args = matcher.group(2).trim().isEmpty() ? new String[0] : matcher.group(2).trim().split("\\s*,\\s*", -1);
+      try {
+         switch (name) {
+            case "randomInt":
+               checkArgs(args, 1, 2);
+               return new RandomInt(args.length == 1 ? 0 : Integer.parseInt(args[0]), Integer.parseInt(args[args.length - 1]));
+            case "randomLong":
+               checkArgs(args, 1, 2);
+               return new RandomLong(args.length == 1 ? 0 : Long.parseLong(args[0]), Long.parseLong(args[args.length - 1]));
+            case "randomString":
+               checkArgs(args, 1, 1);
+               return new RandomString(Integer.parseInt(args[0]));
+            case "uuid":
+               checkArgs(args, 0, 0);
+               return new RandomUuid();
+            case "sequence":
+               checkArgs(args, 0, 1);
+               return new Sequence(args.length == 0 ? 0 : Long.parseLong(args[0]));
+            case "timestamp":
+               checkArgs(args, 0, 1);
+               return args.length == 0 ? new Timestamp() : new FormattedTimestamp(args[0]);
+            case "pick":
+               checkArgs(args, 1, Integer.MAX_VALUE);
+               return new Pick(args);
+            default:
+               return null;
+         }
+      } catch (IllegalArgumentException e) { // includes NumberFormatException
+         throw new IllegalArgumentException(String.format("Invalid template function %s: %s", expression.trim(), e.getMessage()), e);
+      }
+   }
+
+   private static void checkArgs(final String[] args, final int min, final int max) {
+      if (args.length < min || args.length > max) {
+         throw new IllegalArgumentException(String.format("%d arguments given", args.length));
+      }
+   }
+
+   private static final class RandomInt extends TemplateFunction {
+      private final int min;
+      private final long range;
+
+      private RandomInt(final int min, final int max) {
+         if (max <= min) {
+            throw new IllegalArgumentException("max must be greater than min");
+         }
+         this.min = min;
+         this.range = (long) max - min;
+      }
+
+      @Override
+      public String apply() {
+         return String.valueOf(range <= Integer.MAX_VALUE ? min + FastRandom.current().nextInt((int) range) : FastRandom.current().nextLong(min, min + range));
+      }
+   }
+
+   private static final class RandomLong extends TemplateFunction {
+      private final long min;
+      private final long max;
+
+      private RandomLong(final long min, final long max) {
+         if (max <= min) {
+            throw new IllegalArgumentException("max must be greater than min");
+         }
+         this.min = min;
+         this.max = max;
+      }
+
+      @Override
+      public String apply() {
+         return String.valueOf(FastRandom.current().nextLong(min, max));
+      }
+   }
+
+   private static final class RandomString extends TemplateFunction {
+      private final int length;
+
+      private RandomString(final int length) {
+         if (length < 0) {
+            throw new IllegalArgumentException("length must not be negative");
+         }
+         this.length = length;
+      }
+
+      @Override
+      public String apply() {
+         final FastRandom random = FastRandom.current();
+         final char[] chars = new char[length];
+         for (int i = 0; i < length; i++) {
+            chars[i] = ALPHANUMERIC[random.nextInt(ALPHANUMERIC.length)];
+         }
+         return new String(chars);
+      }
+   }
+
+   private static final class RandomUuid extends TemplateFunction {
+      @Override
+      public String apply() {
+         final FastRandom random = FastRandom.current();
+         final long most = (random.nextLong() & ~0xF000L) | 0x4000L; // version 4
+         final long least = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L; // IETF variant
+         return new UUID(most, least).toString();
+      }
+   }
+
+   private static final class Sequence extends TemplateFunction {
+      private final ThreadLocal<long[]> next;
+
+      private Sequence(final long start) {
+         next = new ThreadLocal<long[]>() {
+            @Override
+            protected long[] initialValue() {
+               return new long[] { start };
+            }
+         };
+      }
+
+      @Override
+      public String apply() {
+         return String.valueOf(next.get()[0]++);
+      }
+   }
+
+   private static final class Timestamp extends TemplateFunction {
+      @Override
+      public String apply() {
+         return String.valueOf(System.currentTimeMillis());
+      }
+   }
+
+   private static final class FormattedTimestamp extends TemplateFunction {
+      private final ThreadLocal<SimpleDateFormat> format;
+
+      private FormattedTimestamp(final String pattern) {
+         new SimpleDateFormat(pattern); // validates the pattern
+         format = new ThreadLocal<SimpleDateFormat>() {
+            @Override
+            protected SimpleDateFormat initialValue() {
+               return new SimpleDateFormat(pattern);
+            }
+         };
+      }
+
+      @Override
+      public String apply() {
+         return format.get().format(new Date());
+      }
+   }
+
+   private static final class Pick extends TemplateFunction {
+      private final String[] values;
+
+      private Pick(final String[] values) {
+         this.values = values;
+      }
+
+      @Override
+      public String apply() {
+         return values[FastRandom.current().nextInt(values.length)];
+      }
+   }
+}
@@ -0,0 +1,2 @@
+// runs in the PerfCake JVM with the GroovySender in-process mode
+"you entered: $payload"
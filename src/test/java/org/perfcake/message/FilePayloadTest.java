@@ -0,0 +1,93 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+public class FilePayloadTest {
+
+   private static final String CONTENT = "Příliš žluťoučký kůň úpěl ďábelské ódy.";
+
+   private static FilePayload payload() throws Exception {
+      final File file = File.createTempFile("perfcake-payload", ".txt");
+      file.deleteOnExit();
+      Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+
+      return new FilePayload(file.toPath());
+   }
+
+   @Test
+   public void testContent() throws Exception {
+      final FilePayload payload = payload();
+      final byte[] bytes = CONTENT.getBytes(StandardCharsets.UTF_8);
+      Assert.assertEquals(payload.size(), bytes.length);
+
+      final ByteBuffer first = payload.buffer();
+      final ByteBuffer second = payload.buffer();
+      Assert.assertTrue(first.isReadOnly());
+      first.get(new byte[10]);
+      Assert.assertEquals(second.remaining(), bytes.length, "The buffers must be independent.");
+
+      final ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+      payload.writeTo(chunked, new byte[7]);
+      Assert.assertEquals(chunked.toByteArray(), bytes);
+
+      final ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+      Assert.assertEquals(payload.transferTo(Channels.newChannel(transferred)), bytes.length);
+      Assert.assertEquals(transferred.toByteArray(), bytes);
+
+      Assert.assertEquals(payload.toString(), CONTENT);
+   }
+
+   @Test
+   public void testSerialization() throws Exception {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+         out.writeObject(new Message(payload()));
+      }
+
+      try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+         final Message message = (Message) in.readObject();
+         Assert.assertTrue(message.getPayload() instanceof FilePayload);
+         Assert.assertEquals(message.getPayload().toString(), CONTENT);
+         Assert.assertEquals(((FilePayload) message.getPayload()).buffer().remaining(), CONTENT.getBytes(StandardCharsets.UTF_8).length);
+      }
+   }
+
+   @Test
+   public void testTemplateIsNotRendered() throws Exception {
+      final Message message = new Message(payload());
+      final MessageTemplate template = new MessageTemplate(message, 1, null);
+      Assert.assertFalse(template.isDynamic());
+      Assert.assertSame(template.getFilteredMessage(new Properties()), message);
+   }
+}
@@ -0,0 +1,117 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message;
+
+import org.perfcake.PerfCakeConst;
+import org.perfcake.PerfCakeException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Verifies that the pre-rendered messages are the same as the messages rendered when needed.
+ */
+public class MessagePreRendererTest {
+
+   private static MessageTemplate template(final String payload) throws PerfCakeException {
+      final Message m = new Message(payload);
+      m.setHeader("h", "v");
+      return new MessageTemplate(m, 1, new ArrayList<String>());
+   }
+
+   private static Properties number(final long n) {
+      final Properties props = new Properties();
+      props.setProperty(PerfCakeConst.MESSAGE_NUMBER_PROPERTY, String.valueOf(n));
+      return props;
+   }
+
+   @Test
+   public void testPreRenderedEqualsInline() throws PerfCakeException {
+      final MessageTemplate dynamic = template("Message #{MessageNumber} of #{Missing:many}");
+      final MessageTemplate fixed = template("No placeholders here");
+      final MessagePreRenderer preRenderer = new MessagePreRenderer(Arrays.asList(dynamic, fixed), 10, false);
+
+      Assert.assertNotNull(dynamic.getPreRendered());
+      Assert.assertNull(fixed.getPreRendered());
+
+      preRenderer.start();
+      for (long i = 0; i < 10; i++) {
+         final Message m = dynamic.getFilteredMessage(number(i));
+         final Message expected = dynamic.render(number(i));
+         Assert.assertEquals(m.getPayload(), expected.getPayload());
+         Assert.assertEquals(m.getHeaders(), expected.getHeaders());
+      }
+      Assert.assertEquals(preRenderer.getMisses(), 0);
+
+      // beyond the capacity without the producer running
+      Assert.assertEquals(dynamic.getFilteredMessage(number(20)).getPayload(), "Message 20 of many");
+      Assert.assertEquals(preRenderer.getMisses(), 1);
+   }
+
+   @Test
+   public void testOtherPropertiesAreRenderedInline() throws PerfCakeException {
+      final MessageTemplate dynamic = template("Hello #{name:nobody} #{MessageNumber}");
+      final MessagePreRenderer preRenderer = new MessagePreRenderer(Arrays.asList(dynamic), 5, false);
+      preRenderer.start();
+
+      final Properties props = number(1);
+      props.setProperty("name", "world");
+      Assert.assertEquals(dynamic.getFilteredMessage(props).getPayload(), "Hello world 1");
+      Assert.assertEquals(dynamic.getFilteredMessage(number(2)).getPayload(), "Hello nobody 2");
+   }
+
+   @Test
+   public void testUnnumberedMessageIsCached() throws PerfCakeException {
+      final MessageTemplate dynamic = template("Number #{MessageNumber:none}");
+      final MessagePreRenderer preRenderer = new MessagePreRenderer(Arrays.asList(dynamic), 5, false);
+      preRenderer.start();
+
+      final Message first = dynamic.getFilteredMessage(new Properties());
+      Assert.assertEquals(first.getPayload(), "Number none");
+      Assert.assertSame(dynamic.getFilteredMessage(new Properties()), first);
+   }
+
+   @Test
+   public void testContinuousPreRendering() throws Exception {
+      final MessageTemplate dynamic = template("n=#{MessageNumber}");
+      final List<MessageTemplate> store = new ArrayList<>();
+      store.add(dynamic);
+      final MessagePreRenderer preRenderer = new MessagePreRenderer(store, 100, true);
+      preRenderer.start();
+
+      try {
+         for (long i = 0; i < 10_000; i++) {
+            Assert.assertEquals(dynamic.getFilteredMessage(number(i)).getPayload(), "n=" + i);
+            if (i % 50 == 0) {
+               Thread.sleep(1); // give the producer a chance to catch up
+            }
+         }
+      } finally {
+         preRenderer.stop();
+      }
+
+      Assert.assertTrue(preRenderer.getMisses() < 10_000, "The producer never caught up.");
+   }
+}
@@ -0,0 +1,119 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.util.FastRandom;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Verifies the selection of the messages from the message store.
+ */
+public class MessageSelectorTest {
+
+   private static MessageTemplate template(final String name, final double weight) throws PerfCakeException {
+      return new MessageTemplate(new Message(name), 1, new ArrayList<String>()).setName(name).setWeight(weight);
+   }
+
+   private static List<MessageTemplate> store(final double... weights) throws PerfCakeException {
+      final List<MessageTemplate> store = new ArrayList<>();
+      for (int i = 0; i < weights.length; i++) {
+         store.add(template(String.valueOf((char) ('a' + i)), weights[i]));
+      }
+      return store;
+   }
+
+   @Test
+   public void testWeightedDistribution() throws PerfCakeException {
+      FastRandom.setSeed(42L);
+      try {
+         final List<MessageTemplate> store = store(70, 20, 10, 0);
+         final MessageSelector selector = new MessageSelector(store, MessageSelector.Strategy.WEIGHTED);
+         final int[] counts = new int[store.size()];
+         final int total = 100_000;
+         for (int i = 0; i < total; i++) {
+            counts[store.indexOf(selector.select(i))]++;
+         }
+
+         Assert.assertEquals(counts[0] / (double) total, 0.7, 0.01);
+         Assert.assertEquals(counts[1] / (double) total, 0.2, 0.01);
+         Assert.assertEquals(counts[2] / (double) total, 0.1, 0.01);
+         Assert.assertEquals(counts[3], 0, "message with zero weight selected");
+      } finally {
+         FastRandom.setSeed(null);
+      }
+   }
+
+   @Test
+   public void testSequence() throws PerfCakeException {
+      final List<MessageTemplate> store = store(4, 2, 2);
+      final MessageSelector selector = new MessageSelector(store, MessageSelector.Strategy.SEQUENCE);
+      Assert.assertEquals(selector.getCycleLength(), 4, "weights reduced by their greatest common divisor");
+
+      final StringBuilder sequence = new StringBuilder();
+      for (int i = 0; i < 8; i++) {
+         sequence.append(selector.select(i).getName());
+      }
+      Assert.assertEquals(sequence.toString(), "abcaabca");
+
+      final MessageSelector fractions = new MessageSelector(store(0.5, 0.25), MessageSelector.Strategy.SEQUENCE);
+      Assert.assertEquals(fractions.getCycleLength(), 3);
+   }
+
+   @Test
+   public void testRoundRobin() throws PerfCakeException {
+      final List<MessageTemplate> store = store(100, 1, 1);
+      final MessageSelector selector = new MessageSelector(store, MessageSelector.Strategy.ROUND_ROBIN);
+      for (int i = 0; i < 9; i++) {
+         Assert.assertSame(selector.select(i), store.get(i % 3));
+      }
+   }
+
+   @Test
+   public void testInvalidWeights() throws PerfCakeException {
+      for (final List<MessageTemplate> store : Arrays.asList(store(1, -1), store(0, 0), new ArrayList<MessageTemplate>())) {
+         try {
+            new MessageSelector(store, MessageSelector.Strategy.WEIGHTED);
+            Assert.fail("Invalid message store accepted: " + store.size() + " messages");
+         } catch (PerfCakeException e) {
+            // expected
+         }
+      }
+   }
+
+   @Test
+   public void testTooSmallSequenceWeight() throws PerfCakeException {
+      try {
+         new MessageSelector(store(1.5, 0.0004), MessageSelector.Strategy.SEQUENCE);
+         Assert.fail("A weight rounded to zero was accepted.");
+      } catch (PerfCakeException e) {
+         Assert.assertTrue(e.getMessage().contains("message b"), e.getMessage());
+      }
+
+      new MessageSelector(store(1.5, 0.0004), MessageSelector.Strategy.WEIGHTED);
+      new MessageSelector(store(1.5, 0), MessageSelector.Strategy.SEQUENCE);
+   }
+}
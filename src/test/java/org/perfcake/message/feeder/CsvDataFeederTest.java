@@ -0,0 +1,236 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.feeder;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.message.Message;
+import org.perfcake.message.MessageTemplate;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CsvDataFeederTest {
+
+   private static String csv(final String content) throws IOException {
+      final File file = File.createTempFile("perfcake-feeder", ".csv");
+      file.deleteOnExit();
+      Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+      return file.getAbsolutePath();
+   }
+
+   private static String users(final int count) throws IOException {
+      final StringBuilder sb = new StringBuilder("id,name\n");
+      for (int i = 0; i < count; i++) {
+         sb.append(i).append(",user").append(i).append('\n');
+      }
+      return csv(sb.toString());
+   }
+
+   private static Properties feed(final DataFeeder feeder, final long iteration) {
+      final Properties props = new Properties();
+      feeder.feed(props, iteration);
+      return props;
+   }
+
+   @Test
+   public void testSequential() throws Exception {
+      final CsvDataFeeder feeder = new CsvDataFeeder().setFile(users(10_000));
+      feeder.init(1);
+
+      for (int i = 0; i < 10_000; i++) {
+         final Properties props = feed(feeder, i);
+         Assert.assertEquals(props.getProperty("id"), String.valueOf(i));
+         Assert.assertEquals(props.getProperty("name"), "user" + i);
+      }
+      Assert.assertTrue(feed(feeder, 10_000).isEmpty());
+      Assert.assertEquals(feeder.getRowCount(), 10_000);
+
+      feeder.close();
+   }
+
+   @Test
+   public void testCircular() throws Exception {
+      final CsvDataFeeder feeder = new CsvDataFeeder().setFile(users(7)).setStrategy(CsvDataFeeder.Strategy.CIRCULAR);
+      feeder.init(1);
+
+      for (int i = 0; i < 50; i++) {
+         Assert.assertEquals(feed(feeder, i).getProperty("id"), String.valueOf(i % 7));
+      }
+
+      feeder.close();
+   }
+
+   @Test
+   public void testRandom() throws Exception {
+      final CsvDataFeeder feeder = new CsvDataFeeder().setFile(users(5)).setStrategy(CsvDataFeeder.Strategy.RANDOM);
+      feeder.init(1);
+      Assert.assertEquals(feeder.getRowCount(), 5);
+
+      final Set<String> seen = new HashSet<>();
+      for (int i = 0; i < 1000; i++) {
+         final Properties props = feed(feeder, i);
+         Assert.assertEquals(props.getProperty("name"), "user" + props.getProperty("id"));
+         seen.add(props.getProperty("id"));
+      }
+      Assert.assertEquals(seen.size(), 5);
+
+      feeder.close();
+   }
+
+   @Test
+   public void testPartitioned() throws Exception {
+      final int threads = 4;
+      final CsvDataFeeder feeder = new CsvDataFeeder().setFile(users(1000)).setStrategy(CsvDataFeeder.Strategy.PARTITIONED);
+      feeder.init(threads);
+
+      final ExecutorService executor = Executors.newFixedThreadPool(threads);
+      final List<Future<Set<String>>> results = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+         results.add(executor.submit(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() throws Exception {
+               final Set<String> ids = new HashSet<>();
+               for (int i = 0; i < 500; i++) { // each partition twice
+                  ids.add(feed(feeder, i).getProperty("id"));
+               }
+               return ids;
+            }
+         }));
+      }
+
+      final Set<String> all = new HashSet<>();
+      for (Future<Set<String>> result : results) {
+         final Set<String> ids = result.get();
+         Assert.assertEquals(ids.size(), 250);
+         for (String id : ids) {
+            Assert.assertTrue(all.add(id), "Row " + id + " was fed to more threads.");
+         }
+      }
+      Assert.assertEquals(all.size(), 1000);
+
+      executor.shutdown();
+      feeder.close();
+   }
+
+   @Test
+   public void testParsing() throws Exception {
+      final CsvDataFeeder feeder = new CsvDataFeeder().setFile(csv("a;b;c\r\n\"x;y\";\"say \"\"hi\"\"\";\r\nplain;\"multi\nline\";žluťoučký\r\nshort")).setDelimiter(";");
+      feeder.init(1);
+
+      Properties props = feed(feeder, 0);
+      Assert.assertEquals(props.getProperty("a"), "x;y");
+      Assert.assertEquals(props.getProperty("b"), "say \"hi\"");
+      Assert.assertEquals(props.getProperty("c"), "");
+
+      props = feed(feeder, 1);
+      Assert.assertEquals(props.getProperty("a"), "plain");
+      Assert.assertEquals(props.getProperty("b"), "multi\nline");
+      Assert.assertEquals(props.getProperty("c"), "žluťoučký");
+
+      props = feed(feeder, 2);
+      Assert.assertEquals(props.getProperty("a"), "short");
+      Assert.assertFalse(props.containsKey("b"));
+
+      Assert.assertTrue(feed(feeder, 3).isEmpty());
+      feeder.close();
+   }
+
+   @Test
+   public void testQuoteInsideField() throws Exception {
+      final CsvDataFeeder feeder = new CsvDataFeeder().setFile(csv("size,name\n5\",screen\n7,\"x\"\n")).setStrategy(CsvDataFeeder.Strategy.RANDOM);
+      feeder.init(1);
+      Assert.assertEquals(feeder.getRowCount(), 2);
+      feeder.close();
+
+      feeder.setStrategy(CsvDataFeeder.Strategy.SEQUENTIAL).init(1);
+      Properties props = feed(feeder, 0);
+      Assert.assertEquals(props.getProperty("size"), "5\"");
+      Assert.assertEquals(props.getProperty("name"), "screen");
+
+      props = feed(feeder, 1);
+      Assert.assertEquals(props.getProperty("size"), "7");
+      Assert.assertEquals(props.getProperty("name"), "x");
+      Assert.assertTrue(feed(feeder, 2).isEmpty());
+
+      feeder.close();
+   }
+
+   @Test
+   public void testColumnsWithoutHeader() throws Exception {
+      final CsvDataFeeder feeder = new CsvDataFeeder().setFile(csv("1\t2\n3\t4\n")).setHeader(false).setColumns("first, second").setDelimiter("\\t");
+      feeder.init(1);
+
+      Assert.assertEquals(feed(feeder, 1).getProperty("second"), "4");
+      Assert.assertEquals(feeder.getRowCount(), 2);
+
+      feeder.close();
+   }
+
+   @Test
+   public void testChunkBoundaries() throws Exception {
+      final CsvDataFeeder feeder = new CsvDataFeeder().setFile(users(2000)).setStrategy(CsvDataFeeder.Strategy.RANDOM);
+      feeder.chunkBits = 6; // rows crossing the chunks of 64 bytes
+      feeder.init(1);
+
+      for (int i = 0; i < 5000; i++) {
+         final Properties props = feed(feeder, i);
+         Assert.assertEquals(props.getProperty("name"), "user" + props.getProperty("id"));
+      }
+
+      feeder.close();
+   }
+
+   @Test
+   public void testRendering() throws Exception {
+      final CsvDataFeeder feeder = new CsvDataFeeder().setFile(users(3));
+      feeder.init(1);
+
+      final MessageTemplate template = new MessageTemplate(new Message("Hello #{name:nobody}!"), 1, Collections.<String>emptyList());
+      Assert.assertEquals(template.getFilteredMessage(feed(feeder, 2)).getPayload(), "Hello user2!");
+      Assert.assertEquals(template.getFilteredMessage(feed(feeder, 3)).getPayload(), "Hello nobody!");
+
+      feeder.close();
+   }
+
+   @Test(expectedExceptions = PerfCakeException.class)
+   public void testNoData() throws Exception {
+      new CsvDataFeeder().setFile(csv("id,name\n")).init(1);
+   }
+
+   @Test(expectedExceptions = PerfCakeException.class)
+   public void testNoColumns() throws Exception {
+      new CsvDataFeeder().setFile(csv("1,2\n")).setHeader(false).init(1);
+   }
+}
@@ -0,0 +1,219 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.receiver;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.RunInfo;
+import org.perfcake.common.Period;
+import org.perfcake.common.PeriodType;
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.reporting.ReportManager;
+import org.perfcake.reporting.ReportingException;
+import org.perfcake.reporting.destinations.Destination;
+import org.perfcake.reporting.reporters.AbstractReporter;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Verifies the end-to-end latency, ordering and loss statistics of {@link AbstractReceiver}.
+ */
+public class AbstractReceiverTest {
+
+   private RunInfo runInfo;
+   private ReportManager reportManager;
+   private CollectingReporter senderReporter;
+   private CollectingReporter receiverReporter;
+   private TestReceiver receiver;
+
+   @BeforeMethod
+   public void setUp() {
+      runInfo = new RunInfo(new Period(PeriodType.ITERATION, 1000));
+      reportManager = new ReportManager();
+      reportManager.setRunInfo(runInfo);
+
+      senderReporter = new CollectingReporter();
+      receiverReporter = new CollectingReporter();
+      reportManager.registerReporter(senderReporter);
+      reportManager.registerReceiverReporter(receiverReporter);
+      reportManager.start();
+
+      receiver = new TestReceiver();
+      receiver.setReportManager(reportManager);
+      receiver.setRunInfo(runInfo);
+   }
+
+   @AfterMethod
+   public void tearDown() {
+      reportManager.stop();
+   }
+
+   @Test
+   public void testLatencyAndRouting() throws Exception {
+      final long sendTime = System.currentTimeMillis() - 50;
+      receiver.received(0, sendTime);
+
+      Assert.assertEquals(receiverReporter.units.size(), 1);
+      Assert.assertTrue(senderReporter.units.isEmpty(), "Received messages must not be reported to the sender reporters.");
+
+      final MeasurementUnit mu = receiverReporter.units.get(0);
+      Assert.assertEquals(mu.getIteration(), 0);
+      Assert.assertTrue(mu.getTotalTime() >= 50, "Latency should include the delivery time, but was " + mu.getTotalTime());
+      Assert.assertEquals(runInfo.getIteration(), -1, "Received messages must not be counted as iterations.");
+
+      reportManager.report(reportManager.newMeasurementUnit());
+      Assert.assertEquals(senderReporter.units.size(), 1);
+      Assert.assertEquals(receiverReporter.units.size(), 1, "Sent messages must not be reported to the receiver reporters.");
+   }
+
+   @Test
+   public void testOrderingStatistics() {
+      final long now = System.currentTimeMillis();
+      receiver.received(0, now);
+      receiver.received(1, now);
+      receiver.received(4, now);
+      assertResults(3L, 2L, 0L, 0L);
+
+      receiver.received(3, now);
+      assertResults(4L, 1L, 1L, 0L);
+
+      receiver.received(3, now);
+      assertResults(5L, 1L, 1L, 1L);
+
+      receiver.received(2, now);
+      assertResults(6L, 0L, 2L, 1L);
+   }
+
+   @Test
+   public void testMultipleMessagesPerIteration() {
+      final long now = System.currentTimeMillis();
+      receiver.received(0, 0, now);
+      receiver.received(0, 1, now);
+      receiver.received(1, 0, now);
+      receiver.received(0, 2, now);
+      receiver.received(1, 1, now);
+      assertResults(5L, 0L, 0L, 0L);
+
+      receiver.received(1, 0, now);
+      assertResults(6L, 0L, 0L, 1L);
+   }
+
+   @Test
+   public void testUnnumberedMessages() {
+      receiver.received(-1, System.currentTimeMillis());
+      receiver.received(-1, System.currentTimeMillis());
+
+      final MeasurementUnit mu = receiverReporter.units.get(1);
+      Assert.assertEquals(mu.getIteration(), 1);
+      Assert.assertEquals(mu.getResult(AbstractReceiver.RECEIVED), 2L);
+      Assert.assertNull(mu.getResult(AbstractReceiver.MISSING));
+   }
+
+   @Test
+   public void testReset() {
+      receiver.received(0, System.currentTimeMillis());
+      receiver.received(2, System.currentTimeMillis());
+      Assert.assertEquals(receiver.getMissing(), 1);
+
+      runInfo.reset();
+      receiver.received(0, System.currentTimeMillis());
+      Assert.assertEquals(receiver.getMissing(), 0);
+      assertResults(1L, 0L, 0L, 0L);
+   }
+
+   @Test
+   public void testDrain() throws Exception {
+      for (int i = 0; i < 3; i++) {
+         reportManager.newMeasurementUnit();
+      }
+      receiver.received(0, System.currentTimeMillis());
+
+      final Thread delivery = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               Thread.sleep(100);
+               receiver.received(1, System.currentTimeMillis());
+               Thread.sleep(100);
+               receiver.received(2, System.currentTimeMillis());
+            } catch (InterruptedException e) {
+               // terminate
+            }
+         }
+      });
+      receiver.setDrainTimeout(500);
+      delivery.start();
+      receiver.drain();
+      Assert.assertEquals(receiver.getLost(), 0);
+
+      reportManager.newMeasurementUnit();
+      receiver.setDrainTimeout(50);
+      final long start = System.currentTimeMillis();
+      receiver.drain();
+      Assert.assertTrue(System.currentTimeMillis() - start < 500, "Drain should give up after the drain timeout.");
+      Assert.assertEquals(receiver.getLost(), 1);
+   }
+
+   private void assertResults(final Long received, final Long missing, final Long outOfOrder, final Long duplicates) {
+      final MeasurementUnit mu = receiverReporter.units.get(receiverReporter.units.size() - 1);
+      Assert.assertEquals(mu.getResult(AbstractReceiver.RECEIVED), received, AbstractReceiver.RECEIVED);
+      Assert.assertEquals(mu.getResult(AbstractReceiver.MISSING), missing, AbstractReceiver.MISSING);
+      Assert.assertEquals(mu.getResult(AbstractReceiver.OUT_OF_ORDER), outOfOrder, AbstractReceiver.OUT_OF_ORDER);
+      Assert.assertEquals(mu.getResult(AbstractReceiver.DUPLICATES), duplicates, AbstractReceiver.DUPLICATES);
+   }
+
+   private static class TestReceiver extends AbstractReceiver {
+
+      @Override
+      public void init() throws Exception {
+         // nothing to connect to
+      }
+
+      @Override
+      public void close() throws PerfCakeException {
+         // nothing to close
+      }
+   }
+
+   private static class CollectingReporter extends AbstractReporter {
+
+      private final List<MeasurementUnit> units = new CopyOnWriteArrayList<>();
+
+      @Override
+      protected void doReport(final MeasurementUnit mu) throws ReportingException {
+         units.add(mu);
+      }
+
+      @Override
+      public void publishResult(final PeriodType periodType, final Destination d) throws ReportingException {
+         // nothing to publish
+      }
+
+      @Override
+      protected void doReset() {
+         units.clear();
+      }
+   }
+}
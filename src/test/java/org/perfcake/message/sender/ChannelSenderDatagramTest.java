@@ -0,0 +1,147 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.RunInfo;
+import org.perfcake.common.Period;
+import org.perfcake.common.PeriodType;
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.reporting.ReportManager;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.util.Properties;
+
+public class ChannelSenderDatagramTest {
+
+   private static final String PAYLOAD = "Hello UDP world!";
+
+   private DatagramSocket echoSocket;
+
+   private Thread echoThread;
+
+   private ReportManager reportManager;
+
+   @BeforeClass
+   public void setUp() throws SocketException {
+      reportManager = new ReportManager();
+      reportManager.setRunInfo(new RunInfo(new Period(PeriodType.ITERATION, 1000)));
+      reportManager.start();
+
+      echoSocket = new DatagramSocket(0);
+      echoThread = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            final byte[] buf = new byte[65507];
+            try {
+               while (!echoSocket.isClosed()) {
+                  final DatagramPacket packet = new DatagramPacket(buf, buf.length);
+                  echoSocket.receive(packet);
+                  if (!new String(packet.getData(), 0, packet.getLength(), "UTF-8").startsWith("mute")) {
+                     echoSocket.send(packet);
+                  }
+               }
+            } catch (IOException e) {
+               // socket closed
+            }
+         }
+      });
+      echoThread.setDaemon(true);
+      echoThread.start();
+   }
+
+   @AfterClass
+   public void tearDown() throws InterruptedException {
+      echoSocket.close();
+      echoThread.join();
+      reportManager.stop();
+   }
+
+   private Properties senderProps(final boolean connect, final boolean awaitResponse) {
+      return props("target", "localhost:" + echoSocket.getLocalPort(), "connect", String.valueOf(connect), "awaitResponse", String.valueOf(awaitResponse), "responseTimeout", "200");
+   }
+
+   @Test
+   public void testRequestResponse() throws Exception {
+      for (final boolean connect : new boolean[] { true, false }) {
+         final ChannelSenderDatagram sender = newSender(ChannelSenderDatagram.class, senderProps(connect, true));
+         try {
+            final Message message = new Message(PAYLOAD);
+            MeasurementUnit mu = null;
+            for (int i = 0; i < 10; i++) {
+               mu = reportManager.newMeasurementUnit();
+               Assert.assertEquals(send(sender, message, mu), PAYLOAD);
+            }
+
+            Assert.assertEquals(mu.getResult(ChannelSenderDatagram.PACKETS_SENT), 10L);
+            Assert.assertEquals(mu.getResult(ChannelSenderDatagram.PACKETS_RECEIVED), 10L);
+            Assert.assertEquals(mu.getResult(ChannelSenderDatagram.PACKETS_LOST), 0L);
+         } finally {
+            sender.close();
+         }
+      }
+   }
+
+   @Test
+   public void testLostResponses() throws Exception {
+      final ChannelSenderDatagram sender = newSender(ChannelSenderDatagram.class, senderProps(true, true));
+      try {
+         MeasurementUnit mu = reportManager.newMeasurementUnit();
+         Assert.assertEquals(send(sender, new Message(PAYLOAD), mu), PAYLOAD);
+
+         mu = reportManager.newMeasurementUnit();
+         Assert.assertNull(send(sender, new Message("mute " + PAYLOAD), mu));
+
+         Assert.assertEquals(mu.getResult(ChannelSenderDatagram.PACKETS_SENT), 2L);
+         Assert.assertEquals(mu.getResult(ChannelSenderDatagram.PACKETS_RECEIVED), 1L);
+         Assert.assertEquals(mu.getResult(ChannelSenderDatagram.PACKETS_LOST), 1L);
+         Assert.assertNotNull(mu.getResult(ChannelSenderDatagram.LOST_RATE));
+      } finally {
+         sender.close();
+      }
+   }
+
+   @Test
+   public void testFireAndForget() throws Exception {
+      final ChannelSenderDatagram sender = newSender(ChannelSenderDatagram.class, senderProps(true, false));
+      try {
+         MeasurementUnit mu = null;
+         for (int i = 0; i < 100; i++) {
+            mu = reportManager.newMeasurementUnit();
+            Assert.assertNull(send(sender, new Message(PAYLOAD + i), mu));
+         }
+
+         Assert.assertEquals(mu.getResult(ChannelSenderDatagram.PACKETS_SENT), 100L);
+         Assert.assertEquals(mu.getResult(ChannelSenderDatagram.PACKETS_RECEIVED), 0L);
+      } finally {
+         sender.close();
+      }
+   }
+}
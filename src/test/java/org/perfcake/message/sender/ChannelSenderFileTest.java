@@ -0,0 +1,190 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.RunInfo;
+import org.perfcake.common.Period;
+import org.perfcake.common.PeriodType;
+import org.perfcake.message.FilePayload;
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.reporting.ReportManager;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+public class ChannelSenderFileTest {
+
+   private static final String PAYLOAD = "0123456789abcdef";
+
+   private static final int COUNT = 50;
+
+   private ReportManager reportManager;
+
+   private Path dir;
+
+   @BeforeClass
+   public void setUp() throws IOException {
+      dir = Files.createTempDirectory("perfcake-channel-file");
+      reportManager = new ReportManager();
+      reportManager.setRunInfo(new RunInfo(new Period(PeriodType.ITERATION, 1000)));
+      reportManager.start();
+   }
+
+   @AfterClass
+   public void tearDown() throws IOException {
+      reportManager.stop();
+      for (File f : dir.toFile().listFiles()) {
+         f.delete();
+      }
+      Files.delete(dir);
+   }
+
+   private Properties senderProps(final String file, final String mode, final String syncPolicy) {
+      return props("target", dir.resolve(file).toString(), "mode", mode, "syncPolicy", syncPolicy, "syncBatchSize", "10", "fileSize", String.valueOf(PAYLOAD.length() * 64));
+   }
+
+   private MeasurementUnit sendMessages(final ChannelSenderFile sender, final Message message) throws Exception {
+      MeasurementUnit mu = null;
+      for (int i = 0; i < COUNT; i++) {
+         mu = reportManager.newMeasurementUnit();
+         send(sender, message, mu);
+      }
+
+      return mu;
+   }
+
+   @Test
+   public void testAppend() throws Exception {
+      final ChannelSenderFile sender = newSender(ChannelSenderFile.class, senderProps("append.dat", "append", "batch"));
+      final MeasurementUnit mu;
+      try {
+         mu = sendMessages(sender, new Message(PAYLOAD));
+      } finally {
+         sender.close();
+      }
+
+      Assert.assertEquals(Files.size(dir.resolve("append.dat")), (long) COUNT * PAYLOAD.length());
+      Assert.assertEquals(mu.getResult(ChannelSenderFile.BYTES), (long) COUNT * PAYLOAD.length());
+      Assert.assertNotNull(mu.getResult(ChannelSenderFile.BYTE_RATE));
+   }
+
+   @Test
+   public void testFilePayload() throws Exception {
+      final Path source = Files.write(dir.resolve("payload.dat"), PAYLOAD.toUpperCase().getBytes(StandardCharsets.UTF_8));
+      final Message fileMessage = new Message(new FilePayload(source));
+      final ChannelSenderFile sender = newSender(ChannelSenderFile.class, senderProps("file-payload.dat", "append", "none"));
+      try {
+         sendMessages(sender, fileMessage);
+         sendMessages(sender, new Message(PAYLOAD));
+         sendMessages(sender, fileMessage);
+      } finally {
+         sender.close();
+      }
+
+      final StringBuilder expected = new StringBuilder();
+      for (String part : new String[] { PAYLOAD.toUpperCase(), PAYLOAD, PAYLOAD.toUpperCase() }) {
+         for (int i = 0; i < COUNT; i++) {
+            expected.append(part);
+         }
+      }
+      Assert.assertEquals(new String(Files.readAllBytes(dir.resolve("file-payload.dat")), StandardCharsets.UTF_8), expected.toString());
+   }
+
+   @Test
+   public void testRandomWriteAndRead() throws Exception {
+      ChannelSenderFile sender = newSender(ChannelSenderFile.class, senderProps("random.dat", "randomWrite", "write"));
+      try {
+         sendMessages(sender, new Message(PAYLOAD));
+      } finally {
+         sender.close();
+      }
+
+      Assert.assertEquals(Files.size(dir.resolve("random.dat")), PAYLOAD.length() * 64L);
+      Assert.assertTrue(new String(Files.readAllBytes(dir.resolve("random.dat")), StandardCharsets.UTF_8).contains(PAYLOAD));
+
+      sender = newSender(ChannelSenderFile.class, senderProps("random.dat", "randomRead", "none"));
+      final MeasurementUnit mu;
+      try {
+         mu = sendMessages(sender, new Message(PAYLOAD));
+      } finally {
+         sender.close();
+      }
+
+      Assert.assertEquals(mu.getResult(ChannelSenderFile.BYTES), (long) COUNT * PAYLOAD.length());
+   }
+
+   @Test
+   public void testPreallocation() throws Exception {
+      final ChannelSenderFile sender = newSender(ChannelSenderFile.class, senderProps("preallocated.dat", "randomRead", "none"));
+      sender.close();
+
+      final byte[] content = Files.readAllBytes(dir.resolve("preallocated.dat"));
+      Assert.assertEquals(content.length, PAYLOAD.length() * 64);
+
+      int zeroes = 0;
+      for (byte b : content) {
+         if (b == 0) {
+            zeroes++;
+         }
+      }
+      Assert.assertTrue(zeroes < content.length / 2, "The preallocated file should be filled with data.");
+   }
+
+   @Test
+   public void testMapped() throws Exception {
+      final ChannelSenderFile sender = newSender(ChannelSenderFile.class, senderProps("mapped.dat", "mapped", "batch"));
+      try {
+         sendMessages(sender, new Message(PAYLOAD));
+      } finally {
+         sender.close();
+      }
+
+      final String content = new String(Files.readAllBytes(dir.resolve("mapped.dat")), StandardCharsets.UTF_8);
+      Assert.assertTrue(content.startsWith(PAYLOAD + PAYLOAD));
+   }
+
+   @Test
+   public void testTransfer() throws Exception {
+      final Path source = Files.write(dir.resolve("source.dat"), PAYLOAD.getBytes(StandardCharsets.UTF_8));
+      final Properties props = senderProps("transfer.dat", "transfer", "none");
+      props.setProperty("source", source.toString());
+
+      final ChannelSenderFile sender = newSender(ChannelSenderFile.class, props);
+      try {
+         sendMessages(sender, null);
+      } finally {
+         sender.close();
+      }
+
+      Assert.assertEquals(Files.size(dir.resolve("transfer.dat")), (long) COUNT * PAYLOAD.length());
+   }
+}
@@ -0,0 +1,197 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.RunInfo;
+import org.perfcake.common.Period;
+import org.perfcake.common.PeriodType;
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.reporting.ReportManager;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * Verifies the one-shot and the persistent worker modes of {@link CommandSender} using the standard Unix tools.
+ */
+public class CommandSenderTest {
+
+   private ReportManager reportManager;
+
+   @BeforeClass
+   public void setUp() {
+      reportManager = new ReportManager();
+      reportManager.setRunInfo(new RunInfo(new Period(PeriodType.ITERATION, 1000)));
+      reportManager.start();
+   }
+
+   @AfterClass
+   public void tearDown() {
+      reportManager.stop();
+   }
+
+   private MeasurementUnit exchange(final CommandSender sender, final Message message, final Serializable expectedResponse) throws Exception {
+      final MeasurementUnit mu = reportManager.newMeasurementUnit();
+      Assert.assertEquals(send(sender, message, mu), expectedResponse);
+
+      return mu;
+   }
+
+   @Test
+   public void testOneShotEnvironment() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("target", "printenv PERFCAKE_TEST_HEADER");
+      final CommandSender sender = newSender(CommandSender.class, props);
+
+      final Message message = new Message("ignored");
+      message.setHeader("PERFCAKE_TEST_HEADER", "hello");
+      exchange(sender, message, "hello\n");
+
+      sender.close();
+   }
+
+   @Test
+   public void testPersistentLine() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("target", "cat");
+      props.setProperty("persistent", "true");
+      final CommandSender sender = newSender(CommandSender.class, props);
+
+      for (int i = 0; i < 100; i++) {
+         final MeasurementUnit mu = exchange(sender, new Message("line " + i), "line " + i);
+         Assert.assertEquals(mu.getResult(CommandSender.WORKER_RESTARTS), 0L);
+      }
+
+      sender.close();
+   }
+
+   @Test
+   public void testPersistentDelimiter() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("target", "cat");
+      props.setProperty("persistent", "true");
+      props.setProperty("framing", "DELIMITER");
+      props.setProperty("delimiter", "--\\0");
+      final CommandSender sender = newSender(CommandSender.class, props);
+
+      exchange(sender, new Message("multi\nline\n-message"), "multi\nline\n-message");
+      exchange(sender, new Message("-"), "-");
+      exchange(sender, new Message(""), "");
+
+      sender.close();
+   }
+
+   @Test
+   public void testPersistentLineMultiLine() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("target", "cat");
+      props.setProperty("persistent", "true");
+      final CommandSender sender = newSender(CommandSender.class, props);
+
+      final Message message = new Message("<soap:Envelope>\n<soap:Body/>\n</soap:Envelope>");
+      try {
+         sender.preSend(message, null);
+         Assert.fail("A multi-line message must be refused with the line framing.");
+      } catch (PerfCakeException e) {
+         Assert.assertTrue(e.getMessage().contains("LENGTH_PREFIX"), e.getMessage());
+      }
+      try {
+         sender.send(message, reportManager.newMeasurementUnit());
+         Assert.fail("The refused message must not be sent.");
+      } catch (PerfCakeException e) {
+         // expected
+      }
+      sender.postSend(message);
+      exchange(sender, new Message("next"), "next"); // the following exchanges are not shifted
+
+      sender.close();
+   }
+
+   @Test
+   public void testPersistentLengthPrefix() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("target", "cat");
+      props.setProperty("persistent", "true");
+      props.setProperty("framing", "LENGTH_PREFIX");
+      final CommandSender sender = newSender(CommandSender.class, props);
+
+      exchange(sender, new Message("binary\0safe\npayload"), "binary\0safe\npayload");
+      exchange(sender, new Message("žluťoučký kůň"), "žluťoučký kůň");
+
+      sender.close();
+   }
+
+   @Test
+   public void testPersistentRestart() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("target", "head -n 1");
+      props.setProperty("persistent", "true");
+      final CommandSender sender = newSender(CommandSender.class, props);
+
+      exchange(sender, new Message("first"), "first");
+      Thread.sleep(500); // let the worker terminate
+
+      final MeasurementUnit mu = exchange(sender, new Message("second"), "second");
+      Assert.assertEquals(mu.getResult(CommandSender.WORKER_RESTARTS), 1L);
+
+      sender.close();
+   }
+
+   @Test
+   public void testPersistentResponseTimeout() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("target", "sleep 60");
+      props.setProperty("persistent", "true");
+      props.setProperty("responseTimeout", "200");
+      final CommandSender sender = newSender(CommandSender.class, props);
+
+      final Message message = new Message("hello");
+      final MeasurementUnit mu = reportManager.newMeasurementUnit();
+      sender.preSend(message, null);
+      try {
+         sender.send(message, mu);
+         Assert.fail("The hung worker process should time out.");
+      } catch (PerfCakeException e) {
+         Assert.assertTrue(e.getMessage().contains("timeout"), e.getMessage());
+      }
+      sender.postSend(message);
+      Assert.assertEquals(mu.getResult(CommandSender.WORKER_RESTARTS), 1L);
+
+      sender.close();
+   }
+
+   @Test(expectedExceptions = PerfCakeException.class)
+   public void testPersistentArguments() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("target", "cat");
+      props.setProperty("persistent", "true");
+      props.setProperty("messageFrom", "ARGUMENTS");
+      newSender(CommandSender.class, props);
+   }
+}
@@ -0,0 +1,155 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.mockito.Mockito.*;
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies the simulated delays, CPU work and failures of {@link DummySender}.
+ */
+public class DummySenderTest {
+
+   private static final int SAMPLES = 100000;
+
+   private static Properties senderProps(final String... keyValues) {
+      final Properties props = props("target", "Out There!", "seed", "42");
+      props.putAll(props(keyValues));
+
+      return props;
+   }
+
+   private static long[] sample(final DummySender sender) {
+      final long[] delays = new long[SAMPLES];
+      for (int i = 0; i < SAMPLES; i++) {
+         delays[i] = sender.nextDelayNanos();
+      }
+      Arrays.sort(delays);
+
+      return delays;
+   }
+
+   private static double mean(final long[] values) {
+      double sum = 0;
+      for (long value : values) {
+         sum += value;
+      }
+
+      return sum / values.length;
+   }
+
+   @Test
+   public void testDistributions() throws Exception {
+      final long expected = TimeUnit.MICROSECONDS.toNanos(100);
+
+      final long[] constant = sample(newSender(DummySender.class, senderProps("delay", "100", "timeUnit", "MICROSECONDS")));
+      Assert.assertEquals(constant[0], expected);
+      Assert.assertEquals(constant[SAMPLES - 1], expected);
+
+      final long[] exponential = sample(newSender(DummySender.class, senderProps("delay", "100", "timeUnit", "MICROSECONDS", "distribution", "EXPONENTIAL")));
+      Assert.assertEquals(mean(exponential), expected, expected * 0.02);
+
+      final long[] logNormal = sample(newSender(DummySender.class, senderProps("delay", "100", "timeUnit", "MICROSECONDS", "distribution", "LOG_NORMAL", "sigma", "1")));
+      Assert.assertEquals(logNormal[SAMPLES / 2], expected, expected * 0.02); // median
+
+      final long[] bimodal = sample(newSender(DummySender.class, senderProps("delay", "100", "timeUnit", "MICROSECONDS", "distribution", "BIMODAL", "tailDelay", "10000", "tailProbability", "0.05")));
+      Assert.assertEquals(bimodal[(int) (SAMPLES * 0.94)], expected);
+      Assert.assertEquals(bimodal[(int) (SAMPLES * 0.96)], TimeUnit.MICROSECONDS.toNanos(10000));
+   }
+
+   @Test
+   public void testReproducibility() throws Exception {
+      Assert.assertEquals(sample(newSender(DummySender.class, senderProps("delay", "100", "distribution", "EXPONENTIAL"))), sample(newSender(DummySender.class, senderProps("delay", "100", "distribution", "EXPONENTIAL"))));
+   }
+
+   @Test
+   public void testDelayAndSpin() throws Exception {
+      final DummySender sender = newSender(DummySender.class, senderProps("delay", "500", "spin", "300", "timeUnit", "MICROSECONDS", "allocation", "1024"));
+      final Message message = new Message("hello");
+
+      for (int i = 0; i < 10; i++) {
+         final long start = System.nanoTime();
+         Assert.assertEquals(sender.send(message, null), "hello");
+         Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MICROSECONDS.toNanos(800));
+      }
+   }
+
+   @Test
+   public void testFailureRate() throws Exception {
+      final DummySender sender = newSender(DummySender.class, senderProps("failureRate", "0.1"));
+      final Message message = new Message("hello");
+
+      int failures = 0;
+      for (int i = 0; i < 10000; i++) {
+         try {
+            sender.send(message, null);
+         } catch (PerfCakeException e) {
+            failures++;
+         }
+      }
+
+      Assert.assertEquals(failures, 1000, 100);
+   }
+
+   @Test
+   public void testIterationSeeding() throws Exception {
+      final DummySender first = newSender(DummySender.class, senderProps("failureRate", "0.5"));
+      final DummySender second = newSender(DummySender.class, senderProps("failureRate", "0.5"));
+      final Message message = new Message("hello");
+
+      // the outcome of an iteration does not depend on the sender and the order of the iterations
+      final boolean[] forward = new boolean[100], backward = new boolean[100];
+      for (int i = 0; i < 100; i++) {
+         forward[i] = fails(i % 2 == 0 ? first : second, message, i);
+      }
+      for (int i = 99; i >= 0; i--) {
+         backward[i] = fails(i % 2 == 0 ? second : first, message, i);
+      }
+      Assert.assertEquals(backward, forward);
+
+      int failures = 0;
+      for (boolean failed : forward) {
+         failures += failed ? 1 : 0;
+      }
+      Assert.assertTrue(failures > 20 && failures < 80, "The iterations should get different random values, but " + failures + " failed.");
+   }
+
+   private static boolean fails(final DummySender sender, final Message message, final long iteration) throws Exception {
+      final MeasurementUnit mu = mock(MeasurementUnit.class);
+      when(mu.getIteration()).thenReturn(iteration);
+      try {
+         sender.send(message, mu);
+         return false;
+      } catch (PerfCakeException e) {
+         return true;
+      }
+   }
+}
@@ -0,0 +1,79 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.message.Message;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+/**
+ * Verifies the in-process mode of {@link GroovySender}.
+ */
+public class GroovySenderTest {
+
+   private File script;
+
+   @BeforeClass
+   public void createScript() throws Exception {
+      script = File.createTempFile("perfcake-", ".groovy");
+      final String source = "if (!binding.variables.containsKey('counter')) { counter = 0 }\n"
+            + "counter++\n"
+            + "\"$payload ${properties?.suffix ?: ''} #$counter\"\n";
+      Files.write(script.toPath(), source.getBytes(StandardCharsets.UTF_8));
+   }
+
+   @AfterClass
+   public void deleteScript() {
+      script.delete();
+   }
+
+   @Test
+   public void testInProcess() throws Exception {
+      final GroovySender first = newSender(GroovySender.class, props("target", script.getPath(), "inProcess", "true"));
+      final GroovySender second = newSender(GroovySender.class, props("target", script.getPath(), "inProcess", "true"));
+      final Message message = new Message("hello");
+
+      first.preSend(message, null);
+      Assert.assertEquals(first.send(message, null), "hello  #1");
+      first.postSend(message);
+
+      first.preSend(message, Collections.singletonMap("suffix", "again"));
+      Assert.assertEquals(first.send(message, Collections.singletonMap("suffix", "again"), null), "hello again #2");
+      first.postSend(message);
+
+      // each sender has its own script instance
+      second.preSend(message, null);
+      Assert.assertEquals(second.send(message, null), "hello  #1");
+      second.postSend(message);
+
+      first.close();
+      second.close();
+   }
+}
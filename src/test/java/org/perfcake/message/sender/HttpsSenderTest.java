@@ -0,0 +1,160 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.RunInfo;
+import org.perfcake.common.Period;
+import org.perfcake.common.PeriodType;
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.reporting.ReportManager;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.Properties;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+public class HttpsSenderTest {
+
+   private static final String PAYLOAD = "Hello secured HTTP world!";
+
+   private static final String KEYSTORE = "test.jks";
+
+   private static final String KEYSTORE_PASSWORD = "perfcake";
+
+   private static final int COUNT = 10;
+
+   private HttpsServer server;
+
+   private ReportManager reportManager;
+
+   @BeforeClass
+   public void setUp() throws Exception {
+      System.setProperty(HttpsSender.KEYSTORES_DIR_PROPERTY, getClass().getResource("/keystores").getPath());
+
+      final KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      try (InputStream is = getClass().getResourceAsStream("/keystores/" + KEYSTORE)) {
+         keyStore.load(is, KEYSTORE_PASSWORD.toCharArray());
+      }
+      final KeyManagerFactory keyManager = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      keyManager.init(keyStore, KEYSTORE_PASSWORD.toCharArray());
+      final SSLContext ctx = SSLContext.getInstance("TLS");
+      ctx.init(keyManager.getKeyManagers(), null, null);
+
+      server = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+      server.setHttpsConfigurator(new HttpsConfigurator(ctx));
+      server.createContext("/", new HttpHandler() {
+         @Override
+         public void handle(final HttpExchange exchange) throws IOException {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+               final byte[] buf = new byte[1024];
+               int n;
+               while ((n = in.read(buf)) != -1) {
+                  body.write(buf, 0, n);
+               }
+            }
+            if (exchange.getRequestURI().getPath().startsWith("/close")) {
+               exchange.getResponseHeaders().add("Connection", "close");
+            }
+            exchange.sendResponseHeaders(200, body.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+               body.writeTo(out);
+            }
+         }
+      });
+      server.start();
+
+      reportManager = new ReportManager();
+      reportManager.setRunInfo(new RunInfo(new Period(PeriodType.ITERATION, 1000)));
+      reportManager.start();
+   }
+
+   @AfterClass
+   public void tearDown() {
+      reportManager.stop();
+      server.stop(0);
+   }
+
+   private MeasurementUnit sendMessages(final String path) throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("target", "https://localhost:" + server.getAddress().getPort() + path);
+      props.setProperty("trustStore", KEYSTORE);
+      props.setProperty("trustStorePassword", KEYSTORE_PASSWORD);
+
+      final HttpsSender sender = newSender(HttpsSender.class, props);
+      MeasurementUnit mu = null;
+      try {
+         final Message message = new Message(PAYLOAD);
+         for (int i = 0; i < COUNT; i++) {
+            mu = reportManager.newMeasurementUnit();
+            Assert.assertEquals(send(sender, message, mu), PAYLOAD);
+         }
+      } finally {
+         sender.close();
+      }
+
+      return mu;
+   }
+
+   @Test
+   public void testSessionResumption() throws Exception {
+      final MeasurementUnit mu = sendMessages("/close");
+
+      Assert.assertEquals(mu.getResult(SharedSslContext.HANDSHAKES), (long) COUNT);
+      Assert.assertEquals(mu.getResult(SharedSslContext.RESUMED_HANDSHAKES), COUNT - 1L);
+      Assert.assertNotNull(mu.getResult(SharedSslContext.HANDSHAKE_TIME));
+   }
+
+   @Test
+   public void testKeepAlive() throws Exception {
+      final MeasurementUnit mu = sendMessages("/");
+
+      Assert.assertEquals(mu.getResult(SharedSslContext.HANDSHAKES), 1L);
+      Assert.assertNull(mu.getResult(SharedSslContext.HANDSHAKE_TIME));
+   }
+
+   @Test
+   public void testDedicatedContext() throws Exception {
+      final int defaultCacheSize = SSLContext.getDefault().getClientSessionContext().getSessionCacheSize();
+      final SharedSslContext context = SharedSslContext.acquire(null, null, null, null, defaultCacheSize + 1);
+      try {
+         Assert.assertEquals(SSLContext.getDefault().getClientSessionContext().getSessionCacheSize(), defaultCacheSize);
+      } finally {
+         context.release();
+      }
+   }
+}
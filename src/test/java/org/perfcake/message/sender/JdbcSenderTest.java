@@ -20,7 +20,16 @@
 package org.perfcake.message.sender;
 
 import static org.mockito.Mockito.*;
-
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.RunInfo;
+import org.perfcake.common.Period;
+import org.perfcake.common.PeriodType;
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.reporting.Quantity;
+import org.perfcake.reporting.ReportManager;
 import org.perfcake.util.ObjectFactory;
 
 import org.apache.log4j.Appender;
@@ -33,22 +42,52 @@ import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author Lenka Vašková <vaskova.lenka@gmail.com>
  */
 public class JdbcSenderTest {
 
+   private static final Logger log = Logger.getLogger(JdbcSenderTest.class);
+
+   private static final String H2_URL = "jdbc:h2:mem:perfcake;DB_CLOSE_DELAY=-1";
+
+   private static final int BENCHMARK_ROWS = 5000;
+
+   private ReportManager reportManager;
+
+   @BeforeClass
+   public void setUp() {
+      reportManager = new ReportManager();
+      reportManager.setRunInfo(new RunInfo(new Period(PeriodType.ITERATION, 1000)));
+      reportManager.start();
+   }
+
+   @AfterClass
+   public void tearDown() {
+      reportManager.stop();
+   }
+
    private static class DebugLogAppender implements Appender {
       private String lastMessage = null;
 
@@ -271,4 +310,318 @@ public class JdbcSenderTest {
       verify(c).close();
       verifyNoMoreInteractions(c);
    }
+
+   private static Properties h2Props(final Properties props) {
+      props.setProperty("target", H2_URL);
+      props.setProperty("driverClass", "org.h2.Driver");
+
+      return props;
+   }
+
+   private void recreateTable(final String table) throws Exception {
+      Class.forName("org.h2.Driver");
+      try (Connection c = DriverManager.getConnection(H2_URL); Statement s = c.createStatement()) {
+         s.execute("DROP TABLE IF EXISTS " + table);
+         s.execute("CREATE TABLE " + table + " (ID INT PRIMARY KEY, NAME VARCHAR(255))");
+      }
+   }
+
+   private int countRows(final String table) throws Exception {
+      try (Connection c = DriverManager.getConnection(H2_URL); Statement s = c.createStatement(); ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM " + table)) {
+         rs.next();
+         return rs.getInt(1);
+      }
+   }
+
+   @Test
+   public void testPrepared() throws Exception {
+      recreateTable("PREPARED_USERS");
+
+      final Properties props = new Properties();
+      props.setProperty("prepared", "true");
+      props.setProperty("parameters", "id, name");
+      props.setProperty("statementCacheSize", "2");
+      final JdbcSender sender = newSender(JdbcSender.class, h2Props(props));
+
+      final Field cacheField = JdbcSender.class.getDeclaredField("statementCache");
+      cacheField.setAccessible(true);
+
+      try {
+         final Message message = new Message("INSERT INTO PREPARED_USERS VALUES (?, ?)");
+         message.setHeader("name", "Frank Zappa");
+         for (int i = 1; i <= 10; i++) {
+            message.setProperty("id", String.valueOf(i));
+            Assert.assertEquals(send(sender, message), 1);
+         }
+         Assert.assertEquals(((Map<?, ?>) cacheField.get(sender)).size(), 1);
+
+         message.setPayload("UPDATE PREPARED_USERS SET NAME = ? WHERE ID < ?");
+         sender.setParameters("name,id");
+         message.setProperty("id", "4");
+         Assert.assertEquals(send(sender, message), 3);
+
+         message.setPayload("DELETE FROM PREPARED_USERS WHERE ID = ?");
+         sender.setParameters("id");
+         Assert.assertEquals(send(sender, message), 1);
+
+         // least recently used statement is evicted
+         final Map<?, ?> cache = (Map<?, ?>) cacheField.get(sender);
+         Assert.assertEquals(cache.size(), 2);
+         Assert.assertFalse(cache.containsKey("INSERT INTO PREPARED_USERS VALUES (?, ?)"));
+
+         message.setPayload("DELETE FROM PREPARED_USERS WHERE NAME = ?");
+         sender.setParameters("unknown");
+         try {
+            send(sender, message);
+            Assert.fail("Missing parameter must not be bound.");
+         } catch (PerfCakeException e) {
+            // expected
+         }
+      } finally {
+         sender.close();
+      }
+
+      Assert.assertEquals(countRows("PREPARED_USERS"), 9);
+   }
+
+   @Test
+   public void testPreparedBenchmark() throws Exception {
+      recreateTable("PLAIN_BENCH");
+      recreateTable("PREPARED_BENCH");
+
+      JdbcSender sender = newSender(JdbcSender.class, h2Props(new Properties()));
+      final Message message = new Message();
+      long start = System.nanoTime();
+      try {
+         for (int i = 0; i < BENCHMARK_ROWS; i++) {
+            message.setPayload("INSERT INTO PLAIN_BENCH VALUES (" + i + ", 'name" + i + "')");
+            send(sender, message);
+         }
+      } finally {
+         sender.close();
+      }
+      final long plainTime = System.nanoTime() - start;
+
+      final Properties props = new Properties();
+      props.setProperty("prepared", "true");
+      props.setProperty("parameters", "id,name");
+      sender = newSender(JdbcSender.class, h2Props(props));
+      message.setPayload("INSERT INTO PREPARED_BENCH VALUES (?, ?)");
+      start = System.nanoTime();
+      try {
+         for (int i = 0; i < BENCHMARK_ROWS; i++) {
+            message.setProperty("id", String.valueOf(i));
+            message.setProperty("name", "name" + i);
+            send(sender, message);
+         }
+      } finally {
+         sender.close();
+      }
+      final long preparedTime = System.nanoTime() - start;
+
+      log.info(String.format("Inserting %d rows took %.1f ms with plain statements and %.1f ms with prepared statements.", BENCHMARK_ROWS, plainTime / 1_000_000d, preparedTime / 1_000_000d));
+
+      Assert.assertEquals(countRows("PLAIN_BENCH"), BENCHMARK_ROWS);
+      Assert.assertEquals(countRows("PREPARED_BENCH"), BENCHMARK_ROWS);
+   }
+
+   @Test
+   public void testBatch() throws Exception {
+      recreateTable("BATCH_USERS");
+
+      Properties props = new Properties();
+      props.setProperty("batchSize", "10");
+      JdbcSender sender = newSender(JdbcSender.class, h2Props(props));
+      final Message message = new Message();
+      MeasurementUnit mu = null;
+      try {
+         for (int i = 1; i <= 25; i++) {
+            message.setPayload("INSERT INTO BATCH_USERS VALUES (" + i + ", 'plain')");
+            mu = reportManager.newMeasurementUnit();
+            final Serializable response = send(sender, message, mu);
+            Assert.assertEquals(response, i % 10 == 0 ? 10 : null);
+            Assert.assertEquals(countRows("BATCH_USERS"), i - i % 10);
+         }
+      } finally {
+         sender.close(); // executes the remaining batch
+      }
+      Assert.assertEquals(countRows("BATCH_USERS"), 25);
+      Assert.assertEquals(mu.getResult(JdbcSender.ROWS), 20L);
+      Assert.assertTrue(mu.getResult(JdbcSender.ROW_RATE) instanceof Quantity);
+
+      props = new Properties();
+      props.setProperty("batchSize", "10");
+      props.setProperty("prepared", "true");
+      props.setProperty("parameters", "id");
+      sender = newSender(JdbcSender.class, h2Props(props));
+      message.setPayload("INSERT INTO BATCH_USERS VALUES (?, 'prepared')");
+      try {
+         for (int i = 26; i <= 50; i++) {
+            message.setProperty("id", String.valueOf(i));
+            send(sender, message);
+         }
+      } finally {
+         sender.close();
+      }
+      Assert.assertEquals(countRows("BATCH_USERS"), 50);
+   }
+
+   @Test
+   public void testStreaming() throws Exception {
+      recreateTable("STREAMED_USERS");
+      try (Connection c = DriverManager.getConnection(H2_URL); Statement s = c.createStatement()) {
+         for (int i = 0; i < 100; i++) {
+            s.addBatch("INSERT INTO STREAMED_USERS VALUES (" + i + ", 'name" + i + "')");
+         }
+         s.executeBatch();
+      }
+
+      final Properties props = new Properties();
+      props.setProperty("streaming", "true");
+      props.setProperty("fetchSize", "10");
+      final JdbcSender sender = newSender(JdbcSender.class, h2Props(props));
+      final MeasurementUnit mu = reportManager.newMeasurementUnit();
+      try {
+         Assert.assertEquals(send(sender, new Message("SELECT * FROM STREAMED_USERS"), mu), 100);
+      } finally {
+         sender.close();
+      }
+
+      final double firstRowTime = (Double) mu.getResult(JdbcSender.FIRST_ROW_TIME);
+      final double drainTime = (Double) mu.getResult(JdbcSender.DRAIN_TIME);
+      Assert.assertTrue(firstRowTime > 0 && firstRowTime <= drainTime);
+      Assert.assertEquals(mu.getResult(JdbcSender.ROWS), 100L);
+   }
+
+   private JdbcConnectionPool getPool(final JdbcSender sender) throws Exception {
+      final Field poolField = JdbcSender.class.getDeclaredField("pool");
+      poolField.setAccessible(true);
+
+      return (JdbcConnectionPool) poolField.get(sender);
+   }
+
+   @Test
+   public void testPooled() throws Exception {
+      recreateTable("POOLED_USERS");
+
+      final int senders = 4;
+      final int messages = 50;
+      final Properties props = new Properties();
+      props.setProperty("pooled", "true");
+      props.setProperty("poolMinSize", "1");
+      props.setProperty("poolMaxSize", "2");
+      props.setProperty("poolIdleTimeout", "0");
+      props.setProperty("prepared", "true");
+      props.setProperty("parameters", "id");
+
+      final List<JdbcSender> senderList = new ArrayList<>();
+      for (int i = 0; i < senders; i++) {
+         senderList.add(newSender(JdbcSender.class, h2Props(props)));
+      }
+      final JdbcConnectionPool pool = getPool(senderList.get(0));
+      Assert.assertSame(getPool(senderList.get(senders - 1)), pool);
+      Assert.assertEquals(pool.getSize(), 1);
+
+      final ExecutorService executor = Executors.newFixedThreadPool(senders);
+      try {
+         final List<Future<Integer>> results = new ArrayList<>();
+         for (int i = 0; i < senders; i++) {
+            final JdbcSender sender = senderList.get(i);
+            final int offset = i * messages;
+            results.add(executor.submit(new Callable<Integer>() {
+               @Override
+               public Integer call() throws Exception {
+                  int maxPoolSize = 0;
+                  final Message message = new Message("INSERT INTO POOLED_USERS VALUES (?, 'pooled')");
+                  for (int j = 0; j < messages; j++) {
+                     message.setProperty("id", String.valueOf(offset + j));
+                     final MeasurementUnit mu = reportManager.newMeasurementUnit();
+                     send(sender, message, mu);
+                     Assert.assertNotNull(mu.getResult(JdbcSender.POOL_WAIT_TIME));
+                     maxPoolSize = Math.max(maxPoolSize, pool.getSize());
+                  }
+                  return maxPoolSize;
+               }
+            }));
+         }
+         for (Future<Integer> result : results) {
+            Assert.assertTrue(result.get() <= 2);
+         }
+      } finally {
+         executor.shutdown();
+         for (JdbcSender sender : senderList.subList(1, senders)) {
+            sender.close();
+         }
+      }
+
+      // idle connections above the minimal size are closed
+      Assert.assertEquals(pool.getSize(), 1);
+      Assert.assertEquals(pool.getIdle(), 1);
+      senderList.get(0).close();
+      Assert.assertEquals(pool.getSize(), 0);
+
+      Assert.assertEquals(countRows("POOLED_USERS"), senders * messages);
+   }
+
+   @Test
+   public void testPoolExhausted() throws Exception {
+      recreateTable("EXHAUSTED_USERS");
+
+      final Properties props = new Properties();
+      props.setProperty("pooled", "true");
+      props.setProperty("poolMaxSize", "1");
+      props.setProperty("poolBorrowTimeout", "100");
+      props.setProperty("batchSize", "10");
+      final JdbcSender holder = newSender(JdbcSender.class, h2Props(props));
+      final JdbcSender waiter = newSender(JdbcSender.class, h2Props(props));
+      try {
+         // the pending batch keeps the only connection borrowed
+         send(holder, new Message("INSERT INTO EXHAUSTED_USERS VALUES (1, 'holder')"));
+         try {
+            waiter.preSend(new Message("INSERT INTO EXHAUSTED_USERS VALUES (2, 'waiter')"), null);
+            Assert.fail("The pool should be exhausted.");
+         } catch (PerfCakeException e) {
+            // expected
+         }
+      } finally {
+         holder.close();
+         waiter.close();
+      }
+
+      Assert.assertEquals(countRows("EXHAUSTED_USERS"), 1);
+   }
+
+   @Test
+   public void testPostSendAfterFailedPreSend() throws Exception {
+      recreateTable("FAILED_USERS");
+
+      final Properties props = new Properties();
+      props.setProperty("pooled", "true");
+      props.setProperty("poolMaxSize", "1");
+      props.setProperty("poolBorrowTimeout", "100");
+      final JdbcSender holder = newSender(JdbcSender.class, h2Props(props));
+      final JdbcSender waiter = newSender(JdbcSender.class, h2Props(props));
+      try {
+         final Message holderMessage = new Message("INSERT INTO FAILED_USERS VALUES (1, 'holder')");
+         final Message waiterMessage = new Message("INSERT INTO FAILED_USERS VALUES (2, 'waiter')");
+         holder.preSend(holderMessage, null);
+         try {
+            waiter.preSend(waiterMessage, null);
+            Assert.fail("The pool should be exhausted.");
+         } catch (PerfCakeException e) {
+            // expected
+         }
+         // the sender task calls postSend even when preSend failed
+         waiter.postSend(waiterMessage);
+
+         holder.send(holderMessage, null);
+         holder.postSend(holderMessage);
+         send(waiter, waiterMessage);
+      } finally {
+         holder.close();
+         waiter.close();
+      }
+
+      Assert.assertEquals(countRows("FAILED_USERS"), 2);
+   }
 }
@@ -0,0 +1,119 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.mockito.Mockito.*;
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.RunInfo;
+import org.perfcake.common.Period;
+import org.perfcake.common.PeriodType;
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.reporting.ReportManager;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.Properties;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+/**
+ * Verifies the transaction handling of {@link JmsSender} without a JMS broker.
+ */
+public class JmsSenderCommitTest {
+
+   private ReportManager reportManager;
+
+   @BeforeClass
+   public void setUp() {
+      reportManager = new ReportManager();
+      reportManager.setRunInfo(new RunInfo(new Period(PeriodType.ITERATION, 1000)));
+      reportManager.start();
+   }
+
+   @AfterClass
+   public void tearDown() {
+      reportManager.stop();
+   }
+
+   private JmsSender mockedSender(final Properties props) throws Exception {
+      props.setProperty("transacted", "true");
+      final JmsSender sender = summonSender(JmsSender.class, props);
+
+      sender.session = mock(Session.class);
+      sender.sender = mock(MessageProducer.class);
+      when(sender.session.createTextMessage(anyString())).thenReturn(mock(TextMessage.class));
+
+      return sender;
+   }
+
+   private MeasurementUnit sendHello(final JmsSender sender) throws Exception {
+      final MeasurementUnit mu = reportManager.newMeasurementUnit();
+      send(sender, new org.perfcake.message.Message("Hello JMS"), mu);
+
+      return mu;
+   }
+
+   @Test
+   public void testCommitBatchSize() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("commitBatchSize", "3");
+      final JmsSender sender = mockedSender(props);
+
+      for (int i = 1; i <= 7; i++) {
+         final MeasurementUnit mu = sendHello(sender);
+         if (i % 3 == 0) {
+            Assert.assertNotNull(mu.getResult(JmsSender.COMMIT_TIME));
+         } else {
+            Assert.assertNull(mu.getResult(JmsSender.COMMIT_TIME));
+         }
+      }
+      verify(sender.session, times(2)).commit();
+      verify(sender.sender, times(7)).send(any(TextMessage.class));
+
+      sender.close(); // commits the rest
+      verify(sender.session, times(3)).commit();
+   }
+
+   @Test
+   public void testCommitInterval() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("commitInterval", "50");
+      final JmsSender sender = mockedSender(props);
+
+      Assert.assertNull(sendHello(sender).getResult(JmsSender.COMMIT_TIME));
+      Assert.assertNull(sendHello(sender).getResult(JmsSender.COMMIT_TIME));
+      Thread.sleep(60);
+      Assert.assertNotNull(sendHello(sender).getResult(JmsSender.COMMIT_TIME));
+      verify(sender.session, times(1)).commit();
+   }
+
+   @Test(expectedExceptions = PerfCakeException.class)
+   public void testAsyncRequiresJms2() throws Exception {
+      final JmsSender sender = mockedSender(new Properties());
+      sender.setAsync(true);
+      sender.initAsyncSend();
+   }
+}
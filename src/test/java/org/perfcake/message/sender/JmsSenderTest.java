@@ -128,7 +128,9 @@ public class JmsSenderTest extends Arquillian {
 
          response = JmsHelper.readMessage(factory, 500, queue);
          Assert.assertTrue(response instanceof BytesMessage);
-         Assert.assertEquals(((BytesMessage) response).readUTF(), payload1);
+         final byte[] body = new byte[(int) ((BytesMessage) response).getBodyLength()];
+         ((BytesMessage) response).readBytes(body);
+         Assert.assertEquals(new String(body, "UTF-8"), payload1);
 
          // make sure the destination is empty
          Assert.assertNull(JmsHelper.readMessage(factory, 500, queue));
@@ -460,4 +462,72 @@ public class JmsSenderTest extends Arquillian {
       }
    }
 
+   @Test
+   public void testSharedConnectionAndMessageReuse() throws Exception {
+      String payload = "Hello reused World!";
+
+      Properties props = new Properties();
+      props.setProperty("messagetType", "STRING");
+      props.setProperty("target", "queue/test");
+      props.setProperty("sharedConnection", "true");
+      props.setProperty("reuseMessage", "true");
+
+      JmsSender sender1 = (JmsSender) ObjectFactory.summonInstance(JmsSender.class.getName(), props);
+      JmsSender sender2 = (JmsSender) ObjectFactory.summonInstance(JmsSender.class.getName(), props);
+
+      try {
+         sender1.init();
+         sender2.init();
+
+         // one connection, a session per sender
+         Assert.assertSame(sender1.connection, sender2.connection);
+         Assert.assertNotSame(sender1.session, sender2.session);
+
+         // make sure the destination is empty
+         Assert.assertNull(JmsHelper.readMessage(factory, 500, queue));
+
+         org.perfcake.message.Message message = new org.perfcake.message.Message();
+         message.setPayload(payload);
+         Map<String, String> properties = new HashMap<>();
+
+         Message first = null;
+         for (int i = 0; i < 3; i++) {
+            properties.put("counter", String.valueOf(i));
+            sender1.preSend(message, properties);
+            if (first == null) {
+               first = sender1.mess;
+            } else {
+               Assert.assertSame(sender1.mess, first);
+            }
+            sender1.send(message, null);
+            sender1.postSend(message);
+         }
+
+         for (int i = 0; i < 3; i++) {
+            Message response = JmsHelper.readMessage(factory, 500, queue);
+            Assert.assertTrue(response instanceof TextMessage);
+            Assert.assertEquals(((TextMessage) response).getText(), payload);
+            Assert.assertEquals(response.getStringProperty("counter"), String.valueOf(i));
+         }
+
+         // a different message is not reused
+         sender1.preSend(new org.perfcake.message.Message(payload), null);
+         Assert.assertNotSame(sender1.mess, first);
+         sender1.send(message, null);
+         sender1.postSend(message);
+         Assert.assertNotNull(JmsHelper.readMessage(factory, 500, queue));
+
+         // the shared connection outlives the first sender
+         sender1.close();
+         sender2.preSend(message, null);
+         sender2.send(message, null);
+         sender2.postSend(message);
+         Assert.assertNotNull(JmsHelper.readMessage(factory, 500, queue));
+
+         // make sure the destination is empty
+         Assert.assertNull(JmsHelper.readMessage(factory, 500, queue));
+      } finally {
+         sender2.close();
+      }
+   }
 }
@@ -0,0 +1,277 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.mockito.Mockito.*;
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.message.Message;
+import org.perfcake.util.ObjectFactory;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.naming.CommunicationException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+/**
+ * Verifies the search templating, paged results, count-only mode and context pooling of {@link LdapSender} with mocked LDAP contexts.
+ */
+public class LdapSenderTest {
+
+   /**
+    * LDAP sender with mocked contexts.
+    */
+   private static class MockLdapSender extends LdapSender {
+
+      private final List<LdapContext> contexts;
+      private final AtomicInteger created = new AtomicInteger();
+
+      private MockLdapSender(final List<LdapContext> contexts) {
+         this.contexts = contexts;
+      }
+
+      @Override
+      LdapContext createContext() {
+         return contexts.get(created.getAndIncrement());
+      }
+   }
+
+   private static MockLdapSender mockedSender(final Properties props, final LdapContext... contexts) throws Exception {
+      final MockLdapSender sender = new MockLdapSender(Arrays.asList(contexts));
+      ObjectFactory.setPropertiesOnObject(sender, props);
+      sender.init();
+
+      return sender;
+   }
+
+   private static Properties senderProps(final String... keyValues) {
+      final Properties props = new Properties();
+      props.setProperty("target", "ldap://localhost:10389");
+      props.setProperty("searchBase", "ou=#{ou:people},dc=perfcake,dc=org");
+      props.setProperty("filter", "(uid=#{payload})");
+      for (int i = 0; i < keyValues.length; i += 2) {
+         props.setProperty(keyValues[i], keyValues[i + 1]);
+      }
+
+      return props;
+   }
+
+   private static NamingEnumeration<SearchResult> results(final int count) {
+      final List<SearchResult> list = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+         list.add(new SearchResult("uid=user" + i, null, new BasicAttributes()));
+      }
+      final Iterator<SearchResult> iterator = list.iterator();
+
+      return new NamingEnumeration<SearchResult>() {
+         @Override
+         public SearchResult next() {
+            return iterator.next();
+         }
+
+         @Override
+         public boolean hasMore() {
+            return iterator.hasNext();
+         }
+
+         @Override
+         public void close() {
+         }
+
+         @Override
+         public boolean hasMoreElements() {
+            return hasMore();
+         }
+
+         @Override
+         public SearchResult nextElement() {
+            return next();
+         }
+      };
+   }
+
+   @Test
+   public void testTemplatedSearch() throws Exception {
+      final LdapContext ctx = mock(LdapContext.class);
+      when(ctx.search(anyString(), anyString(), any(SearchControls.class))).thenReturn(results(2), results(1));
+      final LdapSender sender = mockedSender(senderProps(), ctx);
+
+      final Serializable first = send(sender, new Message("user*1"));
+      verify(ctx).search(eq("ou=people,dc=perfcake,dc=org"), eq("(uid=user\\2a1)"), any(SearchControls.class));
+      Assert.assertEquals(((List<?>) first).size(), 2);
+
+      final Message message = new Message("user2");
+      message.setProperty("ou", "admins");
+      send(sender, message);
+      verify(ctx).search(eq("ou=admins,dc=perfcake,dc=org"), eq("(uid=user2)"), any(SearchControls.class));
+
+      sender.close();
+      verify(ctx).close();
+   }
+
+   @Test
+   public void testCountOnly() throws Exception {
+      final LdapContext ctx = mock(LdapContext.class);
+      when(ctx.search(anyString(), anyString(), any(SearchControls.class))).thenReturn(results(5));
+      final LdapSender sender = mockedSender(senderProps("countOnly", "true"), ctx);
+
+      Assert.assertEquals(send(sender, new Message("user")), 5L);
+      Assert.assertEquals(sender.getPageSize(), 0);
+
+      sender.close();
+   }
+
+   @Test
+   public void testPagedResults() throws Exception {
+      final LdapContext ctx = mock(LdapContext.class);
+      when(ctx.search(anyString(), anyString(), any(SearchControls.class))).thenReturn(results(3), results(3), results(1));
+
+      // BER encoded SEQUENCE { size INTEGER, cookie OCTET STRING }
+      final Control more = new PagedResultsResponseControl(PagedResultsResponseControl.OID, false, new byte[] { 0x30, 6, 2, 1, 0, 4, 1, 1 });
+      final Control last = new PagedResultsResponseControl(PagedResultsResponseControl.OID, false, new byte[] { 0x30, 5, 2, 1, 0, 4, 0 });
+      when(ctx.getResponseControls()).thenReturn(new Control[] { more }, new Control[] { more }, new Control[] { last });
+
+      final LdapSender sender = mockedSender(senderProps("pageSize", "3", "countOnly", "true"), ctx);
+
+      Assert.assertEquals(send(sender, new Message("user")), 7L);
+      verify(ctx, times(3)).search(anyString(), anyString(), any(SearchControls.class));
+      verify(ctx, times(4)).setRequestControls(any(Control[].class)); // three pages and the final reset
+      verify(ctx).setRequestControls(null);
+
+      sender.close();
+   }
+
+   @Test
+   public void testSharedPool() throws Exception {
+      final LdapContext ctx = mock(LdapContext.class);
+      when(ctx.search(anyString(), anyString(), any(SearchControls.class))).thenReturn(results(1));
+      final Properties props = senderProps("poolSize", "1", "target", "ldap://pool-test:10389");
+      final MockLdapSender first = mockedSender(props, ctx);
+      final MockLdapSender second = mockedSender(props, ctx);
+
+      first.preSend(new Message("a"), null);
+
+      final CountDownLatch borrowed = new CountDownLatch(1);
+      final Thread thread = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               second.preSend(new Message("b"), null);
+               borrowed.countDown();
+               second.postSend(null);
+            } catch (Exception e) {
+               throw new RuntimeException(e);
+            }
+         }
+      });
+      thread.start();
+
+      // the only context is taken by the first sender
+      Assert.assertFalse(borrowed.await(200, TimeUnit.MILLISECONDS));
+
+      first.postSend(null);
+      Assert.assertTrue(borrowed.await(1, TimeUnit.SECONDS));
+      thread.join();
+
+      Assert.assertEquals(first.created.get() + second.created.get(), 1);
+
+      first.close();
+      verify(ctx, never()).close();
+      second.close();
+      verify(ctx).close();
+   }
+
+   @Test
+   public void testBrokenContextIsReplaced() throws Exception {
+      final LdapContext broken = mock(LdapContext.class);
+      when(broken.search(anyString(), anyString(), any(SearchControls.class))).thenThrow(new CommunicationException("connection lost"));
+      final LdapContext fresh = mock(LdapContext.class);
+      when(fresh.search(anyString(), anyString(), any(SearchControls.class))).thenReturn(results(1));
+      final LdapSender sender = mockedSender(senderProps("poolSize", "2", "target", "ldap://broken-test:10389"), broken, fresh);
+
+      try {
+         send(sender, new Message("a"));
+         Assert.fail("The search should have failed.");
+      } catch (NamingException e) {
+         sender.postSend(null);
+      }
+      verify(broken).close();
+
+      Assert.assertEquals(((List<?>) send(sender, new Message("b"))).size(), 1);
+
+      sender.close();
+   }
+
+   @Test
+   public void testFailedSearchKeepsContext() throws Exception {
+      final LdapContext ctx = mock(LdapContext.class);
+      when(ctx.search(anyString(), anyString(), any(SearchControls.class))).thenThrow(new NameNotFoundException("no such entry")).thenReturn(results(1));
+      final MockLdapSender sender = mockedSender(senderProps("poolSize", "1", "target", "ldap://not-found-test:10389"), ctx);
+
+      try {
+         send(sender, new Message("a"));
+         Assert.fail("The search should have failed.");
+      } catch (NamingException e) {
+         sender.postSend(null);
+      }
+      verify(ctx, never()).close();
+
+      Assert.assertEquals(((List<?>) send(sender, new Message("b"))).size(), 1);
+      Assert.assertEquals(sender.created.get(), 1);
+
+      sender.close();
+   }
+
+   @Test
+   public void testPoolPerCredentials() throws Exception {
+      final LdapContext firstCtx = mock(LdapContext.class);
+      final LdapContext secondCtx = mock(LdapContext.class);
+      final MockLdapSender first = mockedSender(senderProps("poolSize", "1", "target", "ldap://credentials-test:10389", "ldapUsername", "admin", "ldapPassword", "secret"), firstCtx);
+      final MockLdapSender second = mockedSender(senderProps("poolSize", "1", "target", "ldap://credentials-test:10389", "ldapUsername", "admin", "ldapPassword", "other"), secondCtx);
+
+      first.preSend(new Message("a"), null);
+      second.preSend(new Message("b"), null); // would block with a shared pool of one context
+      Assert.assertEquals(first.created.get(), 1);
+      Assert.assertEquals(second.created.get(), 1);
+
+      first.postSend(null);
+      second.postSend(null);
+      first.close();
+      second.close();
+   }
+}
@@ -0,0 +1,125 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.message.Message;
+import org.perfcake.util.Blackhole;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Verifies the method resolution and invocation of {@link MethodInvocationSender}.
+ */
+public class MethodInvocationSenderTest {
+
+   /**
+    * The code being benchmarked.
+    */
+   public static class Codec {
+
+      private int calls = 0;
+
+      public static String upper(final String payload) {
+         return payload.toUpperCase();
+      }
+
+      public String wrap(final Object payload, final Map<String, String> properties) {
+         return properties.get("prefix") + payload + "#" + (++calls);
+      }
+
+      public Object message(final Message message) {
+         return message.getHeader("id");
+      }
+
+      public static String type(final Object payload) {
+         return payload.getClass().getSimpleName();
+      }
+
+      public static int length(final String payload) {
+         return payload.length();
+      }
+
+      public static void noop() {
+      }
+   }
+
+   private static Properties senderProps(final String method) {
+      return props("target", Codec.class.getName(), "method", method);
+   }
+
+   @Test
+   public void testStaticMethod() throws Exception {
+      final MethodInvocationSender sender = newSender(MethodInvocationSender.class, senderProps("upper"));
+      Assert.assertEquals(sender.send(new Message("hello"), null), "HELLO");
+      Assert.assertEquals(newSender(MethodInvocationSender.class, senderProps("length")).send(new Message("hello"), null), 5);
+      Assert.assertNull(newSender(MethodInvocationSender.class, senderProps("noop")).send(new Message("hello"), null));
+   }
+
+   @Test
+   public void testInstanceMethodWithProperties() throws Exception {
+      final MethodInvocationSender sender = newSender(MethodInvocationSender.class, senderProps("wrap"));
+      final Map<String, String> props = Collections.singletonMap("prefix", ">");
+      Assert.assertEquals(sender.send(new Message("a"), props, null), ">a#1");
+      Assert.assertEquals(sender.send(new Message("b"), props, null), ">b#2");
+
+      // each sender has its own instance
+      Assert.assertEquals(newSender(MethodInvocationSender.class, senderProps("wrap")).send(new Message("c"), props, null), ">c#1");
+   }
+
+   @Test
+   public void testMessageParameter() throws Exception {
+      final Message message = new Message("payload");
+      message.setHeader("id", "42");
+      Assert.assertEquals(newSender(MethodInvocationSender.class, senderProps("message")).send(message, null), "42");
+   }
+
+   @Test
+   public void testObjectParameter() throws Exception {
+      Assert.assertEquals(newSender(MethodInvocationSender.class, senderProps("type")).send(new Message("payload"), null), "String");
+   }
+
+   @Test
+   public void testReturnResult() throws Exception {
+      final MethodInvocationSender sender = newSender(MethodInvocationSender.class, senderProps("upper"));
+      sender.setReturnResult(false);
+      Assert.assertNull(sender.send(new Message("hello"), null));
+   }
+
+   @Test(expectedExceptions = PerfCakeException.class)
+   public void testMissingMethod() throws Exception {
+      newSender(MethodInvocationSender.class, senderProps("missing"));
+   }
+
+   @Test
+   public void testBlackhole() {
+      final Blackhole blackhole = new Blackhole();
+      for (int i = 0; i < 100000; i++) {
+         blackhole.consume(i);
+      }
+   }
+}
@@ -0,0 +1,196 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.message.FilePayload;
+import org.perfcake.message.Message;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PlainSocketSenderTest {
+
+   private static final String PAYLOAD = "Hello socket world!";
+
+   private static final int COUNT = 20;
+
+   private ServerSocket serverSocket;
+
+   private final AtomicInteger connections = new AtomicInteger(0);
+
+   @BeforeClass
+   public void setUp() throws IOException {
+      serverSocket = new ServerSocket(0);
+      final Thread acceptor = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               while (!serverSocket.isClosed()) {
+                  final Socket s = serverSocket.accept();
+                  connections.incrementAndGet();
+                  final Thread echo = new Thread(new Echo(s));
+                  echo.setDaemon(true);
+                  echo.start();
+               }
+            } catch (IOException e) {
+               // server socket closed
+            }
+         }
+      });
+      acceptor.setDaemon(true);
+      acceptor.start();
+   }
+
+   @AfterClass
+   public void tearDown() throws IOException {
+      serverSocket.close();
+   }
+
+   private static class Echo implements Runnable {
+      private final Socket socket;
+
+      private Echo(final Socket socket) {
+         this.socket = socket;
+      }
+
+      @Override
+      public void run() {
+         final byte[] buf = new byte[1024];
+         try (InputStream in = socket.getInputStream(); OutputStream out = socket.getOutputStream()) {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+               out.write(buf, 0, n);
+               out.flush();
+            }
+         } catch (IOException e) {
+            // connection closed
+         }
+      }
+   }
+
+   private int sendMessages(final Properties props, final String expected) throws Exception {
+      return sendMessages(props, PAYLOAD, expected);
+   }
+
+   private int sendMessages(final Properties props, final Serializable payload, final String expected) throws Exception {
+      props.setProperty("target", "localhost:" + serverSocket.getLocalPort());
+      final int before = connections.get();
+      final PlainSocketSender sender = newSender(PlainSocketSender.class, props);
+      try {
+         final Message message = new Message(payload);
+         for (int i = 0; i < COUNT; i++) {
+            Assert.assertEquals(send(sender, message), expected);
+         }
+      } finally {
+         sender.close();
+      }
+
+      return connections.get() - before;
+   }
+
+   @Test
+   public void testPersistentFraming() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("keepConnection", "true");
+      props.setProperty("timeout", "5000");
+
+      props.setProperty("framing", "line");
+      Assert.assertEquals(sendMessages(props, PAYLOAD), 1);
+
+      props.setProperty("framing", "delimiter");
+      props.setProperty("delimiter", "<EOM>");
+      Assert.assertEquals(sendMessages(props, PAYLOAD), 1);
+
+      props.setProperty("framing", "lengthPrefix");
+      Assert.assertEquals(sendMessages(props, PAYLOAD), 1);
+
+      props.setProperty("framing", "fixedLength");
+      props.setProperty("responseLength", String.valueOf(PAYLOAD.length()));
+      Assert.assertEquals(sendMessages(props, PAYLOAD), 1);
+   }
+
+   @Test
+   public void testFilePayload() throws Exception {
+      final StringBuilder sb = new StringBuilder();
+      while (sb.length() < 200 * 1024) {
+         sb.append("File payload ").append(sb.length()).append(' ');
+      }
+      final String content = sb.toString();
+
+      final File file = File.createTempFile("perfcake-payload", ".txt");
+      file.deleteOnExit();
+      Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+      final FilePayload payload = new FilePayload(file.toPath());
+
+      final Properties props = new Properties();
+      props.setProperty("keepConnection", "true");
+      props.setProperty("timeout", "5000");
+
+      props.setProperty("framing", "line");
+      Assert.assertEquals(sendMessages(props, payload, content), 1);
+
+      props.setProperty("framing", "lengthPrefix");
+      Assert.assertEquals(sendMessages(props, payload, content), 1);
+   }
+
+   @Test
+   public void testConnectionPerMessage() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("framing", "line");
+      props.setProperty("timeout", "5000");
+
+      Assert.assertEquals(sendMessages(props, PAYLOAD), COUNT);
+   }
+
+   @Test
+   public void testNotConnected() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("target", "localhost:" + serverSocket.getLocalPort());
+      props.setProperty("framing", "line");
+      final PlainSocketSender sender = newSender(PlainSocketSender.class, props);
+
+      sender.close(); // closing a sender that has never connected must not fail
+      try {
+         sender.send(new Message(PAYLOAD), null);
+         Assert.fail("Sending without a connection should fail.");
+      } catch (PerfCakeException e) {
+         Assert.assertTrue(e.getMessage().startsWith("Not connected"));
+      } finally {
+         sender.close();
+      }
+   }
+}
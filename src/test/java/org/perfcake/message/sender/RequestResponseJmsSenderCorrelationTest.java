@@ -0,0 +1,211 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.mockito.Mockito.*;
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.reporting.MeasurementUnit;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+/**
+ * Verifies the response dispatching of {@link RequestResponseJmsSender} with a shared response consumer without a JMS broker.
+ */
+public class RequestResponseJmsSenderCorrelationTest {
+
+   private static final int SENDERS = 8;
+   private static final int COUNT = 200;
+
+   private ExecutorService responder;
+
+   private RequestResponseJmsSender.ResponseDispatcher dispatcher;
+
+   @BeforeMethod
+   public void setUp() throws Exception {
+      responder = Executors.newFixedThreadPool(4);
+
+      final Connection connection = mock(Connection.class);
+      final Session session = mock(Session.class);
+      when(connection.createSession(anyBoolean(), anyInt())).thenReturn(session);
+      when(session.createConsumer(any(Destination.class))).thenReturn(mock(MessageConsumer.class));
+      dispatcher = new RequestResponseJmsSender.ResponseDispatcher("test", connection, mock(Destination.class));
+   }
+
+   @AfterMethod
+   public void tearDown() throws Exception {
+      responder.shutdownNow();
+   }
+
+   private static TextMessage newTextMessage(final String text, final String correlationId) throws Exception {
+      final TextMessage message = mock(TextMessage.class);
+      final AtomicReference<String> correlation = new AtomicReference<>(correlationId);
+      when(message.getText()).thenReturn(text);
+      doAnswer(new Answer<Void>() {
+         @Override
+         public Void answer(final InvocationOnMock invocation) {
+            correlation.set((String) invocation.getArguments()[0]);
+            return null;
+         }
+      }).when(message).setJMSCorrelationID(anyString());
+      when(message.getJMSCorrelationID()).thenAnswer(new Answer<String>() {
+         @Override
+         public String answer(final InvocationOnMock invocation) {
+            return correlation.get();
+         }
+      });
+
+      return message;
+   }
+
+   /**
+    * Creates a sender whose requests are answered by the responder threads after a random delay, or never answered when respond is false.
+    */
+   private RequestResponseJmsSender mockedSender(final boolean respond) throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("responseTarget", "responseQueue");
+      props.setProperty("sharedResponseConsumer", "true");
+      props.setProperty("receivingTimeout", "100");
+      props.setProperty("receiveAttempts", "20");
+      final RequestResponseJmsSender sender = summonSender(RequestResponseJmsSender.class, props);
+
+      sender.session = mock(Session.class);
+      sender.sender = mock(MessageProducer.class);
+      sender.dispatcher = dispatcher;
+      when(sender.session.createTextMessage(anyString())).thenAnswer(new Answer<TextMessage>() {
+         @Override
+         public TextMessage answer(final InvocationOnMock invocation) throws Exception {
+            return newTextMessage((String) invocation.getArguments()[0], null);
+         }
+      });
+
+      final Random random = new Random();
+      doAnswer(new Answer<Void>() {
+         @Override
+         public Void answer(final InvocationOnMock invocation) throws Exception {
+            final TextMessage request = (TextMessage) invocation.getArguments()[0];
+            final TextMessage response = newTextMessage("Re: " + request.getText(), request.getJMSCorrelationID());
+            final long delay = random.nextInt(5);
+            if (respond) {
+               responder.submit(new Callable<Void>() {
+                  @Override
+                  public Void call() throws Exception {
+                     Thread.sleep(delay);
+                     dispatcher.onMessage(response);
+                     return null;
+                  }
+               });
+            }
+            return null;
+         }
+      }).when(sender.sender).send(any(Message.class));
+
+      return sender;
+   }
+
+   @Test
+   public void testConcurrentCorrelation() throws Exception {
+      final ExecutorService clients = Executors.newFixedThreadPool(SENDERS);
+      final List<Future<Integer>> results = new ArrayList<>();
+
+      for (int i = 0; i < SENDERS; i++) {
+         final RequestResponseJmsSender sender = mockedSender(true);
+         final int senderId = i;
+         results.add(clients.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+               int matched = 0;
+               for (int j = 0; j < COUNT; j++) {
+                  final String payload = "Hello " + senderId + "/" + j;
+                  final org.perfcake.message.Message message = new org.perfcake.message.Message(payload);
+                  sender.preSend(message, null);
+                  final Serializable response = sender.send(message, null);
+                  sender.postSend(message);
+                  if (("Re: " + payload).equals(response)) {
+                     matched++;
+                  }
+               }
+               return matched;
+            }
+         }));
+      }
+
+      for (Future<Integer> result : results) {
+         Assert.assertEquals((int) result.get(30, TimeUnit.SECONDS), COUNT);
+      }
+      clients.shutdown();
+   }
+
+   @Test
+   public void testUnmatchedResponse() throws Exception {
+      final RequestResponseJmsSender sender = mockedSender(false);
+      sender.setReceivingTimeout(10).setReceiveAttempts(1);
+      final org.perfcake.message.Message message = new org.perfcake.message.Message("Hello");
+
+      final MeasurementUnit mu = mock(MeasurementUnit.class);
+
+      sender.preSend(message, null);
+      try {
+         sender.send(message, mu);
+         Assert.fail("The request must time out without a response.");
+      } catch (PerfCakeException e) {
+         // expected
+      }
+
+      final ArgumentCaptor<Message> request = ArgumentCaptor.forClass(Message.class);
+      verify(sender.sender).send(request.capture());
+
+      // the response arriving after the timeout does not belong to any pending request anymore
+      dispatcher.onMessage(newTextMessage("Re: Hello", request.getValue().getJMSCorrelationID()));
+      dispatcher.onMessage(newTextMessage("Re: Hello", null));
+      Assert.assertEquals(dispatcher.getUnmatched(), 2L);
+
+      // the number is reported outside of the measured time
+      verify(mu, never()).appendResult(eq(RequestResponseJmsSender.UNMATCHED_RESPONSES), any());
+      sender.postSend(message);
+      verify(mu).appendResult(RequestResponseJmsSender.UNMATCHED_RESPONSES, 2L);
+   }
+}
@@ -0,0 +1,128 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.util.ObjectFactory;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * Creates the senders and drives their send cycle the way the sender task does, so that the sender tests do not need their own fixtures.
+ */
+public class SenderTestHelper {
+
+   /**
+    * Creates the properties from the key and value pairs.
+    *
+    * @param keyValues
+    *       Alternating property names and values.
+    * @return The properties.
+    */
+   public static Properties props(final String... keyValues) {
+      final Properties props = new Properties();
+      for (int i = 0; i < keyValues.length; i += 2) {
+         props.setProperty(keyValues[i], keyValues[i + 1]);
+      }
+
+      return props;
+   }
+
+   /**
+    * Summons the sender configured by the properties without initializing it.
+    *
+    * @param senderClass
+    *       The sender class.
+    * @param props
+    *       The sender properties.
+    * @return The sender.
+    * @throws Exception
+    *       When it was not possible to summon the sender.
+    */
+   public static <T extends MessageSender> T summonSender(final Class<T> senderClass, final Properties props) throws Exception {
+      return senderClass.cast(ObjectFactory.summonInstance(senderClass.getName(), props));
+   }
+
+   /**
+    * Summons the sender configured by the properties and initializes it.
+    *
+    * @param senderClass
+    *       The sender class.
+    * @param props
+    *       The sender properties.
+    * @return The initialized sender.
+    * @throws Exception
+    *       When it was not possible to summon or initialize the sender.
+    */
+   public static <T extends MessageSender> T newSender(final Class<T> senderClass, final Properties props) throws Exception {
+      final T sender = summonSender(senderClass, props);
+      sender.init();
+
+      return sender;
+   }
+
+   /**
+    * Sends the message without a measurement unit.
+    *
+    * @param sender
+    *       The sender.
+    * @param message
+    *       The message to send.
+    * @return The response.
+    * @throws Exception
+    *       When the message could not be sent.
+    */
+   public static Serializable send(final MessageSender sender, final Message message) throws Exception {
+      return send(sender, message, null);
+   }
+
+   /**
+    * Sends the message like the sender task does. Only the send itself is measured and postSend is called even when the send fails.
+    *
+    * @param sender
+    *       The sender.
+    * @param message
+    *       The message to send.
+    * @param mu
+    *       The measurement unit, or null.
+    * @return The response.
+    * @throws Exception
+    *       When the message could not be sent.
+    */
+   public static Serializable send(final MessageSender sender, final Message message, final MeasurementUnit mu) throws Exception {
+      sender.preSend(message, null);
+      try {
+         if (mu != null) {
+            mu.startMeasure();
+         }
+         try {
+            return sender.send(message, mu);
+         } finally {
+            if (mu != null) {
+               mu.stopMeasure();
+            }
+         }
+      } finally {
+         sender.postSend(message);
+      }
+   }
+}
@@ -0,0 +1,204 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.message.Message;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Verifies the request building, MTOM attachments, connection reuse and fault detection of {@link SoapSender} against an embedded HTTP server.
+ */
+public class SoapSenderTest {
+
+   private static final String FAULT = "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\"><S:Header/><S:Body>"
+         + "<S:Fault><faultcode>S:Server</faultcode><faultstring>Failure</faultstring></S:Fault></S:Body></S:Envelope>";
+   private static final String REPLY = "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\"><S:Body>"
+         + "<ns2:sayHelloResponse xmlns:ns2=\"http://plain_ws.helloworld\"><Fault>not a fault</Fault></ns2:sayHelloResponse></S:Body></S:Envelope>";
+
+   private HttpServer server;
+   private String url;
+
+   private volatile String lastContentType;
+   private volatile String lastSoapAction;
+   private volatile String lastRequest;
+   private final Set<Integer> clientPorts = new HashSet<>();
+
+   @BeforeClass
+   public void startServer() throws IOException {
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      server.createContext("/", new HttpHandler() {
+         @Override
+         public void handle(final HttpExchange exchange) throws IOException {
+            lastContentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            lastSoapAction = exchange.getRequestHeaders().getFirst("SOAPAction");
+            synchronized (clientPorts) {
+               clientPorts.add(exchange.getRemoteAddress().getPort());
+            }
+
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+               final byte[] buffer = new byte[1024];
+               int n;
+               while ((n = in.read(buffer)) != -1) {
+                  body.write(buffer, 0, n);
+               }
+            }
+            lastRequest = body.toString("UTF-8");
+
+            final boolean fault = lastRequest.contains("fail");
+            final byte[] response = (fault ? FAULT : REPLY).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/xml;charset=utf-8");
+            exchange.sendResponseHeaders(fault ? 500 : 200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+               out.write(response);
+            }
+         }
+      });
+      server.start();
+      url = "http://127.0.0.1:" + server.getAddress().getPort() + "/hello";
+   }
+
+   @AfterClass
+   public void stopServer() {
+      server.stop(0);
+   }
+
+   @Test
+   public void testSoap11() throws Exception {
+      final SoapSender sender = newSender(SoapSender.class, props("target", url, "soapAction", "urn:sayHello", "wrapBody", "true"));
+      final Message message = new Message("<sayHello>PerfCake</sayHello>");
+
+      Assert.assertEquals(send(sender, message), REPLY);
+      Assert.assertEquals(lastSoapAction, "\"urn:sayHello\"");
+      Assert.assertTrue(lastContentType.startsWith("text/xml"));
+      Assert.assertEquals(lastRequest, "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body><sayHello>PerfCake</sayHello></soap:Body></soap:Envelope>");
+
+      sender.close();
+   }
+
+   @Test
+   public void testSoap12() throws Exception {
+      final SoapSender sender = newSender(SoapSender.class, props("target", url, "soapAction", "urn:sayHello", "soapVersion", "SOAP_1_2"));
+      send(sender, new Message("<env:Envelope xmlns:env=\"http://www.w3.org/2003/05/soap-envelope\"/>"));
+
+      Assert.assertNull(lastSoapAction);
+      Assert.assertTrue(lastContentType.startsWith("application/soap+xml"));
+      Assert.assertTrue(lastContentType.contains("action=\"urn:sayHello\""));
+
+      sender.close();
+   }
+
+   @Test
+   public void testMtomAttachment() throws Exception {
+      final File attachment = File.createTempFile("perfcake-", ".bin");
+      try {
+         Files.write(attachment.toPath(), "attachment-content".getBytes(StandardCharsets.UTF_8));
+         final SoapSender sender = newSender(SoapSender.class, props("target", url, "attachments", attachment.getPath(), "wrapBody", "true"));
+
+         send(sender, new Message("<xop:Include xmlns:xop=\"http://www.w3.org/2004/08/xop/include\" href=\"cid:" + attachment.getName() + "\"/>"));
+
+         Assert.assertTrue(lastContentType.startsWith("multipart/related"));
+         Assert.assertTrue(lastContentType.contains("type=\"application/xop+xml\""));
+         Assert.assertTrue(lastRequest.contains("Content-ID: <root.message@perfcake.org>"));
+         Assert.assertTrue(lastRequest.contains("Content-ID: <" + attachment.getName() + ">\r\n\r\nattachment-content\r\n--uuid:"));
+         Assert.assertTrue(lastRequest.endsWith("--\r\n"));
+
+         sender.close();
+      } finally {
+         attachment.delete();
+      }
+   }
+
+   @Test
+   public void testFaultDetection() throws Exception {
+      final SoapSender sender = newSender(SoapSender.class, props("target", url, "responseMode", "FAULT_DETECTION", "wrapBody", "true"));
+
+      Assert.assertNull(send(sender, new Message("<sayHello>PerfCake</sayHello>")));
+      Assert.assertEquals(lastSoapAction, "\"\"", "SOAP 1.1 requires the SOAPAction header even without an action.");
+
+      try {
+         send(sender, new Message("<fail/>"));
+         Assert.fail("The SOAP fault was not detected.");
+      } catch (PerfCakeException e) {
+         // expected
+      }
+
+      sender.close();
+   }
+
+   @Test
+   public void testFaultScanner() {
+      Assert.assertTrue(scan(FAULT, 7));
+      Assert.assertTrue(scan(FAULT, 1));
+      Assert.assertFalse(scan(REPLY, 3));
+      Assert.assertFalse(scan("<?xml version=\"1.0\"?><!-- <Body> --><soap:Envelope><soap:Body/></soap:Envelope>", 5));
+   }
+
+   private static boolean scan(final String response, final int chunk) {
+      final SoapSender.FaultScanner scanner = new SoapSender.FaultScanner();
+      final byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+      for (int i = 0; i < bytes.length; i += chunk) {
+         final byte[] part = new byte[Math.min(chunk, bytes.length - i)];
+         System.arraycopy(bytes, i, part, 0, part.length);
+         scanner.scan(part, part.length);
+      }
+
+      return scanner.isFault();
+   }
+
+   @Test
+   public void testConnectionReuse() throws Exception {
+      final SoapSender sender = newSender(SoapSender.class, props("target", url, "wrapBody", "true"));
+      final Message message = new Message("<sayHello>PerfCake</sayHello>");
+      send(sender, message);
+
+      synchronized (clientPorts) {
+         clientPorts.clear();
+      }
+      for (int i = 0; i < 20; i++) {
+         send(sender, message);
+      }
+
+      Assert.assertEquals(clientPorts.size(), 1);
+
+      sender.close();
+   }
+}
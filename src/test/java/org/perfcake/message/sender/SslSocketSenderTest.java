@@ -0,0 +1,176 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.RunInfo;
+import org.perfcake.common.Period;
+import org.perfcake.common.PeriodType;
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.reporting.ReportManager;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.Properties;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+
+public class SslSocketSenderTest {
+
+   private static final String PAYLOAD = "Hello secured socket world!";
+
+   private static final String KEYSTORE = "test.jks";
+
+   private static final String KEYSTORE_PASSWORD = "perfcake";
+
+   private static final int COUNT = 10;
+
+   private SSLServerSocket serverSocket;
+
+   private ReportManager reportManager;
+
+   @BeforeClass
+   public void setUp() throws Exception {
+      System.setProperty(HttpsSender.KEYSTORES_DIR_PROPERTY, getClass().getResource("/keystores").getPath());
+
+      final KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      try (InputStream is = getClass().getResourceAsStream("/keystores/" + KEYSTORE)) {
+         keyStore.load(is, KEYSTORE_PASSWORD.toCharArray());
+      }
+      final KeyManagerFactory keyManager = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      keyManager.init(keyStore, KEYSTORE_PASSWORD.toCharArray());
+      final SSLContext ctx = SSLContext.getInstance("TLS");
+      ctx.init(keyManager.getKeyManagers(), null, null);
+
+      serverSocket = (SSLServerSocket) ctx.getServerSocketFactory().createServerSocket(0);
+      final Thread acceptor = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               while (!serverSocket.isClosed()) {
+                  final Thread echo = new Thread(new Echo(serverSocket.accept()));
+                  echo.setDaemon(true);
+                  echo.start();
+               }
+            } catch (IOException e) {
+               // server socket closed
+            }
+         }
+      });
+      acceptor.setDaemon(true);
+      acceptor.start();
+
+      reportManager = new ReportManager();
+      reportManager.setRunInfo(new RunInfo(new Period(PeriodType.ITERATION, 1000)));
+      reportManager.start();
+   }
+
+   @AfterClass
+   public void tearDown() throws IOException {
+      reportManager.stop();
+      serverSocket.close();
+   }
+
+   private static class Echo implements Runnable {
+      private final Socket socket;
+
+      private Echo(final Socket socket) {
+         this.socket = socket;
+      }
+
+      @Override
+      public void run() {
+         try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8")); OutputStream out = socket.getOutputStream()) {
+            String line;
+            while ((line = in.readLine()) != null) {
+               out.write((line + "\n").getBytes("UTF-8"));
+               out.flush();
+            }
+         } catch (IOException e) {
+            // connection closed
+         }
+      }
+   }
+
+   private Properties senderProps(final boolean keepConnection) {
+      return props("target", "localhost:" + serverSocket.getLocalPort(), "framing", "line", "timeout", "5000", "keepConnection", String.valueOf(keepConnection),
+            "trustStore", KEYSTORE, "trustStorePassword", KEYSTORE_PASSWORD, "sessionCacheSize", "100");
+   }
+
+   private MeasurementUnit sendMessage(final SslSocketSender sender) throws Exception {
+      final Message message = new Message(PAYLOAD);
+      final MeasurementUnit mu = reportManager.newMeasurementUnit();
+      Assert.assertEquals(send(sender, message, mu), PAYLOAD);
+
+      return mu;
+   }
+
+   @Test
+   public void testSessionResumption() throws Exception {
+      final SslSocketSender sender1 = newSender(SslSocketSender.class, senderProps(false));
+      final SslSocketSender sender2 = newSender(SslSocketSender.class, senderProps(false));
+      MeasurementUnit mu = null;
+      try {
+         for (int i = 0; i < COUNT; i++) {
+            mu = sendMessage(sender1);
+            Assert.assertTrue((Double) mu.getResult(SharedSslContext.HANDSHAKE_TIME) > 0d);
+            mu = sendMessage(sender2);
+         }
+      } finally {
+         sender1.close();
+         sender2.close();
+      }
+
+      // both the senders share a single context, only the very first handshake is a full one
+      Assert.assertEquals(mu.getResult(SharedSslContext.HANDSHAKES), 2L * COUNT);
+      Assert.assertEquals(mu.getResult(SharedSslContext.RESUMED_HANDSHAKES), 2L * COUNT - 1);
+   }
+
+   @Test
+   public void testPersistentConnection() throws Exception {
+      final SslSocketSender sender = newSender(SslSocketSender.class, senderProps(true));
+      MeasurementUnit mu;
+      try {
+         mu = sendMessage(sender);
+         Assert.assertNotNull(mu.getResult(SharedSslContext.HANDSHAKE_TIME));
+         for (int i = 1; i < COUNT; i++) {
+            mu = sendMessage(sender);
+            Assert.assertNull(mu.getResult(SharedSslContext.HANDSHAKE_TIME));
+         }
+      } finally {
+         sender.close();
+      }
+
+      Assert.assertEquals(mu.getResult(SharedSslContext.HANDSHAKES), 1L);
+   }
+}
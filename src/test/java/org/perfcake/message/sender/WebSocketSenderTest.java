@@ -0,0 +1,307 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender;
+
+import static org.mockito.Mockito.*;
+import static org.perfcake.message.sender.SenderTestHelper.*;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.RunInfo;
+import org.perfcake.common.Period;
+import org.perfcake.common.PeriodType;
+import org.perfcake.message.Message;
+import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.reporting.ReportManager;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.websocket.PongMessage;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+/**
+ * Verifies the payload types, the reply matching and the in-flight window of {@link WebSocketSender} without a web socket server.
+ */
+public class WebSocketSenderTest {
+
+   private static final long SERVER_DELAY = 50;
+
+   private ReportManager reportManager;
+   private ScheduledExecutorService server;
+
+   @BeforeClass
+   public void setUp() {
+      reportManager = new ReportManager();
+      reportManager.setRunInfo(new RunInfo(new Period(PeriodType.ITERATION, 1000)));
+      reportManager.start();
+      server = Executors.newSingleThreadScheduledExecutor();
+   }
+
+   @AfterClass
+   public void tearDown() {
+      server.shutdownNow();
+      reportManager.stop();
+   }
+
+   private WebSocketSender mockedSender(final Properties props) throws Exception {
+      final WebSocketSender sender = summonSender(WebSocketSender.class, props);
+      sender.session = mock(Session.class);
+      when(sender.session.getBasicRemote()).thenReturn(mock(RemoteEndpoint.Basic.class));
+      when(sender.session.getAsyncRemote()).thenReturn(mock(RemoteEndpoint.Async.class));
+
+      return sender;
+   }
+
+   private MeasurementUnit exchange(final WebSocketSender sender, final Message message, final Serializable expectedResponse) throws Exception {
+      final MeasurementUnit mu = reportManager.newMeasurementUnit();
+      Assert.assertEquals(send(sender, message, mu), expectedResponse);
+
+      return mu;
+   }
+
+   /**
+    * Replies to each text message after a delay.
+    */
+   private Answer<Void> echo(final WebSocketSender.PerfCakeClientEndpoint endpoint) {
+      return new Answer<Void>() {
+         @Override
+         public Void answer(final InvocationOnMock invocation) {
+            final String text = (String) invocation.getArguments()[0];
+            server.schedule(new Runnable() {
+               @Override
+               public void run() {
+                  endpoint.onMessage("Re: " + text, null);
+               }
+            }, SERVER_DELAY, TimeUnit.MILLISECONDS);
+            return null;
+         }
+      };
+   }
+
+   @Test
+   public void testBasicRoundTrip() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("awaitResponse", "true");
+      final WebSocketSender sender = mockedSender(props);
+      final WebSocketSender.PerfCakeClientEndpoint endpoint = sender.new PerfCakeClientEndpoint();
+      final RemoteEndpoint.Basic basic = sender.session.getBasicRemote();
+      doAnswer(echo(endpoint)).when(basic).sendText(anyString());
+
+      final MeasurementUnit mu = exchange(sender, new Message("Hello"), "Re: Hello");
+      Assert.assertTrue(mu.getTotalTime() >= SERVER_DELAY, "The measured time should include the reply, but was " + mu.getTotalTime());
+   }
+
+   @Test(expectedExceptions = PerfCakeException.class)
+   public void testBasicTimeout() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("awaitResponse", "true");
+      props.setProperty("responseTimeout", "20");
+
+      exchange(mockedSender(props), new Message("Hello"), null);
+   }
+
+   @Test
+   public void testBasicLateReply() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("awaitResponse", "true");
+      props.setProperty("responseTimeout", "20");
+      final WebSocketSender sender = mockedSender(props);
+      final WebSocketSender.PerfCakeClientEndpoint endpoint = sender.new PerfCakeClientEndpoint();
+      final RemoteEndpoint.Basic basic = sender.session.getBasicRemote();
+      doAnswer(echo(endpoint)).when(basic).sendText(anyString());
+
+      try {
+         exchange(sender, new Message("first"), null);
+         Assert.fail("The first request should time out.");
+      } catch (PerfCakeException e) {
+         // expected
+      }
+
+      // the reply to the first request arrives while waiting for the second one
+      sender.setResponseTimeout(1000);
+      final MeasurementUnit mu = exchange(sender, new Message("second"), "Re: second");
+      Assert.assertEquals(mu.getResult(WebSocketSender.UNMATCHED_RESPONSES), 1L);
+   }
+
+   @Test
+   public void testAsyncRoundTrip() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("remoteEndpointType", "async");
+      props.setProperty("awaitResponse", "true");
+      final WebSocketSender sender = mockedSender(props);
+      final WebSocketSender.PerfCakeClientEndpoint endpoint = sender.new PerfCakeClientEndpoint();
+
+      final MeasurementUnit first = exchange(sender, new Message("1"), null);
+      Assert.assertNull(first.getResult(WebSocketSender.ROUND_TRIP_TIME));
+
+      Thread.sleep(SERVER_DELAY);
+      endpoint.onMessage("Re: 1", null);
+      final MeasurementUnit second = exchange(sender, new Message("2"), null);
+      final double roundTrip = (Double) second.getResult(WebSocketSender.ROUND_TRIP_TIME);
+      Assert.assertTrue(roundTrip >= SERVER_DELAY, "The round-trip time should include the reply delay, but was " + roundTrip);
+   }
+
+   @Test
+   public void testBinaryPreEncoded() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("payloadType", "binary");
+      final WebSocketSender sender = mockedSender(props);
+      final Message message = new Message("Hello");
+
+      exchange(sender, message, null);
+      exchange(sender, message, null);
+
+      final ArgumentCaptor<ByteBuffer> buffers = ArgumentCaptor.forClass(ByteBuffer.class);
+      verify(sender.session.getBasicRemote(), times(2)).sendBinary(buffers.capture());
+      final ByteBuffer first = buffers.getAllValues().get(0), second = buffers.getAllValues().get(1);
+      Assert.assertSame(first.array(), second.array(), "The payload should be encoded just once.");
+      Assert.assertEquals(Arrays.copyOfRange(second.array(), second.position(), second.limit()), "Hello".getBytes("UTF-8"));
+
+      exchange(sender, new Message(new byte[] { 1, 2, 3 }), null);
+      verify(sender.session.getBasicRemote(), times(3)).sendBinary(buffers.capture());
+      Assert.assertEquals(buffers.getValue().array(), new byte[] { 1, 2, 3 });
+   }
+
+   @Test
+   public void testPing() throws Exception {
+      final WebSocketSender sender = mockedSender(new Properties());
+      sender.setPayloadType("ping");
+      final WebSocketSender.PerfCakeClientEndpoint endpoint = sender.new PerfCakeClientEndpoint();
+      final RemoteEndpoint.Basic basic = sender.session.getBasicRemote();
+      doAnswer(new Answer<Void>() {
+         @Override
+         public Void answer(final InvocationOnMock invocation) {
+            server.schedule(new Runnable() {
+               @Override
+               public void run() {
+                  endpoint.onPong(mock(PongMessage.class), null);
+               }
+            }, SERVER_DELAY, TimeUnit.MILLISECONDS);
+            return null;
+         }
+      }).when(basic).sendPing(any(ByteBuffer.class));
+
+      final MeasurementUnit mu = exchange(sender, new Message("ping"), null);
+      Assert.assertTrue(mu.getTotalTime() >= SERVER_DELAY, "The measured time should include the pong, but was " + mu.getTotalTime());
+   }
+
+   @Test(expectedExceptions = PerfCakeException.class)
+   public void testPingTooLong() throws Exception {
+      final WebSocketSender sender = mockedSender(new Properties());
+      sender.setPayloadType("ping");
+      sender.preSend(new Message(new byte[126]), null);
+   }
+
+   @Test
+   public void testAsyncWindow() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("remoteEndpointType", "async");
+      props.setProperty("awaitResponse", "true");
+      props.setProperty("maxInFlight", "2");
+      props.setProperty("responseTimeout", "100");
+      final WebSocketSender sender = mockedSender(props);
+      final WebSocketSender.PerfCakeClientEndpoint endpoint = sender.new PerfCakeClientEndpoint();
+
+      exchange(sender, new Message("1"), null);
+      final MeasurementUnit second = exchange(sender, new Message("2"), null);
+      Assert.assertEquals(second.getResult(WebSocketSender.IN_FLIGHT), 2L);
+
+      // no replies arrived, the window is full until the requests time out
+      final MeasurementUnit third = exchange(sender, new Message("3"), null);
+      Assert.assertTrue(third.getTotalTime() >= 100, "The window should block the send, but it took " + third.getTotalTime());
+      Assert.assertEquals(third.getResult(WebSocketSender.RESPONSE_TIMEOUTS), 2L);
+      Assert.assertEquals(third.getResult(WebSocketSender.IN_FLIGHT), 1L);
+
+      // the late replies to the given up requests are not taken for the reply to the third one
+      endpoint.onMessage("Re: 1", null);
+      endpoint.onMessage("Re: 2", null);
+      endpoint.onMessage("Re: 3", null);
+      final MeasurementUnit fourth = exchange(sender, new Message("4"), null);
+      Assert.assertEquals(fourth.getResult(WebSocketSender.IN_FLIGHT), 1L);
+      Assert.assertEquals(fourth.getResult(WebSocketSender.UNMATCHED_RESPONSES), 2L);
+      Assert.assertEquals(fourth.getResult(WebSocketSender.SEND_FAILURES), 0L);
+      verify(sender.session.getAsyncRemote(), times(4)).sendText(anyString(), any(SendHandler.class));
+   }
+
+   @Test
+   public void testAsyncSendFailures() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("remoteEndpointType", "async");
+      props.setProperty("maxInFlight", "1");
+      final WebSocketSender sender = mockedSender(props);
+      final RemoteEndpoint.Async async = sender.session.getAsyncRemote();
+      doAnswer(new Answer<Void>() {
+         @Override
+         public Void answer(final InvocationOnMock invocation) {
+            final String text = (String) invocation.getArguments()[0];
+            final SendHandler handler = (SendHandler) invocation.getArguments()[1];
+            handler.onResult(text.equals("fail") ? new SendResult(new IOException("Broken pipe")) : new SendResult());
+            return null;
+         }
+      }).when(async).sendText(anyString(), any(SendHandler.class));
+
+      exchange(sender, new Message("ok"), null);
+      exchange(sender, new Message("fail"), null);
+      final MeasurementUnit mu = exchange(sender, new Message("fail"), null);
+      Assert.assertEquals(mu.getResult(WebSocketSender.SEND_FAILURES), 2L);
+      Assert.assertEquals(mu.getResult(WebSocketSender.IN_FLIGHT), 0L, "The failed sends must free their in-flight slots.");
+   }
+
+   @Test
+   public void testCorrelation() throws Exception {
+      final Properties props = new Properties();
+      props.setProperty("remoteEndpointType", "async");
+      props.setProperty("awaitResponse", "true");
+      props.setProperty("correlationIdPattern", "id=(\\d+)");
+      final WebSocketSender sender = mockedSender(props);
+      final WebSocketSender.PerfCakeClientEndpoint endpoint = sender.new PerfCakeClientEndpoint();
+
+      exchange(sender, new Message("id=1"), null);
+      exchange(sender, new Message("id=2"), null);
+      endpoint.onMessage("reply id=2", null);
+      endpoint.onMessage("reply id=3", null);
+
+      final MeasurementUnit mu = exchange(sender, new Message("id=4"), null);
+      Assert.assertEquals(mu.getResult(WebSocketSender.IN_FLIGHT), 2L);
+      Assert.assertEquals(mu.getResult(WebSocketSender.UNMATCHED_RESPONSES), 1L);
+
+      endpoint.onMessage("reply id=1", null);
+      endpoint.onMessage("reply id=4", null);
+      final MeasurementUnit last = exchange(sender, new Message("id=5"), null);
+      Assert.assertEquals(last.getResult(WebSocketSender.IN_FLIGHT), 1L);
+      Assert.assertEquals(last.getResult(WebSocketSender.UNMATCHED_RESPONSES), 1L);
+   }
+}
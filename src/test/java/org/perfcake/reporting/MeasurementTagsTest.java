@@ -0,0 +1,60 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.reporting;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+/**
+ * Verifies the registration of the measurement tags.
+ */
+public class MeasurementTagsTest {
+
+   @Test
+   public void testRegistration() {
+      final MeasurementTags tags = new MeasurementTags();
+      Assert.assertEquals(tags.register("a"), 0);
+      Assert.assertEquals(tags.register("b"), 1);
+      Assert.assertEquals(tags.register("a"), 0, "registered again");
+      Assert.assertEquals(tags.getMask(Arrays.asList("b", "c")), 0b110L);
+      Assert.assertEquals(tags.indexOf("c"), 2);
+      Assert.assertEquals(tags.indexOf("d"), -1);
+      Assert.assertEquals(tags.getNames(), new String[] { "a", "b", "c" });
+   }
+
+   @Test
+   public void testBoundedCardinality() {
+      final MeasurementTags tags = new MeasurementTags();
+      for (int i = 0; i < MeasurementTags.MAX_TAGS; i++) {
+         Assert.assertEquals(tags.register("tag" + i), i);
+      }
+
+      Assert.assertEquals(tags.register("overflow"), -1, "tag over the limit");
+      Assert.assertEquals(tags.size(), MeasurementTags.MAX_TAGS);
+      Assert.assertEquals(tags.getMask(Arrays.asList("tag63", "overflow")), Long.MIN_VALUE, "mask without the tag over the limit");
+
+      final MeasurementUnit mu = new MeasurementUnit(1);
+      mu.addTags(tags.getMask(Arrays.asList("tag0")));
+      mu.addTags(tags.getMask(Arrays.asList("tag63")));
+      Assert.assertEquals(mu.getTags(), Long.MIN_VALUE | 1L);
+   }
+}
@@ -24,6 +24,7 @@ import org.perfcake.common.Period;
 import org.perfcake.common.PeriodType;
 import org.perfcake.reporting.Measurement;
 import org.perfcake.reporting.MeasurementUnit;
+import org.perfcake.reporting.Quantity;
 import org.perfcake.reporting.ReportManager;
 import org.perfcake.reporting.ReportingException;
 import org.perfcake.reporting.destinations.DummyDestination;
@@ -34,8 +35,13 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -150,4 +156,77 @@ public class StatsReporterTest {
          }
       }
    }
+
+   private static List<Measurement> reportTagged(final StatsReporter reporter) throws Exception {
+      final ReportManager rm = new ReportManager();
+      final long fast = rm.getTags().getMask(Arrays.asList("fast", "all"));
+      final long slow = rm.getTags().getMask(Arrays.asList("slow", "all"));
+      rm.getTags().register("unused");
+
+      final List<Measurement> measurements = new ArrayList<>();
+      final DummyDestination dest = new DummyDestination();
+      dest.setReportAssert(new DummyDestination.ReportAssert() {
+         @Override
+         public void report(final Measurement m) {
+            measurements.add(m);
+         }
+      });
+      reporter.registerDestination(dest, new Period(PeriodType.ITERATION, ITERATION_COUNT));
+      rm.registerReporter(reporter);
+      rm.setRunInfo(new RunInfo(new Period(PeriodType.ITERATION, ITERATION_COUNT)));
+      rm.start();
+
+      for (int i = 0; i < ITERATION_COUNT; i++) {
+         final MeasurementUnit mu = rm.newMeasurementUnit();
+         mu.addTags(i % 2 == 0 ? fast : slow);
+         mu.startMeasure();
+         Thread.sleep(i % 2 == 0 ? 1 : 20);
+         mu.stopMeasure();
+         rm.report(mu);
+      }
+      rm.stop();
+
+      return measurements;
+   }
+
+   @SuppressWarnings("unchecked")
+   private static double number(final Object quantity) {
+      return ((Quantity<Number>) quantity).getNumber().doubleValue();
+   }
+
+   @Test
+   public void testWideTagBreakdown() throws Exception {
+      final List<Measurement> measurements = reportTagged(new ResponseTimeStatsReporter());
+      final Measurement first = measurements.get(0);
+      Assert.assertNotNull(first.get(StatsReporter.getTagKey(StatsReporter.AVERAGE, "slow")), "preallocated tag result before the first measurement with the tag");
+      Assert.assertTrue(Double.isNaN(number(first.get(StatsReporter.getTagKey(StatsReporter.AVERAGE, "slow")))), "tag without any measurement");
+
+      final Measurement m = measurements.get(measurements.size() - 1);
+      Assert.assertNotNull(m.get(StatsReporter.getTagKey(StatsReporter.MAXIMUM, "fast")), "fast message maximum");
+      Assert.assertEquals(((Quantity<?>) m.get(StatsReporter.getTagKey(StatsReporter.AVERAGE, "slow"))).getUnit(), "ms", "unit of the tag results");
+      Assert.assertTrue(number(m.get(StatsReporter.getTagKey(StatsReporter.MINIMUM, "slow"))) >= 20, "slow message minimum");
+      Assert.assertTrue(number(m.get(StatsReporter.getTagKey(StatsReporter.AVERAGE, "slow"))) > number(m.get(StatsReporter.AVERAGE)), "slow message average above the overall average");
+      Assert.assertEquals(number(m.get(StatsReporter.getTagKey(StatsReporter.AVERAGE, "all"))), number(m.get(StatsReporter.AVERAGE)), 0.000001, "tag of all the measurements");
+      Assert.assertTrue(Double.isNaN(number(m.get(StatsReporter.getTagKey(StatsReporter.AVERAGE, "unused")))), "unused tag");
+      Assert.assertNull(m.get(StatsReporter.TAG), "tag name in a wide measurement");
+
+      final List<Measurement> withoutBreakdown = reportTagged(new ResponseTimeStatsReporter().setTagBreakdown(StatsReporter.TagBreakdown.NONE));
+      Assert.assertNotNull(withoutBreakdown.get(0).get(StatsReporter.AVERAGE), "average without tag breakdown");
+      Assert.assertNull(withoutBreakdown.get(0).get(StatsReporter.getTagKey(StatsReporter.AVERAGE, "fast")), "disabled tag breakdown");
+   }
+
+   @Test
+   public void testSeparateTagBreakdown() throws Exception {
+      final List<Measurement> measurements = reportTagged(new ResponseTimeStatsReporter().setTagBreakdown(StatsReporter.TagBreakdown.SEPARATE).setMinimumEnabled(false));
+      final Map<String, Measurement> last = new HashMap<>();
+      for (final Measurement m : measurements) {
+         Assert.assertNull(m.get(StatsReporter.getTagKey(StatsReporter.AVERAGE, "fast")), "wide tag results in separate measurements");
+         last.put((String) m.get(StatsReporter.TAG), m);
+      }
+
+      Assert.assertEquals(last.keySet(), new HashSet<>(Arrays.asList(StatsReporter.ALL_TAGS, "fast", "slow", "all")), "reported tags");
+      Assert.assertTrue(number(last.get("slow").get(StatsReporter.AVERAGE)) > number(last.get(StatsReporter.ALL_TAGS).get(StatsReporter.AVERAGE)), "slow message average above the overall average");
+      Assert.assertNotNull(last.get("fast").get(Measurement.DEFAULT_RESULT), "last value of the tag");
+      Assert.assertNull(last.get("fast").get(StatsReporter.MINIMUM), "disabled minimum of the tag");
+   }
 }
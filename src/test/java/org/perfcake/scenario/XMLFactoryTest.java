@@ -25,10 +25,16 @@ import org.perfcake.RunInfo;
 import org.perfcake.common.BoundPeriod;
 import org.perfcake.common.Period;
 import org.perfcake.common.PeriodType;
+import org.perfcake.message.FilePayload;
 import org.perfcake.message.Message;
+import org.perfcake.message.MessageSelector;
 import org.perfcake.message.MessageTemplate;
+import org.perfcake.message.feeder.CsvDataFeeder;
+import org.perfcake.message.feeder.DataFeeder;
 import org.perfcake.message.generator.AbstractMessageGenerator;
 import org.perfcake.message.generator.DefaultMessageGenerator;
+import org.perfcake.message.receiver.JmsReceiver;
+import org.perfcake.message.receiver.Receiver;
 import org.perfcake.message.sender.MessageSenderManager;
 import org.perfcake.reporting.ReportManager;
 import org.perfcake.reporting.destinations.Destination;
@@ -45,7 +51,11 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
@@ -96,6 +106,88 @@ public class XMLFactoryTest {
       }
    }
 
+   @Test
+   public void parseReceiverTest() throws Exception {
+      final XMLFactory scenarioFactory = new XMLFactory();
+      scenarioFactory.init(getClass().getResource("/scenarios/test-receiver-scenario.xml"));
+
+      final Receiver receiver = scenarioFactory.parseReceiver();
+      Assert.assertTrue(receiver instanceof JmsReceiver, "receiver's class");
+      Assert.assertEquals(((JmsReceiver) receiver).getTarget(), "queue/test", "receiver's target");
+      Assert.assertEquals(((JmsReceiver) receiver).getDrainTimeout(), 5000, "receiver's drain timeout");
+
+      final ReportManager reportManager = scenarioFactory.parseReporting();
+      Assert.assertEquals(reportManager.getReporters().size(), 2, "reportManager's number of reporters");
+
+      final XMLFactory noReceiverFactory = new XMLFactory();
+      noReceiverFactory.init(getClass().getResource("/scenarios/test-scenario.xml"));
+      Assert.assertNull(noReceiverFactory.parseReceiver());
+   }
+
+   @Test
+   public void parseMappedMessageTest() throws Exception {
+      final XMLFactory scenarioFactory = new XMLFactory();
+      scenarioFactory.init(getClass().getResource("/scenarios/test-mapped-message-scenario.xml"));
+
+      final List<MessageTemplate> messageStore = scenarioFactory.parseMessages(scenarioFactory.parseValidation());
+      final Serializable mapped = messageStore.get(0).getMessage().getPayload();
+      Assert.assertTrue(mapped instanceof FilePayload, "mapped message payload");
+      Assert.assertEquals(((FilePayload) mapped).size(), Files.size(Paths.get(getClass().getResource("/messages/message2.txt").toURI())), "mapped message size");
+      Assert.assertTrue(messageStore.get(1).getMessage().getPayload() instanceof String, "message payload");
+   }
+
+   @Test
+   public void parseMessageMixTest() throws Exception {
+      final XMLFactory scenarioFactory = new XMLFactory();
+      scenarioFactory.init(getClass().getResource("/scenarios/test-message-mix-scenario.xml"));
+
+      Assert.assertEquals(scenarioFactory.parseMessageSelection(), MessageSelector.Strategy.WEIGHTED, "message selection");
+      final List<MessageTemplate> messageStore = scenarioFactory.parseMessages(scenarioFactory.parseValidation());
+      Assert.assertEquals(messageStore.get(0).getName(), "read", "message name");
+      Assert.assertEquals(messageStore.get(0).getWeight(), 0.8, "message weight");
+      Assert.assertEquals(messageStore.get(0).getTags(), Arrays.asList("reads", "light"), "message tags");
+      Assert.assertTrue(messageStore.get(1).getTags().isEmpty(), "no message tags");
+      Assert.assertEquals(messageStore.get(1).getName(), "message2", "default message name");
+      Assert.assertEquals(messageStore.get(1).getWeight(), 0.2, "message weight");
+      Assert.assertEquals(messageStore.get(2).getName(), "message2.txt", "message name from uri");
+      Assert.assertEquals(messageStore.get(2).getWeight(), 1.0, "default message weight");
+
+      final XMLFactory allFactory = new XMLFactory();
+      allFactory.init(getClass().getResource("/scenarios/test-scenario.xml"));
+      Assert.assertEquals(allFactory.parseMessageSelection(), MessageSelector.Strategy.ALL, "default message selection");
+   }
+
+   @Test
+   public void messageMixTaggingTest() throws Exception {
+      final XMLFactory scenarioFactory = new XMLFactory();
+      scenarioFactory.init(getClass().getResource("/scenarios/test-message-mix-scenario.xml"));
+      final Scenario scenario = scenarioFactory.getScenario();
+      scenario.init();
+      try {
+         Assert.assertEquals(scenario.getReportManager().getTags().getNames(), new String[] { "read", "reads", "light", "message2", "message2.txt" }, "measurement tags");
+         Assert.assertEquals(scenario.getMessageStore().get(0).getTagMask(), 0b111L, "tags of the first message");
+         Assert.assertEquals(scenario.getMessageStore().get(2).getTagMask(), 0b10000L, "tags of the last message");
+      } finally {
+         scenario.close();
+      }
+   }
+
+   @Test
+   public void parseFeederTest() throws Exception {
+      final XMLFactory scenarioFactory = new XMLFactory();
+      scenarioFactory.init(getClass().getResource("/scenarios/test-feeder-scenario.xml"));
+
+      final DataFeeder feeder = scenarioFactory.parseFeeder();
+      Assert.assertTrue(feeder instanceof CsvDataFeeder, "feeder's class");
+      Assert.assertEquals(((CsvDataFeeder) feeder).getFile(), "users.csv", "feeder's file");
+      Assert.assertEquals(((CsvDataFeeder) feeder).getDelimiter(), ";", "feeder's delimiter");
+      Assert.assertEquals(((CsvDataFeeder) feeder).getStrategy(), CsvDataFeeder.Strategy.PARTITIONED, "feeder's strategy");
+
+      final XMLFactory noFeederFactory = new XMLFactory();
+      noFeederFactory.init(getClass().getResource("/scenarios/test-scenario.xml"));
+      Assert.assertNull(noFeederFactory.parseFeeder());
+   }
+
    @Test
    public void parseGeneratorTest() {
       try {
@@ -0,0 +1,116 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.util;
+
+import org.perfcake.message.Message;
+import org.perfcake.message.MessageTemplate;
+import org.perfcake.util.properties.DefaultPropertyGetter;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Verifies that {@link CompiledTemplate} renders the same results as {@link Utils#filterProperties(String, java.util.regex.Matcher, org.perfcake.util.properties.PropertyGetter)}.
+ */
+public class CompiledTemplateTest {
+
+   private static final Pattern PATTERN = Pattern.compile("[^\\\\](#\\{([^#\\{:]+)(:[^#\\{:]*)?})");
+
+   private static Properties props() {
+      final Properties props = new Properties();
+      props.setProperty("a", "value-a");
+      props.setProperty("b", "");
+      props.setProperty("message_number", "42");
+
+      return props;
+   }
+
+   private static void assertSame(final String text, final Properties props) {
+      final String expected;
+      try {
+         expected = Utils.filterProperties(text, PATTERN.matcher(text), new DefaultPropertyGetter(props));
+      } catch (IllegalArgumentException e) {
+         return; // a backslash or a dollar sign in the value breaks the regular expression replacement, see testLiteralValues()
+      }
+      Assert.assertEquals(new CompiledTemplate(text, PATTERN).render(new DefaultPropertyGetter(props)), expected, "Template: " + text);
+   }
+
+   @Test
+   public void testTypicalTemplates() {
+      final Properties props = props();
+      assertSame("Hello #{a}!", props);
+      assertSame("#{a} at the beginning", props);
+      assertSame("#{a} at the beginning and again #{a}", props);
+      assertSame("adjacent #{a}#{message_number}#{a}", props);
+      assertSame("defaults #{missing:default} #{missing:} #{a:unused} #{missing}", props);
+      assertSame("escaped \\#{a} and not escaped #{message_number}", props);
+      assertSame("escaped \\#{a} and not escaped #{a}", props);
+      assertSame("empty value [#{b}]", props);
+      assertSame("overlapping #{a}} #{a}", props);
+      assertSame("no placeholders at all", props);
+      assertSame("", props);
+   }
+
+   @Test
+   public void testRandomTemplates() {
+      final Properties props = props();
+      final String[] tokens = { "#{a}", "#{b}", "#{message_number}", "#{x}", "#{x:d}", "#{a:d}", "#{", "}", "#", "{", ":", "\\", " ", "text", "#{#{a}}" };
+      final Random random = new Random(42);
+
+      for (int i = 0; i < 20000; i++) {
+         final StringBuilder sb = new StringBuilder();
+         final int length = random.nextInt(12);
+         for (int j = 0; j < length; j++) {
+            sb.append(tokens[random.nextInt(tokens.length)]);
+         }
+         assertSame(sb.toString(), props);
+      }
+   }
+
+   @Test
+   public void testLiteralValues() {
+      final Properties props = props();
+      props.setProperty("special", "$1 \\ #{a}");
+      Assert.assertEquals(new CompiledTemplate("value: #{special}", PATTERN).render(new DefaultPropertyGetter(props)), "value: $1 \\ #{a}");
+   }
+
+   @Test
+   public void testMessageTemplate() throws Exception {
+      final Properties props = props();
+      final MessageTemplate template = new MessageTemplate(new Message("<number>#{message_number}</number><value>#{a}</value>"), 1, null);
+
+      Assert.assertEquals(template.getFilteredMessage(props).getPayload(), "<number>42</number><value>value-a</value>");
+      props.setProperty("message_number", "43");
+      Assert.assertEquals(template.getFilteredMessage(props).getPayload(), "<number>43</number><value>value-a</value>");
+   }
+
+   @Test
+   public void testLargeTemplate() {
+      final StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 10000; i++) {
+         sb.append("<item id=\"#{message_number}\">#{a}</item>\n");
+      }
+      assertSame(sb.toString(), props());
+   }
+}
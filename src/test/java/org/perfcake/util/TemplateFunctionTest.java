@@ -0,0 +1,215 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2013 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.util;
+
+import org.perfcake.PerfCakeException;
+import org.perfcake.message.Message;
+import org.perfcake.message.MessagePreRenderer;
+import org.perfcake.message.MessageTemplate;
+import org.perfcake.util.properties.DefaultPropertyGetter;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+public class TemplateFunctionTest {
+
+   private static final Pattern PATTERN = Pattern.compile("[^\\\\](#\\{([^#\\{:]+)(:[^#\\{:]*)?})");
+
+   private static String render(final String text) {
+      return new CompiledTemplate(text, PATTERN).render(new DefaultPropertyGetter(new Properties()));
+   }
+
+   @AfterMethod
+   public void resetSeed() {
+      FastRandom.setSeed(null);
+   }
+
+   @Test
+   public void testRandomNumbers() {
+      final Set<String> seen = new HashSet<>();
+      for (int i = 0; i < 1000; i++) {
+         final String value = TemplateFunction.parse("randomInt(5, 10)").apply();
+         final int number = Integer.parseInt(value);
+         Assert.assertTrue(number >= 5 && number < 10, value);
+         seen.add(value);
+
+         final long big = Long.parseLong(TemplateFunction.parse("randomLong(-3000000000, 3000000000)").apply());
+         Assert.assertTrue(big >= -3000000000L && big < 3000000000L);
+
+         final int wide = Integer.parseInt(TemplateFunction.parse("randomInt(-2147483648, 2147483647)").apply());
+         Assert.assertTrue(wide < Integer.MAX_VALUE);
+      }
+      Assert.assertEquals(seen.size(), 5);
+      Assert.assertEquals(TemplateFunction.parse("randomInt(1)").apply(), "0");
+   }
+
+   @Test
+   public void testRandomValues() {
+      final String string = TemplateFunction.parse("randomString(32)").apply();
+      Assert.assertTrue(string.matches("[0-9A-Za-z]{32}"), string);
+
+      final UUID uuid = UUID.fromString(TemplateFunction.parse("uuid()").apply());
+      Assert.assertEquals(uuid.version(), 4);
+      Assert.assertEquals(uuid.variant(), 2);
+
+      final TemplateFunction pick = TemplateFunction.parse("pick(red, green , blue)");
+      final Set<String> picked = new HashSet<>();
+      for (int i = 0; i < 1000; i++) {
+         picked.add(pick.apply());
+      }
+      Assert.assertEquals(picked, new HashSet<>(Arrays.asList("red", "green", "blue")));
+   }
+
+   @Test
+   public void testTimestamp() {
+      final long before = System.currentTimeMillis();
+      final long timestamp = Long.parseLong(TemplateFunction.parse("timestamp()").apply());
+      Assert.assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis());
+      Assert.assertTrue(TemplateFunction.parse("timestamp(yyyy-MM-dd)").apply().matches("\\d{4}-\\d{2}-\\d{2}"));
+   }
+
+   @Test
+   public void testSequencePerThread() throws Exception {
+      final TemplateFunction sequence = TemplateFunction.parse("sequence(10)");
+      Assert.assertEquals(sequence.apply(), "10");
+      Assert.assertEquals(sequence.apply(), "11");
+
+      final ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+         Assert.assertEquals(executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+               return sequence.apply();
+            }
+         }).get(), "10");
+      } finally {
+         executor.shutdown();
+      }
+      Assert.assertEquals(sequence.apply(), "12");
+   }
+
+   @Test
+   public void testSeed() {
+      final String template = "#{randomInt(0, 1000000)} #{randomString(8)} #{uuid()} #{pick(a, b, c, d)}";
+
+      FastRandom.setSeed(42L);
+      final String first = render(template);
+      FastRandom.setSeed(42L);
+      Assert.assertEquals(render(template), first);
+      FastRandom.setSeed(43L);
+      Assert.assertNotEquals(render(template), first);
+   }
+
+   @Test
+   public void testKeyedSeed() throws Exception {
+      final String template = "#{randomInt(0, 1000000)} #{randomString(8)} #{uuid()}";
+      FastRandom.setSeed(42L);
+
+      final ExecutorService executor = Executors.newFixedThreadPool(2);
+      final String[] values = executor.submit(new Callable<String[]>() {
+         @Override
+         public String[] call() throws Exception {
+            final String[] values = new String[10];
+            for (int i = 0; i < values.length; i++) {
+               FastRandom.setKey(i);
+               values[i] = render(template);
+            }
+            return values;
+         }
+      }).get();
+      executor.shutdown();
+
+      for (int i = values.length - 1; i >= 0; i--) { // different thread and order
+         FastRandom.setKey(i);
+         Assert.assertEquals(render(template), values[i]);
+      }
+      Assert.assertNotEquals(values[0], values[1]);
+   }
+
+   @Test
+   public void testTemplates() {
+      final Properties props = new Properties();
+      props.setProperty("name", "value");
+      final CompiledTemplate template = new CompiledTemplate("a #{name} b #{sequence()} c #{foo(bar)} d #{missing:default}", PATTERN);
+      Assert.assertTrue(template.hasFunctions());
+      Assert.assertEquals(template.render(new DefaultPropertyGetter(props)), "a value b 0 c #{foo(bar)} d default");
+      Assert.assertEquals(template.render(new DefaultPropertyGetter(props)), "a value b 1 c #{foo(bar)} d default");
+
+      Assert.assertFalse(new CompiledTemplate("a #{name}", PATTERN).hasFunctions());
+   }
+
+   @Test
+   public void testNotPreRendered() throws Exception {
+      final MessageTemplate template = new MessageTemplate(new Message("id=#{uuid()}"), 1, null);
+      new MessagePreRenderer(Arrays.asList(template), 10, false).start();
+      Assert.assertNotEquals(template.getFilteredMessage(new Properties()).getPayload(), template.getFilteredMessage(new Properties()).getPayload());
+   }
+
+   @Test
+   public void testInvalidArguments() {
+      for (String invalid : new String[] { "randomInt()", "randomInt(10, 5)", "randomInt(a)", "randomString(-1)", "uuid(1)", "pick()", "sequence(1, 2)", "timestamp(HH" }) {
+         try {
+            TemplateFunction.parse(invalid);
+            Assert.fail("Expected an exception for " + invalid);
+         } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains(invalid), e.getMessage());
+         }
+      }
+      Assert.assertNull(TemplateFunction.parse("unknown(1)"));
+      Assert.assertNull(TemplateFunction.parse("property"));
+   }
+
+   @Test
+   public void testInvalidTemplate() {
+      try {
+         new MessageTemplate(new Message("time=#{timestamp(HH:mm)}"), 1, null);
+         Assert.fail("Expected an exception for the colon in the time format.");
+      } catch (PerfCakeException e) {
+         Assert.assertTrue(e.getMessage().contains("time=#{timestamp(HH:mm)}"), e.getMessage());
+      }
+   }
+
+   @Test
+   public void testFastRandom() {
+      final FastRandom random = FastRandom.current();
+      final int[] counts = new int[10];
+      for (int i = 0; i < 100000; i++) {
+         counts[random.nextInt(10)]++;
+      }
+      for (int count : counts) {
+         Assert.assertTrue(count > 9000 && count < 11000, Arrays.toString(counts));
+      }
+      for (int i = 0; i < 1000; i++) {
+         final long value = random.nextLong(Long.MIN_VALUE + 1, Long.MAX_VALUE);
+         Assert.assertTrue(value > Long.MIN_VALUE && value < Long.MAX_VALUE);
+      }
+   }
+}